@@ -22,10 +22,10 @@ public class BestFitCoords {
     
     int x, y;
     double approxCircleOuterX, approxCircleInnerX, aspectScale;
-    Gray8Image template;
+    BilevelImage template;
     double maxsim = -1;
 
-    public BestFitCoords(int x, int y, Gray8Image template, double approxCircleOuterX, double approxCircleInnerX, double aspectScale) {
+    public BestFitCoords(int x, int y, BilevelImage template, double approxCircleOuterX, double approxCircleInnerX, double aspectScale) {
         this.x = x;
         this.y = y;
         this.template = template;
@@ -42,7 +42,7 @@ public class BestFitCoords {
         return y;
     }
 
-    public Gray8Image getTemplate() {
+    public BilevelImage getTemplate() {
         return template;
     }
 
@@ -82,7 +82,7 @@ public class BestFitCoords {
         this.aspectScale = aspectscale;
     }
 
-    public void setTemplate(Gray8Image template) {
+    public void setTemplate(BilevelImage template) {
         this.template = template;
     }
 
@@ -9,6 +9,8 @@
 
 package com.formlens.omr;
 
+import java.nio.ByteBuffer;
+
 import net.sourceforge.jiu.codecs.*;
 import net.sourceforge.jiu.data.*;
 import net.sourceforge.jiu.color.reduction.*;
@@ -29,33 +31,43 @@ public class ConcentricCircle {
     public static double horizDist = 16.8;     // cm
     public static double diagDist = 28.5;      // cm
     public static double markDiam = 0.3;       // cm
+
+    public static int blackThreshold = 200;    // gray values below this are black
     
 //    static double vertDist = 1821;        // pixels
 //    static double horizDist = 1309;       // pixels
 //    static double diagDist = Math.sqrt(vertDist * vertDist + horizDist * horizDist);    // pixels = 2242.7
 //    static double markDiam = 25;                // pixels
 
-    Gray8Image img;
+    Gray8Image grayimg;
+    BilevelImage img;
     int bigimgWidth, bigimgHeight;
     BestFitCoords bestfit;
 
     public ConcentricCircle(Gray8Image img, int bigimgWidth, int bigimgHeight) {
-        this.img = img;
+        this.grayimg = img;
         this.bigimgWidth = bigimgWidth;
         this.bigimgHeight = bigimgHeight;
     }
     
     public void process() {
+        Gray8Image filtered = grayimg;
         try {
             MedianFilter filter = new MedianFilter();
+            filter.setImagePool(ImageUtil.imagePool);
             filter.setArea((int)((bigimgWidth / 1700 * 15) / 2) * 2 + 1, 
                     (int)(bigimgHeight / 2339 * 15 / 2) * 2 + 1);
-            filter.setInputImage(img);
+            filter.setInputImage(grayimg);
             filter.process();
-            img = (Gray8Image)(filter.getOutputImage());            
+            filtered = (Gray8Image)(filter.getOutputImage());            
         } catch(Exception exe) {
             exe.printStackTrace(System.out);
         }
+        // template matching only needs black and white, so it runs on packed bits
+        img = ImageUtil.threshold(filtered, blackThreshold);
+        if(filtered != grayimg) {
+            ImageUtil.releaseImage(filtered);
+        }
 
         // this results in a slight over-estimate due to extra borders put in by the scanner
         double approxXscale = bigimgWidth / a4width;      // 80.95 pixel/cm
@@ -64,7 +76,7 @@ public class ConcentricCircle {
         double approxCircleOuterX = circleOuter * approxXscale;  // 121 pixels
         double approxCircleInnerX = circleInner * approxXscale;  // 48 pixels
         
-        MemoryGray8Image template = new MemoryGray8Image((int)(approxCircleOuterX * 1.15) + 1, (int)(approxCircleOuterX / aspectScale * 1.15) + 1);
+        MemoryBilevelImage template = new MemoryBilevelImage((int)(approxCircleOuterX * 1.15) + 1, (int)(approxCircleOuterX / aspectScale * 1.15) + 1);
         fillTemplate(template, approxCircleOuterX, approxCircleInnerX, aspectScale);
         
         bestfit = new BestFitCoords(-1, -1, template, approxCircleOuterX, approxCircleInnerX, aspectScale);
@@ -76,11 +88,11 @@ public class ConcentricCircle {
         return bestfit;
     }
 
-    public Gray8Image getImg() {
+    public BilevelImage getImg() {
         return img;
     }
     
-    private void fillTemplate(Gray8Image templateimg, double outerdiamX, double innerdiamX, double aspect) {
+    private void fillTemplate(BilevelImage templateimg, double outerdiamX, double innerdiamX, double aspect) {
         double centerX = templateimg.getWidth() / 2;
         double centerY = templateimg.getHeight() / 2;
         double outerrad = outerdiamX / 2;
@@ -147,7 +159,7 @@ public class ConcentricCircle {
     }
 
     private void sizeTemplate() {
-        Gray8Image template = (Gray8Image)(bestfit.getTemplate().createCopy());
+        BilevelImage template = (BilevelImage)(bestfit.getTemplate().createCopy());
         double maxsim = 1.0 - templateXOR(img, bestfit.getX(), bestfit.getY(), template, false);
         for(double outerdiam = bestfit.getApproxCircleOuterX() - 1; outerdiam > 0; outerdiam --) {
             fillTemplate(template, outerdiam, bestfit.getApproxCircleInnerX(), bestfit.getAspectScale());
@@ -160,7 +172,7 @@ public class ConcentricCircle {
                 bestfit.setTemplate(template);
                 bestfit.setApproxCircleOuterX(outerdiam);
                 bestfit.setSim(currsim);
-                template = (Gray8Image)(bestfit.getTemplate().createCopy());
+                template = (BilevelImage)(bestfit.getTemplate().createCopy());
                 maxsim = currsim;
             }
         }
@@ -176,14 +188,14 @@ public class ConcentricCircle {
                 bestfit.setTemplate(template);
                 bestfit.setApproxCircleInnerX(innerdiam);
                 bestfit.setSim(currsim);
-                template = (Gray8Image)(bestfit.getTemplate().createCopy());
+                template = (BilevelImage)(bestfit.getTemplate().createCopy());
                 maxsim = currsim;
             }
         }        
     }
     
     private void aspectTemplate() {
-        Gray8Image template = (Gray8Image)(bestfit.getTemplate().createCopy());
+        BilevelImage template = (BilevelImage)(bestfit.getTemplate().createCopy());
         double maxsim = 1.0 - templateXOR(img, bestfit.getX(), bestfit.getY(), template, false);
         System.out.println("maxsim = " + maxsim + ":" + bestfit.getSim());
         double oldaspectscale = bestfit.getAspectScale();
@@ -196,7 +208,7 @@ public class ConcentricCircle {
                 bestfit.setTemplate(template);
                 bestfit.setAspectScale(aspectscale);
                 bestfit.setSim(currsim);
-                template = (Gray8Image)(bestfit.getTemplate().createCopy());
+                template = (BilevelImage)(bestfit.getTemplate().createCopy());
                 maxsim = currsim;
             }
         }
@@ -220,25 +232,45 @@ public class ConcentricCircle {
         }
     }
     
-    public static double templateXORhacked(Gray8Image img, int x, int y, Gray8Image template, boolean dump, boolean fff) {
+    public static double templateXORhacked(BilevelImage img, int x, int y, BilevelImage template, boolean dump, boolean fff) {
     	return templateXOR(img, x, y, template, dump);
     }
     
     
-    public static double templateXOR(Gray8Image img, int x, int y, Gray8Image template, boolean dump) {
-        int diff = 0, total = 0;
-        for(int j = y; j < y + template.getHeight() && j < img.getHeight(); j++) {
-            for(int i = x; i < x + template.getWidth() && i < img.getWidth(); i++) {
-                boolean isblack = (img.getSample(i, j) < 200 ? true : false);       // XXX
-                if(dump) { System.out.print((isblack & template.isWhite(i - x, j - y) ? "1" : ((!isblack) & template.isBlack(i - x, j - y)) ? "-" : "0")); }
-                if((isblack & template.isWhite(i - x, j - y) | (!isblack) & template.isBlack(i - x, j - y))) {
-                    diff ++;
+    // fraction of the pixels where template and image differ, computed on
+    // 64 pixels at a time by XORing packed rows and counting the set bits
+    public static double templateXOR(BilevelImage img, int x, int y, BilevelImage template, boolean dump) {
+        int startX = Math.max(x, 0), startY = Math.max(y, 0);
+        int endX = Math.min(x + template.getWidth(), img.getWidth());
+        int endY = Math.min(y + template.getHeight(), img.getHeight());
+        int w = endX - startX;
+        if(w <= 0 || endY <= startY) {
+            return Double.NaN;
+        }
+        if(dump) {
+            for(int j = startY; j < endY; j++) {
+                for(int i = startX; i < endX; i++) {
+                    boolean isblack = img.isBlack(i, j);
+                    System.out.print((isblack & template.isWhite(i - x, j - y) ? "1" : ((!isblack) & template.isBlack(i - x, j - y)) ? "-" : "0"));
                 }
-                total ++;
+                System.out.println();
+            }
+        }
+        // rounded up to whole longs; the padding bits stay zero in both rows
+        int numBytes = (w + 63) / 64 * 8;
+        byte[] imgRow = new byte[numBytes];
+        byte[] templateRow = new byte[numBytes];
+        ByteBuffer imgWords = ByteBuffer.wrap(imgRow);
+        ByteBuffer templateWords = ByteBuffer.wrap(templateRow);
+        int diff = 0;
+        for(int j = startY; j < endY; j++) {
+            img.getPackedBytes(startX, j, w, imgRow, 0, 0);
+            template.getPackedBytes(startX - x, j - y, w, templateRow, 0, 0);
+            for(int k = 0; k < numBytes; k += 8) {
+                diff += Long.bitCount(imgWords.getLong(k) ^ templateWords.getLong(k));
             }
-            if(dump) { System.out.println(); }
         }
-        return ((double)diff) / total;
+        return ((double)diff) / (w * (endY - startY));
     }
 
     
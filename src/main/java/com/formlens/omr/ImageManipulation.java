@@ -48,20 +48,15 @@ public class ImageManipulation {
     }
     
     public void locateConcentricCircles() {
-        int[] topleft = new int[((int)(height/4) + 1) * ((int)(width/4) + 1)];
-        int[] bottomright = new int[((int)(height/4) + 1) * ((int)(width/4) + 1)];
-        grayimage.getSamples(0, 0, 0, (int)(width/4) + 1, (int)(height/4) + 1, topleft, 0);
-        grayimage.getSamples(0, width - (int)(width/4) - 1, height - (int)(height/4) - 1, (int)(width/4) + 1, (int)(height/4) + 1, bottomright, 0);
-        
-        Gray8Image topleftimg = new MemoryGray8Image((int)(width/4) + 1, (int)(height/4) + 1);
-        topleftimg.putSamples(0, 0, 0, (int)(width/4) + 1, (int)(height/4) + 1, topleft, 0);
-        Gray8Image bottomrightimg = new MemoryGray8Image((int)(width/4) + 1, (int)(height/4) + 1);
-        bottomrightimg.putSamples(0, 0, 0, (int)(width/4) + 1, (int)(height/4) + 1, bottomright, 0);
+        Gray8Image topleftimg = ImageUtil.crop(grayimage, 0, 0, (int)(width/4) + 1, (int)(height/4) + 1);
+        Gray8Image bottomrightimg = ImageUtil.crop(grayimage, width - (int)(width/4) - 1, height - (int)(height/4) - 1, (int)(width/4) + 1, (int)(height/4) + 1);
 
         topleftpos = new ConcentricCircle(topleftimg, width, height);
         topleftpos.process();
+        ImageUtil.releaseImage(topleftimg);
         bottomrightpos = new ConcentricCircle(bottomrightimg, width, height);
         bottomrightpos.process();
+        ImageUtil.releaseImage(bottomrightimg);
 
 //        ImageUtil.saveImage(topleftpos.getImg(), "topleft.png");
 //        ImageUtil.saveImage(bottomrightpos.getImg(), "bottomright.png");
@@ -100,11 +95,34 @@ public class ImageManipulation {
         System.out.println("scaledtop: " + scaledtopleftX + ":" + scaledtopleftY);
         System.out.println("scaledbot: " + scaledbottomrightX + ":" + scaledbottomrightY);
 
+        // a 3x3 average below 10 needs at least one pixel below 10, so windows
+        // without such a pixel are skipped by testing the packed rows of a
+        // thresholded copy; darkRows[j] is the AND of rows j - 1 to j + 1,
+        // a zero bit meaning that the column has a dark pixel in that range
+        int scaledWidth = scaledImage.getWidth();
+        int scaledHeight = scaledImage.getHeight();
+        BilevelImage darkImage = ImageUtil.threshold(scaledImage, 10);
+        byte[][] rows = new byte[scaledHeight][(scaledWidth + 7) / 8];
+        for(int j = 0; j < scaledHeight; j++) {
+            darkImage.getPackedBytes(0, j, scaledWidth, rows[j], 0, 0);
+        }
+        byte[][] darkRows = new byte[scaledHeight][];
+        for(int j = 1; j < scaledHeight - 1; j++) {
+            darkRows[j] = new byte[rows[j].length];
+            for(int k = 0; k < rows[j].length; k++) {
+                darkRows[j][k] = (byte)(rows[j - 1][k] & rows[j][k] & rows[j + 1][k]);
+            }
+        }
+
         int[] marks = new int[100 * 100 * 10];
         int nummarks = 0;
         for(int i = scaledtopleftX; i <= scaledbottomrightX; i++) {
         	
             for(int j = scaledtopleftY + 20; j <= (2*scaledbottomrightY/3) - 20; j++) {
+                if(i > 0 && i < scaledWidth - 1 && j > 0 && j < scaledHeight - 1 &&
+                        isWhite(darkRows[j], i - 1) && isWhite(darkRows[j], i) && isWhite(darkRows[j], i + 1)) {
+                    continue;
+                }
                 int val = (scaledImage.getSample(i, j) + scaledImage.getSample(i - 1, j) +
                         scaledImage.getSample(i + 1, j) + scaledImage.getSample(i, j - 1) +
                         scaledImage.getSample(i, j + 1) + scaledImage.getSample(i - 1, j - 1) +
@@ -125,7 +143,7 @@ public class ImageManipulation {
         System.out.println("nummarks after filtered = " + nummarks);
 
         int t;
-        Gray8Image markedImage = (Gray8Image)(grayimage.createCopy());
+        Gray8Image markedImage = (Gray8Image)(ImageUtil.imagePool.createCopy(grayimage));
         double approxXscale = width / ConcentricCircle.a4width;      // 80.95 pixel/cm
         double approxYscale = height / ConcentricCircle.a4height;    // 78.75 pixel/cm
         int markdispX = (int)(ConcentricCircle.markDiam * approxXscale / 4);
@@ -139,6 +157,9 @@ public class ImageManipulation {
         }        
 //        ImageUtil.saveImage(scaledImage, "markedscaled.png");
         ImageUtil.saveImage(markedImage, "marked.png");
+        ImageUtil.releaseImage(markedImage);
+        ImageUtil.releaseImage(scaledImage);
+        scaledImage = null;
 
         this.markLocations = marks;
         this.nummarks = nummarks;
@@ -501,9 +522,14 @@ public class ImageManipulation {
         return numdupmarks;
     }
     
+    private static boolean isWhite(byte[] packedRow, int x) {
+        return (packedRow[x >> 3] & (0x80 >> (x & 7))) != 0;
+    }
+
     private void rescale() {
         try {
             MedianFilter filter = new MedianFilter();
+            filter.setImagePool(ImageUtil.imagePool);
             filter.setArea((int)((width / 1700 * 25) / 2) * 2 + 1, 
                     (int)(height / 2339 * 25 / 2) * 2 + 1);
             filter.setInputImage(grayimage);
@@ -512,10 +538,12 @@ public class ImageManipulation {
 //            ImageUtil.saveImage(medianimage, "median.png");
             
             ScaleReplication scale = new ScaleReplication();
+            scale.setImagePool(ImageUtil.imagePool);
             scale.setInputImage(medianimage);
             scale.setSize(width / scaleFactor, height / scaleFactor);
             scale.process();
             PixelImage scaledImage = scale.getOutputImage();
+            ImageUtil.releaseImage(medianimage);
             
             int scaledtopleftX = topleftX / scaleFactor;
             int scaledtopleftY = topleftY / scaleFactor;
@@ -608,7 +636,7 @@ public class ImageManipulation {
                 }
             }
             
-            Gray8Image markedImage = (Gray8Image)(grayimage.createCopy());
+            Gray8Image markedImage = (Gray8Image)(ImageUtil.imagePool.createCopy(grayimage));
 
             int i = 0;
             while((line = in.readLine()) != null && !line.equals("")) {
@@ -633,6 +661,7 @@ public class ImageManipulation {
             }
             in.close();
 //            ImageUtil.saveImage(markedImage, "markedform.png");
+            ImageUtil.releaseImage(markedImage);
         } catch(Exception ex) {
             ex.printStackTrace(System.out);
         }
@@ -664,7 +693,7 @@ public class ImageManipulation {
                 }
             }
             
-            Gray8Image markedImage = (Gray8Image)(grayimage.createCopy());
+            Gray8Image markedImage = (Gray8Image)(ImageUtil.imagePool.createCopy(grayimage));
 
             int i = 0;
             while((line = in.readLine()) != null && !line.equals("")) {
@@ -689,6 +718,7 @@ public class ImageManipulation {
             }
             in.close();
 //            ImageUtil.saveImage(markedImage, "markedform.png");
+            ImageUtil.releaseImage(markedImage);
         } catch(Exception ex) {
             ex.printStackTrace(System.out);
         }
@@ -795,8 +825,9 @@ public class ImageManipulation {
         System.out.println();
         
         int x, y;
-        SolidMark mark = new SolidMark(grayimage, width / ConcentricCircle.a4width, height / ConcentricCircle.a4height);
-        Gray8Image markedImage = (Gray8Image)(grayimage.createCopy());
+        BilevelImage bilevelimage = ImageUtil.threshold(grayimage, ConcentricCircle.blackThreshold);
+        SolidMark mark = new SolidMark(bilevelimage, width / ConcentricCircle.a4width, height / ConcentricCircle.a4height);
+        Gray8Image markedImage = (Gray8Image)(ImageUtil.imagePool.createCopy(grayimage));
         for(int i = 0; i < realNummarks; i++) {
             x = realMarkLocations[i] / 10000;
             y = realMarkLocations[i] % 10000;
@@ -812,6 +843,7 @@ public class ImageManipulation {
             }
         }
         ImageUtil.saveImage(markedImage, "marksfoundform.png");        
+        ImageUtil.releaseImage(markedImage);
     }
     
     public void saveData(String filename) {
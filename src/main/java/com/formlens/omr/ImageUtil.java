@@ -9,8 +9,12 @@
 
 package com.formlens.omr;
 
+import java.io.File;
 import net.sourceforge.jiu.codecs.*;
+import net.sourceforge.jiu.codecs.jpeg.JPEGCodec;
+import net.sourceforge.jiu.codecs.tiff.TIFFCodec;
 import net.sourceforge.jiu.data.*;
+import net.sourceforge.jiu.color.promotion.*;
 import net.sourceforge.jiu.color.reduction.*;
 import net.sourceforge.jiu.filters.*;
 
@@ -20,29 +24,67 @@ import net.sourceforge.jiu.filters.*;
  */
 public class ImageUtil {
 
+    // every sheet needs the same set of intermediate images (corner crops,
+    // median outputs, scaled image, marked copies), so they are recycled
+    static ImagePool imagePool = new ImagePool();
+
+    // decodes the file once, with the JIU codec picked by its magic bytes,
+    // so no AWT toolkit (and no display) is needed
     public static Gray8Image readImage(String filename) {
+        return readImage(filename, 1);
+    }
+
+    // same, but at 1/decodeScale of the resolution for coarse stages;
+    // codecs that cannot reduce while decoding return the full resolution
+    public static Gray8Image readImage(String filename, int decodeScale) {
         Gray8Image grayimage = null;
-        RGB24Image redimage = null;
         try {
-            PixelImage image = ImageLoader.loadToolkitImageUri(filename);
-            if (image == null)
-            	System.out.println("true");
-            else System.out.println("false");
-            
-            if(image.getImageType().toString().indexOf("RGB") != -1) {
-                redimage = (RGB24Image)(ImageLoader.load(filename));
+            PixelImage image;
+            File file = new File(filename);
+            ImageCodec codec = ImageLoader.createCodec(file);
+            if (codec instanceof JPEGCodec) {
+                // only luminance is needed, so chroma is not even decoded
+                ((JPEGCodec)codec).setMonochrome(true);
+                codec.setDecodeScale(decodeScale);
+                codec.setFile(filename, CodecMode.LOAD);
+                codec.process();
+                image = codec.getImage();
+            }
+            else {
+                image = ImageLoader.load(file, null, decodeScale);
+            }
+            if (image == null) {
+                throw new WrongFileFormatException("Could not load " + filename + ", unsupported file format.");
+            }
+            if (image instanceof RGB48Image) {
+                // 16-bit color becomes 16-bit gray, reduced to 8 bits below
                 RGBToGrayConversion rgbtogray = new RGBToGrayConversion();
-                rgbtogray.setInputImage(redimage);
+                rgbtogray.setInputImage(image);
+                rgbtogray.process();
+                image = rgbtogray.getOutputImage();
+            }
+            if (image instanceof Gray8Image) {
+                grayimage = (Gray8Image)(image);
+            }
+            else if (image instanceof Gray16Image) {
+                grayimage = reduceToGray8((Gray16Image)image);
+            }
+            else if (image instanceof BilevelImage) {
+                PromotionGray8 promotion = new PromotionGray8();
+                promotion.setInputImage(image);
+                promotion.process();
+                grayimage = (Gray8Image)(promotion.getOutputImage());
+            }
+            else if (image instanceof RGB24Image || image instanceof Paletted8Image) {
+                RGBToGrayConversion rgbtogray = new RGBToGrayConversion();
+                rgbtogray.setInputImage(image);
                 // adjust this if needed
                 // rgbtogray.setColorWeights(0.3f, 0.3f, 0.4f);
                 rgbtogray.process();
                 grayimage = (Gray8Image)(rgbtogray.getOutputImage());    
             }
-            else if(image.getImageType().toString().indexOf("Gray") != -1) {
-                grayimage = (Gray8Image)(image);
-            }
             else {
-                grayimage = null;
+                throw new UnsupportedTypeException("Cannot convert " + image.getImageType().getName() + " from " + filename + " to gray.");
             }
         } catch (Exception e) {
         	e.printStackTrace();
@@ -52,18 +94,92 @@ public class ImageUtil {
         return grayimage;
     }
     
+    // keeps the most significant byte of each sample
+    private static Gray8Image reduceToGray8(Gray16Image img) {
+        int w = img.getWidth();
+        Gray8Image result = new MemoryGray8Image(w, img.getHeight());
+        int[] row = new int[w];
+        byte[] bytes = new byte[w];
+        for (int y = 0; y < img.getHeight(); y++) {
+            img.getSamples(0, 0, y, w, 1, row, 0);
+            for (int x = 0; x < w; x++) {
+                bytes[x] = (byte)(row[x] >> 8);
+            }
+            result.putByteSamples(0, 0, y, w, 1, bytes, 0);
+        }
+        return result;
+    }
+
     public static void saveImage(PixelImage img, String filename) {
+        saveImage(img, filename, false);
+    }
+
+    // adds img as another page to a multi-page TIFF file (created if missing),
+    // e.g. to keep all annotated images of a batch in one audit file
+    public static void appendImage(PixelImage img, String filename) {
+        saveImage(img, filename, true);
+    }
+
+    // .tif/.tiff names are written as TIFF (CCITT G4 for bilevel images,
+    // Deflate otherwise), which is much smaller than PNG for scanned sheets;
+    // everything else as PNG
+    private static void saveImage(PixelImage img, String filename, boolean append) {
         try {
-            PNGCodec codec = new PNGCodec();    
+            ImageCodec codec;
+            String name = filename.toLowerCase();
+            // strips (TIFF) or row groups (PNG) are compressed on all available processors
+            int numThreads = Runtime.getRuntime().availableProcessors();
+            if (name.endsWith(".tif") || name.endsWith(".tiff")) {
+                TIFFCodec tiff = new TIFFCodec();
+                tiff.setAppending(append);
+                tiff.setNumThreads(numThreads);
+                codec = tiff;
+            }
+            else {
+                if (append) {
+                    throw new IllegalArgumentException("Only TIFF files can hold more than one image: " + filename);
+                }
+                // default compression with adaptive filtering keeps archived sheets small
+                PNGCodec png = new PNGCodec();
+                png.setNumThreads(numThreads);
+                codec = png;
+            }
             codec.setFile(filename, CodecMode.SAVE);
             codec.setImage(img);
-            codec.setCompressionLevel(0);
             codec.process();
         } catch(Exception ex) {
             ex.printStackTrace(System.out);
         } 
     }
     
+    public static Gray8Image crop(Gray8Image img, int x, int y, int w, int h) {
+        Gray8Image cropped = (Gray8Image)(imagePool.createCompatibleImage(img, w, h));
+        byte[] row = new byte[w];
+        for(int j = 0; j < h; j++) {
+            img.getByteSamples(0, x, y + j, w, 1, row, 0);
+            cropped.putByteSamples(0, 0, j, w, 1, row, 0);
+        }
+        return cropped;
+    }
+
+    // pixels darker than threshold become black, everything else white
+    public static BilevelImage threshold(Gray8Image img, int threshold) {
+        try {
+            ReduceToBilevelThreshold red = new ReduceToBilevelThreshold();
+            red.setInputImage(img);
+            red.setThreshold(threshold);
+            red.process();
+            return (BilevelImage)(red.getOutputImage());
+        } catch(Exception ex) {
+            ex.printStackTrace(System.out);
+        }
+        return null;
+    }
+
+    public static void releaseImage(PixelImage img) {
+        imagePool.release(img);
+    }
+
     public static void putMark(Gray8Image img, int x, int y, boolean color) {
         if(color) {
             img.putBlack(x, y);
@@ -20,28 +20,28 @@ import net.sourceforge.jiu.geometry.*;
  * @author Aaditeshwar Seth
  */
 public class SolidMark {
-    Gray8Image grayimage;
+    BilevelImage image;
     int markradX, markradY;
     double approxXscale, approxYscale;
-    Gray8Image template;
+    BilevelImage template;
     
     int x, y;
     double maxsim;
     int maxsimX, maxsimY;
     
-    public SolidMark(Gray8Image grayimage, double approxXscale, double approxYscale) {
-        this.grayimage = grayimage;
+    public SolidMark(BilevelImage image, double approxXscale, double approxYscale) {
+        this.image = image;
         this.approxXscale = approxXscale;
         this.approxYscale = approxYscale;
         markradX = (int)(ConcentricCircle.markDiam / 2 * approxXscale);
         markradY = (int)(ConcentricCircle.markDiam / 2 * approxYscale);
         
-        template = new MemoryGray8Image((int)(markradX * 2 * 1.15) + 1, (int)(markradY * 2 * 1.15) + 1);
+        template = new MemoryBilevelImage((int)(markradX * 2 * 1.15) + 1, (int)(markradY * 2 * 1.15) + 1);
         fillTemplate(template, markradX, approxXscale / approxYscale);
 //        ImageUtil.saveImage(template, "marktemplate.png");
     }
 
-    private void fillTemplate(Gray8Image templateimg, int markradX, double aspect) {
+    private void fillTemplate(BilevelImage templateimg, int markradX, double aspect) {
         double centerX = templateimg.getWidth() / 2;
         double centerY = templateimg.getHeight() / 2;
         for(int i = 0; i < templateimg.getWidth(); i++) {
@@ -63,7 +63,7 @@ public class SolidMark {
         for(int i = x - (int)(markradX * 0.8); i <= x + (int)(markradX * 0.8); i += (markradX / 5)) {
             for(int j = y - (int)(markradY * 0.8); j <= y + (int)(markradY * 0.8); j += (markradX / 5)) {
                 double similarity = 1.0 - ConcentricCircle.templateXORhacked(
-                        grayimage, i - template.getWidth() / 2, y - template.getHeight() / 2, 
+                        image, i - template.getWidth() / 2, y - template.getHeight() / 2, 
                         template, false, true);
                 if(maxsim == -1 || maxsim < similarity) {
                     maxsim = similarity;
@@ -0,0 +1,393 @@
+/*
+ * RunLengthBenchmark
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.apps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import net.sourceforge.jiu.codecs.CodecMode;
+import net.sourceforge.jiu.codecs.IFFCodec;
+import net.sourceforge.jiu.codecs.ImageCodec;
+import net.sourceforge.jiu.codecs.PSDCodec;
+import net.sourceforge.jiu.codecs.PalmCodec;
+import net.sourceforge.jiu.codecs.RASCodec;
+import net.sourceforge.jiu.codecs.RunLengthCoding;
+import net.sourceforge.jiu.codecs.tiff.TIFFCodec;
+import net.sourceforge.jiu.codecs.tiff.TIFFConstants;
+import net.sourceforge.jiu.data.MemoryPaletted8Image;
+import net.sourceforge.jiu.data.MemoryRGB24Image;
+import net.sourceforge.jiu.data.Palette;
+import net.sourceforge.jiu.data.Paletted8Image;
+import net.sourceforge.jiu.data.PixelImage;
+import net.sourceforge.jiu.data.RGB24Image;
+import net.sourceforge.jiu.ops.OperationFailedException;
+
+/**
+ * Command line program that measures how fast the codecs for run-length
+ * compressed formats decode images.
+ * A synthetic image resembling a scanned form (white paper, ruled lines,
+ * boxes and some noisy text-like areas) is created, written to temporary
+ * files in these formats
+ * <ul>
+ * <li>TIFF with Packbits compression (RGB),</li>
+ * <li>PSD with Packbits compression (RGB),</li>
+ * <li>IFF PBM with ByteRun1 compression (paletted),</li>
+ * <li>Palm with RLE compression (paletted),</li>
+ * <li>Sun Raster, uncompressed and byte-encoded (RGB),</li>
+ * </ul>
+ * and each file is loaded several times with the matching codec.
+ * For each format, one line with the file size, the best loading time and the
+ * resulting throughput (decoded image data in MB per second) is printed.
+ * <p>
+ * Optional arguments are width, height and number of loading runs per format:
+ * <pre>java net.sourceforge.jiu.apps.RunLengthBenchmark 2480 3508 5</pre>
+ * The defaults are an A4 page at 300 dpi and five runs.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public class RunLengthBenchmark
+{
+	private static final int RAS_COMPRESSION_NONE = 1;
+	private static final int RAS_COMPRESSION_RLE = 2;
+	private int width = 2480;
+	private int height = 3508;
+	private int numRuns = 5;
+	private byte[] pixels;
+
+	/**
+	 * Main method of this command line program.
+	 * @param args program arguments, optionally width, height and number of runs
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		RunLengthBenchmark benchmark = new RunLengthBenchmark();
+		if (args.length >= 2)
+		{
+			benchmark.width = Integer.parseInt(args[0]);
+			benchmark.height = Integer.parseInt(args[1]);
+		}
+		if (args.length >= 3)
+		{
+			benchmark.numRuns = Integer.parseInt(args[2]);
+		}
+		benchmark.run();
+	}
+
+	private void createPixels()
+	{
+		pixels = new byte[width * height];
+		Random random = new Random(0);
+		for (int y = 0; y < height; y++)
+		{
+			int offset = y * width;
+			if (y % 100 < 3)
+			{
+				// ruled line across the page
+				for (int x = 0; x < width; x++)
+				{
+					pixels[offset + x] = (byte)(20 + random.nextInt(10));
+				}
+				continue;
+			}
+			for (int x = 0; x < width; x++)
+			{
+				int value = 255;
+				if (x % 400 < 3)
+				{
+					// vertical box border
+					value = 30;
+				}
+				else
+				if (y % 100 > 30 && y % 100 < 60 && x % 400 > 40 && x % 400 < 240)
+				{
+					// handwriting or print, with scanner noise
+					value = random.nextInt(8) == 0 ? random.nextInt(256) : 250;
+				}
+				pixels[offset + x] = (byte)value;
+			}
+		}
+	}
+
+	private PixelImage createPalettedImage()
+	{
+		Palette palette = new Palette(256, 255);
+		for (int i = 0; i < 256; i++)
+		{
+			palette.put(i, i, i, i);
+		}
+		Paletted8Image image = new MemoryPaletted8Image(width, height, palette);
+		for (int y = 0; y < height; y++)
+		{
+			image.putByteSamples(0, 0, y, width, 1, pixels, y * width);
+		}
+		return image;
+	}
+
+	private PixelImage createRGBImage()
+	{
+		RGB24Image image = new MemoryRGB24Image(width, height);
+		for (int y = 0; y < height; y++)
+		{
+			for (int channel = 0; channel < 3; channel++)
+			{
+				image.putByteSamples(channel, 0, y, width, 1, pixels, y * width);
+			}
+		}
+		return image;
+	}
+
+	private byte[] getRGBRow(int y)
+	{
+		// blue, green, red as stored in RAS files; all gray anyway
+		byte[] row = new byte[width * 3];
+		for (int x = 0, i = 0, offset = y * width; x < width; x++, offset++)
+		{
+			row[i++] = pixels[offset];
+			row[i++] = pixels[offset];
+			row[i++] = pixels[offset];
+		}
+		return row;
+	}
+
+	private long measure(String name, Class codecClass, File file, long numDecodedBytes) throws Exception
+	{
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < numRuns; i++)
+		{
+			// a new codec for each run, codecs keep state from the previous file
+			ImageCodec codec = (ImageCodec)codecClass.newInstance();
+			long time1 = System.currentTimeMillis();
+			codec.setFile(file.getAbsolutePath(), CodecMode.LOAD);
+			codec.process();
+			codec.close();
+			long time2 = System.currentTimeMillis();
+			PixelImage image = codec.getImage();
+			if (image == null || image.getWidth() != width || image.getHeight() != height)
+			{
+				throw new OperationFailedException(name + ": image was not loaded correctly.");
+			}
+			best = Math.min(best, time2 - time1);
+		}
+		double megabytesPerSecond = numDecodedBytes / 1048576.0 / (Math.max(best, 1) / 1000.0);
+		System.out.println(pad(name, 24) + pad(Long.toString(file.length() / 1024) + " KB", 12) +
+			pad(best + " ms", 10) + Math.round(megabytesPerSecond) + " MB/s");
+		file.delete();
+		return best;
+	}
+
+	private static String pad(String s, int length)
+	{
+		StringBuffer sb = new StringBuffer(s);
+		while (sb.length() < length)
+		{
+			sb.append(' ');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Creates the test image, then writes and loads it in all formats.
+	 */
+	public void run() throws Exception
+	{
+		createPixels();
+		final long NUM_RGB_BYTES = 3L * width * height;
+		final long NUM_PALETTED_BYTES = (long)width * height;
+		System.out.println("Image: " + width + " x " + height + " pixels, " +
+			numRuns + " run(s) per format, best time counts.");
+
+		File file = File.createTempFile("jiu", ".tif");
+		TIFFCodec tiff = new TIFFCodec();
+		tiff.setCompression(TIFFConstants.COMPRESSION_PACKBITS);
+		save(tiff, createRGBImage(), file);
+		measure("TIFF Packbits RGB", TIFFCodec.class, file, NUM_RGB_BYTES);
+
+		file = File.createTempFile("jiu", ".psd");
+		writePSD(file);
+		measure("PSD Packbits RGB", PSDCodec.class, file, NUM_RGB_BYTES);
+
+		file = File.createTempFile("jiu", ".lbm");
+		writeIFF(file);
+		measure("IFF PBM ByteRun1", IFFCodec.class, file, NUM_PALETTED_BYTES);
+
+		file = File.createTempFile("jiu", ".pdb");
+		PalmCodec palm = new PalmCodec();
+		palm.setCompression(PalmCodec.COMPRESSION_RLE);
+		save(palm, createPalettedImage(), file);
+		measure("Palm RLE paletted", PalmCodec.class, file, NUM_PALETTED_BYTES);
+
+		file = File.createTempFile("jiu", ".ras");
+		writeRAS(file, RAS_COMPRESSION_NONE);
+		measure("RAS uncompressed RGB", RASCodec.class, file, NUM_RGB_BYTES);
+
+		file = File.createTempFile("jiu", ".ras");
+		writeRAS(file, RAS_COMPRESSION_RLE);
+		measure("RAS byte-encoded RGB", RASCodec.class, file, NUM_RGB_BYTES);
+	}
+
+	private void save(ImageCodec codec, PixelImage image, File file) throws
+		IOException,
+		OperationFailedException
+	{
+		codec.setFile(file.getAbsolutePath(), CodecMode.SAVE);
+		codec.setImage(image);
+		codec.process();
+		codec.close();
+	}
+
+	private static int writeEscapedRun(byte[] dest, int index, byte value, int count)
+	{
+		if (count >= 3 || value == (byte)0x80)
+		{
+			dest[index++] = (byte)0x80;
+			dest[index++] = (byte)(count - 1);
+			if (count > 1 || value != (byte)0x80)
+			{
+				dest[index++] = value;
+			}
+		}
+		else
+		{
+			while (count-- > 0)
+			{
+				dest[index++] = value;
+			}
+		}
+		return index;
+	}
+
+	private void writeIFF(File file) throws IOException
+	{
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] compressed = new byte[RunLengthCoding.getMaxPackbitsSize(width + 1)];
+		for (int y = 0; y < height; y++)
+		{
+			byte[] row = new byte[(width + 1) / 2 * 2];
+			System.arraycopy(pixels, y * width, row, 0, width);
+			int size = RunLengthCoding.encodePackbits(row, 0, row.length, compressed, 0);
+			body.write(compressed, 0, size);
+		}
+		int bodySize = body.size();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		out.writeBytes("FORM");
+		out.writeInt(4 + 8 + 20 + 8 + 768 + 8 + bodySize + (bodySize & 1));
+		out.writeBytes("PBM ");
+		out.writeBytes("BMHD");
+		out.writeInt(20);
+		out.writeShort(width);
+		out.writeShort(height);
+		out.writeInt(0); // position
+		out.writeByte(8); // planes
+		out.writeByte(0); // masking
+		out.writeByte(1); // ByteRun1 compression
+		out.write(new byte[9]);
+		out.writeBytes("CMAP");
+		out.writeInt(768);
+		for (int i = 0; i < 256; i++)
+		{
+			out.writeByte(i);
+			out.writeByte(i);
+			out.writeByte(i);
+		}
+		out.writeBytes("BODY");
+		out.writeInt(bodySize);
+		body.writeTo(out);
+		if ((bodySize & 1) == 1)
+		{
+			out.writeByte(0);
+		}
+		out.close();
+	}
+
+	private void writePSD(File file) throws IOException
+	{
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		int[] rowSizes = new int[3 * height];
+		byte[] compressed = new byte[RunLengthCoding.getMaxPackbitsSize(width)];
+		for (int channel = 0, i = 0; channel < 3; channel++)
+		{
+			for (int y = 0; y < height; y++, i++)
+			{
+				rowSizes[i] = RunLengthCoding.encodePackbits(pixels, y * width, width, compressed, 0);
+				data.write(compressed, 0, rowSizes[i]);
+			}
+		}
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		out.writeBytes("8BPS");
+		out.writeShort(1); // version
+		out.write(new byte[6]);
+		out.writeShort(3); // channels
+		out.writeInt(height);
+		out.writeInt(width);
+		out.writeShort(8); // depth
+		out.writeShort(3); // RGB color mode
+		out.writeInt(0); // color mode data
+		out.writeInt(0); // image resources
+		out.writeInt(0); // layer and mask information
+		out.writeShort(1); // Packbits compression
+		for (int i = 0; i < rowSizes.length; i++)
+		{
+			out.writeShort(rowSizes[i]);
+		}
+		data.writeTo(out);
+		out.close();
+	}
+
+	private void writeRAS(File file, int compression) throws IOException
+	{
+		final int BYTES_PER_ROW = width * 3 + (width * 3) % 2;
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		if (compression == RAS_COMPRESSION_NONE)
+		{
+			byte[] padding = new byte[BYTES_PER_ROW - width * 3];
+			for (int y = 0; y < height; y++)
+			{
+				data.write(getRGBRow(y));
+				data.write(padding);
+			}
+		}
+		else
+		{
+			// runs may continue across rows, so the whole image is encoded at once
+			byte[] image = new byte[BYTES_PER_ROW * height];
+			for (int y = 0; y < height; y++)
+			{
+				System.arraycopy(getRGBRow(y), 0, image, y * BYTES_PER_ROW, width * 3);
+			}
+			byte[] compressed = new byte[image.length * 2];
+			int size = 0;
+			int index = 0;
+			while (index < image.length)
+			{
+				byte value = image[index];
+				int count = 1;
+				while (index + count < image.length && image[index + count] == value && count < 256)
+				{
+					count++;
+				}
+				size = writeEscapedRun(compressed, size, value, count);
+				index += count;
+			}
+			data.write(compressed, 0, size);
+		}
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+		out.writeInt(0x59a66a95);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt(24);
+		out.writeInt(data.size());
+		out.writeInt(compression);
+		out.writeInt(0); // no color map
+		out.writeInt(0);
+		data.writeTo(out);
+		out.close();
+	}
+}
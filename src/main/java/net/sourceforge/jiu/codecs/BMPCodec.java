@@ -57,6 +57,11 @@ import net.sourceforge.jiu.util.ArrayConverter;
  * <li>RGB truecolor, 24 bits per pixel, uncompressed.
  *  This is loaded to a {@link net.sourceforge.jiu.data.RGB24Image} object.</li>
  * </ul>
+ * Uncompressed images can be stored bottom-up (the common case) or top-down
+ * (indicated by a negative height value in the header).
+ * Uncompressed images can be passed to a {@link RowConsumer} row by row,
+ * in the order in which they are stored (bottom-up files deliver their last row first).
+ * A decode scale (see {@link #setDecodeScale}) is applied to each row as it is loaded.
  * There is no support for 16 bpp images or BI_BITFIELDS compression (for lack of test files).
  * <p>
  * <h3>Supported JIU image data classes when saving to BMP</h3>
@@ -112,6 +117,7 @@ public class BMPCodec extends ImageCodec
 	private DataInput in;
 	private DataOutput out;
 	private Palette palette;
+	private boolean topDown;
 
 	public String[] getFileExtensions()
 	{
@@ -128,6 +134,19 @@ public class BMPCodec extends ImageCodec
 		return new String[] {"image/bmp", "image/x-ms-bmp"};
 	}
 
+	/**
+	 * Returns the number of bytes a row of uncompressed image data
+	 * occupies in a BMP file, which is the argument value rounded up
+	 * to the next multiple of four.
+	 * @param numBytes number of bytes required for the pixels of one row
+	 * @return row size including padding
+	 * @since 0.14.3
+	 */
+	private static int getPaddedRowSize(int numBytes)
+	{
+		return (numBytes + 3) & ~3;
+	}
+
 	public boolean isLoadingSupported()
 	{
 		return true;
@@ -417,6 +436,12 @@ public class BMPCodec extends ImageCodec
 		}
 		imageWidth = ArrayConverter.getIntLE(header, 0x12);
 		imageHeight = ArrayConverter.getIntLE(header, 0x16);
+		// a negative height denotes a top-down image, first row in file is the top row
+		topDown = imageHeight < 0;
+		if (topDown)
+		{
+			imageHeight = -imageHeight;
+		}
 		if (imageWidth < 1 || imageHeight < 1)
 		{
 			throw new InvalidFileStructureException("BMP image width and height must be larger than 0, got " + imageWidth + " x " + imageHeight);
@@ -438,6 +463,10 @@ public class BMPCodec extends ImageCodec
 			throw new InvalidFileStructureException("Unsupported BMP compression type / color depth combination: " + 
 				compression + " / " + colorDepth);
 		}
+		if (topDown && compression != 0)
+		{
+			throw new InvalidFileStructureException("Top-down BMP files must not be compressed.");
+		}
 		float dpiXValue = ArrayConverter.getIntLE(header, 0x26) / (100.0f / 2.54f);
 		float dpiYValue = ArrayConverter.getIntLE(header, 0x2a) / (100.0f / 2.54f);
 		setDpi((int)dpiXValue, (int)dpiYValue);
@@ -466,12 +495,13 @@ public class BMPCodec extends ImageCodec
 					numPaletteEntries + "entries.");
 			}
 			palette = new Palette(numPaletteEntries);
-			for (int index = 0; index < numPaletteEntries; index++)
+			byte[] entries = new byte[expectedPaletteSize];
+			in.readFully(entries);
+			for (int index = 0, offs = 0; index < numPaletteEntries; index++, offs += 4)
 			{
-				int blue = in.readUnsignedByte();
-				int green = in.readUnsignedByte();
-				int red = in.readUnsignedByte();
-				in.readUnsignedByte();
+				int blue = entries[offs] & 0xff;
+				int green = entries[offs + 1] & 0xff;
+				int red = entries[offs + 2] & 0xff;
 				palette.put(index, red, green, blue);
 			}
 		}
@@ -480,36 +510,33 @@ public class BMPCodec extends ImageCodec
 			bytesToSkip = dataOffset - 54;
 		}
 		// 3. seek to beginning of image data
-		while (bytesToSkip > 0)
-		{
-			int skipped = in.skipBytes(bytesToSkip);
-			if (skipped > 0)
-			{
-				bytesToSkip -= skipped;
-			}
-		}
+		skipBytes(bytesToSkip);
 		// 4. check if we have an image object that we are supposed to reuse
 		//    if there is one, check if it has the correct type
 		//    if there is none, create a new one
+		//    (when streaming uncompressed data to a row consumer, a single row is enough)
 		PixelImage image = getImage();
-		if (image == null)
+		initRowStreaming();
+		boolean streaming = isRowStreaming();
+		if (image == null || streaming)
 		{
+			int rows = streaming && compression == 0 ? 1 : getBoundsHeight();
 			switch(colorDepth)
 			{
 				case(1):
 				{
-					setImage(new MemoryBilevelImage(getBoundsWidth(), getBoundsHeight()));
+					setImage(new MemoryBilevelImage(getBoundsWidth(), rows));
 					break;
 				}
 				case(4):
 				case(8):
 				{
-					setImage(new MemoryPaletted8Image(getBoundsWidth(), getBoundsHeight(), palette));
+					setImage(new MemoryPaletted8Image(getBoundsWidth(), rows, palette));
 					break;
 				}
 				case(24):
 				{
-					setImage(new MemoryRGB24Image(getBoundsWidth(), getBoundsHeight()));
+					setImage(new MemoryRGB24Image(getBoundsWidth(), rows));
 					break;
 				}
 				// loadHeader would have thrown an exception for any other color depths
@@ -534,10 +561,16 @@ public class BMPCodec extends ImageCodec
 		{
 			loadCompressedPaletted4Stream();
 		}
+		if (streaming && compression != 0)
+		{
+			// RLE data may skip rows, so it was loaded completely
+			consumeRows(getImage(), 0, getBoundsHeight());
+		}
+		finishRowStreaming();
 	}
 
-	private void loadUncompressedBilevelStream() throws 
-		IOException, 
+	private void loadUncompressedBilevelStream() throws
+		IOException,
 		OperationFailedException
 	{
 		if ((getBoundsX1() % 8) != 0)
@@ -545,35 +578,24 @@ public class BMPCodec extends ImageCodec
 			throw new OperationFailedException("When loading bilevel images, horizontal X1 bounds must be a multiple of 8; got " + getBoundsX1());
 		}
 		BilevelImage image = (BilevelImage)getImage();
-		int imageBytesPerRow = (imageWidth + 7) / 8;
-		int bytesPerRow = imageBytesPerRow;
-		int mod = bytesPerRow % 4;
-		if (mod != 0)
-		{
-			bytesPerRow += 4 - mod;
-		}
-		int bottomRowsToSkip = imageHeight - 1 - getBoundsY2();
-		int bytesToSkip = bottomRowsToSkip * bytesPerRow;
-		while (bytesToSkip > 0)
-		{
-			int skipped = in.skipBytes(bytesToSkip);
-			if (skipped > 0)
-			{
-				bytesToSkip -= skipped;
-			}
-		}
+		int bytesPerRow = getPaddedRowSize((imageWidth + 7) / 8);
+		skipRowsOutsideBounds(bytesPerRow);
 		final int COLUMNS = getBoundsWidth();
 		final int ROWS = getBoundsHeight();
 		final int SRC_OFFSET = getBoundsX1() / 8;
 		final int SRC_BIT_OFFSET = getBoundsX1() % 8;
-		int y = image.getHeight() - 1;
+		final int Y_STEP = topDown ? 1 : -1;
+		// in streaming mode, the image holds only the current row
+		final boolean STREAMING = isRowStreaming();
+		int y = topDown ? 0 : ROWS - 1;
 		int processedRows = 0;
 		byte[] row = new byte[bytesPerRow];
 		while (processedRows < ROWS)
 		{
 			in.readFully(row);
-			image.putPackedBytes(0, y, COLUMNS, row, SRC_OFFSET, SRC_BIT_OFFSET);
-			y--;
+			image.putPackedBytes(0, STREAMING ? 0 : y, COLUMNS, row, SRC_OFFSET, SRC_BIT_OFFSET);
+			consumeRows(image, y, 1);
+			y += Y_STEP;
 			setProgress(processedRows, ROWS);
 			processedRows++;
 		}
@@ -583,27 +605,15 @@ public class BMPCodec extends ImageCodec
 		IOException
 	{
 		Paletted8Image image = (Paletted8Image)getImage();
-		int imageBytesPerRow = (imageWidth + 1) / 2;
-		int bytesPerRow = imageBytesPerRow;
-		int mod = bytesPerRow % 4;
-		if (mod != 0)
-		{
-			bytesPerRow += 4 - mod;
-		}
-		int bottomRowsToSkip = imageHeight - 1 - getBoundsY2();
-		int bytesToSkip = bottomRowsToSkip * bytesPerRow;
-		while (bytesToSkip > 0)
-		{
-			int skipped = in.skipBytes(bytesToSkip);
-			if (skipped > 0)
-			{
-				bytesToSkip -= skipped;
-			}
-		}
+		int bytesPerRow = getPaddedRowSize((imageWidth + 1) / 2);
+		skipRowsOutsideBounds(bytesPerRow);
 		final int COLUMNS = getBoundsWidth();
 		final int ROWS = getBoundsHeight();
 		final int X1 = getBoundsX1();
-		int y = image.getHeight() - 1;
+		final int Y_STEP = topDown ? 1 : -1;
+		// in streaming mode, the image holds only the current row
+		final boolean STREAMING = isRowStreaming();
+		int y = topDown ? 0 : ROWS - 1;
 		int processedRows = 0;
 		byte[] row = new byte[bytesPerRow];
 		byte[] samples = new byte[bytesPerRow * 2];
@@ -611,8 +621,9 @@ public class BMPCodec extends ImageCodec
 		{
 			in.readFully(row);
 			ArrayConverter.decodePacked4Bit(row, 0, samples, 0, row.length);
-			image.putByteSamples(0, 0, y, COLUMNS, 1, samples, X1);
-			y--;
+			image.putByteSamples(0, 0, STREAMING ? 0 : y, COLUMNS, 1, samples, X1);
+			consumeRows(image, y, 1);
+			y += Y_STEP;
 			setProgress(processedRows, ROWS);
 			processedRows++;
 		}
@@ -621,34 +632,24 @@ public class BMPCodec extends ImageCodec
 	private void loadUncompressedPaletted8Stream() throws IOException
 	{
 		Paletted8Image image = (Paletted8Image)getImage();
-		int imageBytesPerRow = imageWidth;
-		int bytesPerRow = imageBytesPerRow;
-		int mod = bytesPerRow % 4;
-		if (mod != 0)
-		{
-			bytesPerRow += 4 - mod;
-		}
-		int bottomRowsToSkip = imageHeight - 1 - getBoundsY2();
-		int bytesToSkip = bottomRowsToSkip * bytesPerRow;
-		while (bytesToSkip > 0)
-		{
-			int skipped = in.skipBytes(bytesToSkip);
-			if (skipped > 0)
-			{
-				bytesToSkip -= skipped;
-			}
-		}
+		int bytesPerRow = getPaddedRowSize(imageWidth);
+		skipRowsOutsideBounds(bytesPerRow);
 		final int COLUMNS = getBoundsWidth();
 		final int ROWS = getBoundsHeight();
 		final int X1 = getBoundsX1();
-		int y = image.getHeight() - 1;
+		final int Y_STEP = topDown ? 1 : -1;
+		// in streaming mode, the image holds only the current row
+		final boolean STREAMING = isRowStreaming();
+		int y = topDown ? 0 : ROWS - 1;
 		int processedRows = 0;
 		byte[] row = new byte[bytesPerRow];
 		while (processedRows < ROWS)
 		{
 			in.readFully(row);
-			image.putByteSamples(0, 0, y, COLUMNS, 1, row, X1);
-			y--;
+			// the index row including padding is passed on as is, no copying required
+			image.putByteSamples(0, 0, STREAMING ? 0 : y, COLUMNS, 1, row, X1);
+			consumeRows(image, y, 1);
+			y += Y_STEP;
 			setProgress(processedRows, ROWS);
 			processedRows++;
 		}
@@ -657,52 +658,36 @@ public class BMPCodec extends ImageCodec
 	private void loadUncompressedRgb24Stream() throws IOException
 	{
 		RGB24Image image = (RGB24Image)getImage();
-		int imageBytesPerRow = imageWidth * 3;
-		int bytesPerRow = imageBytesPerRow;
-		int mod = bytesPerRow % 4;
-		if (mod != 0)
-		{
-			bytesPerRow += 4 - mod;
-		}
-		int bottomRowsToSkip = imageHeight - 1 - getBoundsY2();
-		int bytesToSkip = bottomRowsToSkip * bytesPerRow;
-		while (bytesToSkip > 0)
-		{
-			int skipped = in.skipBytes(bytesToSkip);
-			if (skipped > 0)
-			{
-				bytesToSkip -= skipped;
-			}
-		}
+		int bytesPerRow = getPaddedRowSize(imageWidth * 3);
+		skipRowsOutsideBounds(bytesPerRow);
 		final int COLUMNS = getBoundsWidth();
 		final int ROWS = getBoundsHeight();
 		final int X1 = getBoundsX1();
-		int y = image.getHeight() - 1;
+		final int Y_STEP = topDown ? 1 : -1;
+		// in streaming mode, the image holds only the current row
+		final boolean STREAMING = isRowStreaming();
+		int y = topDown ? 0 : ROWS - 1;
 		int processedRows = 0;
 		byte[] row = new byte[bytesPerRow];
-		byte[] samples = new byte[COLUMNS];
+		byte[] red = new byte[COLUMNS];
+		byte[] green = new byte[COLUMNS];
+		byte[] blue = new byte[COLUMNS];
 		while (processedRows < ROWS)
 		{
 			in.readFully(row);
-			// copy red samples to array samples and store those samples
-			for (int x = X1 * 3 + 2, i = 0; i < COLUMNS; x += 3, i++)
-			{
-				samples[i] = row[x];
-			}
-			image.putByteSamples(RGBIndex.INDEX_RED, 0, y, COLUMNS, 1, samples, 0);
-			// copy green samples to array samples and store those samples
-			for (int x = X1 * 3 + 1, i = 0; i < COLUMNS; x += 3, i++)
+			// split interleaved BGR samples into one array per channel
+			for (int i = 0, offs = X1 * 3; i < COLUMNS; i++)
 			{
-				samples[i] = row[x];
+				blue[i] = row[offs++];
+				green[i] = row[offs++];
+				red[i] = row[offs++];
 			}
-			image.putByteSamples(RGBIndex.INDEX_GREEN, 0, y, COLUMNS, 1, samples, 0);
-			// copy blue samples to array samples and store those samples
-			for (int x = X1 * 3, i = 0; i < COLUMNS; x += 3, i++)
-			{
-				samples[i] = row[x];
-			}
-			image.putByteSamples(RGBIndex.INDEX_BLUE, 0, y, COLUMNS, 1, samples, 0);
-			y--;
+			int destY = STREAMING ? 0 : y;
+			image.putByteSamples(RGBIndex.INDEX_RED, 0, destY, COLUMNS, 1, red, 0);
+			image.putByteSamples(RGBIndex.INDEX_GREEN, 0, destY, COLUMNS, 1, green, 0);
+			image.putByteSamples(RGBIndex.INDEX_BLUE, 0, destY, COLUMNS, 1, blue, 0);
+			consumeRows(image, y, 1);
+			y += Y_STEP;
 			setProgress(processedRows, ROWS);
 			processedRows++;
 		}
@@ -737,6 +722,50 @@ public class BMPCodec extends ImageCodec
 		}
 	}
 
+	/**
+	 * Reads the BMP header and returns resolution, physical resolution and
+	 * the image type that loading would create.
+	 * @since 0.14.3
+	 */
+	public ImageDescriptor probe() throws
+		MissingParameterException,
+		OperationFailedException
+	{
+		in = getInputAsDataInput();
+		if (in == null)
+		{
+			throw new MissingParameterException("Input stream / random access file parameter missing.");
+		}
+		try
+		{
+			loadHeader();
+		}
+		catch (IOException ioe)
+		{
+			throw new OperationFailedException("I/O failure: " + ioe.toString());
+		}
+		Class imageType;
+		switch(colorDepth)
+		{
+			case(1):
+			{
+				imageType = BilevelImage.class;
+				break;
+			}
+			case(24):
+			{
+				imageType = RGB24Image.class;
+				break;
+			}
+			default:
+			{
+				imageType = Paletted8Image.class;
+				break;
+			}
+		}
+		return createDescriptor(imageWidth, imageHeight, imageType, 1);
+	}
+
 	public void process() throws 
 		MissingParameterException, 
 		OperationFailedException
@@ -790,6 +819,45 @@ public class BMPCodec extends ImageCodec
 		}
 	}
 
+	/**
+	 * Skips the argument number of bytes in the input.
+	 * Unlike a plain {@link java.io.DataInput#skipBytes} loop this terminates
+	 * with an exception when the end of the input is reached.
+	 * @param numBytes number of bytes to skip
+	 * @since 0.14.3
+	 */
+	private void skipBytes(int numBytes) throws IOException
+	{
+		while (numBytes > 0)
+		{
+			int skipped = in.skipBytes(numBytes);
+			if (skipped > 0)
+			{
+				numBytes -= skipped;
+			}
+			else
+			{
+				// throws an EOFException at the end of input
+				in.readByte();
+				numBytes--;
+			}
+		}
+	}
+
+	/**
+	 * Skips the rows of uncompressed image data that are stored in front of
+	 * the first row within the bounds.
+	 * These are the rows below the bounds for bottom-up images and the
+	 * rows above the bounds for top-down images.
+	 * @param bytesPerRow size of a row in bytes, including padding
+	 * @since 0.14.3
+	 */
+	private void skipRowsOutsideBounds(int bytesPerRow) throws IOException
+	{
+		int rowsToSkip = topDown ? getBoundsY1() : imageHeight - 1 - getBoundsY2();
+		skipBytes(rowsToSkip * bytesPerRow);
+	}
+
 	public String suggestFileExtension(PixelImage image)
 	{
 		return ".bmp";
@@ -925,15 +993,21 @@ public class BMPCodec extends ImageCodec
 			bytesPerRow = width * 3;
 			numBits = 24;
 		}
-		if ((bytesPerRow % 4) != 0)
-		{
-			bytesPerRow = ((bytesPerRow + 3) / 4) * 4;
-		}
+		bytesPerRow = getPaddedRowSize(bytesPerRow);
 		int filesize = offset + bytesPerRow * height;
 		writeHeader(image, filesize, offset, numBits);
 		writePalette();
 		byte[] row = new byte[bytesPerRow];
 		final int X1 = getBoundsX1();
+		byte[] red = null;
+		byte[] green = null;
+		byte[] blue = null;
+		if (rgbimg != null)
+		{
+			red = new byte[width];
+			green = new byte[width];
+			blue = new byte[width];
+		}
 		for (int y = getBoundsY2(), processed = 0; processed < height; y--, processed++)
 		{
 			if (bilevelImage != null)
@@ -943,17 +1017,20 @@ public class BMPCodec extends ImageCodec
 			else
 			if (bcimg != null)
 			{
-				bcimg.getByteSamples(0, 0, y, width, 1, row, 0);
+				bcimg.getByteSamples(0, X1, y, width, 1, row, 0);
 			}
 			else
 			if (rgbimg != null)
 			{
-				int offs = 0;
-				for (int x = X1; x < X1 + width; x++)
+				rgbimg.getByteSamples(RGBIndex.INDEX_RED, X1, y, width, 1, red, 0);
+				rgbimg.getByteSamples(RGBIndex.INDEX_GREEN, X1, y, width, 1, green, 0);
+				rgbimg.getByteSamples(RGBIndex.INDEX_BLUE, X1, y, width, 1, blue, 0);
+				// interleave as BGR, padding bytes at the end of row remain zero
+				for (int x = 0, offs = 0; x < width; x++)
 				{
-					row[offs++] = rgbimg.getByteSample(RGBIndex.INDEX_BLUE, x, y);
-					row[offs++] = rgbimg.getByteSample(RGBIndex.INDEX_GREEN, x, y);
-					row[offs++] = rgbimg.getByteSample(RGBIndex.INDEX_RED, x, y);
+					row[offs++] = blue[x];
+					row[offs++] = green[x];
+					row[offs++] = red[x];
 				}
 			}
 			else
@@ -7,13 +7,23 @@
 
 package net.sourceforge.jiu.codecs;
 
+import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.Arrays;
 import net.sourceforge.jiu.codecs.ImageCodec;
+import net.sourceforge.jiu.codecs.InvalidFileStructureException;
+import net.sourceforge.jiu.codecs.InvalidImageIndexException;
 import net.sourceforge.jiu.codecs.UnsupportedTypeException;
+import net.sourceforge.jiu.codecs.WrongFileFormatException;
 import net.sourceforge.jiu.data.BilevelImage;
+import net.sourceforge.jiu.data.ByteChannelImage;
 import net.sourceforge.jiu.data.Gray8Image;
 import net.sourceforge.jiu.data.IntegerImage;
+import net.sourceforge.jiu.data.MemoryBilevelImage;
+import net.sourceforge.jiu.data.MemoryGray8Image;
+import net.sourceforge.jiu.data.MemoryPaletted8Image;
 import net.sourceforge.jiu.data.Paletted8Image;
 import net.sourceforge.jiu.data.PixelImage;
 import net.sourceforge.jiu.data.Palette;
@@ -23,13 +33,25 @@ import net.sourceforge.jiu.ops.OperationFailedException;
 import net.sourceforge.jiu.ops.WrongParameterException;
 
 /**
- * A codec to write Compuserve GIF (Graphics Interchange Format) files.
- * <p>
- * Only writing GIF files is supported right now.
- * Reading GIF files with JIU can be done with the {@link net.sourceforge.jiu.gui.awt.ToolkitLoader}
- * class which uses the image reader built into the Java runtime library ({@link java.awt.Toolkit} class).
- * That reader has supported GIF since Java 1.0.
+ * A codec to read and write Compuserve GIF (Graphics Interchange Format) files.
  * <h3>Supported image types</h3>
+ * When loading, the image type depends on the palette that applies to the image
+ * (local or global):
+ * if it contains only black and white, a {@link net.sourceforge.jiu.data.BilevelImage}
+ * is created, if it contains only shades of gray, a {@link net.sourceforge.jiu.data.Gray8Image}
+ * (index values are replaced by their gray values), otherwise
+ * a {@link net.sourceforge.jiu.data.Paletted8Image} with that palette.
+ * Of multiple images in a file (e.g. animations), the one selected with
+ * {@link #setImageIndex} is loaded; its size is that of the image, not that of the
+ * logical screen, and transparency information is ignored.
+ * Comment extensions are added to the codec's comments.
+ * Loading does not require the AWT.
+ * <p>
+ * The LZW data of the image is first read completely, one sub-block at a time,
+ * then decoded with a string table kept in preallocated arrays (prefix code,
+ * last byte, first byte and length of each string), writing
+ * strings backwards into a row buffer, so that no objects are created per code.
+ * <p>
  * When saving, classes implementing the following image data interfaces
  * are supported: 
  * {@link net.sourceforge.jiu.data.BilevelImage},
@@ -40,18 +62,28 @@ import net.sourceforge.jiu.ops.WrongParameterException;
  * a truecolor image to 256 or less colors before you can save it
  * with this codec.
  * <h3>Supported I/O classes</h3>
- * This codec supports {@link java.io.OutputStream}, {@link java.io.DataOutput} 
+ * This codec supports {@link java.io.InputStream}, {@link java.io.DataInput},
+ * {@link java.io.OutputStream}, {@link java.io.DataOutput} 
  * and  {@link java.io.RandomAccessFile}.
  * <h3>Bounds</h3>
  * {@link net.sourceforge.jiu.codecs.ImageCodec}'s bounds concept is supported.
  * A user of this codec can specify a rectangular part of the input image
- * that will be saved instead of the complete image.
+ * that will be saved instead of the complete image, or the part of the
+ * image in the file that will be loaded.
  * <h3>Comments</h3>
  * GIF - at least in its 89a version - allows for the inclusion of textual
  * comments.
  * When saving an image to a GIF file, each comment given to a codec
  * will be stored in a comment extension block of its own.
  * <h3>Usage example</h3>
+ * Load an image using this codec:
+ * <pre>
+ * GIFCodec codec = new GIFCodec();
+ * codec.setFile("image.gif", CodecMode.LOAD);
+ * codec.process();
+ * PixelImage image = codec.getImage(); // BilevelImage, Gray8Image or Paletted8Image
+ * codec.close();
+ * </pre>
  * Save an image using this codec:
  * <pre>
  * GIFCodec codec = new GIFCodec();
@@ -107,7 +139,7 @@ import net.sourceforge.jiu.ops.WrongParameterException;
  * </blockquote>
  * <h3>Animated GIFs</h3>
  * GIF allows for animations to be stored. This codec only supports storing
- * a single image, though.
+ * a single image, though, and loads a single image of an animation.
  * <h3>File format background</h3>
  * I've compiled a web page with  
  * <a target="_top" href="http://schmidt.devlib.org/file-formats/gif-image-file-format.html">technical
@@ -116,37 +148,211 @@ import net.sourceforge.jiu.ops.WrongParameterException;
  */
 public class GIFCodec extends ImageCodec
 {
-	private static final int CODE_ARRAY_LENGTH = 5020;
+	/**
+	 * Size of the hash table of the LZW encoder, a prime number somewhat
+	 * larger than the maximum number of strings (4096) so that
+	 * the table never fills up completely.
+	 */
+	private static final int HASH_SIZE = 5003;
 	private static final int[] INTERLACING_FIRST_ROW = {0, 4, 2, 1};
 	private static final int[] INTERLACING_INCREMENT = {8, 8, 4, 2};
 	private static final int NUM_INTERLACING_PASSES = 4;
 	private static final byte[] MAGIC_GIF87A = {71, 73, 70, 56, 55, (byte)97};
 	private static final byte[] MAGIC_GIF89A = {71, 73, 70, 56, 57, (byte)97};
+	private static final int MAX_CODE_SIZE = 12;
+	private static final int TABLE_SIZE = 1 << MAX_CODE_SIZE;
 	private int backgroundColor;
+	private int bitBuffer;
 	private byte[] block;
-	private int bitOffset;
 	private int bitsPerPixel;
 	private int blockLength;
 	private int clearCode;
 	private int codeSize;
-	private int[] currentCode;
-	private int currentColumn;
-	private int currentInterlacingPass;
-	private int currentRow;
+	private byte[] data;
+	private int dataIndex;
+	private int dataLength;
 	private int endOfInformationCode;
-	private boolean notFinished;
 	private int freeCode;
+	private int[] hashCodes;
+	private int[] hashKeys;
 	private IntegerImage imageToBeSaved;
 	private int initialCodeSize;
 	private boolean interlaced;
 	private int height;
+	private DataInput in;
+	private IntegerImage loadedImage;
+	private ImageDescriptor probeResult;
+	private boolean probing;
+	private byte[] loadedSampleMap;
 	private int maxCode;
-	private int[] newCode;
-	private int[] oldCode;
+	private int numBufferedBits;
 	private DataOutput out;
-	private int processedRows;
 	private int width;
 
+	/**
+	 * Creates the image to be loaded, with the bounds' resolution, and
+	 * initializes the mapping from palette indexes to samples for
+	 * bilevel and gray images.
+	 */
+	private IntegerImage createImage(Palette palette)
+	{
+		int numEntries = palette.getNumEntries();
+		int w = getBoundsWidth();
+		int h = getBoundsHeight();
+		if (palette.isBlackAndWhite())
+		{
+			loadedSampleMap = new byte[256];
+			for (int i = 0; i < numEntries; i++)
+			{
+				loadedSampleMap[i] = (byte)(palette.getSample(RGBIndex.INDEX_RED, i) == 0 ?
+					BilevelImage.BLACK : BilevelImage.WHITE);
+			}
+			return new MemoryBilevelImage(w, h);
+		}
+		else
+		if (palette.isGray())
+		{
+			loadedSampleMap = new byte[256];
+			for (int i = 0; i < numEntries; i++)
+			{
+				loadedSampleMap[i] = (byte)palette.getSample(RGBIndex.INDEX_RED, i);
+			}
+			return new MemoryGray8Image(w, h);
+		}
+		else
+		{
+			loadedSampleMap = null;
+			return new MemoryPaletted8Image(w, h, palette);
+		}
+	}
+
+	/**
+	 * Decodes the LZW data read by {@link #readSubBlocks} and stores
+	 * the rows in <code>loadedImage</code>.
+	 */
+	private void decodeImage(int minCodeSize, int imageWidth, int imageHeight, boolean interlacedImage) throws
+		InvalidFileStructureException
+	{
+		final int clear = 1 << minCodeSize;
+		final int end = clear + 1;
+		int[] prefix = new int[TABLE_SIZE];
+		byte[] suffix = new byte[TABLE_SIZE];
+		byte[] first = new byte[TABLE_SIZE];
+		int[] length = new int[TABLE_SIZE];
+		for (int i = 0; i < clear; i++)
+		{
+			prefix[i] = -1;
+			suffix[i] = (byte)i;
+			first[i] = (byte)i;
+			length[i] = 1;
+		}
+		byte[] buffer = new byte[imageWidth + TABLE_SIZE];
+		int bufferIndex = 0;
+		int codeSize = minCodeSize + 1;
+		int nextCode = end + 1;
+		int oldCode = -1;
+		int bitBuffer = 0;
+		int numBufferedBits = 0;
+		dataIndex = 0;
+		int pass = 0;
+		int y = 0;
+		int numRows = 0;
+		while (numRows < imageHeight)
+		{
+			// read a code, least significant bit first
+			while (numBufferedBits < codeSize && dataIndex < dataLength)
+			{
+				bitBuffer |= (data[dataIndex++] & 0xff) << numBufferedBits;
+				numBufferedBits += 8;
+			}
+			if (numBufferedBits < codeSize)
+			{
+				// truncated data, remaining rows stay empty
+				break;
+			}
+			int code = bitBuffer & ((1 << codeSize) - 1);
+			bitBuffer >>>= codeSize;
+			numBufferedBits -= codeSize;
+			if (code == clear)
+			{
+				codeSize = minCodeSize + 1;
+				nextCode = end + 1;
+				oldCode = -1;
+				continue;
+			}
+			if (code == end)
+			{
+				break;
+			}
+			if (oldCode != -1)
+			{
+				if (code > nextCode || (code == nextCode && nextCode == TABLE_SIZE))
+				{
+					throw new InvalidFileStructureException("Invalid LZW code " + code +
+						" (next free code is " + nextCode + ").");
+				}
+				if (nextCode < TABLE_SIZE)
+				{
+					// the new string is the old one plus the first byte of the current one,
+					// which is also the first byte of the old one if code is the new string
+					int firstIndex = code == nextCode ? oldCode : code;
+					prefix[nextCode] = oldCode;
+					suffix[nextCode] = first[firstIndex];
+					first[nextCode] = first[oldCode];
+					length[nextCode] = length[oldCode] + 1;
+					nextCode++;
+					if (nextCode == (1 << codeSize) && codeSize < MAX_CODE_SIZE)
+					{
+						codeSize++;
+					}
+				}
+			}
+			else
+			if (code >= clear)
+			{
+				throw new InvalidFileStructureException("Invalid LZW code " + code + " after clear code.");
+			}
+			oldCode = code;
+			// write the string of code backwards
+			int len = length[code];
+			int index = bufferIndex + len;
+			do
+			{
+				buffer[--index] = suffix[code];
+				code = prefix[code];
+			}
+			while (code >= 0);
+			bufferIndex += len;
+			// store complete rows
+			if (bufferIndex >= imageWidth)
+			{
+				int offset = 0;
+				while (bufferIndex - offset >= imageWidth && numRows < imageHeight)
+				{
+					storeRow(buffer, offset, imageWidth, y);
+					offset += imageWidth;
+					setProgress(numRows, imageHeight);
+					numRows++;
+					if (interlacedImage)
+					{
+						y += INTERLACING_INCREMENT[pass];
+						while (y >= imageHeight && pass < NUM_INTERLACING_PASSES - 1)
+						{
+							pass++;
+							y = INTERLACING_FIRST_ROW[pass];
+						}
+					}
+					else
+					{
+						y++;
+					}
+				}
+				bufferIndex -= offset;
+				System.arraycopy(buffer, offset, buffer, 0, bufferIndex);
+			}
+		}
+	}
+
 	/**
 	 * Returns the index of the background color.
 	 * @return int value with the color (index into the palette) of the background color
@@ -167,57 +373,65 @@ public class GIFCodec extends ImageCodec
 		return "Compuserve GIF";
 	}
 
+	/**
+	 * Returns the image data interface of the image that {@link #createImage}
+	 * creates for the argument palette (gray levels if it is <code>null</code>).
+	 */
+	private static Class getImageType(Palette palette)
+	{
+		if (palette == null)
+		{
+			return Gray8Image.class;
+		}
+		else
+		if (palette.isBlackAndWhite())
+		{
+			return BilevelImage.class;
+		}
+		else
+		if (palette.isGray())
+		{
+			return Gray8Image.class;
+		}
+		else
+		{
+			return Paletted8Image.class;
+		}
+	}
+
 	public String[] getMimeTypes()
 	{
 		return new String[] {"image/gif"};
 	}
 
-	private int getNextSample()
+	/**
+	 * Copies row y of the bounds rectangle of the image to be saved to
+	 * the argument array, one sample per byte.
+	 */
+	private void getRow(int y, byte[] row, byte[] packed)
 	{
-		int result = imageToBeSaved.getSample(currentColumn++, currentRow);
-		if (currentColumn > getBoundsX2())
+		final int X1 = getBoundsX1();
+		final int WIDTH = getBoundsWidth();
+		if (imageToBeSaved instanceof BilevelImage)
 		{
-			setProgress(processedRows++, getBoundsHeight());
-			currentColumn = getBoundsX1();
-			if (isInterlaced())
-			{
-				currentRow += INTERLACING_INCREMENT[currentInterlacingPass];
-				boolean done;
-				do
-				{
-					if (currentRow > getBoundsY2())
-					{
-						currentInterlacingPass++;
-						if (currentInterlacingPass < NUM_INTERLACING_PASSES)
-						{
-							currentRow = getBoundsY1() + INTERLACING_FIRST_ROW[currentInterlacingPass];
-						}
-					}
-					done = currentRow <= getBoundsY2() || currentInterlacingPass > NUM_INTERLACING_PASSES;
-				}
-				while (!done);
-			}
-			else
+			((BilevelImage)imageToBeSaved).getPackedBytes(X1, y, WIDTH, packed, 0, 0);
+			for (int x = 0; x < WIDTH; x++)
 			{
-				currentRow++;
+				row[x] = (byte)((packed[x >> 3] >> (7 - (x & 7))) & 1);
 			}
-			notFinished = processedRows < getBoundsHeight();
 		}
-		return result;
+		else
+		{
+			((ByteChannelImage)imageToBeSaved).getByteSamples(0, X1, y, WIDTH, 1, row, 0);
+		}
 	}
 
 	private void initEncoding() throws IOException
 	{
 		imageToBeSaved = (IntegerImage)getImage();
-		currentColumn = getBoundsX1();
-		currentRow = getBoundsY1();
-		processedRows = 0;
-		currentInterlacingPass = 0;
-		notFinished = true;
 		block = new byte[255];
-		currentCode = new int[CODE_ARRAY_LENGTH];
-		newCode = new int[CODE_ARRAY_LENGTH];
-		oldCode = new int[CODE_ARRAY_LENGTH];
+		hashKeys = new int[HASH_SIZE];
+		hashCodes = new int[HASH_SIZE];
 		if (bitsPerPixel == 1)
 		{
 			initialCodeSize = 2;
@@ -241,7 +455,130 @@ public class GIFCodec extends ImageCodec
 
 	public boolean isLoadingSupported()
 	{
-		return false;
+		return true;
+	}
+
+	private void load() throws
+		InvalidFileStructureException,
+		InvalidImageIndexException,
+		MissingParameterException,
+		OperationFailedException,
+		WrongFileFormatException
+	{
+		in = getInputAsDataInput();
+		if (in == null)
+		{
+			throw new MissingParameterException("Input stream / random access file parameter missing.");
+		}
+		try
+		{
+			byte[] header = new byte[13];
+			in.readFully(header, 0, 6);
+			boolean gif = true;
+			for (int i = 0; i < 6; i++)
+			{
+				gif &= header[i] == MAGIC_GIF87A[i] || header[i] == MAGIC_GIF89A[i];
+			}
+			if (!gif)
+			{
+				throw new WrongFileFormatException("Not a GIF file.");
+			}
+			in.readFully(header, 6, 7);
+			int packed = header[10] & 0xff;
+			Palette globalPalette = null;
+			if ((packed & 0x80) != 0)
+			{
+				globalPalette = readPalette(2 << (packed & 7));
+			}
+			int imageIndex = 0;
+			while (true)
+			{
+				int blockType = in.readUnsignedByte();
+				if (blockType == 0x21) // extension introducer
+				{
+					int label = in.readUnsignedByte();
+					readSubBlocks(label == 0xfe);
+					if (label == 0xfe) // comment extension
+					{
+						appendComment(new String(data, 0, dataLength));
+					}
+				}
+				else
+				if (blockType == 44) // image descriptor
+				{
+					in.readFully(header, 0, 9);
+					int imageWidth = (header[4] & 0xff) | ((header[5] & 0xff) << 8);
+					int imageHeight = (header[6] & 0xff) | ((header[7] & 0xff) << 8);
+					packed = header[8] & 0xff;
+					Palette palette = globalPalette;
+					if ((packed & 0x80) != 0)
+					{
+						palette = readPalette(2 << (packed & 7));
+					}
+					int minCodeSize = in.readUnsignedByte();
+					if (imageIndex != getImageIndex() || probing)
+					{
+						if (imageIndex == getImageIndex())
+						{
+							probeResult = createDescriptor(imageWidth, imageHeight, getImageType(palette), -1);
+						}
+						readSubBlocks(false);
+						imageIndex++;
+						continue;
+					}
+					if (imageWidth < 1 || imageHeight < 1)
+					{
+						throw new InvalidFileStructureException("GIF image resolution must be at least 1 x 1; got " +
+							imageWidth + " x " + imageHeight + ".");
+					}
+					if (minCodeSize < 1 || minCodeSize > 8)
+					{
+						throw new InvalidFileStructureException("Invalid LZW minimum code size: " + minCodeSize);
+					}
+					if (palette == null)
+					{
+						// no palette in the file, use gray levels
+						palette = new Palette(256);
+						for (int i = 0; i < 256; i++)
+						{
+							palette.put(i, i, i, i);
+						}
+					}
+					readSubBlocks(true);
+					setBoundsIfNecessary(imageWidth, imageHeight);
+					checkBounds(imageWidth, imageHeight);
+					loadedImage = createImage(palette);
+					decodeImage(minCodeSize, imageWidth, imageHeight, (packed & 0x40) != 0);
+					setImage(loadedImage);
+					loadedImage = null;
+					data = null;
+					return;
+				}
+				else
+				if (blockType == 59) // trailer
+				{
+					if (probeResult != null)
+					{
+						probeResult.setNumImages(imageIndex);
+						return;
+					}
+					throw new InvalidImageIndexException("Image index " + getImageIndex() +
+						" is not available, file contains " + imageIndex + " image(s).");
+				}
+				else
+				{
+					throw new InvalidFileStructureException("Unknown GIF block type: " + blockType);
+				}
+			}
+		}
+		catch (EOFException eofe)
+		{
+			throw new InvalidFileStructureException("Unexpected end of GIF file.");
+		}
+		catch (IOException ioe)
+		{
+			throw new OperationFailedException("I/O failure: " + ioe.toString());
+		}
 	}
 
 	public boolean isSavingSupported()
@@ -249,6 +586,31 @@ public class GIFCodec extends ImageCodec
 		return true;
 	}
 
+	/**
+	 * Reads the GIF stream without decoding image data and returns resolution
+	 * and image type of the image with the current image index.
+	 * The image data of all images is skipped to determine the number of images.
+	 * @since 0.14.3
+	 */
+	public ImageDescriptor probe() throws
+		MissingParameterException,
+		OperationFailedException
+	{
+		probeResult = null;
+		probing = true;
+		try
+		{
+			load();
+			return probeResult;
+		}
+		finally
+		{
+			probing = false;
+			probeResult = null;
+			data = null;
+		}
+	}
+
 	public void process() throws 
 		MissingParameterException, 
 		OperationFailedException
@@ -256,7 +618,7 @@ public class GIFCodec extends ImageCodec
 		initModeFromIOObjects();
 		if (getMode() == CodecMode.LOAD)
 		{
-			throw new OperationFailedException("Loading is not supported.");
+			load();
 		}
 		else
 		{
@@ -264,14 +626,67 @@ public class GIFCodec extends ImageCodec
 		}
 	}
 
-	private void resetBlock()
+	private Palette readPalette(int numEntries) throws IOException
 	{
-		for (int i = 0; i < block.length; i++)
+		byte[] rgb = new byte[numEntries * 3];
+		in.readFully(rgb);
+		Palette palette = new Palette(numEntries);
+		for (int i = 0, j = 0; i < numEntries; i++, j += 3)
 		{
-			block[i] = 0;
+			palette.put(i, rgb[j] & 0xff, rgb[j + 1] & 0xff, rgb[j + 2] & 0xff);
 		}
+		return palette;
+	}
+
+	/**
+	 * Reads a sequence of data sub-blocks up to and including the terminating
+	 * zero-length block.
+	 * If <code>store</code> is true, their content is appended to <code>data</code>,
+	 * reading each sub-block with one call, and <code>dataLength</code> is set to its size.
+	 */
+	private void readSubBlocks(boolean store) throws IOException
+	{
+		if (data == null)
+		{
+			data = new byte[65536];
+		}
+		dataLength = 0;
+		int length;
+		while ((length = in.readUnsignedByte()) != 0)
+		{
+			if (store)
+			{
+				if (dataLength + length > data.length)
+				{
+					byte[] larger = new byte[data.length * 2];
+					System.arraycopy(data, 0, larger, 0, dataLength);
+					data = larger;
+				}
+				in.readFully(data, dataLength, length);
+				dataLength += length;
+			}
+			else
+			{
+				while (length > 0)
+				{
+					int skipped = in.skipBytes(length);
+					if (skipped <= 0)
+					{
+						// skipBytes is not required to signal the end of input
+						in.readUnsignedByte();
+						skipped = 1;
+					}
+					length -= skipped;
+				}
+			}
+		}
+	}
+
+	private void resetBlock()
+	{
 		blockLength = 0;
-		bitOffset = 0;
+		bitBuffer = 0;
+		numBufferedBits = 0;
 	}
 
 	private void resetEncoder()
@@ -281,10 +696,7 @@ public class GIFCodec extends ImageCodec
 		endOfInformationCode = clearCode + 1;
 		freeCode = endOfInformationCode + 1;
 		maxCode = (1 << codeSize) - 1;
-		for (int i = 0; i < currentCode.length; i++)
-		{
-			currentCode[i] = 0;
-		}
+		Arrays.fill(hashKeys, -1);
 	}
 
 	private void save() throws
@@ -374,55 +786,75 @@ public class GIFCodec extends ImageCodec
 		interlaced = useInterlacing;
 	}
 
-	private void writeBlock() throws IOException
+	/**
+	 * Stores the part of a decoded row within the bounds in the loaded image.
+	 */
+	private void storeRow(byte[] row, int offset, int rowWidth, int y)
 	{
-		if (bitOffset > 0)
+		if (y < getBoundsY1() || y > getBoundsY2())
+		{
+			return;
+		}
+		final int X1 = getBoundsX1();
+		final int WIDTH = getBoundsWidth();
+		y -= getBoundsY1();
+		offset += X1;
+		if (loadedSampleMap == null)
+		{
+			((Paletted8Image)loadedImage).putByteSamples(0, 0, y, WIDTH, 1, row, offset);
+			return;
+		}
+		// map indexes to samples in place, the row is not needed afterwards
+		final byte[] MAP = loadedSampleMap;
+		for (int i = offset; i < offset + WIDTH; i++)
+		{
+			row[i] = MAP[row[i] & 0xff];
+		}
+		if (loadedImage instanceof Gray8Image)
 		{
-			blockLength++;
+			((Gray8Image)loadedImage).putByteSamples(0, 0, y, WIDTH, 1, row, offset);
 		}
+		else
+		{
+			BilevelImage bilevel = (BilevelImage)loadedImage;
+			byte[] packed = new byte[(WIDTH + 7) / 8];
+			for (int x = 0; x < WIDTH; x++)
+			{
+				if (row[offset + x] != 0)
+				{
+					packed[x >> 3] |= 0x80 >> (x & 7);
+				}
+			}
+			bilevel.putPackedBytes(0, y, WIDTH, packed, 0, 0);
+		}
+	}
+
+	private void writeBlock() throws IOException
+	{
 		if (blockLength == 0)
 		{
 			return;
 		}
 		out.write(blockLength);
 		out.write(block, 0, blockLength);
-		resetBlock();
+		blockLength = 0;
 	}
 
 	private void writeCode(int code) throws IOException
 	{
-		int remainingBits = codeSize;
-		do
+		// codes are stored least significant bit first
+		bitBuffer |= code << numBufferedBits;
+		numBufferedBits += codeSize;
+		while (numBufferedBits >= 8)
 		{
-			int bitsFree = 8 - bitOffset;
-			int bits; 
-			/* bits =>  number of bits to be copied from "code" to 
-			   "block[blockLength]" in this loop iteration */
-			if (bitsFree < remainingBits)
-			{
-				bits = bitsFree;
-			}
-			else
-			{
-				bits = remainingBits;
-			}
-			int value = block[blockLength] & 0xff;
-			value += (code & ((1 << bits) - 1)) << bitOffset;
-			block[blockLength] = (byte)value;
-			bitOffset += bits;
-			if (bitOffset == 8)
+			block[blockLength++] = (byte)bitBuffer;
+			bitBuffer >>>= 8;
+			numBufferedBits -= 8;
+			if (blockLength == 255)
 			{
-				blockLength++;
-				bitOffset = 0;
-				if (blockLength == 255)
-				{
-					writeBlock();
-				}
+				writeBlock();
 			}
-			code >>= bits;
-			remainingBits -= bits;
 		}
-		while (remainingBits != 0);
 	}
 
 	private void writeComments() throws IOException
@@ -501,70 +933,120 @@ public class GIFCodec extends ImageCodec
 		out.write(packed); // flags
 	}
 
+	/**
+	 * Writes the LZW-compressed image data.
+	 * The strings known to the encoder are stored in an open-addressing hash table:
+	 * a string is identified by the code of its prefix string and its last sample,
+	 * combined to the key <code>(prefix &lt;&lt; 8) | suffix</code>.
+	 * The table index is <code>(suffix &lt;&lt; 4) ^ prefix</code>; collisions are resolved by
+	 * double hashing as in the Unix compress program.
+	 * Rows are read one at a time in the order they are stored (see {@link #setInterlacing}).
+	 */
 	private void writeImage() throws IOException
 	{
+		final int WIDTH = getBoundsWidth();
+		final int HEIGHT = getBoundsHeight();
+		final int Y1 = getBoundsY1();
+		final int[] KEYS = hashKeys;
+		final int[] CODES = hashCodes;
+		byte[] row = new byte[WIDTH];
+		byte[] packed = new byte[(WIDTH + 7) / 8];
 		out.write(initialCodeSize);
 		resetBlock();
 		resetEncoder();
 		writeCode(clearCode);
-		int suffixChar = getNextSample();
-		int prefixCode = suffixChar;
-		do
-		{
-			suffixChar = getNextSample();
-			int d = 1;
-			int hashIndex = (prefixCode ^ (suffixChar << 5)) % 5003;
-			boolean endInnerLoop;
-			do
+		int prefixCode = -1;
+		int pass = 0;
+		int y = 0;
+		for (int rowIndex = 0; rowIndex < HEIGHT; rowIndex++)
+		{
+			getRow(Y1 + y, row, packed);
+			int x = 0;
+			if (prefixCode < 0)
+			{
+				prefixCode = row[0] & 0xff;
+				x = 1;
+			}
+			while (x < WIDTH)
 			{
-				if (currentCode[hashIndex] == 0)
+				int suffix = row[x++] & 0xff;
+				int key = (prefixCode << 8) | suffix;
+				int index = (suffix << 4) ^ prefixCode;
+				if (KEYS[index] == key)
 				{
-					writeCode(prefixCode);
-					d = freeCode;
-					if (freeCode <= 4095)
-					{
-						oldCode[hashIndex] = prefixCode;
-						newCode[hashIndex] = suffixChar;
-						currentCode[hashIndex] = freeCode;
-						freeCode++;
-					}
-					if (d > maxCode)
+					prefixCode = CODES[index];
+					continue;
+				}
+				if (KEYS[index] >= 0)
+				{
+					// secondary probe
+					int displacement = index == 0 ? 1 : HASH_SIZE - index;
+					boolean found = false;
+					do
 					{
-						if (codeSize < 12)
+						index -= displacement;
+						if (index < 0)
 						{
-							codeSize++;
-							maxCode = (1 << codeSize) - 1;
+							index += HASH_SIZE;
 						}
-						else
+						if (KEYS[index] == key)
 						{
-							writeCode(clearCode);
-							resetEncoder();
+							found = true;
+							break;
 						}
 					}
-					prefixCode = suffixChar;
-					break;
+					while (KEYS[index] >= 0);
+					if (found)
+					{
+						prefixCode = CODES[index];
+						continue;
+					}
 				}
-				if (oldCode[hashIndex] == prefixCode && newCode[hashIndex] == suffixChar)
+				// the string is not in the table: write its prefix and add it
+				writeCode(prefixCode);
+				int newCode = freeCode;
+				if (freeCode < TABLE_SIZE)
 				{
-					prefixCode= currentCode[hashIndex];
-					endInnerLoop = true;
+					KEYS[index] = key;
+					CODES[index] = freeCode++;
 				}
-				else
+				if (newCode > maxCode)
 				{
-					hashIndex += d;
-					d += 2;
-					if (hashIndex > 5003)
+					if (codeSize < MAX_CODE_SIZE)
+					{
+						codeSize++;
+						maxCode = (1 << codeSize) - 1;
+					}
+					else
 					{
-						hashIndex -= 5003;
+						writeCode(clearCode);
+						resetEncoder();
 					}
-					endInnerLoop = false;
 				}
+				prefixCode = suffix;
+			}
+			setProgress(rowIndex, HEIGHT);
+			if (isInterlaced())
+			{
+				y += INTERLACING_INCREMENT[pass];
+				while (y >= HEIGHT && pass < NUM_INTERLACING_PASSES - 1)
+				{
+					pass++;
+					y = INTERLACING_FIRST_ROW[pass];
+				}
+			}
+			else
+			{
+				y++;
 			}
-			while (!endInnerLoop);
 		}
-		while (notFinished);
 		writeCode(prefixCode);
 		writeCode(endOfInformationCode);
+		if (numBufferedBits > 0)
+		{
+			block[blockLength++] = (byte)bitBuffer;
+			numBufferedBits = 0;
+		}
 		writeBlock();
 	}
 
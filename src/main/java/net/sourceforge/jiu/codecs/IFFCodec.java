@@ -1,13 +1,15 @@
 /*
  * IFFCodec
  *
- * Copyright (c) 2000, 2001, 2002, 2003, 2004, 2005, 2006 Marco Schmidt.
+ * Copyright (c) 2000, 2001, 2002, 2003, 2004, 2005, 2006, 2007 Marco Schmidt.
  * All rights reserved.
  */
 
 package net.sourceforge.jiu.codecs;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.IOException;
 import net.sourceforge.jiu.codecs.ImageCodec;
 import net.sourceforge.jiu.codecs.InvalidFileStructureException;
@@ -108,6 +110,7 @@ public class IFFCodec extends ImageCodec
 			int magic = in.readInt();
 			//System.out.println(chunkNameToString(magic));
 			int size = in.readInt();
+			int dataSize = size;
 			// chunks must always have an even number of bytes
 			if ((size & 1) == 1)
 			{
@@ -182,7 +185,12 @@ public class IFFCodec extends ImageCodec
 							"IFF input stream: No colormap chunk " +
 							"encountered before image body chunk.");
 					}
-					result = loadImage(in);
+					/* read the complete body, so that decoding works on memory
+					   instead of reading single bytes from a file;
+					   the padding byte of an odd-sized body is not needed */
+					byte[] body = new byte[dataSize];
+					in.readFully(body);
+					result = loadImage(new DataInputStream(new ByteArrayInputStream(body)));
 					break;
 				}
 				case(MAGIC_CAMG):
@@ -453,7 +461,7 @@ public class IFFCodec extends ImageCodec
 	 * COMPRESSION_RLE will make this method decompress data.length bytes
 	 * from input.
 	 */
-	private void loadBytes(DataInput in, byte[] data, int num, int y) throws
+	private void loadBytes(DataInput in, byte[] data, int num) throws
 		InvalidFileStructureException, 
 		IOException
 	{
@@ -466,59 +474,7 @@ public class IFFCodec extends ImageCodec
 			}
 			case(COMPRESSION_RLE):
 			{
-				int x = 0;
-				while (x < num)
-				{
-					int n = in.readByte() & 0xff;
-					//System.out.println("value=" + n);
-					boolean compressed = false;
-					int count = -1;
-					try
-					{
-						if (n < 128)
-						{
-							// copy next n + 1 bytes literally
-							n++;
-							in.readFully(data, x, n);
-							x += n;
-						}
-						else
-						{
-							// if n == -128, nothing happens
-							if (n > 128)
-							{
-								compressed = true;
-								// otherwise, compute counter
-								count = 257 - n;
-								// read another byte
-								byte value = in.readByte();
-								// write this byte counter times to output
-								while (count-- > 0)
-								{
-									data[x++] = value;
-								}
-							}
-						}
-					}
-					catch (ArrayIndexOutOfBoundsException ioobe)
-					{
-						//System.out.println("Loading error");
-						/* if the encoder did anything wrong, the above code
-						   could potentially write beyond array boundaries
-						   (e.g. if runs of data exceed line boundaries);
-						   this would result in an ArrayIndexOutOfBoundsException
-						   thrown by the virtual machine;
-						   to give a more understandable error message to the 
-						   user, this exception is caught here and a
-						   explanatory InvalidFileStructureException is thrown */
-						throw new InvalidFileStructureException("Error: " +
-							"RLE-compressed image " +
-							"file seems to be corrupt (compressed=" + compressed +
-							", x=" + x + ", y=" + y +
-							", count=" + (compressed ? (-((int)n) + 1) : n) + 
-							", array length=" + data.length + ").");
-					}
-				}
+				RunLengthCoding.decodePackbits(in, data, 0, num);
 				break;
 			}
 			default:
@@ -588,7 +544,17 @@ public class IFFCodec extends ImageCodec
 		{
 			createExtraHalfbritePalette();
 		}
-		int numBytesPerPlane = (width + 7) / 8;
+		/* rows of each plane (ILBM) or of the chunky pixels (PBM) are
+		   padded to an even number of bytes, compressed or not */
+		int numBytesPerPlane;
+		if (type == MAGIC_ILBM)
+		{
+			numBytesPerPlane = (width + 15) / 16 * 2;
+		}
+		else
+		{
+			numBytesPerPlane = (width + 1) / 2 * 2;
+		}
 		PixelImage image = null;
 		Paletted8Image palettedImage = null;
 		RGB24Image rgbImage = null;
@@ -602,26 +568,12 @@ public class IFFCodec extends ImageCodec
 			palettedImage = new MemoryPaletted8Image(getBoundsWidth(), getBoundsHeight(), palette);
 			image = palettedImage;
 		}
-		/* only matters for uncompressed files;
-		   will be true if the number of bytes is odd;
-		   is computed differently for PBM and ILBM types
-		*/
-		boolean oddBytesPerRow = (((numBytesPerPlane * numPlanes) % 2) != 0);
-		if (type == MAGIC_PBM)
-		{
-			oddBytesPerRow = ((width % 2) == 1);
-		}
 		// plane data will have numPlanes planes for ILBM and 1 plane for PBM
 		byte[][] planes = null;
 		int numChannels = 1;
 		
 		if (type == MAGIC_ILBM)
 		{
-			int allocBytes = numBytesPerPlane;
-			if ((numBytesPerPlane % 2) == 1)
-			{
-				allocBytes++;
-			}
 			// allocate numPlanes byte arrays
 			planes = new byte[numPlanes][];
 			if (rgb24 || ham)
@@ -631,15 +583,14 @@ public class IFFCodec extends ImageCodec
 			// for each of these byte arrays allocate numBytesPerPlane bytes
 			for (int i = 0; i < numPlanes; i++)
 			{
-				planes[i] = new byte[allocBytes];
+				planes[i] = new byte[numBytesPerPlane];
 			}
 		}
 		else
 		{
-			// only one plane, but each plane has width bytes instead of 
-			// numBytesPerPlane
+			// only one plane with one byte per pixel
 			planes = new byte[1][];
-			planes[0] = new byte[width];
+			planes[0] = new byte[numBytesPerPlane];
 		}
 		byte[][] dest = new byte[numChannels][];
 		for (int i = 0; i < numChannels; i++)
@@ -654,20 +605,13 @@ public class IFFCodec extends ImageCodec
 				// decode all planes for a complete row
 				for (int p = 0; p < numPlanes; p++)
 				{
-					loadBytes(in, planes[p], numBytesPerPlane, y);
+					loadBytes(in, planes[p], numBytesPerPlane);
 				}
 			}
 			else
 			if (type == MAGIC_PBM)
 			{
-				loadBytes(in, planes[0], numBytesPerPlane, y);
-			}
-			/* all uncompressed rows must have an even number of bytes
-			   so in case the number of bytes per row is odd, one byte
-			   is read and dropped */
-			if (compression == COMPRESSION_NONE && oddBytesPerRow)
-			{
-				in.readByte();
+				loadBytes(in, planes[0], numBytesPerPlane);
 			}
 			setProgress(y, getBoundsY2() + 1);
 			// if we do not need the row we just loaded we continue loading
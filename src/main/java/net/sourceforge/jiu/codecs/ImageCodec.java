@@ -20,11 +20,15 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Vector;
 import net.sourceforge.jiu.ops.MissingParameterException;
 import net.sourceforge.jiu.ops.Operation;
+import net.sourceforge.jiu.ops.OperationFailedException;
 import net.sourceforge.jiu.ops.WrongParameterException;
 import net.sourceforge.jiu.data.PixelImage;
+import net.sourceforge.jiu.util.ByteBufferInputStream;
 
 /**
  * The base class for <em>image codecs</em>, operations to read images from or write them to streams.
@@ -71,6 +75,12 @@ import net.sourceforge.jiu.data.PixelImage;
  * That way, input / output streams, RandomAccessFiles and arbitrary DataInput / DataOutput objects
  * can be used.
  * <p>
+ * For loading, the input can also be a {@link java.nio.ByteBuffer}
+ * ({@link #setByteBuffer}), for example a memory-mapped file
+ * ({@link #setFileChannel}).
+ * It is made available as an input stream that also implements DataInput
+ * and random access, so reading does not require any system calls.
+ * <p>
  * <h3>Mode</h3>
  * Codecs can be used to save images or load them, or both.
  * As was g; by default, no mode (of enumeration type {@link CodecMode}) 
@@ -103,6 +113,26 @@ import net.sourceforge.jiu.data.PixelImage;
  * <strong>Image index</strong>; the index of the image that is to be loaded (int value, default
  * is 0). For image formats that support more than one image in one stream, the index of the
  * image to be loaded (zero-based) can be specified using {@link #setImageIndex(int)}.
+ * <p>
+ * <strong>Probing</strong>; {@link #probe()} returns resolution, image type and number
+ * of images of an image file as an {@link ImageDescriptor} without loading the pixels.
+ * <p>
+ * <strong>Row consumer</strong>; when loading, a {@link RowConsumer} can be given to a codec
+ * via {@link #setRowConsumer}.
+ * Codecs supporting it then do not allocate an image object for the complete bounds,
+ * they decode into an image object that holds only a single row (or a few rows, e.g.
+ * one row of tiles in a tiled TIFF file) and pass it to the consumer each time it is complete.
+ * Where a file's organization does not allow for that (interlaced PNG, compressed BMP),
+ * the complete image is loaded and passed to the consumer in one call.
+ * Either way, {@link #getImage} must not be used as the loaded image afterwards.
+ * Codecs that do not support row consumers ignore them.
+ * <p>
+ * <strong>Decode scale</strong>; with {@link #setDecodeScale} an image can be loaded at
+ * a fraction of its resolution, e.g. for a quick preview or a coarse analysis.
+ * Codecs storing several resolutions of an image pick the matching one,
+ * codecs supporting row consumers keep only every n-th pixel of every n-th row
+ * while storing them, without ever allocating the full-size image.
+ * Codecs that support neither ignore the decode scale.
  *
  * <h3>Textual comments</h3>
  * Some file formats allow for the inclusion of textual comments, to
@@ -134,6 +164,8 @@ public abstract class ImageCodec extends Operation
 	private int boundsWidth;
 	private int boundsHeight;
 	private Vector comments;
+	private RowDecimator decimator;
+	private int decodeScale = 1;
 	private int dpiX;
 	private int dpiY;
 	private DataInput din;
@@ -144,6 +176,8 @@ public abstract class ImageCodec extends Operation
 	private CodecMode mode;
 	private OutputStream out;
 	private RandomAccessFile raf;
+	private RowConsumer rowConsumer;
+	private FileChannel channel;
 
 	/**
 	 * This constructor will be called by descendants.
@@ -255,12 +289,85 @@ public abstract class ImageCodec extends Operation
 			{
 				raf.close();
 			}
+			if (channel != null)
+			{
+				channel.close();
+			}
 		}
 		catch (IOException ioe)
 		{
 		}
 	}
 
+	/**
+	 * Passes decoded rows to the row consumer, if one was set.
+	 * With a decode scale larger than 1, the rows are reduced first.
+	 * To be called by codecs that support streaming, see {@link #isRowStreaming}.
+	 * @param rows image object holding the rows, starting at its first row
+	 * @param y vertical position of the first row within the bounds
+	 * @param numRows number of rows
+	 * @since 0.14.3
+	 */
+	protected void consumeRows(PixelImage rows, int y, int numRows)
+	{
+		if (numRows < 1)
+		{
+			return;
+		}
+		if (decimator != null)
+		{
+			decimator.consumeRows(rows, y, numRows);
+		}
+		else
+		if (rowConsumer != null)
+		{
+			rowConsumer.consumeRows(rows, y, numRows);
+		}
+	}
+
+	/**
+	 * Creates an {@link ImageDescriptor} with the format name and
+	 * the physical resolution of this codec and the argument values.
+	 * To be used by codecs in their implementation of {@link #probe}.
+	 * @param width horizontal resolution in pixels
+	 * @param height vertical resolution in pixels
+	 * @param imageType image data interface, e.g. <code>RGB24Image.class</code>
+	 * @param numImages number of images in the file or <code>-1</code> if unknown
+	 * @return new descriptor object
+	 * @since 0.14.3
+	 */
+	protected ImageDescriptor createDescriptor(int width, int height, Class imageType, int numImages)
+	{
+		ImageDescriptor result = new ImageDescriptor();
+		result.setFormatName(getFormatName());
+		result.setWidth(width);
+		result.setHeight(height);
+		result.setImageType(imageType);
+		result.setNumImages(numImages);
+		result.setDpi(getDpiX(), getDpiY());
+		return result;
+	}
+
+	/**
+	 * To be called by codecs that support streaming at the end of loading,
+	 * after {@link #initRowStreaming}.
+	 * If rows were reduced to the decode scale and not passed on to a row consumer,
+	 * the reduced image becomes this codec's image (see {@link #getImage}).
+	 * @since 0.14.3
+	 */
+	protected void finishRowStreaming()
+	{
+		if (decimator != null)
+		{
+			PixelImage reduced = decimator.getImage();
+			if (reduced != null)
+			{
+				setImage(reduced);
+			}
+			decimator = null;
+		}
+	}
+
 	/**
 	 * Returns x coordinate of the upper left corner of the bounds.
 	 * Bounds must have been specified using {@link #setBounds(int, int, int, int)},
@@ -350,6 +457,27 @@ public abstract class ImageCodec extends Operation
 		}
 	}
 
+	/**
+	 * Returns the input stream created by {@link #setByteBuffer} or
+	 * {@link #setFileChannel}, or <code>null</code> if the input was given
+	 * in some other way.
+	 * Codecs that need random access can use it instead of a
+	 * {@link java.io.RandomAccessFile}.
+	 * @return input stream reading from a byte buffer or <code>null</code>
+	 * @since 0.14.3
+	 */
+	public ByteBufferInputStream getByteBufferInputStream()
+	{
+		if (in instanceof ByteBufferInputStream)
+		{
+			return (ByteBufferInputStream)in;
+		}
+		else
+		{
+			return null;
+		}
+	}
+
 	/**
 	 * Returns a {@link java.io.DataInput} object if one was provided 
 	 * via {@link #setDataInput(DataInput)} or <code>null</code> otherwise.
@@ -370,6 +498,16 @@ public abstract class ImageCodec extends Operation
 		return dout;
 	}
 
+	/**
+	 * Returns the decode scale denominator, 1 (the default) for full resolution.
+	 * @see #setDecodeScale
+	 * @since 0.14.3
+	 */
+	public int getDecodeScale()
+	{
+		return decodeScale;
+	}
+
 	/**
 	 * Returns the horizontal physical resolution of the image associated
 	 * with this codec.
@@ -572,6 +710,16 @@ public abstract class ImageCodec extends Operation
 		return raf;
 	}
 
+	/**
+	 * Returns the row consumer given to this codec with {@link #setRowConsumer}
+	 * or <code>null</code>.
+	 * @since 0.14.3
+	 */
+	public RowConsumer getRowConsumer()
+	{
+		return rowConsumer;
+	}
+
 	/**
 	 * Returns if bounds have been specified.
 	 * @return if bounds have been specified
@@ -604,6 +752,23 @@ public abstract class ImageCodec extends Operation
 		}
 	}
 
+	/**
+	 * To be called by codecs that support streaming when loading, once the bounds are known.
+	 * Prepares the reduction of rows if a decode scale larger than 1 was set.
+	 * Afterwards, {@link #isRowStreaming} tells the codec whether to decode
+	 * into a row buffer and pass the rows to {@link #consumeRows}.
+	 * Loading must end with a call to {@link #finishRowStreaming}.
+	 * @since 0.14.3
+	 */
+	protected void initRowStreaming()
+	{
+		decimator = null;
+		if (decodeScale > 1)
+		{
+			decimator = new RowDecimator(decodeScale, getBoundsWidth(), getBoundsHeight(), rowConsumer);
+		}
+	}
+
 	/**
 	 * Returns if this codec is able to load images in the file format supported by this codec.
 	 * If <code>true</code> is returned this does not necessarily mean that all files in this
@@ -643,6 +808,18 @@ public abstract class ImageCodec extends Operation
 		}
 	}
 
+	/**
+	 * Returns whether a codec that supports streaming is to decode rows into a
+	 * buffer and pass them to {@link #consumeRows} instead of loading the complete
+	 * image: that is the case if a row consumer was given or rows are to be
+	 * reduced to a decode scale (see {@link #initRowStreaming}).
+	 * @since 0.14.3
+	 */
+	protected boolean isRowStreaming()
+	{
+		return rowConsumer != null || decimator != null;
+	}
+
 	/** 
 	 * Returns if the tile formed by the argument coordinates 
 	 * form a rectangle that overlaps with the bounds.
@@ -669,6 +846,37 @@ public abstract class ImageCodec extends Operation
 		}
 	}
 
+	/**
+	 * Reads only as much of the input as is necessary to determine
+	 * resolution, physical resolution, image type and number of images
+	 * of the image with the current image index ({@link #setImageIndex}),
+	 * and returns that information.
+	 * No pixel data is decoded and no image object is created.
+	 * The physical resolution is also available via {@link #getDpiX} and
+	 * {@link #getDpiY} afterwards.
+	 * <p>
+	 * The input is given to the codec the same way as for loading.
+	 * Streams are consumed by this method; to load the image afterwards,
+	 * give the codec a new input object.
+	 * <p>
+	 * This default implementation loads the complete image with {@link #process}
+	 * and describes the result, the number of images is returned as unknown.
+	 * Codecs override it if the file format allows for reading the information
+	 * from the header.
+	 * @return descriptor with information on the image
+	 * @throws MissingParameterException if no input was given to this codec
+	 * @throws OperationFailedException if the input is not a valid file of this format or there were I/O errors
+	 * @since 0.14.3
+	 */
+	public ImageDescriptor probe() throws
+		MissingParameterException,
+		OperationFailedException
+	{
+		process();
+		PixelImage result = getImage();
+		return createDescriptor(result.getWidth(), result.getHeight(), result.getImageType(), -1);
+	}
+
 	/**
 	 * Removes all entries from the internal list of comments.
 	 */
@@ -723,6 +931,42 @@ public abstract class ImageCodec extends Operation
 		}
 	}
 
+	/**
+	 * Gives a buffer with the complete content of an image file to this
+	 * codec to load an image from it.
+	 * The bytes from the buffer's position to its limit are used;
+	 * the buffer itself (position, limit, mark) is not modified.
+	 * An input stream reading from the buffer is given to {@link #setInputStream};
+	 * it also implements {@link java.io.DataInput} and random access.
+	 * @param buffer buffer with the file content
+	 * @see #getByteBufferInputStream
+	 * @since 0.14.3
+	 */
+	public void setByteBuffer(ByteBuffer buffer)
+	{
+		setInputStream(new ByteBufferInputStream(buffer));
+		mode = CodecMode.LOAD;
+	}
+
+	/**
+	 * Maps the complete file of the argument channel into memory (read-only)
+	 * and uses it as input for loading, see {@link #setByteBuffer}.
+	 * The channel is closed by {@link #close}.
+	 * @param fileChannel channel of the file to be loaded
+	 * @throws IOException if the file could not be mapped
+	 * @since 0.14.3
+	 */
+	public void setFileChannel(FileChannel fileChannel) throws IOException
+	{
+		long size = fileChannel.size();
+		if (size > Integer.MAX_VALUE)
+		{
+			throw new IOException("File too large to be mapped: " + size + " bytes.");
+		}
+		setByteBuffer(fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		channel = fileChannel;
+	}
+
 	/**
 	 * Specifies a DataInput object to be used for loading.
 	 * @param dataInput DataInput object to be used for loading an image
@@ -742,6 +986,28 @@ public abstract class ImageCodec extends Operation
 		dout = dataOutput;
 	}
 
+	/**
+	 * Specifies the resolution of the loaded image as a fraction of the resolution
+	 * stored in the file: with a denominator of 2, width and height are halved
+	 * (rounded up), with 4 they are divided by four and so on.
+	 * Where supported, bounds refer to the file's resolution and the reduced image
+	 * has the size of the bounds divided by the denominator.
+	 * This is a hint, codecs that cannot reduce the resolution ignore it;
+	 * check the resolution of the loaded image.
+	 * Default is 1, the image is loaded at full resolution.
+	 * @param denominator 1 or larger
+	 * @throws IllegalArgumentException if the argument is smaller than 1
+	 * @since 0.14.3
+	 */
+	public void setDecodeScale(int denominator)
+	{
+		if (denominator < 1)
+		{
+			throw new IllegalArgumentException("Decode scale denominator must be 1 or larger: " + denominator);
+		}
+		decodeScale = denominator;
+	}
+
 	/**
 	 * Sets the DPI values to be stored in the file to the argument values.
 	 * @param horizontalDpi horizontal physical resolution in DPI (dots per inch)
@@ -879,6 +1145,20 @@ public abstract class ImageCodec extends Operation
 		mode = codecMode;
 	}
 
+	/**
+	 * Sets the object that receives the decoded rows when loading.
+	 * If it is non-<code>null</code>, codecs supporting it hand over rows
+	 * as they are decoded instead of loading the complete image,
+	 * so that memory requirements no longer depend on the image height.
+	 * An image object given via {@link #setImage} is not used then.
+	 * @param consumer object to receive the rows, or <code>null</code> to load complete images
+	 * @since 0.14.3
+	 */
+	public void setRowConsumer(RowConsumer consumer)
+	{
+		rowConsumer = consumer;
+	}
+
 	/**
 	 * Attempts to suggest a filename extension.
 	 * The type of the argument image will be taken into consideration,
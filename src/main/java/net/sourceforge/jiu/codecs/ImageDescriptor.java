@@ -0,0 +1,134 @@
+/*
+ * ImageDescriptor
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs;
+
+/**
+ * Data class with the basic properties of an image file as returned
+ * by {@link ImageCodec#probe}: resolution, physical resolution,
+ * image type and number of images, without any pixel data.
+ * Values that a file does not contain are <code>0</code> (physical resolution)
+ * or <code>-1</code> (number of images).
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public class ImageDescriptor
+{
+	private int dpiX;
+	private int dpiY;
+	private String formatName;
+	private int height;
+	private Class imageType;
+	private int numImages = -1;
+	private int width;
+
+	/**
+	 * Returns the horizontal physical resolution in dots per inch,
+	 * or <code>0</code> if it is not known.
+	 */
+	public int getDpiX()
+	{
+		return dpiX;
+	}
+
+	/**
+	 * Returns the vertical physical resolution in dots per inch,
+	 * or <code>0</code> if it is not known.
+	 */
+	public int getDpiY()
+	{
+		return dpiY;
+	}
+
+	/**
+	 * Returns the name of the file format, as returned by
+	 * {@link ImageCodec#getFormatName} of the codec that created this object.
+	 */
+	public String getFormatName()
+	{
+		return formatName;
+	}
+
+	public int getHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Returns the image data interface of the image object that loading this image
+	 * would create (e.g. <code>net.sourceforge.jiu.data.Gray8Image.class</code>),
+	 * compare {@link net.sourceforge.jiu.data.PixelImage#getImageType}.
+	 */
+	public Class getImageType()
+	{
+		return imageType;
+	}
+
+	/**
+	 * Returns the number of images (pages) in the file or <code>-1</code>
+	 * if that number cannot be determined without reading the complete file.
+	 */
+	public int getNumImages()
+	{
+		return numImages;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	public void setDpi(int horizontalDpi, int verticalDpi)
+	{
+		dpiX = horizontalDpi;
+		dpiY = verticalDpi;
+	}
+
+	public void setFormatName(String name)
+	{
+		formatName = name;
+	}
+
+	public void setHeight(int newHeight)
+	{
+		height = newHeight;
+	}
+
+	public void setImageType(Class newImageType)
+	{
+		imageType = newImageType;
+	}
+
+	public void setNumImages(int newNumImages)
+	{
+		numImages = newNumImages;
+	}
+
+	public void setWidth(int newWidth)
+	{
+		width = newWidth;
+	}
+
+	public String toString()
+	{
+		StringBuffer sb = new StringBuffer();
+		sb.append(formatName);
+		sb.append("/");
+		sb.append(width);
+		sb.append("x");
+		sb.append(height);
+		sb.append("/type=");
+		sb.append(imageType == null ? "?" : imageType.getName());
+		sb.append("/dpi=");
+		sb.append(dpiX);
+		sb.append("x");
+		sb.append(dpiY);
+		sb.append("/#images=");
+		sb.append(numImages);
+		return sb.toString();
+	}
+}
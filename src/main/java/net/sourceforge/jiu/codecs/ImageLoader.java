@@ -1,7 +1,7 @@
 /*
  * ImageLoader
  *
- * Copyright (c) 2000, 2001, 2002, 2003, 2004, 2005, 2006 Marco Schmidt.
+ * Copyright (c) 2000, 2001, 2002, 2003, 2004, 2005, 2006, 2007 Marco Schmidt.
  * All rights reserved.
  */
 
@@ -12,20 +12,25 @@ import java.awt.MediaTracker;
 import java.awt.Toolkit;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Vector;
 import net.sourceforge.jiu.codecs.InvalidFileStructureException;
 import net.sourceforge.jiu.codecs.InvalidImageIndexException;
 import net.sourceforge.jiu.codecs.WrongFileFormatException;
 import net.sourceforge.jiu.codecs.BMPCodec;
+import net.sourceforge.jiu.codecs.GIFCodec;
 import net.sourceforge.jiu.codecs.IFFCodec;
 import net.sourceforge.jiu.codecs.PCDCodec;
 import net.sourceforge.jiu.codecs.PNGCodec;
 import net.sourceforge.jiu.codecs.PNMCodec;
 import net.sourceforge.jiu.codecs.PSDCodec;
 import net.sourceforge.jiu.codecs.RASCodec;
+import net.sourceforge.jiu.codecs.jpeg.JPEGCodec;
 import net.sourceforge.jiu.codecs.tiff.TIFFCodec;
 import net.sourceforge.jiu.data.PixelImage;
 import net.sourceforge.jiu.gui.awt.ImageCreator;
@@ -44,7 +49,14 @@ import net.sourceforge.jiu.ops.OperationFailedException;
  * In order to load such a file, use the codec manually.
  * Example: {@link PalmCodec}.
  * <p>
- * In order to load an image via {@link java.awt.Toolkit} (JPEG, PNG or GIF), use
+ * Before trying codecs one after another, the load methods read the first bytes
+ * of the file and look for the magic byte sequences of the supported formats
+ * (see {@link #createCodec(File)}).
+ * If one is found, the matching codec is used right away.
+ * Only if that fails (e.g. for formats without magic bytes at the beginning
+ * like PCD), all registered codecs are tried in the order of registration.
+ * <p>
+ * In order to load an image via {@link java.awt.Toolkit}, use
  * {@link net.sourceforge.jiu.gui.awt.ToolkitLoader}.
  * It combines the loading features of java.awt.Toolkit and JIU's ImageLoader.
  * <h3>Usage example</h3>
@@ -63,15 +75,30 @@ import net.sourceforge.jiu.ops.OperationFailedException;
  */
 public class ImageLoader
 {
+	/**
+	 * The number of bytes at the beginning of a file that are examined
+	 * to identify its format.
+	 */
+	private static final int HEADER_SIZE = 16;
+
 	// all elements of class String
 	private static Vector fileExtensions;
 	private static Vector imageCodecClasses;
+	private static final ThreadLocal headerBuffer = new ThreadLocal()
+	{
+		protected Object initialValue()
+		{
+			return new byte[HEADER_SIZE];
+		}
+	};
 
 	static
 	{
 		imageCodecClasses = new Vector();
 		registerCodecClass(new BMPCodec());
+		registerCodecClass(new GIFCodec());
 		registerCodecClass(new IFFCodec());
+		registerCodecClass(new JPEGCodec());
 		registerCodecClass(new PCDCodec());
 		registerCodecClass(new PNGCodec());
 		registerCodecClass(new PNMCodec());
@@ -115,13 +142,74 @@ public class ImageLoader
 		return result;
 	}
 
+	/**
+	 * Creates a codec for the format of the argument file, identified by the
+	 * magic byte sequence at its beginning.
+	 * Recognized are BMP, GIF, IFF, JPEG, PNG, PNM, PSD, Sun RAS and TIFF;
+	 * the codec class must be registered with ImageLoader.
+	 * Only the first few bytes of the file are read.
+	 * @param file the file whose format is to be identified
+	 * @return new codec object or <code>null</code> if the format could not be identified
+	 * @throws IOException if the file could not be read
+	 * @since 0.14.3
+	 */
+	public static ImageCodec createCodec(File file) throws IOException
+	{
+		byte[] header = (byte[])headerBuffer.get();
+		int numBytes = 0;
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			int count;
+			while (numBytes < header.length &&
+			       (count = in.read(header, numBytes, header.length - numBytes)) > 0)
+			{
+				numBytes += count;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return createCodec(identifyFormat(header, numBytes));
+	}
+
+	/**
+	 * Creates a codec for the format of the image file stored in the argument buffer,
+	 * identified by the magic byte sequence at the buffer's current position.
+	 * Recognized are the same formats as with {@link #createCodec(File)}.
+	 * The position of the buffer is not changed, so the buffer can then be given
+	 * to the codec with {@link ImageCodec#setByteBuffer}.
+	 * @param buffer the image file data whose format is to be identified
+	 * @return new codec object or <code>null</code> if the format could not be identified
+	 * @since 0.14.3
+	 */
+	public static ImageCodec createCodec(ByteBuffer buffer)
+	{
+		byte[] header = (byte[])headerBuffer.get();
+		int numBytes = Math.min(header.length, buffer.remaining());
+		buffer.duplicate().get(header, 0, numBytes);
+		return createCodec(identifyFormat(header, numBytes));
+	}
+
+	private static ImageCodec createCodec(Class codecClass)
+	{
+		if (codecClass == null)
+		{
+			return null;
+		}
+		int index = imageCodecClasses.indexOf(codecClass);
+		if (index == -1)
+		{
+			return null;
+		}
+		return createCodec(index);
+	}
+
 	/**
 	 * Returns a filename filter ({@link java.io.FilenameFilter}) that accepts files
 	 * with name extensions typical for the image file formats known to ImageLoader.
 	 * The filter could then be used in an file dialog like {@link java.awt.FileDialog}.
-	 * <p>
-	 * Note that this filter does not include file formats supported by the AWT 
-	 * {@link java.awt.Toolkit} (GIF and JPEG, also PNG since Java 1.3).
 	 * @return filter for image file names
 	 */
 	public static FilenameFilter createFilenameFilter()
@@ -165,6 +253,64 @@ public class ImageLoader
 		return imageCodecClasses.size();
 	}
 
+	private static boolean hasPrefix(byte[] header, int numBytes, int[] prefix)
+	{
+		if (numBytes < prefix.length)
+		{
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++)
+		{
+			if ((header[i] & 0xff) != prefix[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Class identifyFormat(byte[] header, int numBytes)
+	{
+		if (hasPrefix(header, numBytes, new int[] {0x49, 0x49, 0x2a, 0x00}) ||
+		    hasPrefix(header, numBytes, new int[] {0x4d, 0x4d, 0x00, 0x2a}))
+		{
+			return TIFFCodec.class;
+		}
+		if (hasPrefix(header, numBytes, new int[] {0x89, 0x50, 0x4e, 0x47, 0x0d, 0x0a, 0x1a, 0x0a}))
+		{
+			return PNGCodec.class;
+		}
+		if (numBytes >= 2 && header[0] == 'P' && header[1] >= '1' && header[1] <= '6')
+		{
+			return PNMCodec.class;
+		}
+		if (hasPrefix(header, numBytes, new int[] {0x42, 0x4d})) // BM
+		{
+			return BMPCodec.class;
+		}
+		if (hasPrefix(header, numBytes, new int[] {0x38, 0x42, 0x50, 0x53})) // 8BPS
+		{
+			return PSDCodec.class;
+		}
+		if (hasPrefix(header, numBytes, new int[] {0x59, 0xa6, 0x6a, 0x95}))
+		{
+			return RASCodec.class;
+		}
+		if (hasPrefix(header, numBytes, new int[] {0x47, 0x49, 0x46, 0x38})) // GIF8
+		{
+			return GIFCodec.class;
+		}
+		if (hasPrefix(header, numBytes, new int[] {0xff, 0xd8, 0xff})) // SOI and start of next marker
+		{
+			return JPEGCodec.class;
+		}
+		if (hasPrefix(header, numBytes, new int[] {0x46, 0x4f, 0x52, 0x4d})) // FORM
+		{
+			return IFFCodec.class;
+		}
+		return null;
+	}
+
 	/**
 	 * Attempts to load an image from a file.
 	 * @param file the file from which an image is to be loaded
@@ -185,6 +331,7 @@ public class ImageLoader
 	 * @param file the file to load an image from
 	 * @param listeners a Vector of ProgressListener objects to be notified 
 	 * @return an instance of a class implementing {@link PixelImage}
+	 * @throws FileNotFoundException if the argument file does not exist
 	 */
 	public static PixelImage load(File file, Vector listeners) throws 
 		IOException, 
@@ -192,58 +339,81 @@ public class ImageLoader
 		InvalidImageIndexException,
 		UnsupportedTypeException
 	{
-		for (int i = 0; i < getNumCodecs(); i++)
+		return load(file, listeners, 1);
+	}
+
+	/**
+	 * Attempts to load an image from a file at a reduced resolution,
+	 * notifying the argument progress listeners.
+	 * The decode scale is given to the codec with {@link ImageCodec#setDecodeScale};
+	 * codecs that do not support it (or not that particular value) load the image
+	 * at full resolution, so check the resolution of the returned image.
+	 * @param file the file to load an image from
+	 * @param listeners a Vector of ProgressListener objects to be notified 
+	 * @param decodeScale denominator of the resolution fraction to be loaded, 1 for full resolution
+	 * @return an instance of a class implementing {@link PixelImage}
+	 * @throws FileNotFoundException if the argument file does not exist
+	 * @since 0.14.3
+	 */
+	public static PixelImage load(File file, Vector listeners, int decodeScale) throws 
+		IOException, 
+		InvalidFileStructureException,
+		InvalidImageIndexException,
+		UnsupportedTypeException
+	{
+		if (!file.isFile())
 		{
-			PixelImage result = null;
-			ImageCodec codec = null;
-			try
-			{
-				codec = createCodec(i);
-				System.out.println("here 1");
-				codec.setFile(file, CodecMode.LOAD);
-				System.out.println("here 2");
-				codec.addProgressListeners(listeners);
-				System.out.println("here 3");
-				codec.process();
-				System.out.println("here 4");
-				result = codec.getImage();
-				System.out.println("here 5");
-				if (result != null)
-				{
-					System.out.println("here 6");
-					return result;
-				}
-			}
-			catch (MissingParameterException mpe)
-			{
-				mpe.printStackTrace();
-				// ignore
-			}
-			catch (WrongFileFormatException wffe)
+			// no need to let every codec fail on it
+			throw new FileNotFoundException("Not an existing file: " + file.getPath());
+		}
+		// first try the codec for the format identified by magic bytes
+		ImageCodec codec;
+		try
+		{
+			codec = createCodec(file);
+		}
+		catch (IOException ioe)
+		{
+			// the codecs below will report the problem
+			codec = null;
+		}
+		return load(codec, file, null, listeners, decodeScale);
+	}
+
+	/**
+	 * Tries the argument codec and then all other registered codecs on the input,
+	 * which is either a file or the complete image file data in a byte array.
+	 */
+	private static PixelImage load(ImageCodec codec, File file, byte[] data, Vector listeners, int decodeScale)
+	{
+		Class identified = null;
+		if (codec != null)
+		{
+			identified = codec.getClass();
+			PixelImage result = loadWithCodec(codec, file, data, listeners, decodeScale);
+			if (result != null)
 			{
-				wffe.printStackTrace();
-				// ignore
+				return result;
 			}
-			catch (IOException ioe)
+		}
+		// then all other codecs
+		for (int i = 0; i < getNumCodecs(); i++)
+		{
+			if (imageCodecClasses.elementAt(i) == identified)
 			{
-				ioe.printStackTrace();
-				// ignore
+				continue;
 			}
-			catch (OperationFailedException ofe)
+			codec = createCodec(i);
+			if (codec == null)
 			{
-				ofe.printStackTrace();
-				// ignore
-				//System.out.println("codec: " + ofe);
+				continue;
 			}
-			finally
+			PixelImage result = loadWithCodec(codec, file, data, listeners, decodeScale);
+			if (result != null)
 			{
-				if (codec != null)
-				{
-					codec.close();
-				}
+				return result;
 			}
 		}
-		System.out.println("here null");
 		return null;
 	}
 
@@ -278,6 +448,55 @@ public class ImageLoader
 		return load(new File(fileName), listeners);
 	}
 
+	/**
+	 * Attempts to load an image from a class path resource.
+	 * The resource is read completely into memory and given to the codec for the
+	 * format identified by its magic bytes ({@link #createCodec(ByteBuffer)}),
+	 * then to all other registered codecs, like a file in {@link #load(File, Vector)}.
+	 * @param uri name of the resource, resolved like {@link java.lang.Class#getResourceAsStream}
+	 *  relative to this class
+	 * @param listeners a Vector of ProgressListener objects to be notified, may be <code>null</code>
+	 * @return the loaded image or <code>null</code> if the resource does not exist
+	 *  or no codec could load it
+	 * @throws IOException if reading the resource fails
+	 * @since 0.14.3
+	 */
+	public static PixelImage loadResource(String uri, Vector listeners) throws IOException
+	{
+		InputStream in = ImageLoader.class.getResourceAsStream(uri);
+		if (in == null)
+		{
+			return null;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try
+		{
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) > 0)
+			{
+				out.write(buffer, 0, count);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		byte[] data = out.toByteArray();
+		return load(createCodec(ByteBuffer.wrap(data)), null, data, listeners, 1);
+	}
+
+	/**
+	 * Loads an image from a class path resource via the AWT {@link java.awt.Toolkit}
+	 * and converts it to an {@link net.sourceforge.jiu.data.RGB24Image}.
+	 * The resource is read completely into memory first.
+	 * This requires a working AWT toolkit (it cannot be used in headless mode)
+	 * and always returns RGB data, whatever the image type of the file.
+	 * @param uri name of the resource
+	 * @return loaded image or <code>null</code> on failure
+	 * @deprecated use {@link #loadResource}, which decodes an image only once,
+	 *  without AWT, and returns an image of the type stored in the file
+	 */
 	public static PixelImage loadToolkitImageUri(String uri) throws 
 	IOException, 
 	InvalidFileStructureException,
@@ -321,6 +540,61 @@ public class ImageLoader
 		}
 	}
 
+	private static PixelImage loadWithCodec(ImageCodec codec, File file, byte[] data, Vector listeners, int decodeScale)
+	{
+		try
+		{
+			try
+			{
+				codec.setDecodeScale(decodeScale);
+			}
+			catch (IllegalArgumentException iae)
+			{
+				// the codec does not support that scale, load at full resolution
+			}
+			if (file != null)
+			{
+				codec.setFile(file, CodecMode.LOAD);
+			}
+			else
+			{
+				// each codec gets its own buffer with position 0
+				codec.setByteBuffer(ByteBuffer.wrap(data));
+			}
+			codec.addProgressListeners(listeners);
+			codec.process();
+			return codec.getImage();
+		}
+		catch (MissingParameterException mpe)
+		{
+			// with a buffer this only means the codec needs a random access file
+			if (file != null)
+			{
+				mpe.printStackTrace();
+			}
+			// ignore
+		}
+		catch (WrongFileFormatException wffe)
+		{
+			// ignore, the file is in some other format
+		}
+		catch (IOException ioe)
+		{
+			ioe.printStackTrace();
+			// ignore
+		}
+		catch (OperationFailedException ofe)
+		{
+			ofe.printStackTrace();
+			// ignore
+		}
+		finally
+		{
+			codec.close();
+		}
+		return null;
+	}
+
 	/**
 	 * Registers a codec class with ImageLoader.
 	 * The argument is an instance of the class to be registered.
@@ -37,6 +37,11 @@ import net.sourceforge.jiu.util.ArrayScaling;
  * in both horizontal and vertical direction.
  * <h3>Limitations</h3>
  * Only the lowest three resolutions are supported by this codec.
+ * <h3>Decode scale</h3>
+ * A decode scale (see {@link #setDecodeScale}) picks a smaller stored resolution
+ * than the one given to {@link #setResolutionIndex}: one step smaller for 2,
+ * two steps for 4 and so on, down to the lowest resolution.
+ * No pixels are decoded for the larger resolutions.
  * <h3>Sample PCD files</h3>
  * You can download sample PCD image files from
  * <a href="http://www.kodak.com/digitalImaging/samples/imageIntro.shtml">Kodak's
@@ -135,10 +140,10 @@ public class PCDCodec extends ImageCodec implements YCbCrIndex
 		setResolutionIndex(PCD_RESOLUTION_DEFAULT);
 	}
 
-	private byte[][] allocateMemory()
+	private byte[][] allocateMemory(int resolution)
 	{
-		int numPixels = PCD_RESOLUTIONS[resolutionIndex][0] *
-			PCD_RESOLUTIONS[resolutionIndex][1];
+		int numPixels = PCD_RESOLUTIONS[resolution][0] *
+			PCD_RESOLUTIONS[resolution][1];
 		byte[][] result = new byte[numChannels][];
 		for (int i = 0; i < numChannels; i++)
 		{
@@ -267,6 +272,25 @@ public class PCDCodec extends ImageCodec implements YCbCrIndex
 		return new String[] {"image/x-pcd"};
 	}
 
+	/**
+	 * Returns the index of the resolution to be loaded:
+	 * the one given to {@link #setResolutionIndex}, reduced by one
+	 * for every factor of two in the decode scale (see {@link #setDecodeScale}),
+	 * as each PCD resolution has half the width and height of the next one.
+	 * The lowest resolution is used if there is no smaller one.
+	 */
+	private int getScaledResolutionIndex()
+	{
+		int result = resolutionIndex;
+		int scale = getDecodeScale();
+		while (scale > 1 && result > PCD_RESOLUTION_1)
+		{
+			scale /= 2;
+			result--;
+		}
+		return result;
+	}
+
 	public boolean isLoadingSupported()
 	{
 		return true;
@@ -298,9 +322,10 @@ public class PCDCodec extends ImageCodec implements YCbCrIndex
 		UnsupportedTypeException,
 		WrongFileFormatException
 	{
-		if (resolutionIndex != PCD_RESOLUTION_1 &&
-		    resolutionIndex != PCD_RESOLUTION_2 &&
-		    resolutionIndex != PCD_RESOLUTION_3)
+		int resolution = getScaledResolutionIndex();
+		if (resolution != PCD_RESOLUTION_1 &&
+		    resolution != PCD_RESOLUTION_2 &&
+		    resolution != PCD_RESOLUTION_3)
 		{
 			throw new UnsupportedTypeException("Error reading PCD input " +
 				"stream. Only the three lowest resolutions are supported.");
@@ -337,8 +362,8 @@ public class PCDCodec extends ImageCodec implements YCbCrIndex
 		}
 		// get image orientation and resolution
 		int rotationAngle = sector[0x602] & 0x03;
-		int width = PCD_RESOLUTIONS[resolutionIndex][0];
-		int height = PCD_RESOLUTIONS[resolutionIndex][1];
+		int width = PCD_RESOLUTIONS[resolution][0];
+		int height = PCD_RESOLUTIONS[resolution][1];
 		int realWidth = width;
 		int realHeight = height;
 		if (rotationAngle == ROTATE_90_LEFT || rotationAngle == ROTATE_90_RIGHT)
@@ -351,13 +376,13 @@ public class PCDCodec extends ImageCodec implements YCbCrIndex
 			setBounds(0, 0, realWidth - 1, realHeight - 1);
 		}
 		// determine which uncompressed image will be loaded
-		int uncompressedResolution = resolutionIndex;
-		if (resolutionIndex > PCD_RESOLUTION_3)
+		int uncompressedResolution = resolution;
+		if (resolution > PCD_RESOLUTION_3)
 		{
 			uncompressedResolution = PCD_RESOLUTION_3;
 		}
 		// load uncompressed image
-		data = allocateMemory();
+		data = allocateMemory(uncompressedResolution);
 		loadUncompressedImage(uncompressedResolution);
 		// reverse color subsampling if necessary
 		if (!monochrome)
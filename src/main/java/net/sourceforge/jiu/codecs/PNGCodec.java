@@ -8,6 +8,7 @@
 package net.sourceforge.jiu.codecs;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.FileInputStream;
@@ -16,11 +17,14 @@ import java.io.IOException;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.SimpleTimeZone;
+import java.util.zip.Adler32;
 import java.util.zip.CheckedInputStream;
 import java.util.zip.Deflater;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import java.util.zip.CRC32;
 import net.sourceforge.jiu.data.BilevelImage;
+import net.sourceforge.jiu.data.ByteChannelImage;
 import net.sourceforge.jiu.data.Gray16Image;
 import net.sourceforge.jiu.data.Gray8Image;
 import net.sourceforge.jiu.data.IntegerImage;
@@ -95,6 +99,36 @@ class PngIdatInputStream extends InputStream
 		return in.read();
 	}
 
+	/**
+	 * Reads up to <code>length</code> bytes of compressed data with a single
+	 * bulk read from the underlying stream.
+	 * The chunk trailer and the header of the next IDAT chunk are only skipped
+	 * when the current chunk is exhausted and no byte has been read by this call,
+	 * so the stream never reads beyond the last IDAT chunk as long as the
+	 * caller stops after the end of the compressed data.
+	 */
+	public int read(byte[] dest, int offset, int length) throws IOException
+	{
+		if (length == 0)
+		{
+			return 0;
+		}
+		if (bytesLeft == 0)
+		{
+			skipHeaders();
+		}
+		if (length > bytesLeft)
+		{
+			length = (int)bytesLeft;
+		}
+		int numRead = in.read(dest, offset, length);
+		if (numRead > 0)
+		{
+			bytesLeft -= numRead;
+		}
+		return numRead;
+	}
+
 	private void skipHeaders() throws IOException
 	{
 		do
@@ -171,6 +205,12 @@ class PngIdatInputStream extends InputStream
  * This codec regards the bounds concept.
  * If bounds are specified with {@link #setBounds}, the codec will only load or save
  * part of an image.
+ * <h3>Streaming</h3>
+ * Rows of non-interlaced images are passed to a {@link RowConsumer} (if one was
+ * given with {@link #setRowConsumer}) as they are decompressed,
+ * only one row is kept in memory.
+ * Adam7-interlaced images are loaded completely and then passed on in one call.
+ * The same mechanism reduces images to a decode scale (see {@link #setDecodeScale}).
  * <h3>Metadata</h3>
  * <h4>Loading</h4>
  * <ul>
@@ -190,6 +230,14 @@ class PngIdatInputStream extends InputStream
  *  <li>Time of modification is stored in a <code>tIME</code> chunk.
  *   Use {@link #setModification(Calendar)} to give a point in time to this codec.</li>
  * </ul>
+ * <h4>Filtering and compression</h4>
+ * Rows of grayscale and truecolor images with eight or more bits per sample
+ * are filtered adaptively: for each row the filter type with the smallest sum of
+ * absolute differences is chosen (see {@link #setAdaptiveFiltering}).
+ * With {@link #setNumThreads} groups of rows are compressed in parallel,
+ * each with its own {@link java.util.zip.Deflater}; the results are joined
+ * into a single zlib stream, so the file can be read by any PNG decoder.
+ * This requires Java 7 or higher (for {@link java.util.zip.Deflater#SYNC_FLUSH}).
  * <h3>Implementation details</h3>
  * This class relies heavily on the Java runtime library for decompression and 
  * checksum creation.
@@ -234,6 +282,8 @@ public class PNGCodec extends ImageCodec
 	private final int MAX_TEXT_SIZE = 512;
 	private final int ADAM7_NUM_PASSES = 7;
 	private final int DEFAULT_ENCODING_MIN_IDAT_SIZE = 32 * 1024;
+	private final int MIN_ROWS_PER_GROUP = 32;
+	private final int INFLATER_INPUT_SIZE = 64 * 1024;
 	private final int[] ADAM7_COLUMN_INCREMENT = {8, 8, 4, 4, 2, 2, 1};
 	private final int[] ADAM7_FIRST_COLUMN = {0, 4, 0, 2, 0, 1, 0};
 	private final int[] ADAM7_FIRST_ROW = {0, 0, 4, 0, 2, 0, 1};
@@ -242,8 +292,10 @@ public class PNGCodec extends ImageCodec
 		{(byte)0x89, (byte)0x50, (byte)0x4e, (byte)0x47,
 		 (byte)0x0d, (byte)0x0a, (byte)0x1a, (byte)0x0a};
 
+	private boolean adaptiveFiltering = true;
 	private boolean alpha;
 	private byte[][] buffers;
+	private byte[] channelBuffer;
 	private int bpp;
 	private CRC32 checksum;
 	private CheckedInputStream checkedIn;
@@ -255,18 +307,23 @@ public class PNGCodec extends ImageCodec
 	private int deflateStrategy = Deflater.DEFAULT_STRATEGY;
 	private int encodingMinIdatSize = DEFAULT_ENCODING_MIN_IDAT_SIZE;
 	private int filterType;
+	private final byte[] filterTypeBuffer = new byte[1];
 	private boolean hasIhdr;
 	private int height;
 	private IntegerImage image;
+	private PngIdatInputStream idatIn;
 	private DataInputStream in;
-	private InflaterInputStream infl;
+	private Inflater inflater;
+	private byte[] inflaterInput;
 	private int interlaceType;
 	private Calendar modification;
 	private int numChannels;
+	private int numThreads = 1;
 	private DataOutput out;
 	private Palette palette;
 	private int precision;
 	private int previousBufferIndex;
+	private boolean probing;
 	private int width;
 
 	/**
@@ -274,12 +331,33 @@ public class PNGCodec extends ImageCodec
 	 * taking into consideration the fields width, height, precision and colorType.
 	 * Assumes that an IHDR chunk has been read and the above mentioned
 	 * fields have been initialized and checked for their validity.
-	 */ 
+	 * If an image object was given to this codec via {@link #setImage}
+	 * and it has the required type and resolution, that object is used
+	 * instead (e.g. an image stored outside of the heap like
+	 * {@link net.sourceforge.jiu.data.MappedGray8Image}).
+	 * When rows of a non-interlaced image are passed to a {@link RowConsumer}
+	 * or reduced to a decode scale, a new image object with a single row is always created.
+	 */
 	private void allocateImage() throws InvalidFileStructureException, UnsupportedTypeException
 	{
 		setBoundsIfNecessary(width, height);
+		initRowStreaming();
 		int w = getBoundsWidth();
 		int h = getBoundsHeight();
+		if (isStreamingRows())
+		{
+			h = 1;
+		}
+		PixelImage target = getImage();
+		if (!isRowStreaming() &&
+		    target instanceof IntegerImage &&
+		    target.getWidth() == w &&
+		    target.getHeight() == h &&
+		    target.getImageType() == getRequiredImageType())
+		{
+			image = (IntegerImage)target;
+			return;
+		}
 		if (colorType == COLOR_TYPE_GRAY || colorType == COLOR_TYPE_GRAY_ALPHA)
 		{
 			if (precision == 1)
@@ -324,6 +402,45 @@ public class PNGCodec extends ImageCodec
 		}
 	}
 
+	/**
+	 * Returns the image data interface that {@link #allocateImage} would pick
+	 * for the values of the fields precision and colorType, or <code>null</code>
+	 * if a user-provided image cannot be used (indexed images, which need the
+	 * palette from the stream).
+	 */
+	private Class getRequiredImageType()
+	{
+		if (colorType == COLOR_TYPE_GRAY || colorType == COLOR_TYPE_GRAY_ALPHA)
+		{
+			if (precision == 1)
+			{
+				return BilevelImage.class;
+			}
+			else
+			if (precision <= 8)
+			{
+				return Gray8Image.class;
+			}
+			else
+			{
+				return Gray16Image.class;
+			}
+		}
+		else
+		if (colorType == COLOR_TYPE_RGB || colorType == COLOR_TYPE_RGB_ALPHA)
+		{
+			if (precision == 8)
+			{
+				return RGB24Image.class;
+			}
+			else
+			{
+				return RGB48Image.class;
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Checks values {@link #precision} and {@link #colorType}.
 	 * A lot of combinations possibly found in an IHDR chunk
@@ -401,6 +518,137 @@ public class PNGCodec extends ImageCodec
 		}
 	}
 
+	/**
+	 * Computes the checksum of two concatenated byte sequences from the
+	 * Adler-32 checksums of the sequences and the length of the second one,
+	 * like zlib's adler32_combine.
+	 */
+	private static long combineAdler32(long adler1, long adler2, long length2)
+	{
+		final int BASE = 65521;
+		long rem = length2 % BASE;
+		long sum1 = adler1 & 0xffff;
+		long sum2 = (rem * sum1) % BASE;
+		sum1 += (adler2 & 0xffff) + BASE - 1;
+		sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + BASE - rem;
+		if (sum1 >= BASE)
+		{
+			sum1 -= BASE;
+		}
+		if (sum1 >= BASE)
+		{
+			sum1 -= BASE;
+		}
+		if (sum2 >= (BASE << 1))
+		{
+			sum2 -= (BASE << 1);
+		}
+		if (sum2 >= BASE)
+		{
+			sum2 -= BASE;
+		}
+		return sum1 | (sum2 << 16);
+	}
+
+	/**
+	 * Creates the two byte header of a zlib stream for the current compression level.
+	 */
+	private byte[] createZlibHeader()
+	{
+		// deflate with a 32 KB window
+		int cmf = 0x78;
+		int level;
+		if (deflateLevel == Deflater.DEFAULT_COMPRESSION || deflateLevel == 6)
+		{
+			level = 2;
+		}
+		else
+		if (deflateLevel < 2)
+		{
+			level = 0;
+		}
+		else
+		if (deflateLevel < 6)
+		{
+			level = 1;
+		}
+		else
+		{
+			level = 3;
+		}
+		int flg = level << 6;
+		flg += 31 - ((cmf << 8) + flg) % 31;
+		return new byte[] {(byte)cmf, (byte)flg};
+	}
+
+	/**
+	 * Returns the row to be compressed for an unfiltered row.
+	 * Both row arguments store their bytes starting at index 1.
+	 * With adaptive filtering (see {@link #setAdaptiveFiltering}) all five filter
+	 * types are applied and the row whose bytes, interpreted as signed values,
+	 * have the smallest sum of absolute values is picked, the heuristic
+	 * recommended by the PNG specification.
+	 * Rows of indexed images and images with fewer than eight bits per sample
+	 * are not filtered, following the same recommendation.
+	 * @param row unfiltered row
+	 * @param prev unfiltered previous row, all zeroes for the first row
+	 * @param filtered five arrays of the rows' length, to be used for the filtered rows
+	 * @return either row or one of the filtered arrays, with the filter type at index 0
+	 */
+	private byte[] filterRow(byte[] row, byte[] prev, byte[][] filtered)
+	{
+		row[0] = (byte)FILTER_TYPE_NONE;
+		if (!adaptiveFiltering || precision < 8 || colorType == COLOR_TYPE_INDEXED)
+		{
+			return row;
+		}
+		final int N = row.length;
+		final int BPP = Math.min(bpp, N - 1);
+		byte[] best = row;
+		int bestSum = sumAbsolute(row);
+		byte[] sub = filtered[FILTER_TYPE_SUB];
+		byte[] up = filtered[FILTER_TYPE_UP];
+		byte[] average = filtered[FILTER_TYPE_AVERAGE];
+		byte[] paeth = filtered[FILTER_TYPE_PAETH];
+		for (int x = 1; x <= BPP; x++)
+		{
+			sub[x] = row[x];
+			up[x] = (byte)(row[x] - prev[x]);
+			average[x] = (byte)(row[x] - ((prev[x] & 0xff) >> 1));
+			paeth[x] = (byte)(row[x] - prev[x]);
+		}
+		for (int x = BPP + 1; x < N; x++)
+		{
+			sub[x] = (byte)(row[x] - row[x - BPP]);
+			up[x] = (byte)(row[x] - prev[x]);
+			average[x] = (byte)(row[x] - (((row[x - BPP] & 0xff) + (prev[x] & 0xff)) >> 1));
+			paeth[x] = (byte)(row[x] - getPaeth(row[x - BPP], prev[x], prev[x - BPP]));
+		}
+		for (int type = FILTER_TYPE_SUB; type <= FILTER_TYPE_PAETH; type++)
+		{
+			byte[] candidate = filtered[type];
+			candidate[0] = (byte)type;
+			int sum = sumAbsolute(candidate);
+			if (sum < bestSum)
+			{
+				best = candidate;
+				bestSum = sum;
+			}
+		}
+		return best;
+	}
+
+	private static int sumAbsolute(byte[] data)
+	{
+		int sum = 0;
+		for (int i = 1; i < data.length; i++)
+		{
+			int value = data[i];
+			sum += value < 0 ? -value : value;
+		}
+		return sum;
+	}
+
 	private void fillRowBuffer(int y, byte[] row, int offs)
 	{
 		PixelImage image = getImage();
@@ -484,6 +732,16 @@ public class PNGCodec extends ImageCodec
 		return result.toString();
 	}
 
+	/**
+	 * Returns the number of threads used to compress image data when saving.
+	 * @see #setNumThreads
+	 * @since 0.14.3
+	 */
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
 	public String getFormatName()
 	{
 		return "Portable Network Graphics (PNG)";
@@ -526,27 +784,85 @@ public class PNGCodec extends ImageCodec
 		return c;
 	}
 
-	private void inflateBytes(byte[] buffer, int numBytes) throws InvalidFileStructureException, IOException
+	/**
+	 * Decompresses exactly <code>numBytes</code> bytes into the argument buffer.
+	 * Whenever the inflater runs out of input, it is given the next
+	 * 64 KB (or less, at the end of an IDAT chunk) of compressed data,
+	 * read with a single bulk read.
+	 */
+	private void inflateBytes(byte[] buffer, int offset, int numBytes) throws InvalidFileStructureException, IOException
 	{
-		int offset = 0;
-		do
+		while (numBytes > 0)
 		{
+			int numInflated;
 			try
 			{
-				int toRead = numBytes - offset;
-				int numRead = infl.read(buffer, offset, toRead);
-				if (numRead < 0)
-				{
-					throw new InvalidFileStructureException("Cannot fill buffer");
-				}
-				offset += numRead;
+				numInflated = inflater.inflate(buffer, offset, numBytes);
 			}
-			catch (IOException ioe)
+			catch (DataFormatException dfe)
 			{
-				throw new InvalidFileStructureException("Stopped decompressing " + ioe.toString());
+				throw new InvalidFileStructureException("Stopped decompressing " + dfe.toString());
 			}
+			if (numInflated == 0)
+			{
+				if (inflater.finished() || inflater.needsDictionary())
+				{
+					throw new InvalidFileStructureException("Cannot fill buffer, compressed data ended prematurely.");
+				}
+				if (inflater.needsInput())
+				{
+					int numRead;
+					try
+					{
+						numRead = idatIn.read(inflaterInput, 0, inflaterInput.length);
+					}
+					catch (IOException ioe)
+					{
+						throw new InvalidFileStructureException("Stopped decompressing " + ioe.toString());
+					}
+					if (numRead < 0)
+					{
+						throw new InvalidFileStructureException("Cannot fill buffer, unexpected end of input.");
+					}
+					inflater.setInput(inflaterInput, 0, numRead);
+				}
+			}
+			offset += numInflated;
+			numBytes -= numInflated;
+		}
+	}
+
+	/**
+	 * Checks the image index and creates the input stream objects used for loading.
+	 * @since 0.14.3
+	 */
+	private void initLoading() throws
+		InvalidImageIndexException,
+		MissingParameterException
+	{
+		if (getImageIndex() != 0)
+		{
+			throw new InvalidImageIndexException("PNG streams can only store one image; " + 
+				"index " + getImageIndex() + " is thus not valid.");
 		}
-		while (offset != numBytes);
+		InputStream input = getInputStream();
+		if (input == null)
+		{
+			throw new MissingParameterException("InputStream object missing.");
+		}
+		checksum = new CRC32();
+		checkedIn = new CheckedInputStream(input, checksum);
+		in = new DataInputStream(checkedIn);
+	}
+
+	/**
+	 * Returns whether rows are filtered adaptively when saving.
+	 * @see #setAdaptiveFiltering
+	 * @since 0.14.3
+	 */
+	public boolean isAdaptiveFiltering()
+	{
+		return adaptiveFiltering;
 	}
 
 	public boolean isLoadingSupported()
@@ -559,7 +875,16 @@ public class PNGCodec extends ImageCodec
 		return true;
 	}
 
-	private void load() throws 
+	/**
+	 * Returns whether rows are passed to {@link #consumeRows} one at a time,
+	 * which is the case for non-interlaced images only.
+	 */
+	private boolean isStreamingRows()
+	{
+		return isRowStreaming() && interlaceType == INTERLACING_NONE;
+	}
+
+	private void load() throws
 		InvalidFileStructureException,
 		IOException,
 		UnsupportedTypeException,
@@ -576,17 +901,26 @@ public class PNGCodec extends ImageCodec
 			}
 		}
 		chunkCounter = 0;
+		int chunkName;
 		do
 		{
-			loadChunk();
+			chunkName = loadChunk();
 			chunkCounter++;
 		}
-		while (image == null);
+		while (image == null && !(probing && chunkName == CHUNK_TYPE_IDAT));
 		close();
-		setImage(image);
+		if (!probing)
+		{
+			setImage(image);
+			finishRowStreaming();
+		}
 	}
 
-	private void loadChunk() throws InvalidFileStructureException, IOException, UnsupportedTypeException
+	/**
+	 * Reads one chunk and returns its type.
+	 * When probing, reading stops at the first IDAT chunk, right after its type.
+	 */
+	private int loadChunk() throws InvalidFileStructureException, IOException, UnsupportedTypeException
 	{
 		/*
 		 * read chunk size; according to the PNG specs, the size value must not be larger
@@ -606,6 +940,11 @@ public class PNGCodec extends ImageCodec
 			// image data chunk
 			case(CHUNK_TYPE_IDAT):
 			{
+				if (probing)
+				{
+					// all chunks relevant for probing precede the image data
+					return chunkName;
+				}
 				loadImage(chunkSize);
 				break;
 			}
@@ -714,6 +1053,7 @@ public class PNGCodec extends ImageCodec
 					"; file is corrupted.");
 			}
 		}
+		return chunkName;
 	}
 
 	/**
@@ -742,20 +1082,33 @@ public class PNGCodec extends ImageCodec
 		allocateImage();
 		// create a PngIdatInputStream which will skip header information when
 		// multiple IDAT chunks are in the input stream
-		infl = new InflaterInputStream(new PngIdatInputStream(in, chunkSize));
-		switch(interlaceType)
+		idatIn = new PngIdatInputStream(in, chunkSize);
+		inflater = new Inflater();
+		inflaterInput = new byte[INFLATER_INPUT_SIZE];
+		try
 		{
-			case(INTERLACING_NONE):
+			switch(interlaceType)
 			{
-				loadImageNonInterlaced();
-				break;
-			}
-			case(INTERLACING_ADAM7):
-			{
-				loadImageInterlacedAdam7();
-				break;
+				case(INTERLACING_NONE):
+				{
+					loadImageNonInterlaced();
+					break;
+				}
+				case(INTERLACING_ADAM7):
+				{
+					loadImageInterlacedAdam7();
+					// rows are only complete after the last pass
+					consumeRows(image, 0, getBoundsHeight());
+					break;
+				}
 			}
 		}
+		finally
+		{
+			inflater.end();
+			inflater = null;
+			inflaterInput = null;
+		}
 	}
 
 	/**
@@ -835,7 +1188,7 @@ public class PNGCodec extends ImageCodec
 				previousBuffer = buffers[previousBufferIndex];
 				byte[] currentBuffer = buffers[currentBufferIndex];
 				int rowFilterType = readFilterType();
-				inflateBytes(currentBuffer, numBytes);
+				inflateBytes(currentBuffer, 0, numBytes);
 				reverseFilter(rowFilterType, currentBuffer, previousBuffer, numBytes);
 				if (isRowRequired(y))
 				{
@@ -859,16 +1212,19 @@ public class PNGCodec extends ImageCodec
 	{
 		int linesToRead = getBoundsY2() + 1;
 		int rowLength = computeBytesPerRow(width);
+		// in streaming mode, the image holds only the current row
+		final boolean STREAMING = isStreamingRows();
 		for (int y = 0, destY = - getBoundsY1(); y <= getBoundsY2(); y++, destY++)
 		{
 			byte[] currentBuffer = buffers[currentBufferIndex];
 			byte[] previousBuffer = buffers[previousBufferIndex];
 			int rowFilterType = readFilterType();
-			inflateBytes(currentBuffer, rowLength);
+			inflateBytes(currentBuffer, 0, rowLength);
 			reverseFilter(rowFilterType, currentBuffer, previousBuffer, rowLength);
 			if (isRowRequired(y))
 			{
-				storeNonInterlaced(destY, currentBuffer);
+				storeNonInterlaced(STREAMING ? 0 : destY, currentBuffer);
+				consumeRows(image, destY, 1);
 			}
 			setProgress(y, linesToRead);
 			previousBufferIndex = 1 - previousBufferIndex;
@@ -920,6 +1276,38 @@ public class PNGCodec extends ImageCodec
 		codec.close();
 	}
 
+	/**
+	 * Reads all chunks up to the first IDAT chunk and returns resolution,
+	 * physical resolution (from a pHYs chunk, if present) and image type.
+	 * Image data is not read.
+	 * @since 0.14.3
+	 */
+	public ImageDescriptor probe() throws
+		MissingParameterException,
+		OperationFailedException
+	{
+		probing = true;
+		try
+		{
+			initLoading();
+			load();
+		}
+		catch (IOException ioe)
+		{
+			throw new OperationFailedException("I/O failure: " + ioe.toString());
+		}
+		finally
+		{
+			probing = false;
+		}
+		Class imageType = getRequiredImageType();
+		if (imageType == null)
+		{
+			imageType = Paletted8Image.class;
+		}
+		return createDescriptor(width, height, imageType, 1);
+	}
+
 	public void process() throws
 		InvalidFileStructureException,
 		MissingParameterException,
@@ -932,19 +1320,7 @@ public class PNGCodec extends ImageCodec
 		{
 			try
 			{
-				if (getImageIndex() != 0)
-				{
-					throw new InvalidImageIndexException("PNG streams can only store one image; " + 
-						"index " + getImageIndex() + " is thus not valid.");
-				}
-				InputStream input = getInputStream();
-				if (input == null)
-				{
-					throw new MissingParameterException("InputStream object missing.");
-				}
-				checksum = new CRC32();
-				checkedIn = new CheckedInputStream(input, checksum);
-				in = new DataInputStream(checkedIn);
+				initLoading();
 				load();
 			}
 			catch (IOException ioe)
@@ -983,7 +1359,8 @@ public class PNGCodec extends ImageCodec
 
 	private int readFilterType() throws InvalidFileStructureException, IOException
 	{
-		int filterType = infl.read();
+		inflateBytes(filterTypeBuffer, 0, 1);
+		int filterType = filterTypeBuffer[0] & 0xff;
 		if (filterType >= 0 && filterType <= 4)
 		{
 			return filterType;
@@ -994,8 +1371,15 @@ public class PNGCodec extends ImageCodec
 		}
 	}
 
+	/**
+	 * Undoes the filtering of a row in place.
+	 * Each filter has two loops: one for the first <code>bpp</code> bytes, which have no
+	 * left neighbour, and one for the rest of the row without any conditionals,
+	 * simple enough for the just-in-time compiler to unroll or vectorize.
+	 */
 	private void reverseFilter(int rowFilterType, byte[] buffer, byte[] prev, int numBytes) throws UnsupportedTypeException
 	{
+		final int BPP = Math.min(bpp, numBytes);
 		switch(rowFilterType)
 		{
 			case(FILTER_TYPE_NONE):
@@ -1004,18 +1388,9 @@ public class PNGCodec extends ImageCodec
 			}
 			case(FILTER_TYPE_SUB):
 			{
-				for (int x = 0, px = -bpp; x < numBytes; x++, px++)
+				for (int x = BPP; x < numBytes; x++)
 				{
-					byte currXMinusBpp;
-					if (px < 0)
-					{
-						currXMinusBpp = 0;
-					}
-					else
-					{
-						currXMinusBpp = buffer[px];
-					}
-					buffer[x] = (byte)(buffer[x] + currXMinusBpp);
+					buffer[x] += buffer[x - BPP];
 				}
 				break;
 			}
@@ -1023,48 +1398,64 @@ public class PNGCodec extends ImageCodec
 			{
 				for (int x = 0; x < numBytes; x++)
 				{
-					buffer[x] = (byte)(buffer[x] + prev[x]);
+					buffer[x] += prev[x];
 				}
 				break;
 			}
 			case(FILTER_TYPE_AVERAGE):
 			{
-				for (int x = 0, px = -bpp; x < numBytes; x++, px++)
+				for (int x = 0; x < BPP; x++)
 				{
-					int currX = buffer[x] & 0xff;
-					int currXMinus1;
-					if (px < 0)
-					{
-						currXMinus1 = 0;
-					}
-					else
-					{
-						currXMinus1 = buffer[px] & 0xff;
-					}
-					int prevX = prev[x] & 0xff;
-					int result = currX + ((currXMinus1 + prevX) / 2);
-					byte byteResult = (byte)result;
-					buffer[x] = byteResult;
+					buffer[x] += (prev[x] & 0xff) >> 1;
+				}
+				for (int x = BPP; x < numBytes; x++)
+				{
+					buffer[x] += ((buffer[x - BPP] & 0xff) + (prev[x] & 0xff)) >> 1;
 				}
 				break;
 			}
 			case(FILTER_TYPE_PAETH):
 			{
-				for (int x = 0, px = -bpp; x < numBytes; x++, px++)
+				// with left and upper left neighbour being zero the predictor is the upper neighbour
+				for (int x = 0; x < BPP; x++)
 				{
-					byte currXMinusBpp; 
-					byte prevXMinusBpp;
-					if (px < 0)
+					buffer[x] += prev[x];
+				}
+				for (int x = BPP; x < numBytes; x++)
+				{
+					int a = buffer[x - BPP] & 0xff;
+					int b = prev[x] & 0xff;
+					int c = prev[x - BPP] & 0xff;
+					int pa = b - c;
+					int pb = a - c;
+					int pc = pa + pb;
+					if (pa < 0)
 					{
-						currXMinusBpp = 0;
-						prevXMinusBpp = 0;
+						pa = -pa;
+					}
+					if (pb < 0)
+					{
+						pb = -pb;
+					}
+					if (pc < 0)
+					{
+						pc = -pc;
+					}
+					int predictor;
+					if (pa <= pb && pa <= pc)
+					{
+						predictor = a;
 					}
 					else
+					if (pb <= pc)
 					{
-						currXMinusBpp = buffer[px];
-						prevXMinusBpp = prev[px];
+						predictor = b;
 					}
-					buffer[x] = (byte)(buffer[x] + getPaeth(currXMinusBpp, prev[x], prevXMinusBpp));
+					else
+					{
+						predictor = c;
+					}
+					buffer[x] += predictor;
 				}
 				break;
 			}
@@ -1195,8 +1586,17 @@ public class PNGCodec extends ImageCodec
 
 	private void saveImageNonInterlaced() throws IOException
 	{
+		bpp = computeBytesPerRow(1);
+		int numRows = getBoundsHeight();
+		if (numThreads > 1 && numRows > MIN_ROWS_PER_GROUP)
+		{
+			saveImageNonInterlacedParallel();
+			return;
+		}
 		int bytesPerRow = computeBytesPerRow(getBoundsWidth());
 		byte[] rowBuffer = new byte[bytesPerRow + 1];
+		byte[] previousRowBuffer = new byte[bytesPerRow + 1];
+		byte[][] filterBuffers = new byte[FILTER_TYPE_PAETH + 1][bytesPerRow + 1];
 		byte[] outBuffer = new byte[Math.max(encodingMinIdatSize, bytesPerRow + 1)];
 		int outOffset = 0;
 		int numDeflated;
@@ -1205,10 +1605,9 @@ public class PNGCodec extends ImageCodec
 		for (int y = getBoundsY1(); y <= getBoundsY2(); y++)
 		{
 			// fill row buffer
-			rowBuffer[0] = (byte)FILTER_TYPE_NONE;
 			fillRowBuffer(y, rowBuffer, 1);
 			// give it to compressor 
-			defl.setInput(rowBuffer);
+			defl.setInput(filterRow(rowBuffer, previousRowBuffer, filterBuffers));
 			// store compressed data in outBuffer 
 			do
 			{
@@ -1221,6 +1620,9 @@ public class PNGCodec extends ImageCodec
 				}
 			}
 			while (numDeflated > 0);
+			byte[] temp = previousRowBuffer;
+			previousRowBuffer = rowBuffer;
+			rowBuffer = temp;
 			setProgress(y - getBoundsY1(), getBoundsHeight());
 		}
 		// tell Deflater that it got all the input
@@ -1237,6 +1639,7 @@ public class PNGCodec extends ImageCodec
 			}
 		}
 		while (numDeflated > 0);
+		defl.end();
 		// write final IDAT chunk if necessary
 		if (outOffset > 0)
 		{
@@ -1244,6 +1647,203 @@ public class PNGCodec extends ImageCodec
 		}
 	}
 
+	/**
+	 * Compresses groups of rows in several threads, each group with its own
+	 * raw (header-less) {@link java.util.zip.Deflater}.
+	 * Each group but the last ends with a sync flush, so that it ends at a byte boundary
+	 * and its compressed data can simply be appended to that of the previous group.
+	 * The zlib header and the Adler-32 checksum of all groups are written by this method.
+	 */
+	private void saveImageNonInterlacedParallel() throws IOException
+	{
+		final int Y1 = getBoundsY1();
+		final int NUM_ROWS = getBoundsHeight();
+		final int ROWS_PER_GROUP = Math.max(MIN_ROWS_PER_GROUP, (NUM_ROWS + numThreads * 4 - 1) / (numThreads * 4));
+		final int NUM_GROUPS = (NUM_ROWS + ROWS_PER_GROUP - 1) / ROWS_PER_GROUP;
+		final byte[][] compressed = new byte[NUM_GROUPS][];
+		final long[] checksums = new long[NUM_GROUPS];
+		final int[] counters = new int[2]; // next group, finished groups
+		final Exception[] failure = new Exception[1];
+		final int NUM_THREADS = Math.min(numThreads, NUM_GROUPS);
+		Thread[] threads = new Thread[NUM_THREADS];
+		for (int i = 0; i < NUM_THREADS; i++)
+		{
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						while (true)
+						{
+							int group;
+							synchronized(counters)
+							{
+								if (counters[0] == NUM_GROUPS || failure[0] != null || getAbort())
+								{
+									return;
+								}
+								group = counters[0]++;
+							}
+							int y1 = Y1 + group * ROWS_PER_GROUP;
+							int y2 = Math.min(y1 + ROWS_PER_GROUP, Y1 + NUM_ROWS) - 1;
+							Adler32 adler = new Adler32();
+							compressed[group] = compressRows(y1, y2, group == NUM_GROUPS - 1, adler);
+							checksums[group] = adler.getValue();
+							synchronized(counters)
+							{
+								setProgress(counters[1]++, NUM_GROUPS);
+							}
+						}
+					}
+					catch (Exception e)
+					{
+						synchronized(counters)
+						{
+							failure[0] = e;
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i = 0; i < NUM_THREADS; i++)
+		{
+			try
+			{
+				threads[i].join();
+			}
+			catch (InterruptedException ie)
+			{
+				throw new IOException("Interrupted while waiting for encoder threads.");
+			}
+		}
+		Exception e = failure[0];
+		if (e instanceof IOException)
+		{
+			throw (IOException)e;
+		}
+		if (e instanceof RuntimeException)
+		{
+			throw (RuntimeException)e;
+		}
+		if (getAbort())
+		{
+			return;
+		}
+		// combine checksums of all groups
+		long adler = checksums[0];
+		int bytesPerGroup = (computeBytesPerRow(getBoundsWidth()) + 1) * ROWS_PER_GROUP;
+		for (int i = 1; i < NUM_GROUPS; i++)
+		{
+			int numBytes = bytesPerGroup;
+			if (i == NUM_GROUPS - 1)
+			{
+				numBytes = (computeBytesPerRow(getBoundsWidth()) + 1) * (NUM_ROWS - i * ROWS_PER_GROUP);
+			}
+			adler = combineAdler32(adler, checksums[i], numBytes);
+		}
+		// zlib stream: header, compressed groups, checksum
+		byte[][] parts = new byte[NUM_GROUPS + 2][];
+		parts[0] = createZlibHeader();
+		System.arraycopy(compressed, 0, parts, 1, NUM_GROUPS);
+		byte[] trailer = new byte[4];
+		ArrayConverter.setIntBE(trailer, 0, (int)adler);
+		parts[NUM_GROUPS + 1] = trailer;
+		saveIdatChunks(parts);
+	}
+
+	/**
+	 * Filters and compresses rows <code>y1</code> to <code>y2</code> of the image
+	 * with a raw Deflater and returns the compressed data.
+	 * The uncompressed (filtered) bytes are added to the argument checksum.
+	 * @param last if true, the data is terminated as the end of the deflate stream,
+	 *  otherwise with a sync flush
+	 */
+	private byte[] compressRows(int y1, int y2, boolean last, Adler32 adler)
+	{
+		int bytesPerRow = computeBytesPerRow(getBoundsWidth());
+		byte[] rowBuffer = new byte[bytesPerRow + 1];
+		byte[] previousRowBuffer = new byte[bytesPerRow + 1];
+		byte[][] filterBuffers = new byte[FILTER_TYPE_PAETH + 1][bytesPerRow + 1];
+		if (y1 > getBoundsY1())
+		{
+			// filters refer to the last row of the previous group
+			fillRowBuffer(y1 - 1, previousRowBuffer, 1);
+		}
+		Deflater defl = new Deflater(deflateLevel, true);
+		defl.setStrategy(deflateStrategy);
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] outBuffer = new byte[Math.max(64 * 1024, bytesPerRow + 1)];
+		int numDeflated;
+		for (int y = y1; y <= y2; y++)
+		{
+			fillRowBuffer(y, rowBuffer, 1);
+			byte[] filtered = filterRow(rowBuffer, previousRowBuffer, filterBuffers);
+			adler.update(filtered);
+			defl.setInput(filtered);
+			while (!defl.needsInput())
+			{
+				numDeflated = defl.deflate(outBuffer);
+				result.write(outBuffer, 0, numDeflated);
+			}
+			byte[] temp = previousRowBuffer;
+			previousRowBuffer = rowBuffer;
+			rowBuffer = temp;
+		}
+		if (last)
+		{
+			defl.finish();
+			while (!defl.finished())
+			{
+				numDeflated = defl.deflate(outBuffer);
+				result.write(outBuffer, 0, numDeflated);
+			}
+		}
+		else
+		{
+			do
+			{
+				numDeflated = defl.deflate(outBuffer, 0, outBuffer.length, Deflater.SYNC_FLUSH);
+				result.write(outBuffer, 0, numDeflated);
+			}
+			while (numDeflated == outBuffer.length);
+		}
+		defl.end();
+		return result.toByteArray();
+	}
+
+	/**
+	 * Writes the argument byte arrays, one after another, as a sequence of IDAT chunks,
+	 * all but the last of them {@link #setEncodingIdatSize} bytes large.
+	 */
+	private void saveIdatChunks(byte[][] parts) throws IOException
+	{
+		byte[] outBuffer = new byte[encodingMinIdatSize];
+		int outOffset = 0;
+		for (int i = 0; i < parts.length; i++)
+		{
+			byte[] part = parts[i];
+			int offset = 0;
+			while (offset < part.length)
+			{
+				int num = Math.min(part.length - offset, outBuffer.length - outOffset);
+				System.arraycopy(part, offset, outBuffer, outOffset, num);
+				offset += num;
+				outOffset += num;
+				if (outOffset == outBuffer.length)
+				{
+					saveChunk(CHUNK_TYPE_IDAT, outOffset, outBuffer);
+					outOffset = 0;
+				}
+			}
+		}
+		if (outOffset > 0)
+		{
+			saveChunk(CHUNK_TYPE_IDAT, outOffset, outBuffer);
+		}
+	}
+
 	private void savePhysChunk() throws IOException
 	{
 		int dpiX = getDpiX();
@@ -1308,6 +1908,22 @@ public class PNGCodec extends ImageCodec
 		saveChunk(CHUNK_TYPE_TIME, data.length, data);
 	}
 
+	/**
+	 * Specifies whether rows are filtered adaptively when saving.
+	 * If enabled, each row of a grayscale or truecolor image with eight or sixteen
+	 * bits per sample is stored with the filter type whose result has the
+	 * smallest sum of absolute values, which usually leads to considerably
+	 * smaller files at the cost of some encoding time.
+	 * If disabled, all rows are stored unfiltered.
+	 * Default is <code>true</code>.
+	 * @param newValue whether to filter adaptively
+	 * @since 0.14.3
+	 */
+	public void setAdaptiveFiltering(boolean newValue)
+	{
+		adaptiveFiltering = newValue;
+	}
+
 	/**
 	 * Sets the compression level to be used with the underlying
 	 * {@link java.util.zip.Deflater} object which does the compression.
@@ -1410,6 +2026,29 @@ public class PNGCodec extends ImageCodec
 		modification = time;
 	}
 
+	/**
+	 * Sets the number of threads used to compress image data when saving.
+	 * With more than one thread the image is split into groups of rows
+	 * which are filtered and compressed independently, and each thread takes the
+	 * next group that has not been compressed yet.
+	 * Compression is slightly worse than with a single thread, because
+	 * no group can refer to data of the groups before it.
+	 * Compressed data is kept in memory until all groups are finished.
+	 * Progress is reported only when a group is finished.
+	 * Default is 1, the calling thread does all the work.
+	 * @param newValue number of threads, 1 or larger
+	 * @throws IllegalArgumentException if the argument is smaller than 1
+	 * @since 0.14.3
+	 */
+	public void setNumThreads(int newValue)
+	{
+		if (newValue < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1: " + newValue);
+		}
+		numThreads = newValue;
+	}
+
 	/**
 	 * Skips a number of bytes in the input stream.
 	 * @param num number of bytes to be skipped
@@ -1546,7 +2185,7 @@ public class PNGCodec extends ImageCodec
 					{
 						int sample = (buffer[offset] & 0xff) << 8;
 						sample |= (buffer[offset + 1] & 0xff);
-						grayImage.putSample(x, y, sample);
+						grayImage.putSample(x - x1, y, sample);
 					}
 					x += incr;
 					offset += 2;
@@ -1589,7 +2228,7 @@ public class PNGCodec extends ImageCodec
 					{
 						int sample = (buffer[offset] & 0xff) << 8;
 						sample |= (buffer[offset + 1] & 0xff);
-						grayImage.putSample(x, y, sample);
+						grayImage.putSample(x - x1, y, sample);
 						// store alpha
 					}
 					x += incr;
@@ -1685,9 +2324,9 @@ public class PNGCodec extends ImageCodec
 			{
 				if (x >= x1)
 				{
-					rgbImage.putSample(RGB24Image.INDEX_RED, x, y, buffer[offset]);
-					rgbImage.putSample(RGB24Image.INDEX_GREEN, x, y, buffer[offset + 1]);
-					rgbImage.putSample(RGB24Image.INDEX_BLUE, x, y, buffer[offset + 2]);
+					rgbImage.putSample(RGB24Image.INDEX_RED, x - x1, y, buffer[offset]);
+					rgbImage.putSample(RGB24Image.INDEX_GREEN, x - x1, y, buffer[offset + 1]);
+					rgbImage.putSample(RGB24Image.INDEX_BLUE, x - x1, y, buffer[offset + 2]);
 				}
 				x += incr;
 				offset += 3;
@@ -1703,15 +2342,15 @@ public class PNGCodec extends ImageCodec
 				{
 					int red = (buffer[offset] & 0xff) << 8;
 					red |= buffer[offset + 1] & 0xff;
-					rgbImage.putSample(RGB24Image.INDEX_RED, x, y, red);
+					rgbImage.putSample(RGB24Image.INDEX_RED, x - x1, y, red);
 	
 					int green = (buffer[offset + 2] & 0xff) << 8;
 					green |= buffer[offset + 3] & 0xff;
-					rgbImage.putSample(RGB24Image.INDEX_GREEN, x, y, green);
+					rgbImage.putSample(RGB24Image.INDEX_GREEN, x - x1, y, green);
 		
 					int blue = (buffer[offset + 4] & 0xff) << 8;
 					blue |= buffer[offset + 5] & 0xff;
-					rgbImage.putSample(RGB24Image.INDEX_BLUE, x, y, blue);
+					rgbImage.putSample(RGB24Image.INDEX_BLUE, x - x1, y, blue);
 				}
 				x += incr;
 				offset += 6;
@@ -1733,9 +2372,9 @@ public class PNGCodec extends ImageCodec
 			{
 				if (x >= x1)
 				{
-					rgbImage.putSample(RGB24Image.INDEX_RED, x, y, buffer[offset]);
-					rgbImage.putSample(RGB24Image.INDEX_GREEN, x, y, buffer[offset + 1]);
-					rgbImage.putSample(RGB24Image.INDEX_BLUE, x, y, buffer[offset + 2]);
+					rgbImage.putSample(RGB24Image.INDEX_RED, x - x1, y, buffer[offset]);
+					rgbImage.putSample(RGB24Image.INDEX_GREEN, x - x1, y, buffer[offset + 1]);
+					rgbImage.putSample(RGB24Image.INDEX_BLUE, x - x1, y, buffer[offset + 2]);
 					// store alpha
 				}
 				x += incr;
@@ -1752,15 +2391,15 @@ public class PNGCodec extends ImageCodec
 				{
 					int red = (buffer[offset] & 0xff) << 8;
 					red |= buffer[offset + 1] & 0xff;
-					rgbImage.putSample(RGB24Image.INDEX_RED, x, y, red);
+					rgbImage.putSample(RGB24Image.INDEX_RED, x - x1, y, red);
 	
 					int green = (buffer[offset + 2] & 0xff) << 8;
 					green |= buffer[offset + 3] & 0xff;
-					rgbImage.putSample(RGB24Image.INDEX_GREEN, x, y, green);
+					rgbImage.putSample(RGB24Image.INDEX_GREEN, x - x1, y, green);
 		
 					int blue = (buffer[offset + 4] & 0xff) << 8;
 					blue |= buffer[offset + 5] & 0xff;
-					rgbImage.putSample(RGB24Image.INDEX_BLUE, x, y, blue);
+					rgbImage.putSample(RGB24Image.INDEX_BLUE, x - x1, y, blue);
 					
 					// store alpha
 				}
@@ -1771,6 +2410,27 @@ public class PNGCodec extends ImageCodec
 	}
 
 
+	/**
+	 * Copies every <code>step</code>-th byte of <code>buffer</code>, starting at
+	 * <code>offset</code>, to a contiguous array and stores that as row <code>y</code>
+	 * of one channel with a single call to
+	 * {@link net.sourceforge.jiu.data.ByteChannelImage#putByteSamples}.
+	 */
+	private void storeInterleavedByteSamples(ByteChannelImage dest, int channel, int y, byte[] buffer, int offset, int step)
+	{
+		int w = getBoundsWidth();
+		if (channelBuffer == null || channelBuffer.length < w)
+		{
+			channelBuffer = new byte[w];
+		}
+		byte[] samples = channelBuffer;
+		for (int x = 0; x < w; x++, offset += step)
+		{
+			samples[x] = buffer[offset];
+		}
+		dest.putByteSamples(channel, 0, y, w, 1, samples, 0);
+	}
+
 	private void storeNonInterlaced(int y, byte[] buffer)
 	{
 		switch(colorType)
@@ -1833,20 +2493,13 @@ public class PNGCodec extends ImageCodec
 			case(8):
 			{
 				Gray8Image grayImage = (Gray8Image)image;
-				int offset = getBoundsX1();
-				int x = 0;
-				int k = getBoundsWidth();
-				while (k > 0)
-				{
-					grayImage.putSample(0, x++, y, buffer[offset++]);
-					k--;
-				}
+				grayImage.putByteSamples(0, 0, y, getBoundsWidth(), 1, buffer, getBoundsX1());
 				break;
 			}
 			case(16):
 			{
 				Gray16Image grayImage = (Gray16Image)image;
-				int offset = getBoundsX1();
+				int offset = getBoundsX1() * 2;
 				int x = 0;
 				int k = getBoundsWidth();
 				while (k > 0)
@@ -1867,22 +2520,14 @@ public class PNGCodec extends ImageCodec
 		{
 			case(8):
 			{
-				Gray8Image grayImage = (Gray8Image)image;
-				int offset = getBoundsX1();
-				int x = 0;
-				int k = getBoundsWidth();
-				while (k > 0)
-				{
-					grayImage.putSample(0, x++, y, buffer[offset++]);
-					offset++; // skip alpha; should be stored in a TransparencyInformation object
-					k--;
-				}
+				// skip alpha; should be stored in a TransparencyInformation object
+				storeInterleavedByteSamples((Gray8Image)image, 0, y, buffer, getBoundsX1() * 2, 2);
 				break;
 			}
 			case(16):
 			{
 				Gray16Image grayImage = (Gray16Image)image;
-				int offset = getBoundsX1();
+				int offset = getBoundsX1() * 4;
 				int x = 0;
 				int k = getBoundsWidth();
 				while (k > 0)
@@ -1926,14 +2571,7 @@ public class PNGCodec extends ImageCodec
 			}
 			case(8):
 			{
-				int offset = getBoundsX1();
-				int x = 0;
-				int k = getBoundsWidth();
-				while (k > 0)
-				{
-					palImage.putSample(0, x++, y, buffer[offset++]);
-					k--;
-				}
+				palImage.putByteSamples(0, 0, y, getBoundsWidth(), 1, buffer, getBoundsX1());
 				break;
 			}
 		}
@@ -1945,16 +2583,9 @@ public class PNGCodec extends ImageCodec
 		{
 			RGB24Image rgbImage = (RGB24Image)image;
 			int offset = getBoundsX1() * 3;
-			int x = 0;
-			int k = getBoundsWidth();
-			while (k > 0)
-			{
-				rgbImage.putSample(RGB24Image.INDEX_RED, x, y, buffer[offset++]);
-				rgbImage.putSample(RGB24Image.INDEX_GREEN, x, y, buffer[offset++]);
-				rgbImage.putSample(RGB24Image.INDEX_BLUE, x, y, buffer[offset++]);
-				x++;
-				k--;
-			}
+			storeInterleavedByteSamples(rgbImage, RGB24Image.INDEX_RED, y, buffer, offset, 3);
+			storeInterleavedByteSamples(rgbImage, RGB24Image.INDEX_GREEN, y, buffer, offset + 1, 3);
+			storeInterleavedByteSamples(rgbImage, RGB24Image.INDEX_BLUE, y, buffer, offset + 2, 3);
 		}
 		else
 		if (precision == 16)
@@ -1990,18 +2621,11 @@ public class PNGCodec extends ImageCodec
 			case(8):
 			{
 				RGB24Image rgbImage = (RGB24Image)image;
-				int offset = getBoundsX1() * 3;
-				int x = 0;
-				int k = getBoundsWidth();
-				while (k > 0)
-				{
-					rgbImage.putSample(RGB24Image.INDEX_RED, x, y, buffer[offset++]);
-					rgbImage.putSample(RGB24Image.INDEX_GREEN, x, y, buffer[offset++]);
-					rgbImage.putSample(RGB24Image.INDEX_BLUE, x, y, buffer[offset++]);
-					offset++; // skip alpha; TODO: store in TransparencyInformation object
-					x++;
-					k--;
-				}
+				int offset = getBoundsX1() * 4;
+				// skip alpha; TODO: store in TransparencyInformation object
+				storeInterleavedByteSamples(rgbImage, RGB24Image.INDEX_RED, y, buffer, offset, 4);
+				storeInterleavedByteSamples(rgbImage, RGB24Image.INDEX_GREEN, y, buffer, offset + 1, 4);
+				storeInterleavedByteSamples(rgbImage, RGB24Image.INDEX_BLUE, y, buffer, offset + 2, 4);
 				break;
 			}
 			case(16):
@@ -15,6 +15,7 @@ import java.io.PushbackInputStream;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import net.sourceforge.jiu.data.BilevelImage;
+import net.sourceforge.jiu.data.ByteChannelImage;
 import net.sourceforge.jiu.data.GrayImage;
 import net.sourceforge.jiu.data.Gray16Image;
 import net.sourceforge.jiu.data.Gray8Image;
@@ -30,6 +31,7 @@ import net.sourceforge.jiu.data.RGB24Image;
 import net.sourceforge.jiu.data.RGB48Image;
 import net.sourceforge.jiu.data.RGBIndex;
 import net.sourceforge.jiu.data.RGBIntegerImage;
+import net.sourceforge.jiu.data.ShortChannelImage;
 import net.sourceforge.jiu.ops.MissingParameterException;
 import net.sourceforge.jiu.ops.OperationFailedException;
 import net.sourceforge.jiu.ops.WrongParameterException;
@@ -77,6 +79,11 @@ import net.sourceforge.jiu.ops.WrongParameterException;
  * <h3>Number of images</h3>
  * Only one image can be stored in a PNM file.
  *
+ * <h3>Streaming</h3>
+ * Rows are stored from top to bottom, so all PNM types can be passed to a
+ * {@link RowConsumer} one row at a time while loading.
+ * A decode scale (see {@link #setDecodeScale}) is applied to each row as it is loaded.
+ *
  * <h3>Usage example - load an image from a PNM file</h3>
  * <pre>
  * PNMCodec codec = new PNMCodec();
@@ -128,6 +135,7 @@ public class PNMCodec extends ImageCodec
 	private DataOutput out;
 	private int height;
 	private int maxSample;
+	private boolean streaming;
 	private int width;
 
 	/**
@@ -177,6 +185,15 @@ public class PNMCodec extends ImageCodec
 		return "Portable Anymap (PBM, PGM, PPM)";
 	}
 
+	/**
+	 * Returns the number of rows of an image object created for loading:
+	 * the bounds height, or one when rows are passed to {@link #consumeRows}.
+	 */
+	private int getImageHeight()
+	{
+		return streaming ? 1 : getBoundsHeight();
+	}
+
 	public String[] getMimeTypes()
 	{
 		return new String[] {"image/x-ppm", "image/x-pgm", "image/x-pbm", "image/x-pnm", 
@@ -232,41 +249,15 @@ public class PNMCodec extends ImageCodec
 		WrongFileFormatException,
 		WrongParameterException
 	{
-		InputStream is = getInputStream();
-		if (is != null)
-		{
-			if (is instanceof PushbackInputStream)
-			{
-				in = (PushbackInputStream)is;
-			}
-			else
-			{
-				in = new PushbackInputStream(is);
-			}
-		}
-		else
-		{
-			throw new MissingParameterException("InputStream object required for loading.");
-		}
-		loadType();
-		String resolutionLine = loadTextLine();
-		setResolution(resolutionLine);
+		loadHeader();
 		setBoundsIfNecessary(width, height);
-		if (imageType == IMAGE_TYPE_BILEVEL)
-		{
-			maxSample = 1;
-		}
-		else
-		{
-			// load maximum value
-			String maxSampleLine = loadTextLine();
-			setMaximumSample(maxSampleLine);
-		}
-		if (maxSample > 65535)
+		// when passing rows to a row consumer or reducing them, a new image object holds a single row
+		initRowStreaming();
+		streaming = isRowStreaming();
+		if (!streaming)
 		{
-			throw new UnsupportedTypeException("Cannot deal with samples larger than 65535.");
+			checkImageResolution();
 		}
-		checkImageResolution();
 		switch (imageType)
 		{
 			case(IMAGE_TYPE_BILEVEL):
@@ -289,6 +280,7 @@ public class PNMCodec extends ImageCodec
 				throw new UnsupportedTypeException("Cannot deal with image type.");
 			}
 		}
+		finishRowStreaming();
 	}
 
 	private int loadAsciiNumber() throws
@@ -385,9 +377,9 @@ public class PNMCodec extends ImageCodec
 		WrongParameterException
 	{
 		PixelImage image = getImage();
-		if (image == null)
+		if (image == null || streaming)
 		{
-			setImage(new MemoryBilevelImage(getBoundsWidth(), getBoundsHeight()));
+			setImage(new MemoryBilevelImage(getBoundsWidth(), getImageHeight()));
 		}
 		else
 		{
@@ -443,7 +435,8 @@ public class PNMCodec extends ImageCodec
 						" is neither 0 nor 1 in PBM stream: " + value);
 				}
 			}
-			image.putSamples(0, 0, y, COLUMNS, 1, row, X1);
+			image.putSamples(0, 0, streaming ? 0 : y, COLUMNS, 1, row, X1);
+			consumeRows(image, y, 1);
 			setProgress(y, NUM_ROWS);
 		}
 	}
@@ -454,199 +447,207 @@ public class PNMCodec extends ImageCodec
 	{
 		BilevelImage image = (BilevelImage)getImage();
 		int bytesPerRow = (width + 7) / 8;
-		// skip the first getBoundsY1() rows
-		long bytesToSkip = (long)getBoundsY1() * (long)bytesPerRow;
-		// Note:
-		// removed in.skip(bytesToSkip) because that was only available in Java 1.2
-		// instead the following while loop is used
-		while (bytesToSkip-- > 0)
-		{
-			in.read();
-		}
 		// allocate buffer large enough for a complete row
 		byte[] row = new byte[bytesPerRow];
+		// skip the first getBoundsY1() rows
+		skipRows(getBoundsY1(), row);
 		final int numRows = getBoundsHeight();
 		// read and store the next getBoundsHeight() rows
 		for (int y = 0; y < numRows; y++)
 		{
-			// read bytesPerRow bytes into row
-			int bytesToRead = bytesPerRow;
-			int index = 0;
-			while (bytesToRead > 0)
-			{
-				int result = in.read(row, index, bytesToRead);
-				if (result >= 0)
-				{
-					index += result;
-					bytesToRead -= result;
-				}
-				else
-				{
-					throw new InvalidFileStructureException("Unexpected end of input stream while reading.");
-				}
-			}
+			readFully(row, 0, bytesPerRow);
 			// invert values
 			for (int x = 0; x < row.length; x++)
 			{
 				row[x] = (byte)~row[x];
 			}
-			//image.putPackedBytes(0, y, bytesPerRow, buffer, 0);
-			if (isRowRequired(y))
-			{
-				image.putPackedBytes(0, y - getBoundsY1(), getBoundsWidth(), row, getBoundsX1() >> 3, getBoundsX1() & 7);
-			}
+			image.putPackedBytes(0, streaming ? 0 : y, getBoundsWidth(), row, getBoundsX1() >> 3, getBoundsX1() & 7);
+			consumeRows(image, y, 1);
 			setProgress(y, numRows);
 		}
 	}
 
 	/**
-	 * Read a 16-bit binary value in network (big-endian) order.
-	 * @return An integer between 0 and 65535, or -1 for EOF.
-	 * @throws IOException If the underlying read operation failed. 
+	 * Loads the samples of a binary PGM or PPM stream.
+	 * Each row is read with a single bulk read, only the part within the bounds
+	 * is stored.
+	 * One-byte samples go directly to a {@link ByteChannelImage} and two-byte samples
+	 * to a {@link ShortChannelImage}, other image types are filled via int arrays.
+	 * @param image the image to store the samples in, must have the bounds' size
+	 *  (or the bounds' width and a height of one row when streaming)
+	 * @param numChannels 1 for PGM, 3 for PPM
+	 * @since 0.14.3
 	 */
-	private int read16BitBinaryValue() throws IOException {
-		int byte1 = in.read();
-		if (byte1 < 0)
-			return -1;
-		int byte2 = in.read();
-		if (byte2 < 0)
-			return -1;
-		return (byte1 << 8) | byte2;
-	}
-
-	private void loadColorImage() throws InvalidFileStructureException, IOException
+	private void loadBinaryImage(IntegerImage image, int numChannels) throws
+		InvalidFileStructureException,
+		IOException
 	{
-		RGBIntegerImage image = null;
-		RGB24Image image24 = null;
-		RGB48Image image48 = null;
-		if (maxSample <= 255)
+		final int BYTES_PER_SAMPLE = maxSample < 256 ? 1 : 2;
+		final int PIXEL_STRIDE = numChannels * BYTES_PER_SAMPLE;
+		final int WIDTH = getBoundsWidth();
+		final int HEIGHT = getBoundsHeight();
+		final int X1 = getBoundsX1();
+		byte[] row = new byte[width * PIXEL_STRIDE];
+		ByteChannelImage byteImage = null;
+		ShortChannelImage shortImage = null;
+		byte[] bytes = null;
+		short[] shorts = null;
+		int[] ints = null;
+		if (BYTES_PER_SAMPLE == 1 && image instanceof ByteChannelImage)
 		{
-			image24 = new MemoryRGB24Image(width, height);
-			image = image24;
-			setImage(image);
+			byteImage = (ByteChannelImage)image;
+			bytes = new byte[WIDTH];
 		}
 		else
+		if (BYTES_PER_SAMPLE == 2 && image instanceof ShortChannelImage)
 		{
-			image48 = new MemoryRGB48Image(width, height);
-			image = image48;
-			setImage(image);
+			shortImage = (ShortChannelImage)image;
+			shorts = new short[WIDTH];
 		}
-		for (int y = 0, destY = - getBoundsY1(); y < height; y++, destY++)
+		else
 		{
-			if (getAscii().booleanValue())
+			ints = new int[WIDTH];
+		}
+		skipRows(getBoundsY1(), row);
+		for (int y = 0; y < HEIGHT; y++)
+		{
+			readFully(row, 0, row.length);
+			int destY = streaming ? 0 : y;
+			for (int channel = 0; channel < numChannels; channel++)
 			{
-				for (int x = 0; x < width; x++)
+				int offset = X1 * PIXEL_STRIDE + channel * BYTES_PER_SAMPLE;
+				if (byteImage != null)
 				{
-					int red = loadAsciiNumber();
-					if (red < 0 || red > maxSample)
+					if (numChannels == 1)
 					{
-						throw new InvalidFileStructureException("Invalid " +
-							"sample value " + red + " for red sample at " +
-							"(x=" + x + ", y=" + y + ").");
+						// samples are already in the right order, no copying necessary
+						byteImage.putByteSamples(0, 0, destY, WIDTH, 1, row, offset);
+						continue;
 					}
-					image.putSample(RGBIndex.INDEX_RED, x, y, red);
-
-					int green = loadAsciiNumber();
-					if (green < 0 || green > maxSample)
+					for (int x = 0; x < WIDTH; x++, offset += PIXEL_STRIDE)
 					{
-						throw new InvalidFileStructureException("Invalid " +
-							"sample value " + green + " for green sample at " +
-							"(x=" + x + ", y=" + y + ").");
+						bytes[x] = row[offset];
 					}
-					image.putSample(RGBIndex.INDEX_GREEN, x, y, green);
-
-					int blue = loadAsciiNumber();
-					if (blue < 0 || blue > maxSample)
+					byteImage.putByteSamples(channel, 0, destY, WIDTH, 1, bytes, 0);
+				}
+				else
+				if (shortImage != null)
+				{
+					for (int x = 0; x < WIDTH; x++, offset += PIXEL_STRIDE)
 					{
-						throw new InvalidFileStructureException("Invalid " +
-							"sample value " + blue + " for blue sample at " +
-							"(x=" + x + ", y=" + y + ").");
+						shorts[x] = (short)((row[offset] << 8) | (row[offset + 1] & 0xff));
 					}
-					image.putSample(RGBIndex.INDEX_BLUE, x, y, blue);
+					shortImage.putShortSamples(channel, 0, destY, WIDTH, 1, shorts, 0);
 				}
-			}
-			else
-			{
-				if (image24 != null)
+				else
 				{
-					for (int x = 0; x < width; x++)
+					for (int x = 0; x < WIDTH; x++, offset += PIXEL_STRIDE)
 					{
-						int red = in.read();
-						if (red == -1)
-						{
-							throw new InvalidFileStructureException("Unexpected " +
-								"end of file while reading red sample for pixel " +
-								"x=" + x + ", y=" + y + ".");
-						}
-						image24.putByteSample(RGBIndex.INDEX_RED, x, y, (byte)(red & 0xff));
-						int green = in.read();
-						if (green == -1)
+						if (BYTES_PER_SAMPLE == 1)
 						{
-							throw new InvalidFileStructureException("Unexpected " +
-								"end of file while reading green sample for pixel " +
-								"x=" + x + ", y=" + y + ".");
+							ints[x] = row[offset] & 0xff;
 						}
-						image24.putByteSample(RGBIndex.INDEX_GREEN, x, y, (byte)(green & 0xff));
-						int blue = in.read();
-						if (blue == -1)
+						else
 						{
-							throw new InvalidFileStructureException("Unexpected " +
-								"end of file while reading blue sample for pixel " +
-								"x=" + x + ", y=" + y + ".");
+							ints[x] = ((row[offset] & 0xff) << 8) | (row[offset + 1] & 0xff);
 						}
-						image24.putByteSample(RGBIndex.INDEX_BLUE, x, y, (byte)(blue & 0xff));
 					}
+					image.putSamples(channel, 0, destY, WIDTH, 1, ints, 0);
 				}
-				else if (image48 != null)
+			}
+			consumeRows(image, y, 1);
+			setProgress(y, HEIGHT);
+		}
+	}
+
+	private void loadColorImage() throws
+		InvalidFileStructureException,
+		IOException,
+		WrongParameterException
+	{
+		PixelImage pimage = getImage();
+		if (pimage == null || streaming)
+		{
+			if (maxSample <= 255)
+			{
+				pimage = new MemoryRGB24Image(getBoundsWidth(), getImageHeight());
+			}
+			else
+			{
+				pimage = new MemoryRGB48Image(getBoundsWidth(), getImageHeight());
+			}
+			setImage(pimage);
+		}
+		else
+		{
+			if (!(pimage instanceof RGBIntegerImage))
+			{
+				throw new WrongParameterException("Specified input image must implement RGBIntegerImage for this image type.");
+			}
+		}
+		RGBIntegerImage image = (RGBIntegerImage)pimage;
+		if (!getAscii().booleanValue())
+		{
+			loadBinaryImage(image, 3);
+			return;
+		}
+		final int X1 = getBoundsX1();
+		final int X2 = getBoundsX2();
+		final int Y1 = getBoundsY1();
+		final int HEIGHT = getBoundsHeight();
+		final int[] INDEXES = {RGBIndex.INDEX_RED, RGBIndex.INDEX_GREEN, RGBIndex.INDEX_BLUE};
+		final String[] NAMES = {"red", "green", "blue"};
+		int[][] buffer = new int[3][getBoundsWidth()];
+		for (int y = 0, destY = -Y1; destY < HEIGHT; y++, destY++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				for (int i = 0; i < 3; i++)
 				{
-					for (int x = 0; x < width; x++)
+					int sample = loadAsciiNumber();
+					if (sample < 0 || sample > maxSample)
 					{
-						int red = read16BitBinaryValue();
-						if (red == -1)
-						{
-							throw new InvalidFileStructureException("Unexpected " +
-								"end of file while reading red sample for pixel " +
-								"x=" + x + ", y=" + y + ".");
-						}
-						image48.putShortSample(RGBIndex.INDEX_RED, x, y, (short)(red & 0xffff));
-						int green = read16BitBinaryValue();
-						if (green == -1)
-						{
-							throw new InvalidFileStructureException("Unexpected " +
-								"end of file while reading green sample for pixel " +
-								"x=" + x + ", y=" + y + ".");
-						}
-						image48.putShortSample(RGBIndex.INDEX_GREEN, x, y, (short)(green & 0xffff));
-						int blue = read16BitBinaryValue();
-						if (blue == -1)
-						{
-							throw new InvalidFileStructureException("Unexpected " +
-								"end of file while reading blue sample for pixel " +
-								"x=" + x + ", y=" + y + ".");
-						}
-						image48.putShortSample(RGBIndex.INDEX_BLUE, x, y, (short)(blue & 0xffff));
+						throw new InvalidFileStructureException("Invalid " +
+							"sample value " + sample + " for " + NAMES[i] + " sample at " +
+							"(x=" + x + ", y=" + y + ").");
 					}
+					if (x >= X1 && x <= X2)
+					{
+						buffer[i][x - X1] = sample;
+					}
+				}
+			}
+			if (destY >= 0)
+			{
+				for (int i = 0; i < 3; i++)
+				{
+					image.putSamples(INDEXES[i], 0, streaming ? 0 : destY, buffer[i].length, 1, buffer[i], 0);
 				}
+				consumeRows(image, destY, 1);
+				setProgress(destY, HEIGHT);
 			}
-			setProgress(y, getBoundsHeight());
 		}
 	}
 
-	private void loadGrayImage() throws InvalidFileStructureException, IOException, UnsupportedTypeException
+	private void loadGrayImage() throws
+		InvalidFileStructureException,
+		IOException,
+		UnsupportedTypeException,
+		WrongParameterException
 	{
 		final int WIDTH = getBoundsWidth();
 		final int HEIGHT = getBoundsHeight();
 		PixelImage pimage = getImage();
-		if (pimage == null)
+		if (pimage == null || streaming)
 		{
 			if (maxSample < 256)
 			{
-				pimage = new MemoryGray8Image(WIDTH, HEIGHT);
+				pimage = new MemoryGray8Image(WIDTH, getImageHeight());
 			}
 			else
 			if (maxSample < 65536)
 			{
-				pimage = new MemoryGray16Image(WIDTH, HEIGHT);
+				pimage = new MemoryGray16Image(WIDTH, getImageHeight());
 			}
 			else
 			{
@@ -656,42 +657,77 @@ public class PNMCodec extends ImageCodec
 		}
 		else
 		{
+			if (!(pimage instanceof GrayIntegerImage))
+			{
+				throw new WrongParameterException("Specified input image must implement GrayIntegerImage for this image type.");
+			}
 		}
 		GrayIntegerImage image = (GrayIntegerImage)pimage;
+		if (!getAscii().booleanValue())
+		{
+			loadBinaryImage(image, 1);
+			return;
+		}
 		int[] buffer = new int[width];
-		for (int y = 0, destY = -getBoundsY1(); destY < getBoundsHeight(); y++, destY++)
+		for (int y = 0, destY = -getBoundsY1(); destY < HEIGHT; y++, destY++)
 		{
-			if (getAscii().booleanValue())
+			for (int x = 0; x < width; x++)
 			{
-				for (int x = 0; x < width; x++)
-				{
-					buffer[x] = loadAsciiNumber();
-				}
+				buffer[x] = loadAsciiNumber();
 			}
-			else
+			if (destY >= 0)
 			{
-				if (maxSample < 256)
-				{
-					for (int x = 0; x < width; x++)
-					{
-						buffer[x] = in.read();
-					}
-				}
-				else
-				{
-					for (int x = 0; x < width; x++)
-					{
-						int msb = in.read();
-						int lsb = in.read();
-						buffer[x] = (msb << 8) | lsb;
-					}
-				}
+				image.putSamples(0, 0, streaming ? 0 : destY, WIDTH, 1, buffer, getBoundsX1());
+				consumeRows(image, destY, 1);
+				setProgress(destY, HEIGHT);
 			}
-			if (destY >= 0 && destY < getBoundsHeight())
+		}
+	}
+
+	/**
+	 * Reads the header of a PNM stream (type, resolution and maximum sample value)
+	 * and initializes the corresponding fields.
+	 * @since 0.14.3
+	 */
+	private void loadHeader() throws
+		InvalidFileStructureException,
+		IOException,
+		MissingParameterException,
+		UnsupportedTypeException,
+		WrongFileFormatException
+	{
+		InputStream is = getInputStream();
+		if (is != null)
+		{
+			if (is instanceof PushbackInputStream)
 			{
-				image.putSamples(0, 0, destY, getBoundsWidth(), 1, buffer, getBoundsX1());
+				in = (PushbackInputStream)is;
 			}
-			setProgress(y, getBoundsY2() + 1);
+			else
+			{
+				in = new PushbackInputStream(is);
+			}
+		}
+		else
+		{
+			throw new MissingParameterException("InputStream object required for loading.");
+		}
+		loadType();
+		String resolutionLine = loadTextLine();
+		setResolution(resolutionLine);
+		if (imageType == IMAGE_TYPE_BILEVEL)
+		{
+			maxSample = 1;
+		}
+		else
+		{
+			// load maximum value
+			String maxSampleLine = loadTextLine();
+			setMaximumSample(maxSampleLine);
+		}
+		if (maxSample > 65535)
+		{
+			throw new UnsupportedTypeException("Cannot deal with samples larger than 65535.");
 		}
 	}
 
@@ -802,6 +838,41 @@ public class PNMCodec extends ImageCodec
 		in.unread(b);
 	}
 
+	/**
+	 * Reads the PNM header and returns resolution and the image type that
+	 * loading would create.
+	 * PNM streams store neither a physical resolution nor more than one image.
+	 * @since 0.14.3
+	 */
+	public ImageDescriptor probe() throws
+		MissingParameterException,
+		OperationFailedException
+	{
+		try
+		{
+			loadHeader();
+		}
+		catch (IOException ioe)
+		{
+			throw new OperationFailedException("I/O error: " + ioe.toString());
+		}
+		Class type;
+		if (imageType == IMAGE_TYPE_BILEVEL)
+		{
+			type = BilevelImage.class;
+		}
+		else
+		if (imageType == IMAGE_TYPE_GRAY)
+		{
+			type = maxSample < 256 ? Gray8Image.class : Gray16Image.class;
+		}
+		else
+		{
+			type = maxSample < 256 ? RGB24Image.class : RGB48Image.class;
+		}
+		return createDescriptor(width, height, type, 1);
+	}
+
 	public void process() throws
 		MissingParameterException,
 		OperationFailedException
@@ -824,6 +895,28 @@ public class PNMCodec extends ImageCodec
 		}
 	}
 
+	/**
+	 * Reads exactly <code>length</code> bytes from the input stream into
+	 * <code>data</code>, starting at <code>offset</code>.
+	 * @throws InvalidFileStructureException if the end of the stream is reached before
+	 * @since 0.14.3
+	 */
+	private void readFully(byte[] data, int offset, int length) throws
+		InvalidFileStructureException,
+		IOException
+	{
+		while (length > 0)
+		{
+			int result = in.read(data, offset, length);
+			if (result < 0)
+			{
+				throw new InvalidFileStructureException("Unexpected end of input stream while reading.");
+			}
+			offset += result;
+			length -= result;
+		}
+	}
+
 	private void save() throws
 		IOException, 
 		MissingParameterException,
@@ -939,37 +1032,34 @@ public class PNMCodec extends ImageCodec
 	private void save(Gray8Image image) throws IOException
 	{
 		saveHeader();
+		if (!getAscii().booleanValue())
+		{
+			saveBinaryImage(image, 1);
+			return;
+		}
 		final int HEIGHT = getBoundsHeight();
 		final int WIDTH = getBoundsWidth();
 		final int X1 = getBoundsX1();
-		System.out.println(WIDTH + " " + HEIGHT + " " + X1);
 		byte[] buffer = new byte[WIDTH];
 		for (int y = 0, srcY = getBoundsY1(); y < HEIGHT; y++, srcY++)
 		{
 			image.getByteSamples(0, X1, srcY, WIDTH, 1, buffer, 0);
-			if (getAscii().booleanValue())
+			for (int x = 0; x < WIDTH; x++)
 			{
-				for (int x = 0; x < WIDTH; x++)
+				saveAsciiNumber(buffer[x] & 0xff);
+				out.write(32);
+				columns += 2;
+				if (columns > 70)
+				{
+					columns = 0;
+					out.write(10);
+				}
+				else
 				{
-					saveAsciiNumber(buffer[x] & 0xff);
 					out.write(32);
-					columns += 2;
-					if (columns > 70)
-					{
-						columns = 0;
-						out.write(10);
-					}
-					else
-					{
-						out.write(32);
-						columns++;
-					}
+					columns++;
 				}
 			}
-			else
-			{
-				out.write(buffer);
-			}
 			setProgress(y, HEIGHT);
 		}
 	}
@@ -977,6 +1067,11 @@ public class PNMCodec extends ImageCodec
 	private void save(Gray16Image image) throws IOException
 	{
 		saveHeader();
+		if (!getAscii().booleanValue())
+		{
+			saveBinaryImage(image, 1);
+			return;
+		}
 		final int HEIGHT = getBoundsHeight();
 		final int WIDTH = getBoundsWidth();
 		final int X1 = getBoundsX1();
@@ -984,32 +1079,20 @@ public class PNMCodec extends ImageCodec
 		for (int y = 0, srcY = getBoundsY1(); y < HEIGHT; y++, srcY++)
 		{
 			image.getShortSamples(0, X1, srcY, WIDTH, 1, buffer, 0);
-			if (getAscii().booleanValue())
+			for (int x = 0; x < WIDTH; x++)
 			{
-				for (int x = 0; x < WIDTH; x++)
+				saveAsciiNumber(buffer[x] & 0xffff);
+				out.write(32);
+				columns += 4;
+				if (columns > 70)
 				{
-					saveAsciiNumber(buffer[x] & 0xffff);
-					out.write(32);
-					columns += 4;
-					if (columns > 70)
-					{
-						columns = 0;
-						out.write(10);
-					}
-					else
-					{
-						out.write(32);
-						columns++;
-					}
+					columns = 0;
+					out.write(10);
 				}
-			}
-			else
-			{
-				for (int x = 0; x < WIDTH; x++)
+				else
 				{
-					int sample = buffer[x] & 0xffff;
-					out.write((sample >> 8) & 0xff);
-					out.write(sample & 0xff);
+					out.write(32);
+					columns++;
 				}
 			}
 			setProgress(y, HEIGHT);
@@ -1019,107 +1102,135 @@ public class PNMCodec extends ImageCodec
 	private void save(RGB24Image image) throws IOException
 	{
 		saveHeader();
+		if (getAscii().booleanValue())
+		{
+			saveAsciiRgbImage(image, 11);
+		}
+		else
+		{
+			saveBinaryImage(image, 3);
+		}
+	}
+
+	private void save(RGB48Image image) throws IOException
+	{
+		saveHeader();
+		if (getAscii().booleanValue())
+		{
+			saveAsciiRgbImage(image, 13);
+		}
+		else
+		{
+			saveBinaryImage(image, 3);
+		}
+	}
+
+	private void saveAsciiNumber(int number) throws
+		IOException
+	{
+		String s = Integer.toString(number);
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			out.write(c);
+		}
+		columns += s.length();
+	}
+
+	private void saveAsciiRgbImage(RGBIntegerImage image, int columnsPerPixel) throws IOException
+	{
 		final int WIDTH = getBoundsWidth();
 		final int HEIGHT = getBoundsHeight();
 		for (int y = 0, srcY = getBoundsY1(); y < HEIGHT; y++, srcY++)
 		{
-			if (getAscii().booleanValue())
+			for (int x = 0, srcX = getBoundsX1(); x < WIDTH; x++, srcX++)
 			{
-				for (int x = 0, srcX = getBoundsX1(); x < WIDTH; x++, srcX++)
+				int red = image.getSample(RGBIndex.INDEX_RED, srcX, srcY);
+				int green = image.getSample(RGBIndex.INDEX_GREEN, srcX, srcY);
+				int blue = image.getSample(RGBIndex.INDEX_BLUE, srcX, srcY);
+				saveAsciiNumber(red);
+				out.write(32);
+				saveAsciiNumber(green);
+				out.write(32);
+				saveAsciiNumber(blue);
+				columns += columnsPerPixel;
+				if (columns > 80)
 				{
-					int red = image.getSample(RGBIndex.INDEX_RED, srcX, srcY);
-					int green = image.getSample(RGBIndex.INDEX_GREEN, srcX, srcY);
-					int blue = image.getSample(RGBIndex.INDEX_BLUE, srcX, srcY);
-					saveAsciiNumber(red);
-					out.write(32);
-					saveAsciiNumber(green);
-					out.write(32);
-					saveAsciiNumber(blue);
-					columns += 11;
-					if (columns > 80)
-					{
-						columns = 0;
-						out.write(10);
-					}
-					else
-					{
-						out.write(32);
-						columns++;
-					}
+					columns = 0;
+					out.write(10);
 				}
-			}
-			else
-			{
-				for (int x = 0, srcX = getBoundsX1(); x < WIDTH; x++, srcX++)
+				else
 				{
-					out.write(image.getSample(RGBIndex.INDEX_RED, srcX, srcY));
-					out.write(image.getSample(RGBIndex.INDEX_GREEN, srcX, srcY));
-					out.write(image.getSample(RGBIndex.INDEX_BLUE, srcX, srcY));
+					out.write(32);
+					columns++;
 				}
 			}
 			setProgress(y, HEIGHT);
 		}
 	}
 
-	private void save(RGB48Image image) throws IOException
+	/**
+	 * Writes the samples within the bounds as binary PGM or PPM data.
+	 * Each row is assembled in a byte array and written with a single call.
+	 * Samples are taken from {@link ByteChannelImage} or {@link ShortChannelImage}
+	 * objects in bulk, one channel row at a time.
+	 * @param image the image to be saved, a ByteChannelImage if the maximum sample is 255, a ShortChannelImage otherwise
+	 * @param numChannels 1 for PGM, 3 for PPM
+	 * @since 0.14.3
+	 */
+	private void saveBinaryImage(IntegerImage image, int numChannels) throws IOException
 	{
-		saveHeader();
+		final int BYTES_PER_SAMPLE = maxSample < 256 ? 1 : 2;
+		final int PIXEL_STRIDE = numChannels * BYTES_PER_SAMPLE;
 		final int WIDTH = getBoundsWidth();
 		final int HEIGHT = getBoundsHeight();
+		final int X1 = getBoundsX1();
+		byte[] row = new byte[WIDTH * PIXEL_STRIDE];
+		byte[] bytes = null;
+		short[] shorts = null;
+		if (BYTES_PER_SAMPLE == 1)
+		{
+			bytes = new byte[WIDTH];
+		}
+		else
+		{
+			shorts = new short[WIDTH];
+		}
 		for (int y = 0, srcY = getBoundsY1(); y < HEIGHT; y++, srcY++)
 		{
-			if (getAscii().booleanValue())
+			for (int channel = 0; channel < numChannels; channel++)
 			{
-				for (int x = 0, srcX = getBoundsX1(); x < WIDTH; x++, srcX++)
+				int offset = channel * BYTES_PER_SAMPLE;
+				if (BYTES_PER_SAMPLE == 1)
 				{
-					int red = image.getSample(RGBIndex.INDEX_RED, srcX, srcY);
-					int green = image.getSample(RGBIndex.INDEX_GREEN, srcX, srcY);
-					int blue = image.getSample(RGBIndex.INDEX_BLUE, srcX, srcY);
-					saveAsciiNumber(red);
-					out.write(32);
-					saveAsciiNumber(green);
-					out.write(32);
-					saveAsciiNumber(blue);
-					columns += 13;
-					if (columns > 80)
+					ByteChannelImage byteImage = (ByteChannelImage)image;
+					if (numChannels == 1)
 					{
-						columns = 0;
-						out.write(10);
+						byteImage.getByteSamples(0, X1, srcY, WIDTH, 1, row, 0);
+						continue;
 					}
-					else
+					byteImage.getByteSamples(channel, X1, srcY, WIDTH, 1, bytes, 0);
+					for (int x = 0; x < WIDTH; x++, offset += PIXEL_STRIDE)
 					{
-						out.write(32);
-						columns++;
+						row[offset] = bytes[x];
 					}
 				}
-			}
-			else
-			{
-				/*
-				for (int x = 0, srcX = getBoundsX1(); x < WIDTH; x++, srcX++)
+				else
 				{
-					out.write(image.getSample(RGBIndex.INDEX_RED, srcX, srcY));
-					out.write(image.getSample(RGBIndex.INDEX_GREEN, srcX, srcY));
-					out.write(image.getSample(RGBIndex.INDEX_BLUE, srcX, srcY));
+					((ShortChannelImage)image).getShortSamples(channel, X1, srcY, WIDTH, 1, shorts, 0);
+					for (int x = 0; x < WIDTH; x++, offset += PIXEL_STRIDE)
+					{
+						int sample = shorts[x];
+						row[offset] = (byte)(sample >> 8);
+						row[offset + 1] = (byte)sample;
+					}
 				}
-				*/
 			}
+			out.write(row);
 			setProgress(y, HEIGHT);
 		}
 	}
 
-	private void saveAsciiNumber(int number) throws
-		IOException
-	{
-		String s = Integer.toString(number);
-		for (int i = 0; i < s.length(); i++)
-		{
-			char c = s.charAt(i);
-			out.write(c);
-		}
-		columns += s.length();
-	}
-
 	private void saveHeader() throws IOException
 	{
 		out.write(80); // 'P'
@@ -1230,6 +1341,21 @@ public class PNMCodec extends ImageCodec
 		}
 	}
 
+	/**
+	 * Skips <code>numRows</code> rows of binary data, using <code>row</code>
+	 * (which must be as large as a row) as buffer.
+	 * @since 0.14.3
+	 */
+	private void skipRows(int numRows, byte[] row) throws
+		InvalidFileStructureException,
+		IOException
+	{
+		while (numRows-- > 0)
+		{
+			readFully(row, 0, row.length);
+		}
+	}
+
 	public String suggestFileExtension(PixelImage image)
 	{
 		if (image == null)
@@ -81,6 +81,37 @@ public class PSDCodec extends ImageCodec
 		}
 	}
 
+	/**
+	 * Checks the values read by {@link #loadHeader} and throws an exception
+	 * if they are invalid or not supported by this codec.
+	 * @since 0.14.3
+	 */
+	private void checkHeader() throws
+		InvalidFileStructureException,
+		UnsupportedTypeException
+	{
+		if (width < 1 || height < 1)
+		{
+			throw new InvalidFileStructureException("Cannot load image. " +
+				"Invalid pixel resolution in PSD file header (" + width +
+				" x " + height + ").");
+		}
+		if (colorMode != COLOR_MODE_RGB_TRUECOLOR &&
+		    colorMode != COLOR_MODE_GRAYSCALE &&
+		    colorMode != COLOR_MODE_INDEXED)
+		{
+			throw new UnsupportedTypeException("Cannot load image. Only RGB" +
+				" truecolor and indexed color are supported for PSD files. " +
+				"Found: " +getColorTypeName(colorMode));
+		}
+		if (depth != 8)
+		{
+			throw new UnsupportedTypeException("Cannot load image. Only a depth of 8 bits " +
+				"per channel is supported (found " + depth + 
+				" bits).");
+		}
+	}
+
 	private static String getColorTypeName(int colorMode)
 	{
 		switch(colorMode)
@@ -136,27 +167,7 @@ public class PSDCodec extends ImageCodec
 	{
 		loadHeader();
 		//System.out.println(width + " x " + height + ", color=" + colorMode + ", channels=" + channels + ", depth=" + depth);
-		// check values
-		if (width < 1 || height < 1)
-		{
-			throw new InvalidFileStructureException("Cannot load image. " +
-				"Invalid pixel resolution in PSD file header (" + width +
-				" x " + height + ").");
-		}
-		if (colorMode != COLOR_MODE_RGB_TRUECOLOR &&
-		    colorMode != COLOR_MODE_GRAYSCALE &&
-		    colorMode != COLOR_MODE_INDEXED)
-		{
-			throw new UnsupportedTypeException("Cannot load image. Only RGB" +
-				" truecolor and indexed color are supported for PSD files. " +
-				"Found: " +getColorTypeName(colorMode));
-		}
-		if (depth != 8)
-		{
-			throw new UnsupportedTypeException("Cannot load image. Only a depth of 8 bits " +
-				"per channel is supported (found " + depth + 
-				" bits).");
-		}
+		checkHeader();
 
 		// COLOR MODE DATA
 		int colorModeSize = in.readInt();
@@ -226,74 +237,29 @@ public class PSDCodec extends ImageCodec
 		colorMode = in.readShort();
 	}
 
-	private void loadPackbitsCompressedData(byte[] data, int offset, int num) throws
-		InvalidFileStructureException,
-		IOException
-	{
-		int x = offset;
-		int max = offset + num;
-		while (x < max)
-		{
-			byte n = in.readByte();
-			boolean compressed = false;
-			int count = -1;
-			try
-			{
-				if (n >= 0)
-				{
-					// copy next n + 1 bytes literally
-					in.readFully(data, x, n + 1);
-					x += (n + 1);
-				}
-				else
-				{
-					// if n == -128, nothing happens (stupid design decision)
-					if (n != -128)
-					{
-						compressed = true;
-						// otherwise, compute counter
-						count = -((int)n) + 1;
-						// read another byte
-						byte value = in.readByte();
-						// write this byte counter times to output
-						while (count-- > 0)
-						{
-							data[x++] = value;
-						}
-					}
-				}
-			}
-			catch (ArrayIndexOutOfBoundsException ioobe)
-			{
-				/* if the encoder did anything wrong, the above code
-				   could potentially write beyond array boundaries
-				   (e.g. if runs of data exceed line boundaries);
-				   this would result in an IndexOutOfBoundsException
-				   thrown by the virtual machine;
-				   to give a more understandable error message to the 
-				   user, this exception is caught here and a
-				   corresponding IOException is thrown */
-				throw new InvalidFileStructureException("Error: RLE-compressed image " +
-					"file seems to be corrupt (x=" + x +
-					", count=" + (compressed ? (-((int)n) + 1) : n) + 
-					", compressed=" + (compressed ? "y" : "n") + ", array length=" + data.length + ").");
-			}
-		}
-	}
-
 	private void loadImageData() throws 
 		InvalidFileStructureException, 
 		IOException
 	{
 		setBoundsIfNecessary(width, height);
 		allocate();
+		int totalScanLines = channels * height;
+		// with Packbits, the compressed sizes of all scan lines are stored first,
+		// so each scan line can be read in one go and expanded from memory
+		int[] rowSizes = null;
+		byte[] compressed = null;
 		if (compression == COMPRESSION_PACKBITS)
 		{
-			// skip counters
-			in.skipBytes(2 * channels * height);
+			rowSizes = new int[totalScanLines];
+			int maxRowSize = 0;
+			for (int i = 0; i < totalScanLines; i++)
+			{
+				rowSizes[i] = in.readUnsignedShort();
+				maxRowSize = Math.max(maxRowSize, rowSizes[i]);
+			}
+			compressed = new byte[maxRowSize];
 		}
 		byte[] data = new byte[width];
-		int totalScanLines = channels * height;
 		int currentScanLine = 0;
 		for (int c = 0; c < channels; c++)
 		{
@@ -301,14 +267,13 @@ public class PSDCodec extends ImageCodec
 			{
 				if (compression == COMPRESSION_PACKBITS)
 				{
-					loadPackbitsCompressedData(data, 0, width);
+					int size = rowSizes[currentScanLine];
+					in.readFully(compressed, 0, size);
+					RunLengthCoding.decodePackbits(compressed, 0, size, data, 0, width);
 				}
 				else
 				{
-					if (compression == COMPRESSION_PACKBITS)
-					{
-						in.readFully(data, 0, width);
-					}
+					in.readFully(data, 0, width);
 				}
 				setProgress(currentScanLine++, totalScanLines);
 				if (!isRowRequired(y))
@@ -340,6 +305,48 @@ public class PSDCodec extends ImageCodec
 		}
 	}
 
+	/**
+	 * Reads the PSD header and returns resolution and the image type that
+	 * loading would create.
+	 * The physical resolution is stored in an image resource and not read
+	 * by this codec.
+	 * @since 0.14.3
+	 */
+	public ImageDescriptor probe() throws
+		MissingParameterException,
+		OperationFailedException
+	{
+		in = getInputAsDataInput();
+		if (in == null)
+		{
+			throw new MissingParameterException("Input stream / file missing.");
+		}
+		try
+		{
+			loadHeader();
+		}
+		catch (IOException ioe)
+		{
+			throw new OperationFailedException("I/O error: " + ioe.toString());
+		}
+		checkHeader();
+		Class imageType;
+		if (colorMode == COLOR_MODE_RGB_TRUECOLOR)
+		{
+			imageType = RGB24Image.class;
+		}
+		else
+		if (colorMode == COLOR_MODE_INDEXED)
+		{
+			imageType = Paletted8Image.class;
+		}
+		else
+		{
+			imageType = Gray8Image.class;
+		}
+		return createDescriptor(width, height, imageType, 1);
+	}
+
 	public void process() throws
 		OperationFailedException
 	{
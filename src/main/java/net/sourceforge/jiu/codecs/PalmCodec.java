@@ -1,7 +1,7 @@
 /*
  * PalmCodec
  *
- * Copyright (c) 2001, 2002, 2003, 2004, 2005, 2006 Marco Schmidt.
+ * Copyright (c) 2001, 2002, 2003, 2004, 2005, 2006, 2007 Marco Schmidt.
  * All rights reserved.
  */
 
@@ -646,23 +646,7 @@ public class PalmCodec extends ImageCodec
 				}
 				case(COMPRESSION_RLE):
 				{
-					int index = 0;
-					do
-					{
-						int num = in.readUnsignedByte();
-						if (num < 1 || index + num > bytesPerRow)
-						{
-							String message = "At index=" + index + ", y=" + y + " there is a run length of " + num;
-							System.err.println("ERROR decoding RLE: " + message);
-							throw new InvalidFileStructureException(message);
-						}
-						byte value = in.readByte();
-						while (num-- > 0)
-						{
-							row[index++] = value;
-						}
-					}
-					while (index < bytesPerRow);
+					RunLengthCoding.decodeRunValuePairs(in, row, 0, bytesPerRow);
 					break;
 				}
 				case(COMPRESSION_SCANLINE):
@@ -979,8 +963,8 @@ public class PalmCodec extends ImageCodec
 		}
 		// if compression type != uncompressed write two bytes with compressed size to output
 		saveInitialCompressedSize(out);
-		// initialize row buffers
-		byte[] row = new byte[width];
+		// initialize row buffers, including the padding byte of odd-sized rows
+		byte[] row = new byte[bytesPerRow];
 		byte[] prev = null;
 		if (compression == COMPRESSION_SCANLINE)
 		{
@@ -1,7 +1,7 @@
 /*
  * RASCodec
  * 
- * Copyright (c) 2000, 2001, 2002, 2003 Marco Schmidt.
+ * Copyright (c) 2000, 2001, 2002, 2003, 2007 Marco Schmidt.
  * All rights reserved.
  */
 
@@ -40,7 +40,7 @@ import net.sourceforge.jiu.util.ArrayConverter;
  * PixelImage loadedImage = codec.getImage();
  * </pre>
  * <h3>Supported file types when reading</h3>
- * Only uncompressed RAS files are read.
+ * Uncompressed and byte-encoded (run-length compressed) RAS files are read.
  * Only 8 bit (gray and paletted) and 24 bit are supported when reading.
  * <h3>Supported image types when writing</h3>
  * Only {@link net.sourceforge.jiu.data.Paletted8Image} / uncompressed is supported when writing.
@@ -59,6 +59,7 @@ public class RASCodec extends ImageCodec
 {
 	private static final int RAS_MAGIC = 0x59a66a95;
 	private static final int COMPRESSION_NONE = 0x00000001;
+	private static final int COMPRESSION_RLE = 0x00000002;
 	private static final int RAS_HEADER_SIZE = 32;
 	private int width;
 	private int height;
@@ -190,12 +191,17 @@ public class RASCodec extends ImageCodec
 		}
 		paddingBytes = (bytesPerRow % 2);
 		numColors = 1 << depth;
-		//length = ArrayConverter.getIntBE(header, 16);
+		length = ArrayConverter.getIntBE(header, 16);
 		type = ArrayConverter.getIntBE(header, 20);
-		if (type != COMPRESSION_NONE)
+		if (type != COMPRESSION_NONE && type != COMPRESSION_RLE)
 		{
-			throw new UnsupportedTypeException("Only uncompressed " +
-				"RAS streams are read; found " + type);
+			throw new UnsupportedTypeException("Only uncompressed and " +
+				"byte-encoded RAS streams are read; found " + type);
+		}
+		if (type == COMPRESSION_RLE && length < 1)
+		{
+			throw new InvalidFileStructureException("Byte-encoded RAS " +
+				"stream without length of image data.");
 		}
 		mapType = ArrayConverter.getIntBE(header, 24);
 		mapLength = ArrayConverter.getIntBE(header, 28);
@@ -261,15 +267,43 @@ public class RASCodec extends ImageCodec
 		{
 			buffer[i] = new byte[bytesPerRow];
 		}
+		/* rows are either read one at a time into row, including their padding,
+		   or taken from the complete decoded image data if it was compressed;
+		   the runs of byte-encoded data may cross row boundaries */
+		final int PADDED_BYTES_PER_ROW = bytesPerRow * numChannels + paddingBytes;
+		byte[] src;
+		int srcOffset = 0;
+		if (type == COMPRESSION_RLE)
+		{
+			byte[] compressed = new byte[length];
+			in.readFully(compressed);
+			src = new byte[PADDED_BYTES_PER_ROW * height];
+			RunLengthCoding.decodeEscapedRuns(compressed, 0, length, src, 0, src.length);
+		}
+		else
+		{
+			src = new byte[PADDED_BYTES_PER_ROW];
+		}
 		for (int y = 0, destY = -getBoundsY1(); destY <= getBoundsY2(); y++, destY++)
 		{
+			if (type == COMPRESSION_RLE)
+			{
+				srcOffset = y * PADDED_BYTES_PER_ROW;
+			}
+			else
+			{
+				in.readFully(src, 0, PADDED_BYTES_PER_ROW);
+			}
 			if (rgb24Image != null)
 			{
-				for (int x = 0; x < width; x++)
+				byte[] blue = buffer[RGBIndex.INDEX_BLUE];
+				byte[] green = buffer[RGBIndex.INDEX_GREEN];
+				byte[] red = buffer[RGBIndex.INDEX_RED];
+				for (int x = 0, i = srcOffset; x < width; x++)
 				{
-					buffer[RGBIndex.INDEX_BLUE][x] = in.readByte();
-					buffer[RGBIndex.INDEX_GREEN][x] = in.readByte();
-					buffer[RGBIndex.INDEX_RED][x] = in.readByte();
+					blue[x] = src[i++];
+					green[x] = src[i++];
+					red[x] = src[i++];
 				}
 				rgb24Image.putByteSamples(RGBIndex.INDEX_RED, 0, destY, getBoundsWidth(), 1, buffer[0], getBoundsX1());
 				rgb24Image.putByteSamples(RGBIndex.INDEX_GREEN, 0, destY, getBoundsWidth(), 1, buffer[1], getBoundsX1());
@@ -278,13 +312,7 @@ public class RASCodec extends ImageCodec
 			else
 			if (paletted8Image != null)
 			{
-				in.readFully(buffer[0], 0, width);
-				paletted8Image.putByteSamples(0, 0, destY, getBoundsWidth(), 1, buffer[0], getBoundsX1());
-			}
-			if (in.skipBytes(paddingBytes) != paddingBytes)
-			{
-				throw new InvalidFileStructureException("Could not skip " +
-					"byte after row " + y + ".");
+				paletted8Image.putByteSamples(0, 0, destY, getBoundsWidth(), 1, src, srcOffset + getBoundsX1());
 			}
 			setProgress(y, getBoundsY2() + 1);
 		}
@@ -341,6 +369,11 @@ public class RASCodec extends ImageCodec
 		{
 			throw new UnsupportedTypeException("Must have non-null image that is a Paletted8Image.");
 		}
+		out = getOutputAsDataOutput();
+		if (out == null)
+		{
+			throw new WrongParameterException("Output stream / file missing.");
+		}
 		saveHeader(image);
 		if (image instanceof Paletted8Image)
 		{
@@ -370,8 +403,8 @@ public class RASCodec extends ImageCodec
 		WrongParameterException
 		
 	{
-		setBoundsIfNecessary(width, height);
-		checkBounds(width, height);
+		setBoundsIfNecessary(image.getWidth(), image.getHeight());
+		checkBounds(image.getWidth(), image.getHeight());
 		out.writeInt(RAS_MAGIC);
 		int width = getBoundsWidth();
 		out.writeInt(width);
@@ -403,7 +436,7 @@ public class RASCodec extends ImageCodec
 		out.writeInt(depth);
 		paddingBytes = (bytesPerRow % 2);
 		numColors = 1 << depth;
-		length = bytesPerRow * getBoundsHeight();
+		length = (bytesPerRow + paddingBytes) * getBoundsHeight();
 		out.writeInt(length); // length
 		out.writeInt(COMPRESSION_NONE); // type
 		mapType = 1;
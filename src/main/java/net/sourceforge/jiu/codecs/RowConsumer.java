@@ -0,0 +1,36 @@
+/*
+ * RowConsumer
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs;
+
+import net.sourceforge.jiu.data.PixelImage;
+
+/**
+ * This interface must be implemented by classes that want to receive
+ * the rows of an image while it is being loaded, instead of getting a
+ * completely loaded image object afterwards.
+ * Give an object of such a class to a codec via {@link ImageCodec#setRowConsumer}.
+ *
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public interface RowConsumer
+{
+	/**
+	 * Receives a number of decoded rows.
+	 * The rows are stored in <code>rows</code> starting at its first row.
+	 * The codec reuses that image object for the following rows, so its content
+	 * must be processed or copied before this method returns.
+	 * Rows are passed on in the order in which they are stored in the file;
+	 * that is not necessarily from top to bottom
+	 * (e.g. an uncompressed BMP file delivers its last row first).
+	 * @param rows image object holding the decoded rows, its width is that of the bounds
+	 * @param y vertical position of the first row within the bounds
+	 * @param numRows number of rows to be consumed, 1 or larger
+	 */
+	void consumeRows(PixelImage rows, int y, int numRows);
+}
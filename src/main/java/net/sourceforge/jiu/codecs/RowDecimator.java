@@ -0,0 +1,111 @@
+/*
+ * RowDecimator
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs;
+
+import net.sourceforge.jiu.data.ByteChannelImage;
+import net.sourceforge.jiu.data.IntegerImage;
+import net.sourceforge.jiu.data.PixelImage;
+
+/**
+ * Receives decoded rows from a codec and keeps only every n-th sample of every
+ * n-th row, n being the decode scale (see {@link ImageCodec#setDecodeScale}).
+ * The reduced rows are either stored in an image object of the reduced size
+ * or passed on to another {@link RowConsumer}, one row at a time.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+class RowDecimator implements RowConsumer
+{
+	private RowConsumer consumer;
+	private int height;
+	private IntegerImage image;
+	private int scale;
+	private int width;
+	private byte[] byteRow;
+	private byte[] byteResult;
+	private int[] intRow;
+	private int[] intResult;
+
+	/**
+	 * Creates a new decimator.
+	 * @param denominator the decode scale, 2 or larger
+	 * @param sourceWidth width of the rows that will be given to {@link #consumeRows}
+	 * @param sourceHeight total number of rows that will be given to {@link #consumeRows}
+	 * @param rowConsumer object to receive the reduced rows, or <code>null</code> to
+	 *  store them in an image object that {@link #getImage} returns
+	 */
+	RowDecimator(int denominator, int sourceWidth, int sourceHeight, RowConsumer rowConsumer)
+	{
+		scale = denominator;
+		width = (sourceWidth + scale - 1) / scale;
+		height = (sourceHeight + scale - 1) / scale;
+		consumer = rowConsumer;
+	}
+
+	public void consumeRows(PixelImage rows, int y, int numRows)
+	{
+		IntegerImage source = (IntegerImage)rows;
+		for (int i = 0; i < numRows; i++)
+		{
+			int srcY = y + i;
+			if (srcY % scale != 0)
+			{
+				continue;
+			}
+			if (image == null)
+			{
+				image = (IntegerImage)rows.createCompatibleImage(width, consumer == null ? height : 1);
+			}
+			int destY = consumer == null ? srcY / scale : 0;
+			for (int channel = 0; channel < source.getNumChannels(); channel++)
+			{
+				if (source instanceof ByteChannelImage)
+				{
+					if (byteRow == null)
+					{
+						byteRow = new byte[rows.getWidth()];
+						byteResult = new byte[width];
+					}
+					((ByteChannelImage)source).getByteSamples(channel, 0, i, byteRow.length, 1, byteRow, 0);
+					for (int x = 0, srcX = 0; x < width; x++, srcX += scale)
+					{
+						byteResult[x] = byteRow[srcX];
+					}
+					((ByteChannelImage)image).putByteSamples(channel, 0, destY, width, 1, byteResult, 0);
+				}
+				else
+				{
+					if (intRow == null)
+					{
+						intRow = new int[rows.getWidth()];
+						intResult = new int[width];
+					}
+					source.getSamples(channel, 0, i, intRow.length, 1, intRow, 0);
+					for (int x = 0, srcX = 0; x < width; x++, srcX += scale)
+					{
+						intResult[x] = intRow[srcX];
+					}
+					image.putSamples(channel, 0, destY, width, 1, intResult, 0);
+				}
+			}
+			if (consumer != null)
+			{
+				consumer.consumeRows(image, srcY / scale, 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the image with the reduced rows, or <code>null</code> if
+	 * the rows were passed on to another consumer or no rows were received.
+	 */
+	PixelImage getImage()
+	{
+		return consumer == null ? image : null;
+	}
+}
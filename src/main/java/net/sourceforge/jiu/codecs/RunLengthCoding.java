@@ -0,0 +1,330 @@
+/*
+ * RunLengthCoding
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Static methods to decode and encode the byte-oriented run-length encodings
+ * used by several file formats.
+ * <ul>
+ * <li><em>Packbits</em>, also known as <em>ByteRun1</em>, used by TIFF, PSD and IFF:
+ *  a signed count byte n from 0 to 127 is followed by n + 1 literal bytes,
+ *  a count byte n from -127 to -1 is followed by a single byte to be repeated -n + 1 times,
+ *  the count byte -128 is ignored.</li>
+ * <li><em>Run / value pairs</em>, used by the RLE compression of Palm bitmaps:
+ *  an unsigned count byte from 1 to 255 is followed by the byte to be repeated that many times.</li>
+ * <li><em>Escaped runs</em>, used by byte-encoded Sun Raster files:
+ *  all bytes are literal except for the escape byte <code>0x80</code>;
+ *  it is followed by a count byte n, if n is zero the escape byte itself is stored,
+ *  otherwise a byte to be repeated n + 1 times follows.</li>
+ * </ul>
+ * Runs are expanded with {@link java.util.Arrays#fill(byte[], int, int, byte)} and literal
+ * sequences copied with {@link java.lang.System#arraycopy}.
+ * Decoding from a byte array holding the compressed data is much faster than
+ * decoding from a {@link java.io.DataInput}, which needs a method call for every run,
+ * so codecs should read the compressed data of a row or a strip in one go whenever
+ * its size is known.
+ * <p>
+ * All decoding methods decode exactly the requested number of bytes, so they
+ * are typically called once per row.
+ * A run that does not fit into the requested number of bytes leads to an
+ * {@link InvalidFileStructureException}, as does a premature end of the compressed data.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public class RunLengthCoding
+{
+	private static final int MAX_PACKBITS_RUN = 128;
+
+	private RunLengthCoding()
+	{
+	}
+
+	private static InvalidFileStructureException createOverflowException(int numBytes, int runLength, int remaining)
+	{
+		return new InvalidFileStructureException("Run-length encoded data " +
+			"is corrupt: run of " + runLength + " bytes does not fit into the " +
+			remaining + " of " + numBytes + " bytes still to be decoded.");
+	}
+
+	/**
+	 * Decodes <code>numBytes</code> bytes of escaped run data from a byte array.
+	 * @param src compressed data
+	 * @param srcOffset index of the first byte of compressed data in <code>src</code>
+	 * @param srcEnd index of the first byte in <code>src</code> following the compressed data
+	 * @param dest array to receive the decoded bytes
+	 * @param destOffset index of the first decoded byte in <code>dest</code>
+	 * @param numBytes number of bytes to decode
+	 * @return index into <code>src</code> of the first byte following the
+	 *  compressed data that was used
+	 * @throws InvalidFileStructureException if the compressed data ends
+	 *  prematurely or contains a run not fitting into <code>numBytes</code>
+	 */
+	public static int decodeEscapedRuns(byte[] src, int srcOffset, int srcEnd, byte[] dest, int destOffset, int numBytes) throws
+		InvalidFileStructureException
+	{
+		final byte ESCAPE = (byte)0x80;
+		final int DEST_END = destOffset + numBytes;
+		int index = destOffset;
+		while (index < DEST_END)
+		{
+			if (srcOffset >= srcEnd)
+			{
+				throw new InvalidFileStructureException("Unexpected end of run-length encoded data.");
+			}
+			if (src[srcOffset] != ESCAPE)
+			{
+				// copy all bytes up to the next escape byte
+				int literalEnd = srcOffset + 1;
+				int max = Math.min(srcEnd, srcOffset + DEST_END - index);
+				while (literalEnd < max && src[literalEnd] != ESCAPE)
+				{
+					literalEnd++;
+				}
+				int num = literalEnd - srcOffset;
+				System.arraycopy(src, srcOffset, dest, index, num);
+				srcOffset = literalEnd;
+				index += num;
+				continue;
+			}
+			if (srcOffset + 1 >= srcEnd)
+			{
+				throw new InvalidFileStructureException("Unexpected end of run-length encoded data.");
+			}
+			int n = src[srcOffset + 1] & 0xff;
+			if (n == 0)
+			{
+				dest[index++] = ESCAPE;
+				srcOffset += 2;
+			}
+			else
+			{
+				int num = n + 1;
+				if (index + num > DEST_END)
+				{
+					throw createOverflowException(numBytes, num, DEST_END - index);
+				}
+				if (srcOffset + 2 >= srcEnd)
+				{
+					throw new InvalidFileStructureException("Unexpected end of run-length encoded data.");
+				}
+				Arrays.fill(dest, index, index + num, src[srcOffset + 2]);
+				srcOffset += 3;
+				index += num;
+			}
+		}
+		return srcOffset;
+	}
+
+	/**
+	 * Decodes <code>numBytes</code> bytes of Packbits data from a byte array.
+	 * @param src compressed data
+	 * @param srcOffset index of the first byte of compressed data in <code>src</code>
+	 * @param srcEnd index of the first byte in <code>src</code> following the compressed data
+	 * @param dest array to receive the decoded bytes
+	 * @param destOffset index of the first decoded byte in <code>dest</code>
+	 * @param numBytes number of bytes to decode
+	 * @return index into <code>src</code> of the first byte following the
+	 *  compressed data that was used
+	 * @throws InvalidFileStructureException if the compressed data ends
+	 *  prematurely or contains a run not fitting into <code>numBytes</code>
+	 */
+	public static int decodePackbits(byte[] src, int srcOffset, int srcEnd, byte[] dest, int destOffset, int numBytes) throws
+		InvalidFileStructureException
+	{
+		final int SRC_END = srcEnd;
+		final int DEST_END = destOffset + numBytes;
+		int index = destOffset;
+		while (index < DEST_END)
+		{
+			if (srcOffset >= SRC_END)
+			{
+				throw new InvalidFileStructureException("Unexpected end of Packbits data.");
+			}
+			int n = src[srcOffset++];
+			if (n >= 0)
+			{
+				int num = n + 1;
+				if (index + num > DEST_END)
+				{
+					throw createOverflowException(numBytes, num, DEST_END - index);
+				}
+				if (srcOffset + num > SRC_END)
+				{
+					throw new InvalidFileStructureException("Unexpected end of Packbits data.");
+				}
+				System.arraycopy(src, srcOffset, dest, index, num);
+				srcOffset += num;
+				index += num;
+			}
+			else
+			if (n != -128)
+			{
+				int num = 1 - n;
+				if (index + num > DEST_END)
+				{
+					throw createOverflowException(numBytes, num, DEST_END - index);
+				}
+				if (srcOffset >= SRC_END)
+				{
+					throw new InvalidFileStructureException("Unexpected end of Packbits data.");
+				}
+				Arrays.fill(dest, index, index + num, src[srcOffset++]);
+				index += num;
+			}
+		}
+		return srcOffset;
+	}
+
+	/**
+	 * Decodes <code>numBytes</code> bytes of Packbits data read from a {@link java.io.DataInput}.
+	 * Use this only if the size of the compressed data is not known in advance,
+	 * otherwise read it into an array and call
+	 * {@link #decodePackbits(byte[], int, int, byte[], int, int)}.
+	 * @param in input to read compressed data from
+	 * @param dest array to receive the decoded bytes
+	 * @param destOffset index of the first decoded byte in <code>dest</code>
+	 * @param numBytes number of bytes to decode
+	 * @throws InvalidFileStructureException if the compressed data contains
+	 *  a run not fitting into <code>numBytes</code>
+	 * @throws IOException if reading from the input fails
+	 */
+	public static void decodePackbits(DataInput in, byte[] dest, int destOffset, int numBytes) throws
+		InvalidFileStructureException,
+		IOException
+	{
+		final int DEST_END = destOffset + numBytes;
+		int index = destOffset;
+		while (index < DEST_END)
+		{
+			int n = in.readByte();
+			if (n >= 0)
+			{
+				int num = n + 1;
+				if (index + num > DEST_END)
+				{
+					throw createOverflowException(numBytes, num, DEST_END - index);
+				}
+				in.readFully(dest, index, num);
+				index += num;
+			}
+			else
+			if (n != -128)
+			{
+				int num = 1 - n;
+				if (index + num > DEST_END)
+				{
+					throw createOverflowException(numBytes, num, DEST_END - index);
+				}
+				Arrays.fill(dest, index, index + num, in.readByte());
+				index += num;
+			}
+		}
+	}
+
+	/**
+	 * Decodes <code>numBytes</code> bytes of data stored as pairs of
+	 * an unsigned run length (1 to 255) and the byte value to be repeated.
+	 * @param in input to read compressed data from
+	 * @param dest array to receive the decoded bytes
+	 * @param destOffset index of the first decoded byte in <code>dest</code>
+	 * @param numBytes number of bytes to decode
+	 * @throws InvalidFileStructureException if a run length is zero
+	 *  or does not fit into <code>numBytes</code>
+	 * @throws IOException if reading from the input fails
+	 */
+	public static void decodeRunValuePairs(DataInput in, byte[] dest, int destOffset, int numBytes) throws
+		InvalidFileStructureException,
+		IOException
+	{
+		final int DEST_END = destOffset + numBytes;
+		int index = destOffset;
+		while (index < DEST_END)
+		{
+			int num = in.readUnsignedByte();
+			if (num == 0)
+			{
+				throw new InvalidFileStructureException("Run-length encoded data " +
+					"is corrupt: run length 0 at byte " + (index - destOffset) + ".");
+			}
+			if (index + num > DEST_END)
+			{
+				throw createOverflowException(numBytes, num, DEST_END - index);
+			}
+			Arrays.fill(dest, index, index + num, in.readByte());
+			index += num;
+		}
+	}
+
+	/**
+	 * Encodes <code>numBytes</code> bytes with the Packbits method.
+	 * Runs of three or more equal bytes become a replicate run,
+	 * everything else is stored in literal runs of up to 128 bytes.
+	 * @param src data to be encoded
+	 * @param srcOffset index of the first byte to be encoded in <code>src</code>
+	 * @param numBytes number of bytes to be encoded
+	 * @param dest array to receive the compressed data, must have room for at least
+	 *  {@link #getMaxPackbitsSize getMaxPackbitsSize(numBytes)} bytes from <code>destOffset</code> on
+	 * @param destOffset index of the first compressed byte in <code>dest</code>
+	 * @return number of compressed bytes written to <code>dest</code>
+	 */
+	public static int encodePackbits(byte[] src, int srcOffset, int numBytes, byte[] dest, int destOffset)
+	{
+		final int SRC_END = srcOffset + numBytes;
+		int destIndex = destOffset;
+		int index = srcOffset;
+		int literalStart = index;
+		while (index < SRC_END)
+		{
+			// determine length of run of equal bytes starting at index
+			byte value = src[index];
+			int runEnd = index + 1;
+			while (runEnd < SRC_END && src[runEnd] == value && runEnd - index < MAX_PACKBITS_RUN)
+			{
+				runEnd++;
+			}
+			int runLength = runEnd - index;
+			if (runLength >= 3)
+			{
+				destIndex = encodePackbitsLiterals(src, literalStart, index, dest, destIndex);
+				dest[destIndex++] = (byte)(1 - runLength);
+				dest[destIndex++] = value;
+				literalStart = runEnd;
+			}
+			index = runEnd;
+		}
+		destIndex = encodePackbitsLiterals(src, literalStart, SRC_END, dest, destIndex);
+		return destIndex - destOffset;
+	}
+
+	private static int encodePackbitsLiterals(byte[] src, int start, int end, byte[] dest, int destIndex)
+	{
+		while (start < end)
+		{
+			int num = Math.min(end - start, MAX_PACKBITS_RUN);
+			dest[destIndex++] = (byte)(num - 1);
+			System.arraycopy(src, start, dest, destIndex, num);
+			destIndex += num;
+			start += num;
+		}
+		return destIndex;
+	}
+
+	/**
+	 * Returns the maximum number of bytes that {@link #encodePackbits} creates
+	 * for <code>numBytes</code> bytes of input (one count byte per 128 literal bytes
+	 * in the worst case).
+	 */
+	public static int getMaxPackbitsSize(int numBytes)
+	{
+		return numBytes + (numBytes + MAX_PACKBITS_RUN - 1) / MAX_PACKBITS_RUN;
+	}
+}
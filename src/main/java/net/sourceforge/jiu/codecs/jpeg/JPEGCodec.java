@@ -1,31 +1,71 @@
 /*
  * JPEGCodec
  *
- * Copyright (c) 2004, 2005, 2006 Marco Schmidt.
+ * Copyright (c) 2004, 2005, 2006, 2007 Marco Schmidt.
  * All rights reserved.
  */
 
 package net.sourceforge.jiu.codecs.jpeg;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import net.sourceforge.jiu.codecs.CodecMode;
 import net.sourceforge.jiu.codecs.ImageCodec;
+import net.sourceforge.jiu.codecs.ImageDescriptor;
 import net.sourceforge.jiu.codecs.InvalidFileStructureException;
 import net.sourceforge.jiu.codecs.UnsupportedTypeException;
 import net.sourceforge.jiu.codecs.WrongFileFormatException;
+import net.sourceforge.jiu.data.ByteChannelImage;
+import net.sourceforge.jiu.data.Gray8Image;
+import net.sourceforge.jiu.data.MemoryGray8Image;
+import net.sourceforge.jiu.data.MemoryRGB24Image;
 import net.sourceforge.jiu.data.PixelImage;
+import net.sourceforge.jiu.data.RGB24Image;
+import net.sourceforge.jiu.data.RGBIndex;
 import net.sourceforge.jiu.ops.MissingParameterException;
 import net.sourceforge.jiu.ops.OperationFailedException;
 import net.sourceforge.jiu.util.ArrayConverter;
+import net.sourceforge.jiu.util.ByteBufferInputStream;
 
 /**
  * A codec for the JPEG file format.
  * <h3>Supported JPEG types</h3>
- * The codec is still under development.
- * Nothing can be read with it right now.
- * Writing JPEG files is not even in development stage.
+ * Baseline and extended sequential files with Huffman coding and a sample
+ * precision of eight bits can be read (frame types SOF0 and SOF1), with one
+ * (gray) or three (YCbCr) components, any sampling factors and restart intervals.
+ * Gray files are loaded as {@link net.sourceforge.jiu.data.Gray8Image},
+ * color files as {@link net.sourceforge.jiu.data.RGB24Image}.
+ * Progressive, lossless and arithmetic-coded files lead to an
+ * {@link net.sourceforge.jiu.codecs.UnsupportedTypeException}.
+ * Writing JPEG files is not supported.
+ * <h3>Decoding options</h3>
+ * <ul>
+ * <li>{@link #setMonochrome}: only the luminance (Y) component is decoded
+ *  and returned as gray image; chroma data is skipped without being
+ *  dequantized or transformed.</li>
+ * <li>{@link #setDecodeScale}: the image is decoded at 1/2, 1/4 or 1/8 of its
+ *  resolution by transforming each block directly to fewer samples
+ *  (only the low-frequency DCT coefficients are used).
+ *  This is much faster than decoding at full size and scaling afterwards.</li>
+ * </ul>
+ * Full-size blocks are transformed with a fast integer IDCT, see {@link JPEGInverseDCT}.
+ * Subsampled chroma is upsampled by pixel replication.
+ * Bounds (see {@link #setBounds}) refer to the scaled image.
+ * <h3>Usage example</h3>
+ * <pre>
+ * JPEGCodec codec = new JPEGCodec();
+ * codec.setFile("form.jpg", CodecMode.LOAD);
+ * codec.setMonochrome(true);
+ * codec.setDecodeScale(2);
+ * codec.process();
+ * Gray8Image image = (Gray8Image)codec.getImage();
+ * </pre>
  * <h3>Credits</h3>
  * "<em>JPEG Still Image Data Compression Standard</em>" by William B. Pennebaker and
  * Joan L. Mitchell. Published 1993 by Van Nostrand Reinhold.
@@ -37,21 +77,61 @@ import net.sourceforge.jiu.util.ArrayConverter;
  */
 public class JPEGCodec extends ImageCodec
 {
+	private static final int SCALE_BITS = 16;
+	private static final int SCALE_HALF = 1 << (SCALE_BITS - 1);
+	// YCbCr to RGB conversion tables (JFIF, P&M 5.1), indexed by Cb or Cr sample
+	private static final int[] CR_TO_RED = new int[256];
+	private static final int[] CB_TO_BLUE = new int[256];
+	private static final int[] CR_TO_GREEN = new int[256];
+	private static final int[] CB_TO_GREEN = new int[256];
+
+	static
+	{
+		for (int i = 0; i < 256; i++)
+		{
+			int x = i - 128;
+			CR_TO_RED[i] = (int)Math.round(1.402 * x);
+			CB_TO_BLUE[i] = (int)Math.round(1.772 * x);
+			CR_TO_GREEN[i] = -(int)Math.round(0.71414 * (1 << SCALE_BITS)) * x;
+			CB_TO_GREEN[i] = -(int)Math.round(0.34414 * (1 << SCALE_BITS)) * x + SCALE_HALF;
+		}
+	}
+
 	private DataInput in;
+	private byte[] data;
+	private boolean monochrome;
 
-	private void decodeScan(JPEGData jpegData)
+	private static byte clamp(int value)
 	{
-		JPEGFrame frame = jpegData.getFrame();
-		int width = frame.getWidth();
-		int height = frame.getHeight();
-		/*Gray8Image image = new MemoryGray8Image(width, height);
-		int x = 0;
-		int y = 0;*/
-		int numMCUs = ((width + 7) / 8) * ((height + 7) / 8);
-		while (numMCUs > 0)
+		if (value < 0)
 		{
-			
-			numMCUs--;
+			return 0;
+		}
+		if (value > 255)
+		{
+			return (byte)255;
+		}
+		return (byte)value;
+	}
+
+	/**
+	 * Copies a row of a component to dest, replicating samples of
+	 * subsampled components.
+	 */
+	private static void getComponentRow(JPEGDecoder decoder, int compIndex, int hFactor, int vFactor,
+		int maxH, int maxV, int x1, int y, byte[] dest)
+	{
+		byte[] plane = decoder.getPlane(compIndex);
+		int planeWidth = decoder.getPlaneWidth(compIndex);
+		int offset = (y * vFactor / maxV) * planeWidth;
+		if (hFactor == maxH)
+		{
+			System.arraycopy(plane, offset + x1, dest, 0, dest.length);
+			return;
+		}
+		for (int x = 0; x < dest.length; x++)
+		{
+			dest[x] = plane[offset + (x1 + x) * hFactor / maxH];
 		}
 	}
 
@@ -67,7 +147,7 @@ public class JPEGCodec extends ImageCodec
 
 	public String[] getMimeTypes()
 	{
-		// image/pjpeg for progressive JPEGs is not included 
+		// image/pjpeg for progressive JPEGs is not included
 		// because it's not supported by this codec (yet)
 		return new String[] {"image/jpeg"};
 	}
@@ -77,43 +157,97 @@ public class JPEGCodec extends ImageCodec
 		return true;
 	}
 
+	/**
+	 * Returns whether only the luminance component is loaded.
+	 * @see #setMonochrome
+	 * @since 0.14.3
+	 */
+	public boolean isMonochrome()
+	{
+		return monochrome;
+	}
+
 	public boolean isSavingSupported()
 	{
 		return false;
 	}
 
-	private void load() throws 
-		OperationFailedException, 
+	private void load() throws
+		OperationFailedException,
 		WrongFileFormatException
 	{
-		in = getInputAsDataInput();
-		if (in == null)
-		{
-			throw new MissingParameterException(
-				"Input object missing (could not retrieve via getAsDataInput).");
-		}
 		try
 		{
-			// read and check the first two bytes
-			byte[] data = new byte[4];
-			in.readFully(data, 0, 2);
-			int signature = ArrayConverter.getShortBEAsInt(data, 0);
-			if (signature != JPEGConstants.JFIF_SIGNATURE)
+			data = readInput();
+			// check the first two bytes
+			if (data.length < 4 || ArrayConverter.getShortBEAsInt(data, 0) != JPEGConstants.JFIF_SIGNATURE)
 			{
 				throw new WrongFileFormatException(
 					"Not a JFIF file (first two bytes are not 0xff 0xd8).");
 			}
-			// continuously read markers, updating a JPEGData object 
+			in = new ByteBufferInputStream(ByteBuffer.wrap(data));
+			// continuously read markers, updating a JPEGData object
 			JPEGData jpegData = new JPEGData();
-			while (true)
+			JPEGDecoder decoder = null;
+			int index = 2;
+			while (index < data.length)
 			{
-				// read and decode marker type and length
-				in.readFully(data);
-				int marker = ArrayConverter.getShortBEAsInt(data, 0);
-				int length = ArrayConverter.getShortBEAsInt(data, 2);
-				// read the actual marker information
+				if (data[index] != (byte)0xff)
+				{
+					throw new InvalidFileStructureException("Expected JPEG marker at offset " + index + ".");
+				}
+				// skip fill bytes
+				while (index < data.length && data[index] == (byte)0xff)
+				{
+					index++;
+				}
+				if (index == data.length)
+				{
+					break;
+				}
+				int marker = data[index++] & 0xff;
+				if (marker == JPEGConstants.MARKER_EOI)
+				{
+					break;
+				}
+				if (marker == 0x01 || (marker >= JPEGConstants.MARKER_RST0 && marker <= JPEGConstants.MARKER_RST7))
+				{
+					// standalone markers without length field
+					continue;
+				}
+				if (index + 2 > data.length)
+				{
+					throw new InvalidFileStructureException("Unexpected end of JPEG data.");
+				}
+				int length = ArrayConverter.getShortBEAsInt(data, index);
+				if (length < 2 || index + length > data.length)
+				{
+					throw new InvalidFileStructureException("Invalid length of JPEG marker " +
+						Integer.toHexString(marker) + ": " + length + ".");
+				}
+				((ByteBufferInputStream)in).seek(index + 2);
 				readMarker(jpegData, marker, length);
+				index += length;
+				if (marker == JPEGConstants.MARKER_SOS)
+				{
+					if (jpegData.getFrame() == null)
+					{
+						throw new InvalidFileStructureException("JPEG scan without preceding frame header.");
+					}
+					if (decoder == null)
+					{
+						decoder = new JPEGDecoder(jpegData, data, getDecodeScale(),
+							monochrome || jpegData.getFrame().getNumComponents() == 1);
+					}
+					JPEGScan scan = jpegData.getScan(jpegData.getNumScans() - 1);
+					index = decoder.decodeScan(scan, index);
+				}
+			}
+			if (decoder == null)
+			{
+				throw new InvalidFileStructureException("No image data found in JPEG file.");
 			}
+			storeImage(jpegData.getFrame(), decoder);
 		}
 		catch (IOException ioe)
 		{
@@ -121,6 +255,8 @@ public class JPEGCodec extends ImageCodec
 		}
 		finally
 		{
+			data = null;
+			in = null;
 			close();
 		}
 	}
@@ -138,12 +274,84 @@ public class JPEGCodec extends ImageCodec
 			JPEGCodec codec = new JPEGCodec();
 			codec.setFile(new File(fileName), CodecMode.LOAD);
 			codec.process();
-			//PixelImage image = codec.getImage(); 
+			PixelImage image = codec.getImage();
+			System.out.println(fileName + ": " + image.getWidth() + " x " + image.getHeight());
 		}
 	}
 
-	public void process() throws 
-		MissingParameterException, 
+	/**
+	 * Reads the marker segments up to the frame header and returns resolution,
+	 * physical resolution (from a JFIF header, if present) and image type.
+	 * Unlike loading, this does not read the complete input.
+	 * Width and height are those stored in the file, regardless of
+	 * {@link #setDecodeScale}.
+	 * @since 0.14.3
+	 */
+	public ImageDescriptor probe() throws
+		MissingParameterException,
+		OperationFailedException
+	{
+		DataInput input = getInputAsDataInput();
+		if (input == null)
+		{
+			throw new MissingParameterException("Input object missing.");
+		}
+		try
+		{
+			if (input.readUnsignedShort() != JPEGConstants.JFIF_SIGNATURE)
+			{
+				throw new WrongFileFormatException(
+					"Not a JFIF file (first two bytes are not 0xff 0xd8).");
+			}
+			JPEGData jpegData = new JPEGData();
+			while (jpegData.getFrame() == null)
+			{
+				if (input.readUnsignedByte() != 0xff)
+				{
+					throw new InvalidFileStructureException("Expected JPEG marker.");
+				}
+				int marker;
+				do
+				{
+					marker = input.readUnsignedByte();
+				}
+				while (marker == 0xff);
+				if (marker == JPEGConstants.MARKER_EOI || marker == JPEGConstants.MARKER_SOS)
+				{
+					throw new InvalidFileStructureException("No frame header found in JPEG file.");
+				}
+				if (marker == 0x01 || (marker >= JPEGConstants.MARKER_RST0 && marker <= JPEGConstants.MARKER_RST7))
+				{
+					continue;
+				}
+				int length = input.readUnsignedShort();
+				if (length < 2)
+				{
+					throw new InvalidFileStructureException("Invalid length of JPEG marker " +
+						Integer.toHexString(marker) + ": " + length + ".");
+				}
+				// marker segments are read completely, so readMarker cannot read beyond them
+				byte[] segment = new byte[length - 2];
+				input.readFully(segment);
+				in = new ByteBufferInputStream(ByteBuffer.wrap(segment));
+				readMarker(jpegData, marker, length);
+			}
+			JPEGFrame frame = jpegData.getFrame();
+			Class imageType = monochrome || frame.getNumComponents() == 1 ? Gray8Image.class : RGB24Image.class;
+			return createDescriptor(frame.getWidth(), frame.getHeight(), imageType, 1);
+		}
+		catch (IOException ioe)
+		{
+			throw new OperationFailedException("Error reading from input.");
+		}
+		finally
+		{
+			in = null;
+		}
+	}
+
+	public void process() throws
+		MissingParameterException,
 		OperationFailedException,
 		WrongFileFormatException
 	{
@@ -163,20 +371,113 @@ public class JPEGCodec extends ImageCodec
 		}
 	}
 
-	private void readMarker(JPEGData jpegData, int marker, int length) throws 
-		InvalidFileStructureException,
+	/**
+	 * Reads the complete input into a byte array.
+	 */
+	private byte[] readInput() throws
 		IOException,
-		UnsupportedTypeException
+		MissingParameterException
+	{
+		ByteBufferInputStream bufferInput = getByteBufferInputStream();
+		if (bufferInput != null)
+		{
+			ByteBuffer buffer = bufferInput.getByteBuffer();
+			buffer.position((int)bufferInput.getFilePointer());
+			byte[] result = new byte[buffer.remaining()];
+			buffer.get(result);
+			return result;
+		}
+		RandomAccessFile raf = getRandomAccessFile();
+		if (raf != null)
+		{
+			byte[] result = new byte[(int)(raf.length() - raf.getFilePointer())];
+			raf.readFully(result);
+			return result;
+		}
+		InputStream input = getInputStream();
+		if (input == null && getDataInput() instanceof InputStream)
+		{
+			input = (InputStream)getDataInput();
+		}
+		if (input != null)
+		{
+			byte[] result = new byte[65536];
+			int size = 0;
+			int numRead;
+			do
+			{
+				if (size == result.length)
+				{
+					byte[] larger = new byte[result.length * 2];
+					System.arraycopy(result, 0, larger, 0, size);
+					result = larger;
+				}
+				numRead = input.read(result, size, result.length - size);
+				if (numRead > 0)
+				{
+					size += numRead;
+				}
+			}
+			while (numRead >= 0);
+			byte[] trimmed = new byte[size];
+			System.arraycopy(result, 0, trimmed, 0, size);
+			return trimmed;
+		}
+		DataInput din = getDataInput();
+		if (din == null)
+		{
+			throw new MissingParameterException("Input object missing.");
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try
+		{
+			while (true)
+			{
+				out.write(din.readUnsignedByte());
+			}
+		}
+		catch (EOFException eofe)
+		{
+			return out.toByteArray();
+		}
+	}
+
+	/**
+	 * Reads the physical resolution from a JFIF APP0 segment, if there is
+	 * one with a density unit of dots per inch or dots per centimeter.
+	 * Other APP0 segments are ignored.
+	 */
+	private void readJfifHeader(int length) throws IOException
 	{
-		// make sure marker is a valid marker
-		if ((marker >> 8) != 0xff)
+		if (length < 12)
+		{
+			return;
+		}
+		byte[] header = new byte[12];
+		in.readFully(header);
+		if (header[0] != 'J' || header[1] != 'F' || header[2] != 'I' || header[3] != 'F' || header[4] != 0)
+		{
+			return;
+		}
+		int units = header[7] & 0xff;
+		int x = ArrayConverter.getShortBEAsInt(header, 8);
+		int y = ArrayConverter.getShortBEAsInt(header, 10);
+		if (units == 1)
+		{
+			setDpi(x, y);
+		}
+		else
+		if (units == 2)
 		{
-			// TODO: instead of giving up, search for next occurrence of 0xff (error recovery)
-			throw new InvalidFileStructureException("Marker " + 
-				marker + " does not have 0xff in its top eight bits.");
+			setDpi((int)(x * 2.54f + 0.5f), (int)(y * 2.54f + 0.5f));
 		}
-		// zero out everything but the least significant byte
-		marker &= 0xff;
+	}
+
+	private void readMarker(JPEGData jpegData, int marker, int length) throws
+		InvalidFileStructureException,
+		IOException,
+		UnsupportedTypeException
+	{
 		// decrease two bytes for the marker length field
 		length -= 2;
 		// react on marker, possible reactions:
@@ -185,6 +486,11 @@ public class JPEGCodec extends ImageCodec
 		// - skip otherwise (= marker is unknown)
 		switch(marker)
 		{
+			case(JPEGConstants.MARKER_APP0):
+			{
+				readJfifHeader(length);
+				break;
+			}
 			case(JPEGConstants.MARKER_DHT):
 			{
 				JPEGMarkerReader.readHuffmanTables(in, jpegData, length);
@@ -195,14 +501,24 @@ public class JPEGCodec extends ImageCodec
 				JPEGMarkerReader.readQuantizationTables(in, jpegData, length);
 				break;
 			}
-			// Start of frame: Huffman Baseline DCT
+			case(JPEGConstants.MARKER_DRI):
+			{
+				JPEGMarkerReader.readRestartInterval(in, jpegData, length);
+				break;
+			}
+			// Start of frame: Huffman Baseline DCT and Huffman Extended Sequential DCT
+			// (the latter is decoded like baseline as only 8 bit precision is supported)
 			case(JPEGConstants.MARKER_SOF0):
+			case(JPEGConstants.MARKER_SOF1):
 			{
+				if (jpegData.getFrame() != null)
+				{
+					throw new InvalidFileStructureException("More than one JPEG frame header.");
+				}
 				JPEGMarkerReader.readStartOfFrame(in, jpegData, marker, length);
 				break;
 			}
 			// unsupported frame types
-			case(JPEGConstants.MARKER_SOF1):
 			case(JPEGConstants.MARKER_SOF2):
 			case(JPEGConstants.MARKER_SOF3):
 			case(JPEGConstants.MARKER_SOF5):
@@ -221,24 +537,130 @@ public class JPEGCodec extends ImageCodec
 			case(JPEGConstants.MARKER_SOS):
 			{
 				JPEGMarkerReader.readStartOfScan(in, jpegData, length);
-				decodeScan(jpegData);
 				break;
 			}
 			default:
 			{
-				System.out.println("Unknown marker: " + Integer.toHexString(marker));
-				// skip marker data
-				while (length > 0)
+				// APPn, COM and unknown markers are skipped by the caller
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Specifies the resolution of the decoded image as a fraction of
+	 * the resolution stored in the file: 1 (full size, the default), 1/2, 1/4 or 1/8.
+	 * Width and height of the decoded image are the file's width and height
+	 * divided by the argument, rounded up.
+	 * Unlike with other codecs, bounds refer to the reduced image.
+	 * @param denominator 1, 2, 4 or 8
+	 * @throws IllegalArgumentException if the argument is not one of the valid values
+	 * @since 0.14.3
+	 */
+	public void setDecodeScale(int denominator)
+	{
+		if (denominator != 1 && denominator != 2 && denominator != 4 && denominator != 8)
+		{
+			throw new IllegalArgumentException("Decode scale denominator must be 1, 2, 4 or 8: " + denominator);
+		}
+		super.setDecodeScale(denominator);
+	}
+
+	/**
+	 * Specifies whether only the luminance (Y) component is to be loaded,
+	 * resulting in a gray image even for color files.
+	 * This is considerably faster than decoding a color image and converting it to gray.
+	 * Default is <code>false</code>.
+	 * @since 0.14.3
+	 */
+	public void setMonochrome(boolean newValue)
+	{
+		monochrome = newValue;
+	}
+
+	/**
+	 * Creates the output image from the decoded component planes,
+	 * converting YCbCr to RGB for color images.
+	 */
+	private void storeImage(JPEGFrame frame, JPEGDecoder decoder) throws
+		InvalidFileStructureException,
+		OperationFailedException
+	{
+		int decodeScale = getDecodeScale();
+		int width = (frame.getWidth() + decodeScale - 1) / decodeScale;
+		int height = (frame.getHeight() + decodeScale - 1) / decodeScale;
+		setBoundsIfNecessary(width, height);
+		checkBounds(width, height);
+		final int X1 = getBoundsX1();
+		final int Y1 = getBoundsY1();
+		final int WIDTH = getBoundsWidth();
+		final int HEIGHT = getBoundsHeight();
+		JPEGFrameComponent[] comps = frame.getComponents();
+		int maxH = 1;
+		int maxV = 1;
+		for (int i = 0; i < comps.length; i++)
+		{
+			maxH = Math.max(maxH, comps[i].getHorizontalSamplingFactor());
+			maxV = Math.max(maxV, comps[i].getVerticalSamplingFactor());
+		}
+		boolean gray = monochrome || comps.length == 1;
+		PixelImage target = getImage();
+		ByteChannelImage image;
+		if (gray && target instanceof Gray8Image &&
+		    target.getWidth() == WIDTH && target.getHeight() == HEIGHT)
+		{
+			image = (Gray8Image)target;
+		}
+		else
+		if (!gray && target instanceof RGB24Image &&
+		    target.getWidth() == WIDTH && target.getHeight() == HEIGHT)
+		{
+			image = (RGB24Image)target;
+		}
+		else
+		if (gray)
+		{
+			image = new MemoryGray8Image(WIDTH, HEIGHT);
+		}
+		else
+		{
+			image = new MemoryRGB24Image(WIDTH, HEIGHT);
+		}
+		byte[] y = new byte[WIDTH];
+		byte[] cb = gray ? null : new byte[WIDTH];
+		byte[] cr = gray ? null : new byte[WIDTH];
+		for (int row = 0; row < HEIGHT; row++)
+		{
+			int srcY = Y1 + row;
+			getComponentRow(decoder, 0, comps[0].getHorizontalSamplingFactor(),
+				comps[0].getVerticalSamplingFactor(), maxH, maxV, X1, srcY, y);
+			if (gray)
+			{
+				image.putByteSamples(0, 0, row, WIDTH, 1, y, 0);
+			}
+			else
+			{
+				getComponentRow(decoder, 1, comps[1].getHorizontalSamplingFactor(),
+					comps[1].getVerticalSamplingFactor(), maxH, maxV, X1, srcY, cb);
+				getComponentRow(decoder, 2, comps[2].getHorizontalSamplingFactor(),
+					comps[2].getVerticalSamplingFactor(), maxH, maxV, X1, srcY, cr);
+				// convert in place: y becomes red, cb blue and cr green
+				for (int x = 0; x < WIDTH; x++)
 				{
-					int skipped = in.skipBytes(length);
-					if (skipped > 0)
-					{
-						length -= skipped;
-					}
+					int luma = y[x] & 0xff;
+					int cbValue = cb[x] & 0xff;
+					int crValue = cr[x] & 0xff;
+					y[x] = clamp(luma + CR_TO_RED[crValue]);
+					cb[x] = clamp(luma + CB_TO_BLUE[cbValue]);
+					cr[x] = clamp(luma + ((CB_TO_GREEN[cbValue] + CR_TO_GREEN[crValue]) >> SCALE_BITS));
 				}
-				break;
+				image.putByteSamples(RGBIndex.INDEX_RED, 0, row, WIDTH, 1, y, 0);
+				image.putByteSamples(RGBIndex.INDEX_GREEN, 0, row, WIDTH, 1, cr, 0);
+				image.putByteSamples(RGBIndex.INDEX_BLUE, 0, row, WIDTH, 1, cb, 0);
 			}
+			setProgress(row, HEIGHT);
 		}
+		setImage(image);
 	}
 
 	public String suggestFileExtension(PixelImage image)
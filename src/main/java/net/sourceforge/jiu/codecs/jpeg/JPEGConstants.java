@@ -24,6 +24,12 @@ public final class JPEGConstants
 	 */
 	public static final int JFIF_SIGNATURE = 0xffd8;
 
+	/**
+	 * APP0 (application segment 0) marker ID value, used for the JFIF header.
+	 * @since 0.14.3
+	 */
+	public static final int MARKER_APP0 = 0xe0;
+
 	/**
 	 * DHT (define Huffman table) marker ID value.
 	 */
@@ -34,6 +40,31 @@ public final class JPEGConstants
 	 */
 	public static final int MARKER_DQT  = 0xdb;
 
+	/**
+	 * DRI (define restart interval) marker ID value.
+	 * @since 0.14.3
+	 */
+	public static final int MARKER_DRI  = 0xdd;
+
+	/**
+	 * EOI (end of image) marker ID value.
+	 * @since 0.14.3
+	 */
+	public static final int MARKER_EOI  = 0xd9;
+
+	/**
+	 * RST0 (restart with modulo 8 count 0) marker ID value;
+	 * the eight restart markers RST0 to RST7 have consecutive values.
+	 * @since 0.14.3
+	 */
+	public static final int MARKER_RST0 = 0xd0;
+
+	/**
+	 * RST7 (restart with modulo 8 count 7) marker ID value.
+	 * @since 0.14.3
+	 */
+	public static final int MARKER_RST7 = 0xd7;
+
 	/**
 	 * SOF0 (start of frame, type 0) marker ID value.
 	 */
@@ -114,6 +145,25 @@ public final class JPEGConstants
 	 */
 	public static final int SAMPLES_PER_BLOCK = BLOCK_EDGE_LENGTH * BLOCK_EDGE_LENGTH; 
 
+	/**
+	 * For each index into the zig-zag sequence in which coefficients and
+	 * quantization table elements are stored, the index of that element
+	 * in a block stored row by row (natural order).
+	 * P&M figure 7.3, p. 108.
+	 * @since 0.14.3
+	 */
+	public static final int[] ZIGZAG_TO_NATURAL =
+	{
+		 0,  1,  8, 16,  9,  2,  3, 10,
+		17, 24, 32, 25, 18, 11,  4,  5,
+		12, 19, 26, 33, 40, 48, 41, 34,
+		27, 20, 13,  6,  7, 14, 21, 28,
+		35, 42, 49, 56, 57, 50, 43, 36,
+		29, 22, 15, 23, 30, 37, 44, 51,
+		58, 59, 52, 45, 38, 31, 39, 46,
+		53, 60, 61, 54, 47, 55, 62, 63
+	};
+
 	/**
 	 * Empty private constructor to prevent instantiation of this class.
 	 */
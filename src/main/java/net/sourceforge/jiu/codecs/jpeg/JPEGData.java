@@ -19,6 +19,7 @@ public class JPEGData
 	private JPEGFrame frame;
 	private Vector huffmanTables = new Vector();
 	private Vector quantTables = new Vector();
+	private int restartInterval;
 	private Vector scans = new Vector();
 
 	public void addQuantizationTable(JPEGQuantizationTable table)
@@ -41,19 +42,52 @@ public class JPEGData
 		return frame;
 	}
 
+	/**
+	 * Return the Huffman table with a given class and id or
+	 * null on failure to find it.
+	 * If a table was redefined, the table added last is returned.
+	 * @param classAcDc table class, {@link JPEGHuffmanTable#TABLE_CLASS_AC} or
+	 *  {@link JPEGHuffmanTable#TABLE_CLASS_DC}
+	 * @param id integer id value of table
+	 * @return actual table or null on failure
+	 * @since 0.14.3
+	 */
+	public JPEGHuffmanTable getHuffmanTable(int classAcDc, int id)
+	{
+		int index = huffmanTables.size();
+		while (index > 0)
+		{
+			JPEGHuffmanTable table = (JPEGHuffmanTable)huffmanTables.elementAt(--index);
+			if (table.getClassAcDc() == classAcDc && table.getId() == id)
+			{
+				return table;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of scans added so far.
+	 * @since 0.14.3
+	 */
+	public int getNumScans()
+	{
+		return scans.size();
+	}
+
 	/**
 	 * Return a quantization table with a given id or
 	 * null on failure to find it.
+	 * If a table was redefined, the table added last is returned.
 	 * @param id integer id value of table
 	 * @return actual table or null on failure
 	 */
 	public JPEGQuantizationTable getQuantizationTable(int id)
 	{
-		JPEGQuantizationTable table = null;
-		int index = 0;
-		while (index < quantTables.size())
+		int index = quantTables.size();
+		while (index > 0)
 		{
-			table = (JPEGQuantizationTable)quantTables.elementAt(index++);
+			JPEGQuantizationTable table = (JPEGQuantizationTable)quantTables.elementAt(--index);
 			if (table.getId() == id)
 			{
 				return table;
@@ -62,8 +96,38 @@ public class JPEGData
 		return null;
 	}
 
+	/**
+	 * Returns the number of MCUs between two restart markers, as defined
+	 * by the last DRI marker, or 0 if restart markers are not used.
+	 * @since 0.14.3
+	 */
+	public int getRestartInterval()
+	{
+		return restartInterval;
+	}
+
+	/**
+	 * Returns a scan added with {@link #addScan}.
+	 * @param index zero-based index of the scan, from 0 to {@link #getNumScans} - 1
+	 * @since 0.14.3
+	 */
+	public JPEGScan getScan(int index)
+	{
+		return (JPEGScan)scans.elementAt(index);
+	}
+
 	public void setFrame(JPEGFrame newFrame)
 	{
 		frame = newFrame;
 	}
+
+	/**
+	 * Sets the number of MCUs between two restart markers.
+	 * @param newInterval number of MCUs, 0 to disable restart markers
+	 * @since 0.14.3
+	 */
+	public void setRestartInterval(int newInterval)
+	{
+		restartInterval = newInterval;
+	}
 }
@@ -0,0 +1,498 @@
+/*
+ * JPEGDecoder
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.jpeg;
+
+import java.util.Arrays;
+import net.sourceforge.jiu.codecs.InvalidFileStructureException;
+import net.sourceforge.jiu.codecs.UnsupportedTypeException;
+
+/**
+ * Decodes the entropy-coded segments of baseline (sequential, Huffman-coded)
+ * JPEG scans into one sample plane per frame component.
+ * <p>
+ * The complete JPEG stream is given as a byte array, so that the bit reader
+ * needs no method calls per byte; it fills a 64 bit buffer, removes the zero
+ * bytes stuffed after 0xff data bytes and stops in front of markers.
+ * Huffman codes of up to {@link JPEGHuffmanTable#LOOKUP_BITS} bits are decoded with a
+ * single table lookup, longer codes with the maximum code per length (P&amp;M 10.4).
+ * <p>
+ * Blocks are transformed by {@link JPEGInverseDCT}, either to 8 x 8 samples or,
+ * with a scale denominator of 2, 4 or 8, directly to 4 x 4, 2 x 2 or 1 x 1 samples.
+ * In luminance-only mode, the first frame component is the only one
+ * that is stored; the Huffman codes of all other components in interleaved scans are
+ * decoded but neither dequantized nor transformed, and scans containing only other
+ * components are skipped without decoding.
+ * <p>
+ * Plane dimensions are multiples of the block size per MCU, so planes may
+ * be larger than the (scaled) component dimensions.
+ * Corrupt or truncated entropy-coded data does not lead to an exception
+ * as long as the Huffman codes are valid; missing data is decoded as zero bits.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public class JPEGDecoder
+{
+	private final byte[] data;
+	private int dataIndex;
+	private long bitBuffer;
+	private int numBufferedBits;
+	private final JPEGData jpegData;
+	private final JPEGFrameComponent[] components;
+	private final int blockSize;
+	private final int maxHorizontalSampling;
+	private final int maxVerticalSampling;
+	private final int mcusX;
+	private final int mcusY;
+	private final byte[][] planes;
+	private final int[] planeWidths;
+	private final int[] planeHeights;
+	private final int[][] quantizationTables;
+	private final int[] dcPredictions;
+	private final int[] coef = new int[JPEGConstants.SAMPLES_PER_BLOCK];
+	private final int[] work = new int[JPEGConstants.SAMPLES_PER_BLOCK];
+	/**
+	 * For each zig-zag index whether the coefficient is used by the transform
+	 * for the current block size.
+	 */
+	private final boolean[] used = new boolean[JPEGConstants.SAMPLES_PER_BLOCK];
+
+	/**
+	 * Creates a decoder for the frame of the argument JPEG data.
+	 * Quantization tables must be defined before the constructor is called.
+	 * @param jpegData frame and table information
+	 * @param data the complete JPEG stream
+	 * @param scaleDenominator 1, 2, 4 or 8
+	 * @param luminanceOnly if <code>true</code>, only the first frame component is decoded
+	 * @throws InvalidFileStructureException if a quantization table is missing
+	 */
+	public JPEGDecoder(JPEGData jpegData, byte[] data, int scaleDenominator, boolean luminanceOnly) throws
+		InvalidFileStructureException
+	{
+		this.jpegData = jpegData;
+		this.data = data;
+		blockSize = JPEGConstants.BLOCK_EDGE_LENGTH / scaleDenominator;
+		for (int i = 0; i < used.length; i++)
+		{
+			int index = JPEGConstants.ZIGZAG_TO_NATURAL[i];
+			used[i] = (index >> 3) < blockSize && (index & 7) < blockSize;
+		}
+		JPEGFrame frame = jpegData.getFrame();
+		components = frame.getComponents();
+		int maxH = 1;
+		int maxV = 1;
+		for (int i = 0; i < components.length; i++)
+		{
+			maxH = Math.max(maxH, components[i].getHorizontalSamplingFactor());
+			maxV = Math.max(maxV, components[i].getVerticalSamplingFactor());
+		}
+		maxHorizontalSampling = maxH;
+		maxVerticalSampling = maxV;
+		mcusX = (frame.getWidth() + maxH * 8 - 1) / (maxH * 8);
+		mcusY = (frame.getHeight() + maxV * 8 - 1) / (maxV * 8);
+		planes = new byte[components.length][];
+		planeWidths = new int[components.length];
+		planeHeights = new int[components.length];
+		quantizationTables = new int[components.length][];
+		dcPredictions = new int[components.length];
+		for (int i = 0; i < components.length; i++)
+		{
+			JPEGFrameComponent comp = components[i];
+			planeWidths[i] = mcusX * comp.getHorizontalSamplingFactor() * blockSize;
+			planeHeights[i] = mcusY * comp.getVerticalSamplingFactor() * blockSize;
+			if (i > 0 && luminanceOnly)
+			{
+				continue;
+			}
+			int id = comp.getQuantizationTableId();
+			JPEGQuantizationTable table = jpegData.getQuantizationTable(id);
+			if (table == null)
+			{
+				throw new InvalidFileStructureException("Quantization table " + id +
+					" used by component " + comp.getComponentId() + " is undefined.");
+			}
+			if (blockSize == JPEGConstants.BLOCK_EDGE_LENGTH)
+			{
+				quantizationTables[i] = JPEGInverseDCT.createScaledQuantizationTable(table.getData());
+			}
+			else
+			{
+				quantizationTables[i] = JPEGInverseDCT.createQuantizationTable(table.getData());
+			}
+			planes[i] = new byte[planeWidths[i] * planeHeights[i]];
+		}
+	}
+
+	private void decodeBlock(int compIndex, JPEGHuffmanTable dcTable, JPEGHuffmanTable acTable,
+		int blockX, int blockY) throws InvalidFileStructureException
+	{
+		// DC coefficient
+		int s = decodeHuffman(dcTable);
+		if (s != 0)
+		{
+			dcPredictions[compIndex] += receiveExtend(s);
+		}
+		final int[] q = quantizationTables[compIndex];
+		if (q == null)
+		{
+			skipAcCoefficients(acTable);
+			return;
+		}
+		coef[0] = dcPredictions[compIndex] * q[0];
+		// AC coefficients
+		boolean acZero = true;
+		int k = 1;
+		while (k < 64)
+		{
+			int rs = decodeHuffman(acTable);
+			s = rs & 15;
+			int r = rs >> 4;
+			if (s == 0)
+			{
+				if (r != 15)
+				{
+					break;
+				}
+				k += 16;
+				continue;
+			}
+			k += r;
+			if (k > 63)
+			{
+				throw new InvalidFileStructureException("AC coefficient run exceeds block.");
+			}
+			int value = receiveExtend(s);
+			if (used[k])
+			{
+				int index = JPEGConstants.ZIGZAG_TO_NATURAL[k];
+				coef[index] = value * q[index];
+				acZero = false;
+			}
+			k++;
+		}
+		// transform
+		int width = planeWidths[compIndex];
+		int offset = blockY * blockSize * width + blockX * blockSize;
+		if (acZero)
+		{
+			JPEGInverseDCT.transformDC(coef[0], blockSize, planes[compIndex], offset, width);
+			coef[0] = 0;
+		}
+		else
+		if (blockSize == JPEGConstants.BLOCK_EDGE_LENGTH)
+		{
+			JPEGInverseDCT.transform(coef, planes[compIndex], offset, width);
+			Arrays.fill(coef, 0);
+		}
+		else
+		{
+			JPEGInverseDCT.transformReduced(coef, blockSize, planes[compIndex], offset, width, work);
+			for (int y = 0; y < blockSize; y++)
+			{
+				Arrays.fill(coef, y * 8, y * 8 + blockSize, 0);
+			}
+		}
+	}
+
+	private int decodeHuffman(JPEGHuffmanTable table) throws InvalidFileStructureException
+	{
+		if (numBufferedBits < 32)
+		{
+			fillBitBuffer();
+		}
+		int peek = (int)(bitBuffer >>> (numBufferedBits - JPEGHuffmanTable.LOOKUP_BITS)) &
+			((1 << JPEGHuffmanTable.LOOKUP_BITS) - 1);
+		int entry = table.getLookup()[peek];
+		if (entry != 0)
+		{
+			numBufferedBits -= entry >> 8;
+			return entry & 0xff;
+		}
+		// code is longer than LOOKUP_BITS
+		int[] maxCode = table.getMaxCode();
+		int length = JPEGHuffmanTable.LOOKUP_BITS + 1;
+		int code = (int)(bitBuffer >>> (numBufferedBits - length)) & ((1 << length) - 1);
+		while (code > maxCode[length])
+		{
+			length++;
+			code = (int)(bitBuffer >>> (numBufferedBits - length)) & ((1 << length) - 1);
+		}
+		if (length > JPEGConstants.MAX_HUFFMAN_CODE_LENGTH)
+		{
+			throw new InvalidFileStructureException("Invalid Huffman code in JPEG scan.");
+		}
+		numBufferedBits -= length;
+		return table.getValues()[code + table.getValueOffset()[length]];
+	}
+
+	/**
+	 * Decodes the entropy-coded data of a scan whose header has just been read.
+	 * @param scan the scan header
+	 * @param offset index of the first byte of entropy-coded data
+	 * @return index of the marker following the entropy-coded data (or the length
+	 *  of the stream if there is no such marker)
+	 * @throws InvalidFileStructureException if the scan refers to undefined components or
+	 *  tables, or if the data contains invalid Huffman codes
+	 * @throws UnsupportedTypeException if the scan is not a baseline scan
+	 */
+	public int decodeScan(JPEGScan scan, int offset) throws
+		InvalidFileStructureException,
+		UnsupportedTypeException
+	{
+		if (scan.getSpectralStart() != 0 || scan.getSpectralEnd() != 63 ||
+		    scan.getHighSuccessiveBit() != 0 || scan.getLowSuccessiveBit() != 0)
+		{
+			throw new UnsupportedTypeException("Only baseline JPEG scans are supported.");
+		}
+		JPEGScanComponentSpecification[] specs = scan.getCompSpecs();
+		int numScanComponents = specs.length;
+		int[] compIndexes = new int[numScanComponents];
+		JPEGHuffmanTable[] dcTables = new JPEGHuffmanTable[numScanComponents];
+		JPEGHuffmanTable[] acTables = new JPEGHuffmanTable[numScanComponents];
+		boolean decode = false;
+		for (int i = 0; i < numScanComponents; i++)
+		{
+			int compIndex = findComponent(specs[i].getComponent());
+			compIndexes[i] = compIndex;
+			dcTables[i] = findHuffmanTable(JPEGHuffmanTable.TABLE_CLASS_DC, specs[i].getDcEntropyTable());
+			acTables[i] = findHuffmanTable(JPEGHuffmanTable.TABLE_CLASS_AC, specs[i].getAcEntropyTable());
+			decode |= planes[compIndex] != null;
+		}
+		dataIndex = offset;
+		if (!decode)
+		{
+			// no component of this scan is needed
+			return findMarker();
+		}
+		bitBuffer = 0;
+		numBufferedBits = 0;
+		Arrays.fill(dcPredictions, 0);
+		final int RESTART_INTERVAL = jpegData.getRestartInterval();
+		int restartsToGo = RESTART_INTERVAL;
+		int numMcusX;
+		int numMcusY;
+		if (numScanComponents == 1)
+		{
+			// non-interleaved: one block per MCU, only blocks covering the component
+			JPEGFrame frame = jpegData.getFrame();
+			JPEGFrameComponent comp = components[compIndexes[0]];
+			int compWidth = (frame.getWidth() * comp.getHorizontalSamplingFactor() + maxHorizontalSampling - 1) / maxHorizontalSampling;
+			int compHeight = (frame.getHeight() * comp.getVerticalSamplingFactor() + maxVerticalSampling - 1) / maxVerticalSampling;
+			numMcusX = (compWidth + 7) / 8;
+			numMcusY = (compHeight + 7) / 8;
+		}
+		else
+		{
+			numMcusX = mcusX;
+			numMcusY = mcusY;
+		}
+		for (int mcuY = 0; mcuY < numMcusY; mcuY++)
+		{
+			for (int mcuX = 0; mcuX < numMcusX; mcuX++)
+			{
+				if (RESTART_INTERVAL > 0)
+				{
+					if (restartsToGo == 0)
+					{
+						processRestart();
+						restartsToGo = RESTART_INTERVAL;
+					}
+					restartsToGo--;
+				}
+				if (numScanComponents == 1)
+				{
+					decodeBlock(compIndexes[0], dcTables[0], acTables[0], mcuX, mcuY);
+					continue;
+				}
+				for (int i = 0; i < numScanComponents; i++)
+				{
+					JPEGFrameComponent comp = components[compIndexes[i]];
+					int h = comp.getHorizontalSamplingFactor();
+					int v = comp.getVerticalSamplingFactor();
+					for (int blockY = 0; blockY < v; blockY++)
+					{
+						for (int blockX = 0; blockX < h; blockX++)
+						{
+							decodeBlock(compIndexes[i], dcTables[i], acTables[i],
+								mcuX * h + blockX, mcuY * v + blockY);
+						}
+					}
+				}
+			}
+		}
+		return findMarker();
+	}
+
+	private void fillBitBuffer()
+	{
+		while (numBufferedBits <= 56)
+		{
+			int value = 0;
+			if (dataIndex < data.length)
+			{
+				value = data[dataIndex] & 0xff;
+				if (value == 0xff)
+				{
+					int next = dataIndex + 1 < data.length ? data[dataIndex + 1] & 0xff : -1;
+					if (next == 0)
+					{
+						// stuffed zero byte
+						dataIndex += 2;
+					}
+					else
+					{
+						// a marker: do not advance, feed zero bits
+						value = 0;
+					}
+				}
+				else
+				{
+					dataIndex++;
+				}
+			}
+			bitBuffer = (bitBuffer << 8) | value;
+			numBufferedBits += 8;
+		}
+	}
+
+	private int findComponent(int componentId) throws InvalidFileStructureException
+	{
+		for (int i = 0; i < components.length; i++)
+		{
+			if (components[i].getComponentId() == componentId)
+			{
+				return i;
+			}
+		}
+		throw new InvalidFileStructureException("Scan refers to undefined component " + componentId + ".");
+	}
+
+	private JPEGHuffmanTable findHuffmanTable(int classAcDc, int id) throws InvalidFileStructureException
+	{
+		JPEGHuffmanTable table = jpegData.getHuffmanTable(classAcDc, id);
+		if (table == null)
+		{
+			throw new InvalidFileStructureException("Scan refers to undefined " +
+				(classAcDc == JPEGHuffmanTable.TABLE_CLASS_AC ? "AC" : "DC") + " Huffman table " + id + ".");
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the index of the next marker other than RSTn at or after dataIndex,
+	 * or the length of the data if there is none.
+	 */
+	private int findMarker()
+	{
+		int index = dataIndex;
+		while (index + 1 < data.length)
+		{
+			if (data[index] == (byte)0xff)
+			{
+				int next = data[index + 1] & 0xff;
+				if (next != 0 && next != 0xff &&
+				    (next < JPEGConstants.MARKER_RST0 || next > JPEGConstants.MARKER_RST7))
+				{
+					return index;
+				}
+			}
+			index++;
+		}
+		return data.length;
+	}
+
+	/**
+	 * Returns the height of the sample plane of a component.
+	 */
+	public int getPlaneHeight(int compIndex)
+	{
+		return planeHeights[compIndex];
+	}
+
+	/**
+	 * Returns the width of the sample plane of a component, which is also the
+	 * distance between two rows in the array returned by {@link #getPlane}.
+	 */
+	public int getPlaneWidth(int compIndex)
+	{
+		return planeWidths[compIndex];
+	}
+
+	/**
+	 * Returns the samples of a component, or <code>null</code> if the
+	 * component is not decoded.
+	 * @param compIndex index into the frame's component array
+	 */
+	public byte[] getPlane(int compIndex)
+	{
+		return planes[compIndex];
+	}
+
+	/**
+	 * Skips to the data following the next restart marker and resets the decoder state.
+	 */
+	private void processRestart()
+	{
+		// buffered bits are the padding of the interval's last byte (or zeros fed
+		// in front of the marker), dataIndex is at the marker if one was reached
+		bitBuffer = 0;
+		numBufferedBits = 0;
+		while (dataIndex + 1 < data.length)
+		{
+			if (data[dataIndex] == (byte)0xff)
+			{
+				int next = data[dataIndex + 1] & 0xff;
+				if (next >= JPEGConstants.MARKER_RST0 && next <= JPEGConstants.MARKER_RST7)
+				{
+					dataIndex += 2;
+					break;
+				}
+				if (next != 0 && next != 0xff)
+				{
+					// some other marker, data is missing
+					break;
+				}
+			}
+			dataIndex++;
+		}
+		Arrays.fill(dcPredictions, 0);
+	}
+
+	private int receiveExtend(int numBits)
+	{
+		numBufferedBits -= numBits;
+		int value = (int)(bitBuffer >>> numBufferedBits) & ((1 << numBits) - 1);
+		if (value < (1 << (numBits - 1)))
+		{
+			value += (-1 << numBits) + 1;
+		}
+		return value;
+	}
+
+	private void skipAcCoefficients(JPEGHuffmanTable acTable) throws InvalidFileStructureException
+	{
+		int k = 1;
+		while (k < 64)
+		{
+			int rs = decodeHuffman(acTable);
+			int s = rs & 15;
+			if (s == 0)
+			{
+				if ((rs >> 4) != 15)
+				{
+					return;
+				}
+				k += 16;
+			}
+			else
+			{
+				k += (rs >> 4) + 1;
+				numBufferedBits -= s;
+			}
+		}
+	}
+}
@@ -7,6 +7,8 @@
 
 package net.sourceforge.jiu.codecs.jpeg;
 
+import net.sourceforge.jiu.codecs.InvalidFileStructureException;
+
 /**
  * Data class that stores a single Huffman table, including class 
  * (AC or DC), ID and codes for the 16 possible bit lengths from 1 to 16.
@@ -22,86 +24,117 @@ public class JPEGHuffmanTable
 	private int classAcDc;
 	private int[][] codes;
 
-	private int[] huffCode;
-	private int[] huffSize;
-	private int lastK;
+	/**
+	 * Number of bits used to index {@link #getLookup}.
+	 */
+	public static final int LOOKUP_BITS = 9;
 
-	public void createDecoderTables()
-	{
-		generateSizeTable();
-		generateCodeTable();
-		// TODO: F.15
-	}
+	private int[] lookup;
+	private int[] maxCode;
+	private int[] valueOffset;
+	private int[] values;
 
 	/**
-	 * Initialize huffCode from huffSize.
-	 * P&M figure C.2, p. 406f.
+	 * Creates the tables needed for decoding from the codes given to
+	 * {@link #setCodes}.
+	 * Codes are assigned as described in P&M figures C.1 and C.2, p. 405ff.
+	 * In addition to the maximum code and value offset for each code length
+	 * (P&M F.15, p. 412), which are used for codes longer than {@link #LOOKUP_BITS},
+	 * a lookup table is created that gives code length and value for all
+	 * shorter codes with a single array access.
+	 * @throws InvalidFileStructureException if there are more codes of some length
+	 *  than can be represented with that number of bits
 	 */
-	private void generateCodeTable()
+	public void createDecoderTables() throws InvalidFileStructureException
 	{
-		huffCode = new int[257];
-		int k = 0;
+		int numValues = 0;
+		for (int i = 0; i < codes.length; i++)
+		{
+			numValues += codes[i].length;
+		}
+		values = new int[numValues];
+		maxCode = new int[JPEGConstants.MAX_HUFFMAN_CODE_LENGTH + 2];
+		valueOffset = new int[JPEGConstants.MAX_HUFFMAN_CODE_LENGTH + 1];
+		lookup = new int[1 << LOOKUP_BITS];
 		int code = 0;
-		int si = huffSize[0];
-		while (true)
+		int k = 0;
+		for (int length = 1; length <= JPEGConstants.MAX_HUFFMAN_CODE_LENGTH; length++)
 		{
-			while (true)
-			{
-				huffCode[k] = code;
-				code++;
-				k++;
-				if (huffSize[k] != si)
-				{
-					break;
-				}
-			}
-			if (huffSize[k] == 0)
+			int[] lengthValues = codes[length - 1];
+			// value index of a code c of this length is c + valueOffset[length]
+			valueOffset[length] = k - code;
+			if (code + lengthValues.length > (1 << length))
 			{
-				break;
+				throw new InvalidFileStructureException("Huffman table " + id +
+					" has too many codes of length " + length + ".");
 			}
-			while (true)
+			for (int i = 0; i < lengthValues.length; i++)
 			{
-				code <<= 1;
-				si++;
-				if (huffSize[k] == si)
+				values[k++] = lengthValues[i];
+				if (length <= LOOKUP_BITS)
 				{
-					break;
+					// all lookup entries starting with this code
+					int shift = LOOKUP_BITS - length;
+					int entry = (length << 8) | lengthValues[i];
+					int first = code << shift;
+					for (int j = 0; j < (1 << shift); j++)
+					{
+						lookup[first + j] = entry;
+					}
 				}
+				code++;
 			}
+			// largest code of this length or -1 if there is none
+			maxCode[length] = lengthValues.length > 0 ? code - 1 : -1;
+			code <<= 1;
 		}
+		// guarantees that decoding stops after 16 bits
+		maxCode[JPEGConstants.MAX_HUFFMAN_CODE_LENGTH + 1] = Integer.MAX_VALUE;
 	}
 
 	/**
-	 * Initialize huffSize and lastK from codes.
-	 * P&M figure C.1, p. 405f.
+	 * Returns the lookup table created by {@link #createDecoderTables}.
+	 * Indexed by the next {@link #LOOKUP_BITS} bits of input, an entry holds the
+	 * code length in bits 8 and higher and the decoded value in bits 0 to 7;
+	 * zero entries mean that the code is longer than LOOKUP_BITS bits
+	 * (or invalid).
+	 * @since 0.14.3
 	 */
-	private void generateSizeTable()
+	public int[] getLookup()
 	{
-		huffSize = new int[257];
-		int i = 1;
-		int j = 1;
-		int k = 0;
-		while (true)
-		{
-			while (true)
-			{
-				if (j > codes[i].length)
-				{
-					break;
-				}
-				huffSize[k] = i;
-				k++;
-				j++;
-			}
-			i++;
-			j = 1;
-			if (i > JPEGConstants.MAX_HUFFMAN_CODE_LENGTH)
-			{
-				break;
-			}
-		}
-		huffSize[k] = 0;
-		lastK = k;
+		return lookup;
+	}
+
+	/**
+	 * Returns the largest code for each code length from 1 to 16, -1 for lengths
+	 * without codes.
+	 * Created by {@link #createDecoderTables}.
+	 * @since 0.14.3
+	 */
+	public int[] getMaxCode()
+	{
+		return maxCode;
+	}
+
+	/**
+	 * For each code length, the value to be added to a code of that length
+	 * to get the index of its value in {@link #getValues}.
+	 * Created by {@link #createDecoderTables}.
+	 * @since 0.14.3
+	 */
+	public int[] getValueOffset()
+	{
+		return valueOffset;
+	}
+
+	/**
+	 * Returns all values of the table in the order of their codes.
+	 * Created by {@link #createDecoderTables}.
+	 * @since 0.14.3
+	 */
+	public int[] getValues()
+	{
+		return values;
 	}
 
 	public int getClassAcDc()
@@ -0,0 +1,359 @@
+/*
+ * JPEGInverseDCT
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.jpeg;
+
+/**
+ * Static methods to convert blocks of dequantized DCT coefficients to samples.
+ * <p>
+ * Full-size blocks are transformed with the integer version of the algorithm
+ * of Arai, Agui and Nakajima (AAN), which needs only five multiplications per
+ * one-dimensional transform because the remaining scale factors are moved into
+ * the quantization table (see {@link #createScaledQuantizationTable}).
+ * This is the algorithm of the <em>fast integer</em> IDCT of the Independent JPEG
+ * Group's library.
+ * <p>
+ * For reduced-size decoding a block is transformed to 4 x 4, 2 x 2 or 1 x 1 samples
+ * directly, using only the low-frequency coefficients.
+ * The result is (up to rounding and the ignored high frequencies) the average of
+ * the corresponding 2 x 2, 4 x 4 or 8 x 8 samples of the full-size block.
+ * <p>
+ * Coefficients are always given in natural (row by row) order.
+ * Samples are level-shifted by 128 and clamped to 0..255.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public class JPEGInverseDCT
+{
+	private static final int CONST_BITS = 8;
+	private static final int PASS1_BITS = 2;
+	private static final int FIX_1_082392200 = 277;
+	private static final int FIX_1_414213562 = 362;
+	private static final int FIX_1_847759065 = 473;
+	private static final int FIX_2_613125930 = 669;
+
+	/**
+	 * Bits of the fractional part of the reduced-size transform matrices.
+	 */
+	private static final int REDUCED_BITS = 12;
+
+	/**
+	 * Fractional bits kept after the first pass of a reduced-size transform.
+	 */
+	private static final int REDUCED_PASS1_BITS = 3;
+
+	/**
+	 * Scale factors of the AAN transform, 1 for index 0, cos(k * pi / 16) * sqrt(2) otherwise.
+	 */
+	private static final double[] AAN_SCALE_FACTORS = new double[8];
+
+	/**
+	 * Matrices of the reduced-size transforms for block sizes 2 and 4,
+	 * REDUCED_MATRIX[n][x * n + u] being the weight of frequency u for output sample x.
+	 */
+	private static final int[][] REDUCED_MATRIX = new int[5][];
+
+	/**
+	 * Maps sample values plus an offset of 512 to 0..255.
+	 */
+	private static final byte[] CLAMP = new byte[1024 + 256];
+
+	static
+	{
+		AAN_SCALE_FACTORS[0] = 1.0;
+		for (int k = 1; k < 8; k++)
+		{
+			AAN_SCALE_FACTORS[k] = Math.cos(k * Math.PI / 16.0) * Math.sqrt(2.0);
+		}
+		for (int n = 2; n <= 4; n *= 2)
+		{
+			int groupSize = 8 / n;
+			int[] matrix = new int[n * n];
+			for (int x = 0; x < n; x++)
+			{
+				for (int u = 0; u < n; u++)
+				{
+					// average of the 8-point basis function u over the samples of group x
+					double sum = 0.0;
+					for (int j = 0; j < groupSize; j++)
+					{
+						sum += Math.cos((2 * (x * groupSize + j) + 1) * u * Math.PI / 16.0);
+					}
+					double c = u == 0 ? Math.sqrt(0.5) : 1.0;
+					double value = c / 2.0 * sum / groupSize;
+					matrix[x * n + u] = (int)Math.round(value * (1 << REDUCED_BITS));
+				}
+			}
+			REDUCED_MATRIX[n] = matrix;
+		}
+		for (int i = 0; i < CLAMP.length; i++)
+		{
+			int value = i - 512 + 128;
+			if (value < 0)
+			{
+				value = 0;
+			}
+			else
+			if (value > 255)
+			{
+				value = 255;
+			}
+			CLAMP[i] = (byte)value;
+		}
+	}
+
+	private JPEGInverseDCT()
+	{
+	}
+
+	private static byte clamp(int value)
+	{
+		value += 512;
+		if (value < 0)
+		{
+			return 0;
+		}
+		if (value >= CLAMP.length)
+		{
+			return (byte)255;
+		}
+		return CLAMP[value];
+	}
+
+	/**
+	 * Creates the quantization table to be used with {@link #transform}: the
+	 * argument table values (in zig-zag order) multiplied with the AAN scale factors,
+	 * in natural order and with {@link #PASS1_BITS} additional fractional bits.
+	 * @param zigzag quantization table elements in zig-zag order as stored in a DQT marker
+	 * @return new table in natural order
+	 */
+	public static int[] createScaledQuantizationTable(int[] zigzag)
+	{
+		int[] result = new int[JPEGConstants.SAMPLES_PER_BLOCK];
+		for (int i = 0; i < result.length; i++)
+		{
+			int index = JPEGConstants.ZIGZAG_TO_NATURAL[i];
+			double scale = AAN_SCALE_FACTORS[index >> 3] * AAN_SCALE_FACTORS[index & 7];
+			result[index] = (int)Math.round(zigzag[i] * scale * (1 << PASS1_BITS));
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the quantization table to be used with {@link #transformReduced}:
+	 * the argument table values (in zig-zag order) in natural order.
+	 * @param zigzag quantization table elements in zig-zag order as stored in a DQT marker
+	 * @return new table in natural order
+	 */
+	public static int[] createQuantizationTable(int[] zigzag)
+	{
+		int[] result = new int[JPEGConstants.SAMPLES_PER_BLOCK];
+		for (int i = 0; i < result.length; i++)
+		{
+			result[JPEGConstants.ZIGZAG_TO_NATURAL[i]] = zigzag[i];
+		}
+		return result;
+	}
+
+	private static int multiply(int value, int constant)
+	{
+		return (value * constant) >> CONST_BITS;
+	}
+
+	/**
+	 * Transforms a block of 8 x 8 coefficients, dequantized with a table from
+	 * {@link #createScaledQuantizationTable}, to 8 x 8 samples.
+	 * @param coef 64 coefficients in natural order, used as work space (their values are destroyed)
+	 * @param dest array to receive the samples
+	 * @param offset index of the top left sample in dest
+	 * @param stride distance between two rows of samples in dest
+	 */
+	public static void transform(int[] coef, byte[] dest, int offset, int stride)
+	{
+		// pass 1: columns, results are stored back into coef
+		for (int col = 0; col < 8; col++)
+		{
+			if (coef[col + 8] == 0 && coef[col + 16] == 0 && coef[col + 24] == 0 &&
+			    coef[col + 32] == 0 && coef[col + 40] == 0 && coef[col + 48] == 0 &&
+			    coef[col + 56] == 0)
+			{
+				// only the DC term is non-zero: all values of the column are equal
+				int dc = coef[col];
+				coef[col + 8] = dc;
+				coef[col + 16] = dc;
+				coef[col + 24] = dc;
+				coef[col + 32] = dc;
+				coef[col + 40] = dc;
+				coef[col + 48] = dc;
+				coef[col + 56] = dc;
+				continue;
+			}
+			// even part
+			int tmp0 = coef[col];
+			int tmp1 = coef[col + 16];
+			int tmp2 = coef[col + 32];
+			int tmp3 = coef[col + 48];
+			int tmp10 = tmp0 + tmp2;
+			int tmp11 = tmp0 - tmp2;
+			int tmp13 = tmp1 + tmp3;
+			int tmp12 = multiply(tmp1 - tmp3, FIX_1_414213562) - tmp13;
+			tmp0 = tmp10 + tmp13;
+			tmp3 = tmp10 - tmp13;
+			tmp1 = tmp11 + tmp12;
+			tmp2 = tmp11 - tmp12;
+			// odd part
+			int tmp4 = coef[col + 8];
+			int tmp5 = coef[col + 24];
+			int tmp6 = coef[col + 40];
+			int tmp7 = coef[col + 56];
+			int z13 = tmp6 + tmp5;
+			int z10 = tmp6 - tmp5;
+			int z11 = tmp4 + tmp7;
+			int z12 = tmp4 - tmp7;
+			tmp7 = z11 + z13;
+			tmp11 = multiply(z11 - z13, FIX_1_414213562);
+			int z5 = multiply(z10 + z12, FIX_1_847759065);
+			tmp10 = multiply(z12, FIX_1_082392200) - z5;
+			tmp12 = multiply(z10, -FIX_2_613125930) + z5;
+			tmp6 = tmp12 - tmp7;
+			tmp5 = tmp11 - tmp6;
+			tmp4 = tmp10 + tmp5;
+			coef[col] = tmp0 + tmp7;
+			coef[col + 56] = tmp0 - tmp7;
+			coef[col + 8] = tmp1 + tmp6;
+			coef[col + 48] = tmp1 - tmp6;
+			coef[col + 16] = tmp2 + tmp5;
+			coef[col + 40] = tmp2 - tmp5;
+			coef[col + 32] = tmp3 + tmp4;
+			coef[col + 24] = tmp3 - tmp4;
+		}
+		// pass 2: rows, results are descaled, level-shifted and clamped
+		final int SHIFT = PASS1_BITS + 3;
+		final int ROUND = 1 << (SHIFT - 1);
+		for (int row = 0, i = 0; row < 8; row++, i += 8, offset += stride)
+		{
+			// even part
+			int tmp0 = coef[i] + ROUND;
+			int tmp1 = coef[i + 2];
+			int tmp2 = coef[i + 4];
+			int tmp3 = coef[i + 6];
+			int tmp10 = tmp0 + tmp2;
+			int tmp11 = tmp0 - tmp2;
+			int tmp13 = tmp1 + tmp3;
+			int tmp12 = multiply(tmp1 - tmp3, FIX_1_414213562) - tmp13;
+			tmp0 = tmp10 + tmp13;
+			tmp3 = tmp10 - tmp13;
+			tmp1 = tmp11 + tmp12;
+			tmp2 = tmp11 - tmp12;
+			// odd part
+			int tmp4 = coef[i + 1];
+			int tmp5 = coef[i + 3];
+			int tmp6 = coef[i + 5];
+			int tmp7 = coef[i + 7];
+			int z13 = tmp6 + tmp5;
+			int z10 = tmp6 - tmp5;
+			int z11 = tmp4 + tmp7;
+			int z12 = tmp4 - tmp7;
+			tmp7 = z11 + z13;
+			tmp11 = multiply(z11 - z13, FIX_1_414213562);
+			int z5 = multiply(z10 + z12, FIX_1_847759065);
+			tmp10 = multiply(z12, FIX_1_082392200) - z5;
+			tmp12 = multiply(z10, -FIX_2_613125930) + z5;
+			tmp6 = tmp12 - tmp7;
+			tmp5 = tmp11 - tmp6;
+			tmp4 = tmp10 + tmp5;
+			dest[offset] = clamp((tmp0 + tmp7) >> SHIFT);
+			dest[offset + 7] = clamp((tmp0 - tmp7) >> SHIFT);
+			dest[offset + 1] = clamp((tmp1 + tmp6) >> SHIFT);
+			dest[offset + 6] = clamp((tmp1 - tmp6) >> SHIFT);
+			dest[offset + 2] = clamp((tmp2 + tmp5) >> SHIFT);
+			dest[offset + 5] = clamp((tmp2 - tmp5) >> SHIFT);
+			dest[offset + 4] = clamp((tmp3 + tmp4) >> SHIFT);
+			dest[offset + 3] = clamp((tmp3 - tmp4) >> SHIFT);
+		}
+	}
+
+	/**
+	 * Fills a block whose AC coefficients are all zero with the sample value
+	 * resulting from its DC coefficient, much faster than a complete transform.
+	 * @param dc dequantized DC coefficient, with a table from {@link #createScaledQuantizationTable}
+	 *  if size is 8, from {@link #createQuantizationTable} otherwise
+	 * @param size 1, 2, 4 or 8
+	 * @param dest array to receive the samples
+	 * @param offset index of the top left sample in dest
+	 * @param stride distance between two rows of samples in dest
+	 */
+	public static void transformDC(int dc, int size, byte[] dest, int offset, int stride)
+	{
+		byte value;
+		if (size == JPEGConstants.BLOCK_EDGE_LENGTH)
+		{
+			value = clamp((dc + (1 << (PASS1_BITS + 2))) >> (PASS1_BITS + 3));
+		}
+		else
+		{
+			value = clamp((dc + 4) >> 3);
+		}
+		for (int y = 0; y < size; y++, offset += stride)
+		{
+			for (int x = 0; x < size; x++)
+			{
+				dest[offset + x] = value;
+			}
+		}
+	}
+
+	/**
+	 * Transforms a block of coefficients, dequantized with a table from
+	 * {@link #createQuantizationTable}, to <code>size</code> x <code>size</code> samples.
+	 * Only the top left <code>size</code> x <code>size</code> coefficients are used.
+	 * @param coef 64 coefficients in natural order
+	 * @param size 1, 2 or 4
+	 * @param dest array to receive the samples
+	 * @param offset index of the top left sample in dest
+	 * @param stride distance between two rows of samples in dest
+	 * @param work array of at least 16 elements used as work space
+	 */
+	public static void transformReduced(int[] coef, int size, byte[] dest, int offset, int stride, int[] work)
+	{
+		if (size == 1)
+		{
+			// the DC coefficient is eight times the block's mean
+			dest[offset] = clamp((coef[0] + 4) >> 3);
+			return;
+		}
+		final int[] M = REDUCED_MATRIX[size];
+		final int SHIFT1 = REDUCED_BITS - REDUCED_PASS1_BITS;
+		final int SHIFT2 = REDUCED_BITS + REDUCED_PASS1_BITS;
+		// pass 1: for each frequency row v, the values at the output columns x
+		for (int v = 0; v < size; v++)
+		{
+			for (int x = 0; x < size; x++)
+			{
+				int sum = 0;
+				for (int u = 0; u < size; u++)
+				{
+					sum += M[x * size + u] * coef[v * 8 + u];
+				}
+				work[v * size + x] = (sum + (1 << (SHIFT1 - 1))) >> SHIFT1;
+			}
+		}
+		// pass 2: combine the rows for each output row y
+		for (int y = 0; y < size; y++, offset += stride)
+		{
+			for (int x = 0; x < size; x++)
+			{
+				int sum = 1 << (SHIFT2 - 1);
+				for (int v = 0; v < size; v++)
+				{
+					sum += M[y * size + v] * work[v * size + x];
+				}
+				dest[offset + x] = clamp(sum >> SHIFT2);
+			}
+		}
+	}
+}
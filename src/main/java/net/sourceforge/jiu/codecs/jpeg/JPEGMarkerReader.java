@@ -77,7 +77,7 @@ public class JPEGMarkerReader
 				length -= number;
 			}
 			table.setCodes(codes);
-			System.out.println(table);
+			table.createDecoderTables();
 			jpegData.addHuffmanTable(table);
 		}
 	}
@@ -199,9 +199,9 @@ public class JPEGMarkerReader
 				width + ".");
 		}
 		frame.setWidth(width);
-		// number of components (= channels)
+		// number of components (= channels): gray or YCbCr
 		int numComponents = data[5] & 0xff;
-		if (numComponents != 1)
+		if (numComponents != 1 && numComponents != 3)
 		{
 			throw new UnsupportedTypeException("Unsupported number of JPEG components: " +
 				numComponents);
@@ -225,13 +225,39 @@ public class JPEGMarkerReader
 			frameComponent.setHorizontalSamplingFactor(horizontalSamplingFactor);
 			int verticalSamplingFactor = data[1] & 0x0f; 
 			frameComponent.setVerticalSamplingFactor(verticalSamplingFactor);
+			if (horizontalSamplingFactor < 1 || horizontalSamplingFactor > 4 ||
+			    verticalSamplingFactor < 1 || verticalSamplingFactor > 4)
+			{
+				throw new InvalidFileStructureException("JPEG sampling factors must be from 1 to 4; got " +
+					horizontalSamplingFactor + "x" + verticalSamplingFactor + ".");
+			}
 			int quantizationTable = data[2] & 0xff; 
 			frameComponent.setQuantizationTableId(quantizationTable);
 			frameComponents[componentIndex] = frameComponent;
 		}
 		frame.setComponents(frameComponents);
 		jpegData.setFrame(frame);
-		System.out.println(frame);
+	}
+
+	/**
+	 * Read a DRI (define restart interval) marker.
+	 * P&M 7.8.5, p. 120.
+	 * @param in source to read marker information from
+	 * @param jpegData {@link JPEGData} object to update with information from the marker
+	 * @param length size of marker in bytes
+	 * @throws InvalidFileStructureException if the marker does not have the expected size 
+	 * @throws IOException on I/O errors
+	 * @since 0.14.3
+	 */
+	public static void readRestartInterval(DataInput in, JPEGData jpegData, int length) throws
+		InvalidFileStructureException,
+		IOException
+	{
+		if (length != 2)
+		{
+			throw new InvalidFileStructureException("DRI marker must be two bytes large; got " + length);
+		}
+		jpegData.setRestartInterval(in.readUnsignedShort());
 	}
 
 	/**
@@ -285,13 +311,17 @@ public class JPEGMarkerReader
 		}
 		data = new byte[3];
 		in.readFully(data);
-		// TODO: add these as fields to JPEGScan, check their values and call the scan setters to copy the data
-		/*
 		int spectralStart = data[0] & 0xff;
 		int spectralEnd = data[1] & 0xff;
-		int highSuccessiveBit = (data[2] & 0xf0) >> 4;
-		int lowSuccessiveBit = data[2] & 0x0f;
-		*/
+		if (spectralStart > spectralEnd || spectralEnd > 63)
+		{
+			throw new InvalidFileStructureException("Invalid spectral selection in SOS marker: " +
+				spectralStart + " to " + spectralEnd);
+		}
+		scan.setSpectralStart(spectralStart);
+		scan.setSpectralEnd(spectralEnd);
+		scan.setHighSuccessiveBit((data[2] & 0xf0) >> 4);
+		scan.setLowSuccessiveBit(data[2] & 0x0f);
 		jpegData.addScan(scan);
 	}
 }
@@ -9,6 +9,30 @@ public class JPEGScan
 {
 	private int numComponents;
 	private JPEGScanComponentSpecification[] compSpecs;
+	private int spectralStart;
+	private int spectralEnd;
+	private int highSuccessiveBit;
+	private int lowSuccessiveBit;
+
+	/**
+	 * Returns the successive approximation bit position high (Ah),
+	 * zero for sequential (non-progressive) scans.
+	 * @since 0.14.3
+	 */
+	public int getHighSuccessiveBit()
+	{
+		return highSuccessiveBit;
+	}
+
+	/**
+	 * Returns the successive approximation bit position low (Al),
+	 * zero for sequential (non-progressive) scans.
+	 * @since 0.14.3
+	 */
+	public int getLowSuccessiveBit()
+	{
+		return lowSuccessiveBit;
+	}
 
 	public int getNumComponents()
 	{
@@ -29,4 +53,44 @@ public class JPEGScan
 	{
 		compSpecs = specifications;
 	}
+
+	/**
+	 * Returns the index of the last coefficient in zig-zag order
+	 * stored in this scan (Se), 63 for sequential scans.
+	 * @since 0.14.3
+	 */
+	public int getSpectralEnd()
+	{
+		return spectralEnd;
+	}
+
+	/**
+	 * Returns the index of the first coefficient in zig-zag order
+	 * stored in this scan (Ss), 0 for sequential scans.
+	 * @since 0.14.3
+	 */
+	public int getSpectralStart()
+	{
+		return spectralStart;
+	}
+
+	public void setHighSuccessiveBit(int i)
+	{
+		highSuccessiveBit = i;
+	}
+
+	public void setLowSuccessiveBit(int i)
+	{
+		lowSuccessiveBit = i;
+	}
+
+	public void setSpectralEnd(int i)
+	{
+		spectralEnd = i;
+	}
+
+	public void setSpectralStart(int i)
+	{
+		spectralStart = i;
+	}
 }
@@ -7,26 +7,44 @@
 
 package net.sourceforge.jiu.codecs.tiff;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.DataOutput;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.zip.Deflater;
 import net.sourceforge.jiu.codecs.CodecMode;
 import net.sourceforge.jiu.codecs.ImageCodec;
+import net.sourceforge.jiu.codecs.ImageDescriptor;
 import net.sourceforge.jiu.codecs.InvalidFileStructureException;
 import net.sourceforge.jiu.codecs.UnsupportedCodecModeException;
 import net.sourceforge.jiu.codecs.UnsupportedTypeException;
 import net.sourceforge.jiu.codecs.WrongFileFormatException;
+import net.sourceforge.jiu.data.BilevelImage;
+import net.sourceforge.jiu.data.ByteChannelImage;
+import net.sourceforge.jiu.data.Gray16Image;
+import net.sourceforge.jiu.data.Gray8Image;
 import net.sourceforge.jiu.data.MemoryBilevelImage;
 import net.sourceforge.jiu.data.MemoryGray16Image;
 import net.sourceforge.jiu.data.MemoryGray8Image;
 import net.sourceforge.jiu.data.MemoryPaletted8Image;
 import net.sourceforge.jiu.data.MemoryRGB24Image;
 import net.sourceforge.jiu.data.MemoryRGB48Image;
+import net.sourceforge.jiu.data.Palette;
+import net.sourceforge.jiu.data.Paletted8Image;
 import net.sourceforge.jiu.data.PixelImage;
+import net.sourceforge.jiu.data.RGB24Image;
+import net.sourceforge.jiu.data.RGB48Image;
+import net.sourceforge.jiu.data.RGBIndex;
 import net.sourceforge.jiu.ops.MissingParameterException;
 import net.sourceforge.jiu.ops.OperationFailedException;
 import net.sourceforge.jiu.ops.WrongParameterException;
+import net.sourceforge.jiu.util.ArrayConverter;
+import net.sourceforge.jiu.util.ByteBufferInputStream;
 
 /**
  * A codec to read Tagged Image File Format (TIFF) image files.
@@ -39,7 +57,27 @@ import net.sourceforge.jiu.ops.WrongParameterException;
  * codec.process();
  * PixelImage loadedImage = codec.getImage();
  * </pre>
- * Saving images is not supported by this codec.
+ * To read from a memory-mapped file instead of using a {@link java.io.RandomAccessFile}
+ * (this avoids a system call for each value read from the file):
+ * <pre>
+ * codec.setFileChannel(new FileInputStream("image.tif").getChannel());
+ * </pre>
+ * To read many small parts of the images of a file that is kept open,
+ * e.g. when zooming into a large scanned page, use {@link TIFFRegionReader}.
+ * It reads the image file directories only once and keeps decoded strips and tiles in a cache.
+ * <p>
+ * Save an image, then append a second image to the same file:
+ * <pre>
+ * TIFFCodec codec = new TIFFCodec();
+ * codec.setFile("pages.tif", CodecMode.SAVE);
+ * codec.setImage(firstPage);
+ * codec.process();
+ * codec = new TIFFCodec();
+ * codec.setAppending(true);
+ * codec.setFile("pages.tif", CodecMode.SAVE);
+ * codec.setImage(secondPage);
+ * codec.process();
+ * </pre>
  *
  * <h3>Compression types</h3>
  * <h4>Reading</h4>
@@ -49,6 +87,12 @@ import net.sourceforge.jiu.ops.WrongParameterException;
  * <li><em>Packbits</em>. Compression method number 32773. Works with all types of image data. See {@link TIFFDecoderPackbits}.</li>
  * <li><em>CCITT Group 3 1-Dimensional Modified Huffman runlength encoding</em>. Compression method number 2. 
  *  Works with bilevel image data only. See {@link TIFFDecoderModifiedHuffman}.</li>
+ * <li><em>CCITT Group 3</em> (T.4, one- and two-dimensional). Compression method number 3.
+ *  Works with bilevel image data only. See {@link TIFFDecoderCCITTGroup3}.</li>
+ * <li><em>CCITT Group 4</em> (T.6). Compression method number 4.
+ *  Works with bilevel image data only. See {@link TIFFDecoderCCITTGroup4}.</li>
+ * <li><em>LZW</em>. Compression method number 5. Works with all types of image data,
+ *  with or without horizontal differencing. See {@link TIFFDecoderLZW}.</li>
  * <li><em>Deflated</em>. Compression method number 8 or 32946. Works with all types of image data. See {@link TIFFDecoderDeflated}.</li>
  * <li><em>LogLuv RLE</em> and <em>LogLuv 24</em>. Compression method numbers 34676 and 34677. Works only with LogLuv color data. See {@link TIFFDecoderLogLuv}.</li>
  * </ul>
@@ -56,6 +100,16 @@ import net.sourceforge.jiu.ops.WrongParameterException;
  * Note that you can write your own decoder (extending {@link TIFFDecoder}) for any compression type
  * you want.
  * </p>
+ * <h4>Writing</h4>
+ * Images are saved in strips, with one of the following compression types
+ * (see {@link #setCompression}):
+ * <ul>
+ * <li><em>Uncompressed</em>.</li>
+ * <li><em>Packbits</em>.</li>
+ * <li><em>CCITT Group 4</em>, for bilevel images only. This is the default for bilevel images.</li>
+ * <li><em>Deflated</em>, with horizontal differencing for gray and RGB images.
+ *  This is the default for all other images.</li>
+ * </ul>
  *
  * <h3>Image types</h3>
  * <h4>Reading</h4>
@@ -71,8 +125,11 @@ import net.sourceforge.jiu.ops.WrongParameterException;
  * </p>
  *
  * <h4>Writing</h4>
- * <p>Writing TIFFs is not supported. 
- * I don't know if or when it will be supported.</p>
+ * Bilevel images, 8 bit grayscale images, paletted images with 8 bits per pixel and
+ * RGB truecolor images with 8 bits per sample can be saved.
+ * New files are written in Motorola byte order; images appended to an existing
+ * file (see {@link #setAppending}) use the byte order of that file.
+ * With more than one thread (see {@link #setNumThreads}), strips are compressed in parallel.
  *
  * <h3>Strips and tiles</h3>
  * The early versions of TIFF considered an image to be a sequence of <em>strips</em>.
@@ -107,6 +164,17 @@ import net.sourceforge.jiu.ops.WrongParameterException;
  * So you can specify bounds of a rectangular part of an image that you want to load
  * instead of loading the complete image.
  *
+ * <h3>Streaming</h3>
+ * If a {@link net.sourceforge.jiu.codecs.RowConsumer} was given to the codec,
+ * rows of images stored in strips are passed to it one at a time as they
+ * are decoded.
+ * Tiled images are passed on one row of tiles at a time, so the image object
+ * needed for that is as high as a tile.
+ * Strips and tiles are then always decoded by the calling thread, the number
+ * of threads (see {@link #setNumThreads}) is ignored.
+ * The same goes for loading with a decode scale larger than 1 (see {@link #setDecodeScale}):
+ * rows are reduced as they are decoded.
+ *
  * <h3>Color spaces</h3>
  * The following color spaces are understood when reading truecolor TIFF files.
  * <ul>
@@ -171,14 +239,35 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 	private static final int MAGIC_INTEL = 0x49492a00;
 	private static final int MAGIC_MOTOROLA = 0x4d4d002a;
 
+	/**
+	 * Number of bytes of uncompressed image data per strip that determines
+	 * the number of rows per strip when saving, unless it was set with {@link #setRowsPerStrip}.
+	 * @since 0.14.3
+	 */
+	public static final int DEFAULT_STRIP_SIZE = 64 * 1024;
+
+	private boolean appending;
 	private int byteOrder;
+	private int compression;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private boolean encodingDifferencing;
+	private int encodingBytesPerRow;
+	private int encodingCompression;
+	private int encodingRowsPerStrip;
+	private int rowsPerStrip;
 	private int nextIfdOffset;
+	private int numThreads = 1;
+	private int bufferY1;
+	private boolean streamingStrips;
 
 	private static Hashtable decoders;
 	static
 	{
 		decoders = new Hashtable();
+		registerDecoder(TIFFDecoderCCITTGroup3.class);
+		registerDecoder(TIFFDecoderCCITTGroup4.class);
 		registerDecoder(TIFFDecoderDeflated.class);
+		registerDecoder(TIFFDecoderLZW.class);
 		registerDecoder(TIFFDecoderModifiedHuffman.class);
 		registerDecoder(TIFFDecoderPackbits.class);
 		registerDecoder(TIFFDecoderUncompressed.class);
@@ -222,7 +311,38 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		}
 	}
 
-	private static TIFFDecoder createDecoder(TIFFCodec codec, TIFFImageFileDirectory ifd, int tileIndex) throws 
+	/**
+	 * Follows the chain of image file directories starting at the current
+	 * value of nextIfdOffset and returns the number of directories found.
+	 * Only the number of tags and the offset of the next directory are read
+	 * for each directory.
+	 * @since 0.14.3
+	 */
+	private int countImageFileDirectories() throws
+		InvalidFileStructureException,
+		IOException
+	{
+		Hashtable visited = new Hashtable();
+		int result = 0;
+		while (nextIfdOffset != 0)
+		{
+			Integer key = new Integer(nextIfdOffset);
+			if (visited.containsKey(key))
+			{
+				throw new InvalidFileStructureException("Image file directory chain " +
+					"contains a loop at offset " + nextIfdOffset + ".");
+			}
+			visited.put(key, key);
+			seek(nextIfdOffset);
+			int numTags = readShort() & 0xffff;
+			seek(nextIfdOffset + 2 + numTags * 12L);
+			nextIfdOffset = readInt();
+			result++;
+		}
+		return result;
+	}
+
+	private static TIFFDecoder createDecoder(TIFFCodec codec, TIFFImageFileDirectory ifd, int tileIndex, DataInput input) throws 
 		IOException, 
 		UnsupportedTypeException
 	{
@@ -248,6 +368,7 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 			decoder.setCodec(codec);
 			decoder.setTileIndex(tileIndex);
 			decoder.setImageFileDirectory(ifd);
+			decoder.setInput(input);
 			try
 			{
 				decoder.initialize();
@@ -264,6 +385,228 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		}
 	}
 
+	private TIFFEncoder createEncoder(int compressionType)
+	{
+		switch(compressionType)
+		{
+			case(COMPRESSION_CCITT_T6): return new TIFFEncoderCCITTGroup4();
+			case(COMPRESSION_DEFLATED_OFFICIAL): return new TIFFEncoderDeflated(compressionLevel);
+			case(COMPRESSION_PACKBITS): return new TIFFEncoderPackbits();
+			default: return new TIFFEncoderUncompressed();
+		}
+	}
+
+	/**
+	 * Creates an image file directory for the image to be saved, including the
+	 * values that do not fit into a directory entry, which follow the entries.
+	 * @param offset position of the directory in the file
+	 * @return directory as it is to be written to the file
+	 * @since 0.14.3
+	 */
+	private byte[] createImageFileDirectory(int offset, int bitsPerSample, int samplesPerPixel,
+		int photometric, int[] stripOffsets, int[] stripByteCounts)
+	{
+		// entries as int arrays: tag id, type, number of values, values
+		// (two values per rational, numerator and denominator)
+		Vector entries = new Vector();
+		entries.addElement(new int[] {TAG_IMAGE_WIDTH, TAG_TYPE_LONG, 1, getBoundsWidth()});
+		entries.addElement(new int[] {TAG_IMAGE_LENGTH, TAG_TYPE_LONG, 1, getBoundsHeight()});
+		int[] entry = new int[3 + samplesPerPixel];
+		entry[0] = TAG_BITS_PER_SAMPLE;
+		entry[1] = TAG_TYPE_SHORT;
+		entry[2] = samplesPerPixel;
+		for (int i = 0; i < samplesPerPixel; i++)
+		{
+			entry[3 + i] = bitsPerSample;
+		}
+		entries.addElement(entry);
+		entries.addElement(new int[] {TAG_COMPRESSION, TAG_TYPE_SHORT, 1, encodingCompression});
+		entries.addElement(new int[] {TAG_PHOTOMETRIC_INTERPRETATION, TAG_TYPE_SHORT, 1, photometric});
+		entries.addElement(createLongEntry(TAG_STRIP_OFFSETS, stripOffsets));
+		entries.addElement(new int[] {TAG_SAMPLES_PER_PIXEL, TAG_TYPE_SHORT, 1, samplesPerPixel});
+		entries.addElement(new int[] {TAG_ROWS_PER_STRIP, TAG_TYPE_LONG, 1, encodingRowsPerStrip});
+		entries.addElement(createLongEntry(TAG_STRIP_BYTE_COUNTS, stripByteCounts));
+		boolean hasDpi = getDpiX() > 0 && getDpiY() > 0;
+		if (hasDpi)
+		{
+			entries.addElement(new int[] {TAG_RESOLUTION_X, TAG_TYPE_RATIONAL, 1, getDpiX(), 1});
+			entries.addElement(new int[] {TAG_RESOLUTION_Y, TAG_TYPE_RATIONAL, 1, getDpiY(), 1});
+		}
+		if (samplesPerPixel > 1)
+		{
+			entries.addElement(new int[] {TAG_PLANAR_CONFIGURATION, TAG_TYPE_SHORT, 1, PLANAR_CONFIGURATION_CHUNKY});
+		}
+		if (hasDpi)
+		{
+			entries.addElement(new int[] {TAG_RESOLUTION_UNIT, TAG_TYPE_SHORT, 1, 2}); // inch
+		}
+		if (encodingDifferencing)
+		{
+			entries.addElement(new int[] {TAG_PREDICTOR, TAG_TYPE_SHORT, 1, PREDICTOR_HORIZONTAL_DIFFERENCING});
+		}
+		if (photometric == PHOTOMETRIC_PALETTED)
+		{
+			// all red values, then all green values, then all blue values, 16 bits each
+			Palette palette = ((Paletted8Image)getImage()).getPalette();
+			entry = new int[3 + 3 * 256];
+			entry[0] = TAG_COLOR_MAP;
+			entry[1] = TAG_TYPE_SHORT;
+			entry[2] = 3 * 256;
+			int[] channels = {RGBIndex.INDEX_RED, RGBIndex.INDEX_GREEN, RGBIndex.INDEX_BLUE};
+			for (int c = 0; c < 3; c++)
+			{
+				for (int i = 0; i < palette.getNumEntries() && i < 256; i++)
+				{
+					entry[3 + c * 256 + i] = palette.getSample(channels[c], i) * 65535 / palette.getMaxValue();
+				}
+			}
+			entries.addElement(entry);
+		}
+		// the entries were added in ascending order of their tag ids, as required
+		int numEntries = entries.size();
+		int entriesSize = 2 + numEntries * TAG_LENGTH + 4;
+		int size = entriesSize;
+		for (int i = 0; i < numEntries; i++)
+		{
+			int valueSize = getValueSize((int[])entries.elementAt(i));
+			if (valueSize > 4)
+			{
+				size += valueSize;
+			}
+		}
+		byte[] result = new byte[size];
+		putShort(result, 0, numEntries);
+		int valueOffset = entriesSize;
+		for (int i = 0; i < numEntries; i++)
+		{
+			entry = (int[])entries.elementAt(i);
+			int entryOffset = 2 + i * TAG_LENGTH;
+			putShort(result, entryOffset, entry[0]);
+			putShort(result, entryOffset + 2, entry[1]);
+			putInt(result, entryOffset + 4, entry[2]);
+			int valueSize = getValueSize(entry);
+			int dest = entryOffset + 8;
+			if (valueSize > 4)
+			{
+				putInt(result, dest, offset + valueOffset);
+				dest = valueOffset;
+				valueOffset += valueSize;
+			}
+			for (int j = 3; j < entry.length; j++)
+			{
+				if (entry[1] == TAG_TYPE_SHORT)
+				{
+					putShort(result, dest, entry[j]);
+					dest += 2;
+				}
+				else
+				{
+					putInt(result, dest, entry[j]);
+					dest += 4;
+				}
+			}
+		}
+		// offset of next directory (bytes entriesSize - 4 to entriesSize - 1) remains 0
+		return result;
+	}
+
+	private static int[] createLongEntry(int tag, int[] values)
+	{
+		int[] result = new int[3 + values.length];
+		result[0] = tag;
+		result[1] = TAG_TYPE_LONG;
+		result[2] = values.length;
+		System.arraycopy(values, 0, result, 3, values.length);
+		return result;
+	}
+
+	/**
+	 * Copies the rows of one strip from the image to be saved into a byte array
+	 * in the layout of uncompressed TIFF data and compresses them.
+	 * @since 0.14.3
+	 */
+	private byte[] encodeStrip(int stripIndex)
+	{
+		PixelImage image = getImage();
+		int x1 = getBoundsX1();
+		int width = getBoundsWidth();
+		int y1 = getBoundsY1() + stripIndex * encodingRowsPerStrip;
+		int numRows = Math.min(encodingRowsPerStrip, getBoundsY2() - y1 + 1);
+		byte[] data = new byte[numRows * encodingBytesPerRow];
+		byte[] samples = null;
+		if (image instanceof RGB24Image)
+		{
+			samples = new byte[width];
+		}
+		for (int i = 0; i < numRows; i++)
+		{
+			int y = y1 + i;
+			int offset = i * encodingBytesPerRow;
+			if (image instanceof BilevelImage)
+			{
+				((BilevelImage)image).getPackedBytes(x1, y, width, data, offset, 0);
+			}
+			else
+			if (samples != null)
+			{
+				RGB24Image rgb = (RGB24Image)image;
+				for (int c = 0; c < 3; c++)
+				{
+					rgb.getByteSamples(c, x1, y, width, 1, samples, 0);
+					for (int x = 0, index = offset + c; x < width; x++, index += 3)
+					{
+						data[index] = samples[x];
+					}
+				}
+			}
+			else
+			{
+				((ByteChannelImage)image).getByteSamples(0, x1, y, width, 1, data, offset);
+			}
+			if (encodingDifferencing)
+			{
+				int samplesPerPixel = encodingBytesPerRow / width;
+				for (int index = offset + encodingBytesPerRow - 1; index >= offset + samplesPerPixel; index--)
+				{
+					data[index] -= data[index - samplesPerPixel];
+				}
+			}
+		}
+		return createEncoder(encodingCompression).encode(data, width, encodingBytesPerRow, numRows);
+	}
+
+	/**
+	 * Follows the chain of image file directories starting at the current
+	 * value of nextIfdOffset and returns the position of the four bytes in the last
+	 * directory that hold the offset of the next directory (0 as it is the last one),
+	 * or the position of the first directory's offset in the header
+	 * if there is no directory.
+	 * @since 0.14.3
+	 */
+	private long findLastImageFileDirectoryLink() throws
+		InvalidFileStructureException,
+		IOException
+	{
+		Hashtable visited = new Hashtable();
+		long result = 4;
+		while (nextIfdOffset != 0)
+		{
+			Integer key = new Integer(nextIfdOffset);
+			if (visited.containsKey(key))
+			{
+				throw new InvalidFileStructureException("Image file directory chain " +
+					"contains a loop at offset " + nextIfdOffset + ".");
+			}
+			visited.put(key, key);
+			seek(nextIfdOffset);
+			int numTags = readShort() & 0xffff;
+			result = nextIfdOffset + 2 + numTags * 12L;
+			seek(result);
+			nextIfdOffset = readInt();
+		}
+		return result;
+	}
+
 	/**
 	 * Returns the current byte order, either 
 	 * {@link #BYTE_ORDER_INTEL} or
@@ -275,11 +618,160 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		return byteOrder;
 	}
 
+	/**
+	 * Returns the compression type used when saving.
+	 * @see #setCompression
+	 * @since 0.14.3
+	 */
+	public int getCompression()
+	{
+		return compression;
+	}
+
+	/**
+	 * Returns the compression level used when saving with the Deflated compression type.
+	 * @see #setCompressionLevel
+	 * @since 0.14.3
+	 */
+	public int getCompressionLevel()
+	{
+		return compressionLevel;
+	}
+
+	/**
+	 * Returns the number of threads used to decode or encode strips or tiles.
+	 * @see #setNumThreads
+	 * @since 0.14.3
+	 */
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/**
+	 * Returns the number of rows per strip used when saving, 0 for the default.
+	 * @see #setRowsPerStrip
+	 * @since 0.14.3
+	 */
+	public int getRowsPerStrip()
+	{
+		return rowsPerStrip;
+	}
+
+	private long getFilePointer() throws IOException
+	{
+		ByteBufferInputStream bufferInput = getByteBufferInputStream();
+		if (bufferInput != null)
+		{
+			return bufferInput.getFilePointer();
+		}
+		else
+		{
+			return getRandomAccessFile().getFilePointer();
+		}
+	}
+
 	public String getFormatName()
 	{
 		return "Tagged Image File Format (TIFF)";
 	}
 
+	/**
+	 * Returns the image data interface of the image object that {@link #load(TIFFImageFileDirectory)}
+	 * creates for an image type constant of {@link TIFFImageFileDirectory}.
+	 * @since 0.14.3
+	 */
+	private static Class getImageType(int imageType) throws UnsupportedTypeException
+	{
+		switch (imageType)
+		{
+			case(TIFFImageFileDirectory.TYPE_BILEVEL_BYTE):
+			case(TIFFImageFileDirectory.TYPE_BILEVEL_PACKED):
+			{
+				return BilevelImage.class;
+			}
+			case(TIFFImageFileDirectory.TYPE_GRAY4):
+			case(TIFFImageFileDirectory.TYPE_GRAY8):
+			case(TIFFImageFileDirectory.TYPE_LOGL):
+			{
+				return Gray8Image.class;
+			}
+			case(TIFFImageFileDirectory.TYPE_GRAY16):
+			{
+				return Gray16Image.class;
+			}
+			case(TIFFImageFileDirectory.TYPE_PALETTED4):
+			case(TIFFImageFileDirectory.TYPE_PALETTED8):
+			{
+				return Paletted8Image.class;
+			}
+			case(TIFFImageFileDirectory.TYPE_CMYK32_INTERLEAVED):
+			case(TIFFImageFileDirectory.TYPE_CMYK32_PLANAR):
+			case(TIFFImageFileDirectory.TYPE_RGB24_INTERLEAVED):
+			case(TIFFImageFileDirectory.TYPE_LOGLUV32_INTERLEAVED):
+			{
+				return RGB24Image.class;
+			}
+			case(TIFFImageFileDirectory.TYPE_RGB48_INTERLEAVED):
+			{
+				return RGB48Image.class;
+			}
+			default:
+			{
+				throw new UnsupportedTypeException("Unsupported image type.");
+			}
+		}
+	}
+
+	private static int getValueSize(int[] entry)
+	{
+		int count = entry[2];
+		switch(entry[1])
+		{
+			case(TAG_TYPE_SHORT): return count * 2;
+			case(TAG_TYPE_RATIONAL): return count * 8;
+			default: return count * 4;
+		}
+	}
+
+	/**
+	 * Returns the row of the image object into which a row of the image
+	 * (relative to the bounds) is to be stored.
+	 * That is the same row unless rows are passed to a
+	 * {@link net.sourceforge.jiu.codecs.RowConsumer}:
+	 * then the image object only holds the current row of a strip or
+	 * the rows of the current row of tiles.
+	 * @param y row within the bounds
+	 * @since 0.14.3
+	 */
+	int getImageRow(int y)
+	{
+		if (streamingStrips)
+		{
+			return 0;
+		}
+		return y - bufferY1;
+	}
+
+	/**
+	 * Returns the object to read from, the input stream created by
+	 * {@link #setByteBuffer} or {@link #setFileChannel} if there is one,
+	 * the random access file otherwise.
+	 * Use {@link #seek} to change the position.
+	 */
+	DataInput getInput()
+	{
+		ByteBufferInputStream bufferInput = getByteBufferInputStream();
+		if (bufferInput != null)
+		{
+			return bufferInput;
+		}
+		else
+		{
+			return getRandomAccessFile();
+		}
+	}
+
 	public String[] getMimeTypes()
 	{
 		return new String[] {"image/tiff", "image/tif"};
@@ -341,6 +833,16 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		}
 	}
 
+	/**
+	 * Returns whether saving appends an image to an existing TIFF file.
+	 * @see #setAppending
+	 * @since 0.14.3
+	 */
+	public boolean isAppending()
+	{
+		return appending;
+	}
+
 	public boolean isLoadingSupported()
 	{
 		return true;
@@ -348,7 +850,7 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 
 	public boolean isSavingSupported()
 	{
-		return false;
+		return true;
 	}
 
 	/**
@@ -357,7 +859,8 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 	 * to this load method.
 	 * <ul>
 	 * <li>You must provide a {@link java.io.RandomAccessFile} using
-	 *   {@link #setInput(java.io.RandomAccessFile)}.</li>
+	 *   {@link #setRandomAccessFile} or a buffer with the file content
+	 *   using {@link #setByteBuffer} or {@link #setFileChannel}.</li>
 	 * <li>If there is more than one image in the input file, you
 	 *   can make the codec load it by calling {@link #setImageIndex(int)}.
 	 *   The argument is the index of the image, the first being <code>0</code>,
@@ -400,12 +903,27 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		WrongParameterException
 	{
 		setBoundsIfNecessary(ifd.getWidth(), ifd.getHeight());
-		checkImageResolution();
 		int width = getBoundsWidth();
 		int height = getBoundsHeight();
+		// when passing rows to a row consumer, the image object holds a single row
+		// (strips) or the rows of one row of tiles, which are passed on once all tiles
+		// of that row are decoded
+		initRowStreaming();
+		boolean streaming = isRowStreaming();
+		int numHorizontalTiles = ifd.getNumHorizontalTiles();
+		streamingStrips = streaming && numHorizontalTiles == 1;
+		bufferY1 = 0;
+		if (streaming)
+		{
+			height = streamingStrips ? 1 : Math.min(ifd.getTileHeight(), height);
+		}
+		else
+		{
+			checkImageResolution();
+		}
 		// create image if necessary
 		PixelImage image = getImage();
-		if (image == null)
+		if (image == null || streaming)
 		{
 			int imageType = ifd.getImageType();
 			switch (imageType)
@@ -454,6 +972,12 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 			}
 			setImage(image);
 		}
+		int numTileRows = ifd.getNumTiles() / numHorizontalTiles;
+		if (numThreads > 1 && numTileRows > 1 && !streaming)
+		{
+			loadParallel(ifd, numTileRows);
+			return;
+		}
 		int tileIndex = 0;
 		int numTiles = ifd.getNumTiles();
 		while (tileIndex < numTiles && !getAbort())
@@ -462,12 +986,213 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 			int y1 = ifd.getTileY1(tileIndex);
 			int x2 = ifd.getTileX2(tileIndex);
 			int y2 = ifd.getTileY2(tileIndex);
+			if (tileIndex % numHorizontalTiles == 0 && streaming && !streamingStrips)
+			{
+				bufferY1 = Math.max(y1 - getBoundsY1(), 0);
+			}
 			if (isTileRequired(x1, y1, x2, y2))
 			{
-				TIFFDecoder decoder = createDecoder(this, ifd, tileIndex);
+				TIFFDecoder decoder = createDecoder(this, ifd, tileIndex, null);
 				decoder.decode();
 			}
 			tileIndex++;
+			if (tileIndex % numHorizontalTiles == 0 && streaming && !streamingStrips)
+			{
+				consumeRows(image, bufferY1, Math.min(y2, getBoundsY2()) - getBoundsY1() - bufferY1 + 1);
+			}
+		}
+		finishRowStreaming();
+	}
+
+	/**
+	 * Loads a rectangular part of the image described by an image file directory
+	 * that was read before, without reading the header or any directory again.
+	 * Only the strips or tiles overlapping the rectangle are decoded.
+	 * Used by {@link TIFFRegionReader}.
+	 * @param ifd directory of the image, as returned by {@link #readImageFileDirectories}
+	 * @return a new image object with the content of the rectangle
+	 * @since 0.14.3
+	 */
+	PixelImage loadRegion(TIFFImageFileDirectory ifd, int x1, int y1, int x2, int y2) throws
+		InvalidFileStructureException,
+		IOException,
+		UnsupportedTypeException,
+		WrongFileFormatException,
+		WrongParameterException
+	{
+		setBounds(x1, y1, x2, y2);
+		setImage(null);
+		load(ifd);
+		return getImage();
+	}
+
+	/**
+	 * Decodes one row of tiles (or one strip): the compressed data of each
+	 * required tile is read into memory, then decoded from there, so that
+	 * only reading has to be synchronized on the input file.
+	 */
+	private void loadTileRow(TIFFImageFileDirectory ifd, int tileRow) throws
+		InvalidFileStructureException,
+		IOException,
+		UnsupportedTypeException
+	{
+		ByteBufferInputStream bufferInput = getByteBufferInputStream();
+		RandomAccessFile in = getRandomAccessFile();
+		int numHorizontalTiles = ifd.getNumHorizontalTiles();
+		for (int i = 0; i < numHorizontalTiles; i++)
+		{
+			int tileIndex = tileRow * numHorizontalTiles + i;
+			int x1 = ifd.getTileX1(tileIndex);
+			int y1 = ifd.getTileY1(tileIndex);
+			int x2 = ifd.getTileX2(tileIndex);
+			int y2 = ifd.getTileY2(tileIndex);
+			if (!isTileRequired(x1, y1, x2, y2))
+			{
+				continue;
+			}
+			long offset = ifd.getTileOffset(tileIndex) & 0x00000000ffffffffL;
+			int numBytes = ifd.getByteCount(tileIndex);
+			DataInput input;
+			if (bufferInput != null)
+			{
+				// each thread reads its own view of the buffer, no copying or locking
+				ByteBuffer buffer = bufferInput.getByteBuffer();
+				buffer.position((int)Math.min(offset, buffer.limit()));
+				buffer.limit((int)Math.min(offset + numBytes, buffer.limit()));
+				input = new ByteBufferInputStream(buffer);
+			}
+			else
+			{
+				byte[] data = new byte[numBytes];
+				synchronized(in)
+				{
+					in.seek(offset);
+					in.readFully(data);
+				}
+				input = new DataInputStream(new ByteArrayInputStream(data));
+			}
+			TIFFDecoder decoder = createDecoder(this, ifd, tileIndex, input);
+			decoder.decode();
+		}
+	}
+
+	private void loadParallel(final TIFFImageFileDirectory ifd, final int numTileRows) throws
+		InvalidFileStructureException,
+		IOException,
+		UnsupportedTypeException
+	{
+		// each thread takes the next row of tiles that has not been decoded yet;
+		// different rows of tiles write to disjoint rows of the image
+		final int NUM_THREADS = Math.min(numThreads, numTileRows);
+		final int[] counters = new int[2]; // next row of tiles, finished rows of tiles
+		final Exception[] failure = new Exception[1];
+		Thread[] threads = new Thread[NUM_THREADS];
+		for (int i = 0; i < NUM_THREADS; i++)
+		{
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						while (true)
+						{
+							int tileRow;
+							synchronized(counters)
+							{
+								if (counters[0] == numTileRows || failure[0] != null || getAbort())
+								{
+									return;
+								}
+								tileRow = counters[0]++;
+							}
+							loadTileRow(ifd, tileRow);
+							synchronized(counters)
+							{
+								setProgress(counters[1]++, numTileRows);
+							}
+						}
+					}
+					catch (Exception e)
+					{
+						synchronized(counters)
+						{
+							failure[0] = e;
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i = 0; i < NUM_THREADS; i++)
+		{
+			try
+			{
+				threads[i].join();
+			}
+			catch (InterruptedException ie)
+			{
+				throw new IOException("Interrupted while waiting for decoder threads.");
+			}
+		}
+		Exception e = failure[0];
+		if (e instanceof InvalidFileStructureException)
+		{
+			throw (InvalidFileStructureException)e;
+		}
+		if (e instanceof UnsupportedTypeException)
+		{
+			throw (UnsupportedTypeException)e;
+		}
+		if (e instanceof IOException)
+		{
+			throw (IOException)e;
+		}
+		if (e instanceof RuntimeException)
+		{
+			throw (RuntimeException)e;
+		}
+	}
+
+	/**
+	 * Reads the image file directory of the image with the current image index
+	 * and returns resolution, physical resolution and image type of that image.
+	 * The number of images is determined by following the chain of image file
+	 * directories, reading six bytes per directory.
+	 * No strip or tile data is read.
+	 * @since 0.14.3
+	 */
+	public ImageDescriptor probe() throws
+		MissingParameterException,
+		OperationFailedException
+	{
+		if (getInput() == null)
+		{
+			throw new MissingParameterException("TIFF codec must have RandomAccessFile object opened for reading " +
+				"or a byte buffer.");
+		}
+		try
+		{
+			readHeader();
+			skipImageFileDirectories(getImageIndex());
+			TIFFImageFileDirectory ifd = readImageFileDirectory();
+			ifd.initFromTags(true);
+			int dpiX = ifd.getDpiX();
+			int dpiY = ifd.getDpiY();
+			if (dpiX > 0 && dpiY > 0)
+			{
+				setDpi(dpiX, dpiY);
+			}
+			int numImages = getImageIndex() + 1 + countImageFileDirectories();
+			return createDescriptor(ifd.getWidth(), ifd.getHeight(), getImageType(ifd.getImageType()), numImages);
+		}
+		catch (IOException ioe)
+		{
+			throw new OperationFailedException("I/O error occurred: " + ioe.toString());
+		}
+		finally
+		{
+			close();
 		}
 	}
 
@@ -478,13 +1203,25 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		initModeFromIOObjects();
 		try
 		{
-			if (getMode() == CodecMode.LOAD && getRandomAccessFile() != null)
+			if (getMode() == CodecMode.LOAD && getInput() != null)
 			{
 				load();
 			}
 			else
+			if (getMode() == CodecMode.SAVE)
+			{
+				PixelImage image = getImage();
+				if (image == null)
+				{
+					throw new MissingParameterException("Need image for saving.");
+				}
+				setBoundsIfNecessary(image.getWidth(), image.getHeight());
+				save();
+			}
+			else
 			{
-				throw new MissingParameterException("TIFF codec must have RandomAccessFile object opened for reading.");
+				throw new MissingParameterException("TIFF codec must have RandomAccessFile object opened for reading " +
+					"or a byte buffer.");
 			}
 		}
 		catch (IOException ioe)
@@ -494,6 +1231,30 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		}
 	}
 
+	private void putInt(byte[] dest, int offset, int value)
+	{
+		if (getByteOrder() == BYTE_ORDER_INTEL)
+		{
+			ArrayConverter.setIntLE(dest, offset, value);
+		}
+		else
+		{
+			ArrayConverter.setIntBE(dest, offset, value);
+		}
+	}
+
+	private void putShort(byte[] dest, int offset, int value)
+	{
+		if (getByteOrder() == BYTE_ORDER_INTEL)
+		{
+			ArrayConverter.setShortLE(dest, offset, (short)value);
+		}
+		else
+		{
+			ArrayConverter.setShortBE(dest, offset, (short)value);
+		}
+	}
+
 	/**
 	 * Reads the first eight bytes from the input file, checks if this is a 
 	 * valid TIFF file and stores byte order and offset of the first image
@@ -505,11 +1266,11 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		IOException, 
 		WrongFileFormatException
 	{
-		RandomAccessFile in = getRandomAccessFile();
-		// the argument to in.seek must be changed to a variable in the future for
+		DataInput in = getInput();
+		// the argument to seek must be changed to a variable in the future for
 		// this codec to be used to read EXIF information from JPEGs;
 		// for some reason, TIFF was chosen for that
-		in.seek(0);
+		seek(0);
 		// note: this is the only place where we use in.readInt()
 		// directly; afterwards, the detected byte order
 		// is regarded via this class' methods readInt() and readShort()
@@ -543,8 +1304,8 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		IOException
 	{
 		TIFFImageFileDirectory result = new TIFFImageFileDirectory();
-		RandomAccessFile in = getRandomAccessFile();
-		in.seek(nextIfdOffset);
+		DataInput in = getInput();
+		seek(nextIfdOffset);
 		short numTags = readShort();
 		if (numTags < 0)
 		{
@@ -559,7 +1320,39 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 				result.append(tag);
 			}
 		}
-		nextIfdOffset = in.readInt();
+		nextIfdOffset = readInt();
+		return result;
+	}
+
+	/**
+	 * Reads the header and all image file directories of the input, with the
+	 * tags already interpreted via {@link TIFFImageFileDirectory#initFromTags}.
+	 * Used by {@link TIFFRegionReader} to parse a file only once.
+	 * @return Vector of TIFFImageFileDirectory objects, one per image, in file order
+	 * @since 0.14.3
+	 */
+	Vector readImageFileDirectories() throws
+		InvalidFileStructureException,
+		IOException,
+		UnsupportedTypeException,
+		WrongFileFormatException
+	{
+		readHeader();
+		Vector result = new Vector();
+		Hashtable visited = new Hashtable();
+		while (nextIfdOffset != 0)
+		{
+			Integer key = new Integer(nextIfdOffset);
+			if (visited.containsKey(key))
+			{
+				throw new InvalidFileStructureException("Image file directory chain " +
+					"contains a loop at offset " + nextIfdOffset + ".");
+			}
+			visited.put(key, key);
+			TIFFImageFileDirectory ifd = readImageFileDirectory();
+			ifd.initFromTags(true);
+			result.addElement(ifd);
+		}
 		return result;
 	}
 
@@ -570,8 +1363,7 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 	 */
 	private int readInt() throws IOException
 	{
-		RandomAccessFile in = getRandomAccessFile();
-		int result = in.readInt();
+		int result = getInput().readInt();
 		if (getByteOrder() == BYTE_ORDER_INTEL)
 		{
 			int r1 = (result >> 24) & 0xff;
@@ -592,8 +1384,7 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 	 */
 	private short readShort() throws IOException
 	{
-		RandomAccessFile in = getRandomAccessFile();
-		short result = in.readShort();
+		short result = getInput().readShort();
 		if (getByteOrder() == BYTE_ORDER_INTEL)
 		{
 			int r1 = (result >> 8) & 0xff;
@@ -617,12 +1408,13 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 	 */
 	private String readString(int length) throws IOException
 	{
-		RandomAccessFile in = getRandomAccessFile();
+		byte[] data = new byte[length];
+		getInput().readFully(data);
 		StringBuffer sb = new StringBuffer(length - 1);
-		while (length-- > 0)
+		for (int i = 0; i < length; i++)
 		{
-			int value = in.read();
-			if (value >= 32 && value < 256)
+			int value = data[i] & 0xff;
+			if (value >= 32)
 			{
 				sb.append((char)value);
 			}
@@ -643,7 +1435,7 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		InvalidFileStructureException,
 		IOException
 	{
-		RandomAccessFile in = getRandomAccessFile();
+		DataInput in = getInput();
 		int id = readShort() & 0xffff;
 		int type = readShort() & 0xffff;
 		int count = readInt();
@@ -673,8 +1465,8 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		else
 		if (count >= 1)
 		{
-			long oldOffset = in.getFilePointer();
-			in.seek(offset);
+			long oldOffset = getFilePointer();
+			seek(offset);
 			vector = new Vector();
 			if (type == TAG_TYPE_ASCII)
 			{
@@ -717,13 +1509,27 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 					vector.addElement(new TIFFRational(v1, v2));
 				}
 			}
-			in.seek(oldOffset);
+			seek(oldOffset);
 		}
 		TIFFTag result = new TIFFTag(id, type, count, offset);
 		result.setVector(vector);
 		return result;
 	}
 
+	/**
+	 * Called by a {@link TIFFDecoder} after it has stored a row in the image object.
+	 * When streaming strips, that row is passed on to the row consumer.
+	 * @param y row within the bounds
+	 * @since 0.14.3
+	 */
+	void rowStored(int y)
+	{
+		if (streamingStrips)
+		{
+			consumeRows(getImage(), y, 1);
+		}
+	}
+
 	/**
 	 * Register a {@link TIFFDecoder} class.
 	 * TIFF knows many compression types, and JIU only supports some of them.
@@ -773,6 +1579,304 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		}
 	}
 
+	/**
+	 * Saves the image (or its part defined by the bounds) as a new TIFF file or,
+	 * if {@link #isAppending} is true and a random access file with TIFF content
+	 * was given, as an additional image at the end of that file.
+	 * All strips are compressed before anything is written, so that the
+	 * offsets of the image file directory are known.
+	 * @since 0.14.3
+	 */
+	private void save() throws
+		InvalidFileStructureException,
+		IOException,
+		UnsupportedTypeException,
+		WrongFileFormatException,
+		WrongParameterException
+	{
+		PixelImage image = getImage();
+		int width = getBoundsWidth();
+		int height = getBoundsHeight();
+		int bitsPerSample = 8;
+		int samplesPerPixel = 1;
+		int photometric;
+		if (image instanceof BilevelImage)
+		{
+			bitsPerSample = 1;
+			photometric = PHOTOMETRIC_BLACK_IS_ZERO;
+			encodingBytesPerRow = (width + 7) / 8;
+		}
+		else
+		if (image instanceof Gray8Image)
+		{
+			photometric = PHOTOMETRIC_BLACK_IS_ZERO;
+			encodingBytesPerRow = width;
+		}
+		else
+		if (image instanceof Paletted8Image)
+		{
+			photometric = PHOTOMETRIC_PALETTED;
+			encodingBytesPerRow = width;
+		}
+		else
+		if (image instanceof RGB24Image)
+		{
+			samplesPerPixel = 3;
+			photometric = PHOTOMETRIC_TRUECOLOR_RGB;
+			encodingBytesPerRow = width * 3;
+		}
+		else
+		{
+			throw new UnsupportedTypeException("Can only save bilevel, gray, paletted " +
+				"and RGB truecolor images with 8 bits per sample as TIFF.");
+		}
+		encodingCompression = compression;
+		if (encodingCompression == 0)
+		{
+			encodingCompression = bitsPerSample == 1 ? COMPRESSION_CCITT_T6 : COMPRESSION_DEFLATED_OFFICIAL;
+		}
+		if (encodingCompression == COMPRESSION_CCITT_T6)
+		{
+			if (bitsPerSample != 1)
+			{
+				throw new UnsupportedTypeException("CCITT Group 4 compression " +
+					"can only be used with bilevel images.");
+			}
+			// the encoder codes white pixels as white runs
+			photometric = PHOTOMETRIC_WHITE_IS_ZERO;
+		}
+		// differencing makes gray and RGB data compress better with Deflated
+		encodingDifferencing = encodingCompression == COMPRESSION_DEFLATED_OFFICIAL &&
+			bitsPerSample == 8 && photometric != PHOTOMETRIC_PALETTED;
+		encodingRowsPerStrip = rowsPerStrip;
+		if (encodingRowsPerStrip == 0)
+		{
+			encodingRowsPerStrip = Math.max(1, DEFAULT_STRIP_SIZE / encodingBytesPerRow);
+		}
+		encodingRowsPerStrip = Math.min(encodingRowsPerStrip, height);
+		int numStrips = (height + encodingRowsPerStrip - 1) / encodingRowsPerStrip;
+		byte[][] strips = new byte[numStrips][];
+		if (numThreads > 1 && numStrips > 1)
+		{
+			saveParallel(strips);
+		}
+		else
+		{
+			for (int i = 0; i < numStrips && !getAbort(); i++)
+			{
+				strips[i] = encodeStrip(i);
+				setProgress(i, numStrips);
+			}
+		}
+		if (getAbort())
+		{
+			return;
+		}
+		// find out where to write, determine byte order
+		DataOutput out;
+		RandomAccessFile raf = getRandomAccessFile();
+		long linkOffset = -1;
+		long offset = 0;
+		if (appending && raf != null && raf.length() > 0)
+		{
+			readHeader();
+			linkOffset = findLastImageFileDirectoryLink();
+			offset = raf.length();
+			raf.seek(offset);
+			if ((offset & 1) != 0)
+			{
+				// image file directories must begin at a word boundary
+				raf.write(0);
+				offset++;
+			}
+			out = raf;
+		}
+		else
+		{
+			if (appending && raf == null)
+			{
+				throw new WrongParameterException("Appending an image requires a RandomAccessFile.");
+			}
+			setByteOrder(BYTE_ORDER_MOTOROLA);
+			if (raf != null)
+			{
+				raf.setLength(0);
+				raf.seek(0);
+			}
+			out = getOutputAsDataOutput();
+			offset = 8;
+		}
+		int[] stripOffsets = new int[numStrips];
+		int[] stripByteCounts = new int[numStrips];
+		for (int i = 0; i < numStrips; i++)
+		{
+			stripOffsets[i] = (int)offset;
+			stripByteCounts[i] = strips[i].length;
+			offset += strips[i].length;
+		}
+		boolean padding = (offset & 1) != 0;
+		if (padding)
+		{
+			offset++;
+		}
+		byte[] ifd = createImageFileDirectory((int)offset, bitsPerSample, samplesPerPixel,
+			photometric, stripOffsets, stripByteCounts);
+		if (offset + ifd.length > 0xffffffffL)
+		{
+			throw new UnsupportedTypeException("TIFF files cannot be larger than 4 GB.");
+		}
+		// write everything
+		if (linkOffset < 0)
+		{
+			byte[] header = new byte[8];
+			ArrayConverter.setIntBE(header, 0, MAGIC_MOTOROLA);
+			putInt(header, 4, (int)offset);
+			out.write(header);
+		}
+		for (int i = 0; i < numStrips; i++)
+		{
+			out.write(strips[i]);
+		}
+		if (padding)
+		{
+			out.write(0);
+		}
+		out.write(ifd);
+		if (linkOffset >= 0)
+		{
+			byte[] link = new byte[4];
+			putInt(link, 0, (int)offset);
+			raf.seek(linkOffset);
+			raf.write(link);
+		}
+		close();
+	}
+
+	/**
+	 * Compresses the strips of the image to be saved with several threads,
+	 * each taking the next strip that has not been compressed yet.
+	 * @param strips receives the compressed data, one array per strip
+	 * @since 0.14.3
+	 */
+	private void saveParallel(final byte[][] strips) throws IOException
+	{
+		final int NUM_THREADS = Math.min(numThreads, strips.length);
+		final int[] counters = new int[2]; // next strip, finished strips
+		final RuntimeException[] failure = new RuntimeException[1];
+		Thread[] threads = new Thread[NUM_THREADS];
+		for (int i = 0; i < NUM_THREADS; i++)
+		{
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						while (true)
+						{
+							int stripIndex;
+							synchronized(counters)
+							{
+								if (counters[0] == strips.length || failure[0] != null || getAbort())
+								{
+									return;
+								}
+								stripIndex = counters[0]++;
+							}
+							strips[stripIndex] = encodeStrip(stripIndex);
+							synchronized(counters)
+							{
+								setProgress(counters[1]++, strips.length);
+							}
+						}
+					}
+					catch (RuntimeException e)
+					{
+						synchronized(counters)
+						{
+							failure[0] = e;
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i = 0; i < NUM_THREADS; i++)
+		{
+			try
+			{
+				threads[i].join();
+			}
+			catch (InterruptedException ie)
+			{
+				throw new IOException("Interrupted while waiting for encoder threads.");
+			}
+		}
+		if (failure[0] != null)
+		{
+			throw failure[0];
+		}
+	}
+
+	/**
+	 * Specifies whether saving appends an image to an existing TIFF file,
+	 * making it a multi-page file, instead of replacing its content.
+	 * This requires the file to be given as a {@link java.io.RandomAccessFile}
+	 * (e.g. with {@link #setFile(String, CodecMode)}); if it is empty,
+	 * a new file is created.
+	 * The byte order of the existing file is kept.
+	 * Default is <code>false</code>.
+	 * @param newValue whether to append images
+	 * @since 0.14.3
+	 */
+	public void setAppending(boolean newValue)
+	{
+		appending = newValue;
+	}
+
+	/**
+	 * Sets the compression type to be used when saving.
+	 * Supported are {@link TIFFConstants#COMPRESSION_NONE},
+	 * {@link TIFFConstants#COMPRESSION_PACKBITS},
+	 * {@link TIFFConstants#COMPRESSION_DEFLATED_OFFICIAL} and,
+	 * for bilevel images only, {@link TIFFConstants#COMPRESSION_CCITT_T6}.
+	 * The default value 0 selects CCITT Group 4 for bilevel images
+	 * and Deflated for all other images.
+	 * @param newValue compression type
+	 * @throws IllegalArgumentException if the argument is not one of the values mentioned above
+	 * @since 0.14.3
+	 */
+	public void setCompression(int newValue)
+	{
+		if (newValue != 0 &&
+		    newValue != COMPRESSION_NONE &&
+		    newValue != COMPRESSION_PACKBITS &&
+		    newValue != COMPRESSION_DEFLATED_OFFICIAL &&
+		    newValue != COMPRESSION_CCITT_T6)
+		{
+			throw new IllegalArgumentException("Unsupported compression type for saving: " + newValue);
+		}
+		compression = newValue;
+	}
+
+	/**
+	 * Sets the compression level used with the Deflated compression type.
+	 * Default is {@link java.util.zip.Deflater#DEFAULT_COMPRESSION}.
+	 * @param newLevel a value from 0 (no compression) to 9 (best compression)
+	 *  or {@link java.util.zip.Deflater#DEFAULT_COMPRESSION}
+	 * @throws IllegalArgumentException if the argument is invalid
+	 * @since 0.14.3
+	 */
+	public void setCompressionLevel(int newLevel)
+	{
+		if ((newLevel < 0 || newLevel > 9) && newLevel != Deflater.DEFAULT_COMPRESSION)
+		{
+			throw new IllegalArgumentException("Compression level must be from 0 to 9 " +
+				"or Deflater.DEFAULT_COMPRESSION; got " + newLevel);
+		}
+		compressionLevel = newLevel;
+	}
+
 	/**
 	 * Sets the byte order to the argument.
 	 * The byte order in a TIFF file is either {@link #BYTE_ORDER_INTEL} or
@@ -795,6 +1899,23 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		}
 	}
 
+	/**
+	 * Sets the position of the input to the argument offset,
+	 * see {@link #getInput}.
+	 */
+	void seek(long offset) throws IOException
+	{
+		ByteBufferInputStream bufferInput = getByteBufferInputStream();
+		if (bufferInput != null)
+		{
+			bufferInput.seek(offset);
+		}
+		else
+		{
+			getRandomAccessFile().seek(offset);
+		}
+	}
+
 	public void setFile(String fileName, CodecMode codecMode) throws 
 		IOException, 
 		UnsupportedCodecModeException
@@ -805,10 +1926,55 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		}
 		else
 		{
-			throw new UnsupportedCodecModeException("This TIFF codec can only load images.");
+			// the file is truncated when saving, unless an image is appended
+			setRandomAccessFile(new RandomAccessFile(fileName, "rw"), CodecMode.SAVE);
 		}
 	}
 
+	/**
+	 * Sets the number of threads used to decode the strips or tiles of an image.
+	 * TIFF strips and tiles are compressed independently of each other, so with
+	 * more than one thread each thread decodes whole strips (or rows of tiles)
+	 * into disjoint rows of the image.
+	 * Reading the compressed data from the file is still done one strip at a time,
+	 * so this helps with compression types that are expensive to decode
+	 * like Deflated, LZW or CCITT Group 4.
+	 * When saving, the threads compress strips in the same way.
+	 * Progress is reported only when a strip or row of tiles is finished.
+	 * Default is 1, the calling thread does all the work.
+	 * @param newValue number of threads, 1 or larger
+	 * @throws IllegalArgumentException if the argument is smaller than 1
+	 * @since 0.14.3
+	 */
+	public void setNumThreads(int newValue)
+	{
+		if (newValue < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1: " + newValue);
+		}
+		numThreads = newValue;
+	}
+
+	/**
+	 * Sets the number of rows per strip used when saving.
+	 * Smaller strips cost some compression efficiency but allow for more
+	 * parallel compression (see {@link #setNumThreads}) and for quicker access
+	 * to parts of the image when loading.
+	 * The default value 0 picks as many rows as fit into {@link #DEFAULT_STRIP_SIZE}
+	 * bytes of uncompressed image data.
+	 * @param newValue number of rows per strip, or 0 for the default
+	 * @throws IllegalArgumentException if the argument is negative
+	 * @since 0.14.3
+	 */
+	public void setRowsPerStrip(int newValue)
+	{
+		if (newValue < 0)
+		{
+			throw new IllegalArgumentException("Number of rows per strip must not be negative: " + newValue);
+		}
+		rowsPerStrip = newValue;
+	}
+
 	/**
 	 * Skips a given number of image file directories in this TIFF files.
 	 * Throws an exception if there were errors or not enough image file
@@ -824,7 +1990,7 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		InvalidFileStructureException,
 		IOException
 	{
-		RandomAccessFile in = getRandomAccessFile();
+		DataInput in = getInput();
 		if (numDirectories < 0)
 		{
 			throw new IllegalArgumentException("Cannot skip negative number " +
@@ -833,7 +1999,7 @@ public class TIFFCodec extends ImageCodec implements TIFFConstants
 		int skipped = 0;
 		while (numDirectories-- > 0)
 		{
-			in.seek(nextIfdOffset);
+			seek(nextIfdOffset);
 			short numTags = readShort();
 			in.skipBytes(numTags * 12);
 			nextIfdOffset = readInt();
@@ -31,6 +31,9 @@ public interface TIFFConstants
 	int COMPRESSION_SGI_LOG_24_PACKED = 34677;
 	int COMPRESSION_JBIG2 = 34715;
 
+	int FILL_ORDER_MSB_FIRST = 1;
+	int FILL_ORDER_LSB_FIRST = 2;
+
 	int PHOTOMETRIC_WHITE_IS_ZERO = 0;
 	int PHOTOMETRIC_BLACK_IS_ZERO = 1;
 	int PHOTOMETRIC_PALETTED = 3;
@@ -42,6 +45,9 @@ public interface TIFFConstants
 	int PLANAR_CONFIGURATION_CHUNKY = 1;
 	int PLANAR_CONFIGURATION_PLANAR = 2;
 
+	int PREDICTOR_NONE = 1;
+	int PREDICTOR_HORIZONTAL_DIFFERENCING = 2;
+
 	/**
 	 * Length of a tag (an image file directory entry) in bytes (12).
 	 */
@@ -9,7 +9,6 @@ package net.sourceforge.jiu.codecs.tiff;
 
 import java.io.DataInput;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import net.sourceforge.jiu.codecs.InvalidFileStructureException;
 import net.sourceforge.jiu.color.conversion.CMYKConversion;
 import net.sourceforge.jiu.color.conversion.LogLuvConversion;
@@ -37,6 +36,7 @@ public abstract class TIFFDecoder
 {
 	private TIFFCodec codec;
 	private TIFFImageFileDirectory ifd;
+	private DataInput input;
 	private int currentRow;
 	private int leftColumn;
 	private int rightColumn;
@@ -47,6 +47,10 @@ public abstract class TIFFDecoder
 	private int tileIndex;
 	private int processedTileRows;
 	private int totalTileRows;
+	private boolean differencing;
+	private int bytesPerSample;
+	private int samplesPerPixel;
+	private boolean littleEndian;
 
 	public TIFFDecoder()
 	{
@@ -109,10 +113,16 @@ public abstract class TIFFDecoder
 	/**
 	 * Returns the input stream from which this decoder is supposed 
 	 * to read data.
+	 * This is the input given to {@link #setInput} or, if there was none,
+	 * the codec's input (see {@link TIFFCodec#getInput}).
 	 */
 	public DataInput getInput()
 	{
-		return codec.getRandomAccessFile();
+		if (input != null)
+		{
+			return input;
+		}
+		return codec.getInput();
 	}
 
 	/**
@@ -184,9 +194,10 @@ public abstract class TIFFDecoder
 			throw new MissingParameterException("No TIFFImageFileDirectory object was given to this decoder.");
 		}
 
-		RandomAccessFile raf = codec.getRandomAccessFile();
-		long offset = ifd.getTileOffset(tileIndex) & 0x00000000ffffffffL;
-		raf.seek(offset);
+		if (input == null)
+		{
+			codec.seek(ifd.getTileOffset(tileIndex) & 0x00000000ffffffffL);
+		}
 
 		leftColumn = ifd.getTileX1(tileIndex);
 		rightColumn = ifd.getTileX2(tileIndex);
@@ -196,6 +207,14 @@ public abstract class TIFFDecoder
 		processedTileRows = tileIndex * ifd.getTileHeight();
 		totalTileRows = ifd.getTileHeight() * ifd.getNumTiles();
 		rowBuffer = new byte[ifd.getBytesPerRow()];
+		differencing = ifd.getPredictor() == TIFFConstants.PREDICTOR_HORIZONTAL_DIFFERENCING;
+		if (differencing)
+		{
+			int[] bitsPerSample = ifd.getBitsPerSample();
+			bytesPerSample = bitsPerSample[0] / 8;
+			samplesPerPixel = bitsPerSample.length;
+			littleEndian = codec.getByteOrder() == TIFFCodec.BYTE_ORDER_INTEL;
+		}
 	}
 
 	/**
@@ -230,6 +249,10 @@ public abstract class TIFFDecoder
 			bufferIndex += numCopy;
 			if (bufferIndex == getBytesPerRow())
 			{
+				if (differencing)
+				{
+					undoDifferencing(rowBuffer);
+				}
 				storeRow(rowBuffer, 0);
 				bufferIndex = 0;
 			}
@@ -260,6 +283,21 @@ public abstract class TIFFDecoder
 		ifd = tiffIfd;
 	}
 
+	/**
+	 * Specify the input from which the compressed data of the tile or strip
+	 * is to be read, starting with its first byte.
+	 * This is optional - without it, the decoder reads from the codec's
+	 * input, which {@link #initialize} positions at the
+	 * beginning of the tile.
+	 * @param in input for compressed data
+	 * @see #getInput
+	 * @since 0.14.3
+	 */
+	public void setInput(DataInput in)
+	{
+		input = in;
+	}
+
 	/**
 	 * Specify the zero-based tile index for the tile or strip to be decompressed
 	 * by this decoder.
@@ -279,7 +317,10 @@ public abstract class TIFFDecoder
 
 	private void storeRow(byte[] data, int offset)
 	{
-		codec.setProgress(processedTileRows++, totalTileRows);
+		if (codec.getNumThreads() == 1)
+		{
+			codec.setProgress(processedTileRows++, totalTileRows);
+		}
 		// get current row number and increase field currentRow by one
 		int y = currentRow++;
 		// buffer index field is reset to zero so that putBytes will start at the beginning of the buffer next time
@@ -291,6 +332,9 @@ public abstract class TIFFDecoder
 		}
 		// adjust y so that it will be in bounds coordinate space
 		y -= codec.getBoundsY1();
+		// when streaming, the image object only holds some rows, find out which one to write to
+		int boundsY = y;
+		y = codec.getImageRow(boundsY);
 		// get leftmost and rightmost pixel index of the current tile
 		int x1 = getX1();
 		int x2 = getX2();
@@ -474,5 +518,36 @@ public abstract class TIFFDecoder
 				break;
 			}
 		}
+		codec.rowStored(boundsY);
+	}
+
+	/**
+	 * Reverts horizontal differencing (predictor 2) on a row:
+	 * each sample except those of the first pixel was stored as the
+	 * difference to the same sample of the pixel on its left.
+	 */
+	private void undoDifferencing(byte[] row)
+	{
+		if (bytesPerSample == 1)
+		{
+			for (int i = samplesPerPixel; i < row.length; i++)
+			{
+				row[i] += row[i - samplesPerPixel];
+			}
+		}
+		else
+		{
+			// 16 bit samples in the byte order of the file
+			int low = littleEndian ? 0 : 1;
+			int high = 1 - low;
+			int stride = samplesPerPixel * 2;
+			for (int i = stride; i < row.length - 1; i += 2)
+			{
+				int value = ((row[i + high] & 0xff) << 8) | (row[i + low] & 0xff);
+				value += ((row[i - stride + high] & 0xff) << 8) | (row[i - stride + low] & 0xff);
+				row[i + high] = (byte)(value >> 8);
+				row[i + low] = (byte)value;
+			}
+		}
 	}
 }
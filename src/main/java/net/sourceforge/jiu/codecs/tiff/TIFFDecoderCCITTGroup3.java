@@ -0,0 +1,55 @@
+/*
+ * TIFFDecoderCCITTGroup3
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.tiff;
+
+import java.io.IOException;
+import net.sourceforge.jiu.codecs.InvalidFileStructureException;
+
+/**
+ * A TIFF decoder for files compressed with the <em>CCITT Group 3</em> method
+ * as defined in ITU-T recommendation T.4.
+ * This compression algorithm has the value <code>3</code>
+ * ({@link TIFFConstants#COMPRESSION_CCITT_T4}) in the compression tag of an
+ * image file directory.
+ * Only bilevel images can be encoded with that method.
+ * <p>
+ * Rows are coded one-dimensionally (like Modified Huffman) or, if bit 0
+ * of the T4Options tag is set, either one- or two-dimensionally, as indicated
+ * by a tag bit after each end-of-line code.
+ * Fill bits before end-of-line codes are skipped.
+ * Uncompressed mode is not supported.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public class TIFFDecoderCCITTGroup3 extends TIFFFaxDecoder
+{
+	public void decode() throws
+		InvalidFileStructureException,
+		IOException
+	{
+		boolean twoDimensional = (getImageFileDirectory().getT4Options() & 1) != 0;
+		for (int y = getY1(); y <= getY2(); y++)
+		{
+			skipEndOfLine();
+			if (twoDimensional && readBit() == 0)
+			{
+				decode2DRow();
+			}
+			else
+			{
+				decode1DRow();
+			}
+			storeRow();
+		}
+	}
+
+	public Integer[] getCompressionTypes()
+	{
+		return new Integer[] {new Integer(TIFFConstants.COMPRESSION_CCITT_T4)};
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * TIFFDecoderCCITTGroup4
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.tiff;
+
+import java.io.IOException;
+import net.sourceforge.jiu.codecs.InvalidFileStructureException;
+
+/**
+ * A TIFF decoder for files compressed with the <em>CCITT Group 4</em> method
+ * as defined in ITU-T recommendation T.6.
+ * This compression algorithm has the value <code>4</code>
+ * ({@link TIFFConstants#COMPRESSION_CCITT_T6}) in the compression tag of an
+ * image file directory.
+ * Only bilevel images can be encoded with that method.
+ * It is the format most document scanners produce for black and white pages.
+ * <p>
+ * All rows are coded two-dimensionally, the first one relative to an
+ * all-white row, and there are no end-of-line codes.
+ * Uncompressed mode is not supported.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public class TIFFDecoderCCITTGroup4 extends TIFFFaxDecoder
+{
+	public void decode() throws
+		InvalidFileStructureException,
+		IOException
+	{
+		for (int y = getY1(); y <= getY2(); y++)
+		{
+			decode2DRow();
+			storeRow();
+		}
+	}
+
+	public Integer[] getCompressionTypes()
+	{
+		return new Integer[] {new Integer(TIFFConstants.COMPRESSION_CCITT_T6)};
+	}
+}
@@ -13,7 +13,6 @@ import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 import net.sourceforge.jiu.codecs.tiff.TIFFConstants;
 import net.sourceforge.jiu.codecs.tiff.TIFFDecoder;
-import net.sourceforge.jiu.codecs.tiff.TIFFImageFileDirectory;
 import net.sourceforge.jiu.codecs.InvalidFileStructureException;
 import net.sourceforge.jiu.ops.MissingParameterException;
 
@@ -46,18 +45,12 @@ public class TIFFDecoderDeflated extends TIFFDecoder
 		byte[] ioBuffer = new byte[20000];
 		byte[] data = new byte[getBytesPerRow()];
 		// determine how many bytes have to be read from inflater
-		int numRows = getY2();
-		TIFFImageFileDirectory ifd = getImageFileDirectory();
-		if (numRows > ifd.getHeight() - 1)
-		{
-			numRows = ifd.getHeight() - 1;
-		}
-		numRows -= getY1();
+		int numRows = getY2() - getY1() + 1;
 		int remainingBytes = numRows * data.length;
 		// now read and decompress as long as there is data left to decompress
-		while (compressedSize > 0 || remainingBytes > 0)
+		while (remainingBytes > 0)
 		{
-			if (inflater.needsInput())
+			if (inflater.needsInput() && compressedSize > 0)
 			{
 				// read compressed data from input
 				int numBytes;
@@ -94,6 +87,7 @@ public class TIFFDecoderDeflated extends TIFFDecoder
 				}
 				catch (DataFormatException dfe)
 				{
+					inflater.end();
 					throw new InvalidFileStructureException("Error in compressed input data: " + dfe.toString());
 				}
 				// store decompressed data and update number of bytes left to decompress
@@ -102,8 +96,15 @@ public class TIFFDecoderDeflated extends TIFFDecoder
 					putBytes(data, 0, numInflated);
 					remainingBytes -= numInflated;
 				}
+				else
+				if (inflater.finished() || inflater.needsDictionary() || inflater.needsInput())
+				{
+					inflater.end();
+					throw new InvalidFileStructureException("Unexpected end of compressed data.");
+				}
 			}
 		}
+		inflater.end();
 	}
 
 	public Integer[] getCompressionTypes()
@@ -0,0 +1,178 @@
+/*
+ * TIFFDecoderLZW
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.tiff;
+
+import java.io.IOException;
+import net.sourceforge.jiu.codecs.InvalidFileStructureException;
+import net.sourceforge.jiu.ops.MissingParameterException;
+
+/**
+ * A TIFF decoder for files compressed with the <em>LZW</em> method.
+ * This compression algorithm has the value <code>5</code>
+ * ({@link TIFFConstants#COMPRESSION_LZW}) in the compression tag of an
+ * image file directory.
+ * All types of image data can be compressed with this method.
+ * <p>
+ * The string table is stored in preallocated arrays (prefix code,
+ * last byte, first byte and length of each string), so decoding does not
+ * create any objects per code.
+ * Strings are written backwards into a buffer holding one row plus the
+ * longest possible string, and each complete row is given to {@link #putBytes}.
+ * <p>
+ * Data written by pre-6.0 TIFF LZW encoders (with reversed bit order)
+ * is not supported.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public class TIFFDecoderLZW extends TIFFDecoder
+{
+	private static final int CLEAR_CODE = 256;
+	private static final int END_OF_INFORMATION = 257;
+	private static final int FIRST_FREE_CODE = 258;
+	private static final int MAX_CODE_SIZE = 12;
+	private static final int TABLE_SIZE = 1 << MAX_CODE_SIZE;
+
+	private final int[] prefix = new int[TABLE_SIZE];
+	private final byte[] suffix = new byte[TABLE_SIZE];
+	private final byte[] first = new byte[TABLE_SIZE];
+	private final int[] length = new int[TABLE_SIZE];
+	private byte[] data;
+	private int dataIndex;
+	private int bitBuffer;
+	private int numBufferedBits;
+	private int bytesPerRow;
+
+	public TIFFDecoderLZW()
+	{
+		for (int i = 0; i < 256; i++)
+		{
+			prefix[i] = -1;
+			suffix[i] = (byte)i;
+			first[i] = (byte)i;
+			length[i] = 1;
+		}
+	}
+
+	public void decode() throws
+		InvalidFileStructureException,
+		IOException
+	{
+		int numRows = getY2() - getY1() + 1;
+		byte[] buffer = new byte[bytesPerRow + TABLE_SIZE];
+		int bufferIndex = 0;
+		int codeSize = 9;
+		int nextCode = FIRST_FREE_CODE;
+		int oldCode = -1;
+		while (numRows > 0)
+		{
+			int code = readCode(codeSize);
+			if (code == CLEAR_CODE)
+			{
+				codeSize = 9;
+				nextCode = FIRST_FREE_CODE;
+				oldCode = -1;
+				continue;
+			}
+			if (code == END_OF_INFORMATION || code < 0)
+			{
+				break;
+			}
+			if (oldCode != -1)
+			{
+				if (code > nextCode)
+				{
+					throw new InvalidFileStructureException("Invalid LZW code " + code +
+						" (next free code is " + nextCode + ").");
+				}
+				if (nextCode < TABLE_SIZE)
+				{
+					// the new string is the old one plus the first byte of the current one,
+					// which is also the first byte of the old one if code is the new string
+					int firstIndex = code == nextCode ? oldCode : code;
+					prefix[nextCode] = oldCode;
+					suffix[nextCode] = first[firstIndex];
+					first[nextCode] = first[oldCode];
+					length[nextCode] = length[oldCode] + 1;
+					nextCode++;
+					// TIFF LZW switches to the next code size one code early
+					if (nextCode == (1 << codeSize) - 1 && codeSize < MAX_CODE_SIZE)
+					{
+						codeSize++;
+					}
+				}
+			}
+			else
+			if (code > 255)
+			{
+				throw new InvalidFileStructureException("Invalid LZW code " + code + " after clear code.");
+			}
+			oldCode = code;
+			// write the string of code backwards
+			int len = length[code];
+			int index = bufferIndex + len;
+			do
+			{
+				buffer[--index] = suffix[code];
+				code = prefix[code];
+			}
+			while (code >= 0);
+			bufferIndex += len;
+			// store complete rows
+			if (bufferIndex >= bytesPerRow)
+			{
+				int offset = 0;
+				while (bufferIndex - offset >= bytesPerRow && numRows > 0)
+				{
+					putBytes(buffer, offset, bytesPerRow);
+					offset += bytesPerRow;
+					numRows--;
+				}
+				bufferIndex -= offset;
+				System.arraycopy(buffer, offset, buffer, 0, bufferIndex);
+			}
+		}
+	}
+
+	public Integer[] getCompressionTypes()
+	{
+		return new Integer[] {new Integer(TIFFConstants.COMPRESSION_LZW)};
+	}
+
+	public void initialize() throws
+		IOException,
+		MissingParameterException
+	{
+		super.initialize();
+		TIFFImageFileDirectory ifd = getImageFileDirectory();
+		bytesPerRow = getBytesPerRow();
+		data = new byte[ifd.getByteCount(getTileIndex())];
+		getInput().readFully(data);
+		dataIndex = 0;
+		bitBuffer = 0;
+		numBufferedBits = 0;
+	}
+
+	/**
+	 * Reads a code of <code>codeSize</code> bits, most significant bit first.
+	 * @return the code or -1 if the end of the data has been reached
+	 */
+	private int readCode(int codeSize)
+	{
+		while (numBufferedBits < codeSize)
+		{
+			if (dataIndex == data.length)
+			{
+				return -1;
+			}
+			bitBuffer = (bitBuffer << 8) | (data[dataIndex++] & 0xff);
+			numBufferedBits += 8;
+		}
+		numBufferedBits -= codeSize;
+		return (bitBuffer >> numBufferedBits) & ((1 << codeSize) - 1);
+	}
+}
@@ -1,21 +1,23 @@
 /*
  * TIFFDecoderPackbits
  * 
- * Copyright (c) 2002, 2003 Marco Schmidt.
+ * Copyright (c) 2002, 2003, 2007 Marco Schmidt.
  * All rights reserved.
  */
 
 package net.sourceforge.jiu.codecs.tiff;
 
-import java.io.DataInput;
 import java.io.IOException;
 import net.sourceforge.jiu.codecs.tiff.TIFFDecoder;
 import net.sourceforge.jiu.codecs.InvalidFileStructureException;
+import net.sourceforge.jiu.codecs.RunLengthCoding;
 
 /**
  * A TIFF decoder for files compressed with the <em>Packbits</em> method.
  * This compression algorithm has the value <code>32773</code> 
  * in the compression tag of an image file directory.
+ * The compressed data of a strip or tile is read with a single call and
+ * then expanded row by row with {@link RunLengthCoding}.
  * @author Marco Schmidt
  * @since 0.9.0
  */
@@ -25,34 +27,13 @@ public class TIFFDecoderPackbits extends TIFFDecoder
 		InvalidFileStructureException,
 		IOException
 	{
-		DataInput in = getInput();
+		byte[] data = new byte[getImageFileDirectory().getByteCount(getTileIndex())];
+		getInput().readFully(data);
 		byte[] row = new byte[getBytesPerRow()];
+		int offset = 0;
 		for (int y = getY1(); y <= getY2(); y++)
 		{
-			int index = 0;
-			do
-			{
-				byte value = in.readByte();
-				if (value >= 0)
-				{
-					int numSamples = value + 1;
-					// copy bytes literally
-					in.readFully(row, index, numSamples);
-					index += numSamples;
-				}
-				else
-				if (value != (byte)-128)
-				{
-					int numSamples = - value + 1;
-					// write run
-					byte sample = in.readByte();
-					while (numSamples-- != 0)
-					{
-						row[index++] = sample;
-					}
-				}
-			}
-			while (index != row.length);
+			offset = RunLengthCoding.decodePackbits(data, offset, data.length, row, 0, row.length);
 			putBytes(row, 0, row.length);
 		}
 	}
@@ -0,0 +1,40 @@
+/*
+ * TIFFEncoder
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.tiff;
+
+/**
+ * Base class for the compression of a single TIFF strip when saving.
+ * {@link TIFFCodec} gives each strip's rows to {@link #encode} in the
+ * layout in which they are stored uncompressed in a TIFF file
+ * (packed bits for bilevel images, interleaved samples for RGB images),
+ * one after another, and writes the returned bytes to the file.
+ * <p>
+ * Strips are compressed independently of each other; like decoders, encoders
+ * are created for a single strip, so that a codec saving with more than one
+ * thread never shares an encoder object between threads.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+abstract class TIFFEncoder
+{
+	/**
+	 * Compresses the rows of one strip.
+	 * @param data the uncompressed rows, starting at offset 0
+	 * @param width number of pixels per row
+	 * @param bytesPerRow number of bytes per row in <code>data</code>
+	 * @param numRows number of rows in <code>data</code>
+	 * @return compressed data of the strip
+	 */
+	abstract byte[] encode(byte[] data, int width, int bytesPerRow, int numRows);
+
+	/**
+	 * Returns the value of the compression tag for data created by this encoder,
+	 * one of the <code>COMPRESSION_xyz</code> constants of {@link TIFFConstants}.
+	 */
+	abstract int getCompression();
+}
@@ -0,0 +1,269 @@
+/*
+ * TIFFEncoderCCITTGroup4
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.tiff;
+
+/**
+ * Compresses bilevel strips with the <em>CCITT Group 4</em> method as defined
+ * in ITU-T recommendation T.6 ({@link TIFFConstants#COMPRESSION_CCITT_T6}),
+ * the counterpart of {@link TIFFDecoderCCITTGroup4}.
+ * <p>
+ * All rows are coded two-dimensionally, the first one relative to an
+ * all-white row; the strip ends with an end-of-facsimile-block code (EOFB).
+ * The input rows are packed bytes with white as 1 bits,
+ * the layout of a {@link net.sourceforge.jiu.data.MemoryBilevelImage}.
+ * Runs of white pixels are coded as white runs, so the image file directory
+ * must declare {@link TIFFConstants#PHOTOMETRIC_WHITE_IS_ZERO}.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+class TIFFEncoderCCITTGroup4 extends TIFFEncoder
+{
+	private static final int MAX_MAKEUP_RUN = 2560;
+	private static final int[] WHITE_TERMINATING_CODES = new int[64];
+	private static final int[] WHITE_MAKEUP_CODES = new int[MAX_MAKEUP_RUN / 64 + 1];
+	private static final int[] BLACK_TERMINATING_CODES = new int[64];
+	private static final int[] BLACK_MAKEUP_CODES = new int[MAX_MAKEUP_RUN / 64 + 1];
+
+	static
+	{
+		// each entry holds the code word shifted left by four bits, or-ed with its length
+		initCodes(TIFFFaxCodes.WHITE_CODES, TIFFFaxCodes.MIN_WHITE_CODE_SIZE, WHITE_TERMINATING_CODES, WHITE_MAKEUP_CODES);
+		initCodes(TIFFFaxCodes.BLACK_CODES, TIFFFaxCodes.MIN_BLACK_CODE_SIZE, BLACK_TERMINATING_CODES, BLACK_MAKEUP_CODES);
+	}
+
+	private int bitBuffer;
+	private int numBits;
+	private byte[] out;
+	private int outLength;
+
+	byte[] encode(byte[] data, int width, int bytesPerRow, int numRows)
+	{
+		out = new byte[Math.max(bytesPerRow * numRows / 8, 64)];
+		outLength = 0;
+		bitBuffer = 0;
+		numBits = 0;
+		// changing elements of the reference row and of the row to be coded,
+		// each followed by two sentinels
+		int[] referenceChanges = new int[width + 3];
+		int numReferenceChanges = 0;
+		int[] codingChanges = new int[width + 3];
+		for (int y = 0, rowOffset = 0; y < numRows; y++, rowOffset += bytesPerRow)
+		{
+			int numCodingChanges = findChanges(data, rowOffset, width, codingChanges);
+			referenceChanges[numReferenceChanges] = width;
+			referenceChanges[numReferenceChanges + 1] = width;
+			referenceChanges[numReferenceChanges + 2] = width;
+			codingChanges[numCodingChanges] = width;
+			codingChanges[numCodingChanges + 1] = width;
+			encodeRow(referenceChanges, codingChanges, width);
+			int[] temp = referenceChanges;
+			referenceChanges = codingChanges;
+			codingChanges = temp;
+			numReferenceChanges = numCodingChanges;
+		}
+		// EOFB, two EOL codes
+		putBits(1, 12);
+		putBits(1, 12);
+		if (numBits > 0)
+		{
+			putBits(0, 8 - numBits);
+		}
+		byte[] result = new byte[outLength];
+		System.arraycopy(out, 0, result, 0, outLength);
+		return result;
+	}
+
+	/**
+	 * Codes one row, following the two-dimensional coding procedure of T.4 / T.6.
+	 * The positions a0, a1, a2 (coding row) and b1, b2 (reference row) are
+	 * found the same way {@link TIFFFaxDecoder} finds them when decoding.
+	 */
+	private void encodeRow(int[] ref, int[] coding, int width)
+	{
+		int a0 = -1;
+		int color = 0; // 0 is white, 1 is black
+		int i = 0;
+		int j = 0;
+		while (a0 < width)
+		{
+			while (coding[j] <= a0)
+			{
+				j++;
+			}
+			int a1 = coding[j];
+			int a2 = coding[j + 1];
+			while (i > 0 && ref[i - 1] > a0)
+			{
+				i--;
+			}
+			while (ref[i] <= a0)
+			{
+				i++;
+			}
+			if ((i & 1) != color)
+			{
+				i++;
+			}
+			int b1 = ref[i];
+			int b2 = ref[i + 1];
+			if (b2 < a1)
+			{
+				// pass mode
+				putBits(1, 4);
+				a0 = b2;
+			}
+			else
+			{
+				int delta = a1 - b1;
+				if (delta >= -3 && delta <= 3)
+				{
+					putVertical(delta);
+					a0 = a1;
+					color ^= 1;
+				}
+				else
+				{
+					// horizontal mode
+					putBits(1, 3);
+					putRun(a1 - Math.max(a0, 0), color == 1);
+					putRun(a2 - a1, color == 0);
+					a0 = a2;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores the columns where the color changes into <code>changes</code>,
+	 * the first one being the first black pixel.
+	 * @return number of changing elements
+	 */
+	private static int findChanges(byte[] data, int rowOffset, int width, int[] changes)
+	{
+		int num = 0;
+		int x = 0;
+		boolean black = false;
+		while (true)
+		{
+			x = findColor(data, rowOffset, x, width, !black);
+			if (x >= width)
+			{
+				return num;
+			}
+			changes[num++] = x;
+			black = !black;
+		}
+	}
+
+	/**
+	 * Returns the first column from <code>x</code> on of a black (or white) pixel,
+	 * or <code>width</code> if there is none.
+	 * Bytes without such a pixel are skipped as a whole.
+	 */
+	private static int findColor(byte[] data, int rowOffset, int x, int width, boolean black)
+	{
+		while (x < width)
+		{
+			int value = data[rowOffset + (x >> 3)] & 0xff;
+			if (black)
+			{
+				value ^= 0xff;
+			}
+			value &= 0xff >> (x & 7);
+			if (value != 0)
+			{
+				return Math.min((x & ~7) + Integer.numberOfLeadingZeros(value) - 24, width);
+			}
+			x = (x & ~7) + 8;
+		}
+		return width;
+	}
+
+	int getCompression()
+	{
+		return TIFFConstants.COMPRESSION_CCITT_T6;
+	}
+
+	private static void initCodes(int[][][] codes, int minCodeSize, int[] terminating, int[] makeup)
+	{
+		for (int i = 0; i < codes.length; i++)
+		{
+			int codeSize = minCodeSize + i;
+			for (int j = 0; j < codes[i].length; j++)
+			{
+				int code = codes[i][j][TIFFFaxCodes.INDEX_CODE_WORD];
+				int value = codes[i][j][TIFFFaxCodes.INDEX_CODE_VALUE];
+				int entry = (code << 4) | codeSize;
+				if (value < 64)
+				{
+					terminating[value] = entry;
+				}
+				else
+				{
+					makeup[value / 64] = entry;
+				}
+			}
+		}
+	}
+
+	private void putBits(int code, int length)
+	{
+		bitBuffer = (bitBuffer << length) | code;
+		numBits += length;
+		while (numBits >= 8)
+		{
+			numBits -= 8;
+			if (outLength == out.length)
+			{
+				byte[] temp = new byte[out.length * 2];
+				System.arraycopy(out, 0, temp, 0, outLength);
+				out = temp;
+			}
+			out[outLength++] = (byte)(bitBuffer >> numBits);
+		}
+	}
+
+	private void putCode(int entry)
+	{
+		putBits(entry >> 4, entry & 15);
+	}
+
+	/**
+	 * Writes the code(s) for a run of white or black pixels:
+	 * makeup codes as necessary, then a terminating code.
+	 */
+	private void putRun(int length, boolean black)
+	{
+		int[] makeup = black ? BLACK_MAKEUP_CODES : WHITE_MAKEUP_CODES;
+		while (length > MAX_MAKEUP_RUN)
+		{
+			putCode(makeup[MAX_MAKEUP_RUN / 64]);
+			length -= MAX_MAKEUP_RUN;
+		}
+		if (length >= 64)
+		{
+			putCode(makeup[length / 64]);
+			length &= 63;
+		}
+		putCode(black ? BLACK_TERMINATING_CODES[length] : WHITE_TERMINATING_CODES[length]);
+	}
+
+	private void putVertical(int delta)
+	{
+		switch(delta)
+		{
+			case(0): putBits(1, 1); break;
+			case(1): putBits(3, 3); break;
+			case(-1): putBits(2, 3); break;
+			case(2): putBits(3, 6); break;
+			case(-2): putBits(2, 6); break;
+			case(3): putBits(3, 7); break;
+			default: putBits(2, 7); break;
+		}
+	}
+}
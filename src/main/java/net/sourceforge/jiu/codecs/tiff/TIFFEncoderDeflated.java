@@ -0,0 +1,56 @@
+/*
+ * TIFFEncoderDeflated
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.tiff;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses strips with the <em>Deflated</em> method
+ * ({@link TIFFConstants#COMPRESSION_DEFLATED_OFFICIAL}), the counterpart of
+ * {@link TIFFDecoderDeflated}.
+ * Each strip becomes a complete zlib stream, created by a
+ * {@link java.util.zip.Deflater} of the compression level given to the constructor.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+class TIFFEncoderDeflated extends TIFFEncoder
+{
+	private int level;
+
+	/**
+	 * Creates an encoder using the argument compression level.
+	 * @param compressionLevel Deflater level from 0 to 9 or {@link java.util.zip.Deflater#DEFAULT_COMPRESSION}
+	 */
+	TIFFEncoderDeflated(int compressionLevel)
+	{
+		level = compressionLevel;
+	}
+
+	byte[] encode(byte[] data, int width, int bytesPerRow, int numRows)
+	{
+		int length = bytesPerRow * numRows;
+		Deflater deflater = new Deflater(level);
+		deflater.setInput(data, 0, length);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4 + 64);
+		byte[] buffer = new byte[Math.min(64 * 1024, length + 64)];
+		while (!deflater.finished())
+		{
+			int numBytes = deflater.deflate(buffer);
+			out.write(buffer, 0, numBytes);
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+
+	int getCompression()
+	{
+		return TIFFConstants.COMPRESSION_DEFLATED_OFFICIAL;
+	}
+}
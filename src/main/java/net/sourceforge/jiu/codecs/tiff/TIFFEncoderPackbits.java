@@ -0,0 +1,40 @@
+/*
+ * TIFFEncoderPackbits
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.tiff;
+
+import net.sourceforge.jiu.codecs.RunLengthCoding;
+
+/**
+ * Compresses strips with the <em>Packbits</em> method
+ * ({@link TIFFConstants#COMPRESSION_PACKBITS}), the counterpart of
+ * {@link TIFFDecoderPackbits}.
+ * Each row is packed separately, as required by the TIFF specification,
+ * with {@link RunLengthCoding#encodePackbits}.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+class TIFFEncoderPackbits extends TIFFEncoder
+{
+	byte[] encode(byte[] data, int width, int bytesPerRow, int numRows)
+	{
+		byte[] buffer = new byte[RunLengthCoding.getMaxPackbitsSize(bytesPerRow) * numRows];
+		int size = 0;
+		for (int y = 0, rowOffset = 0; y < numRows; y++, rowOffset += bytesPerRow)
+		{
+			size += RunLengthCoding.encodePackbits(data, rowOffset, bytesPerRow, buffer, size);
+		}
+		byte[] result = new byte[size];
+		System.arraycopy(buffer, 0, result, 0, size);
+		return result;
+	}
+
+	int getCompression()
+	{
+		return TIFFConstants.COMPRESSION_PACKBITS;
+	}
+}
@@ -0,0 +1,28 @@
+/*
+ * TIFFEncoderUncompressed
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.tiff;
+
+/**
+ * Stores strips without compression ({@link TIFFConstants#COMPRESSION_NONE}).
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+class TIFFEncoderUncompressed extends TIFFEncoder
+{
+	byte[] encode(byte[] data, int width, int bytesPerRow, int numRows)
+	{
+		byte[] result = new byte[bytesPerRow * numRows];
+		System.arraycopy(data, 0, result, 0, result.length);
+		return result;
+	}
+
+	int getCompression()
+	{
+		return TIFFConstants.COMPRESSION_NONE;
+	}
+}
@@ -304,5 +304,57 @@ public class TIFFFaxCodes
 			{31, 2560},
 		}
 	};
-}
 
+	/**
+	 * Number of input bits that index {@link #WHITE_LOOKUP}, the length of the longest white code.
+	 * @since 0.14.3
+	 */
+	public static final int WHITE_LOOKUP_BITS = 12;
+
+	/**
+	 * Number of input bits that index {@link #BLACK_LOOKUP}, the length of the longest black code.
+	 * @since 0.14.3
+	 */
+	public static final int BLACK_LOOKUP_BITS = 13;
+
+	/**
+	 * Lookup table for white codes, indexed by the next {@link #WHITE_LOOKUP_BITS}
+	 * bits of input.
+	 * An entry holds the run length shifted left by four bits, or-ed with the
+	 * length of the code word; it is zero if the bits do not start with a white code.
+	 * @since 0.14.3
+	 */
+	public static final int[] WHITE_LOOKUP = createLookupTable(WHITE_CODES, MIN_WHITE_CODE_SIZE, WHITE_LOOKUP_BITS);
+
+	/**
+	 * Lookup table for black codes, organized like {@link #WHITE_LOOKUP}.
+	 * @since 0.14.3
+	 */
+	public static final int[] BLACK_LOOKUP = createLookupTable(BLACK_CODES, MIN_BLACK_CODE_SIZE, BLACK_LOOKUP_BITS);
+
+	/**
+	 * Creates a lookup table from code word / code value pairs.
+	 * Every code word of length n occupies all 2<sup>tableBits - n</sup> entries
+	 * whose index starts with that code word.
+	 */
+	private static int[] createLookupTable(int[][][] codes, int minCodeSize, int tableBits)
+	{
+		int[] table = new int[1 << tableBits];
+		for (int i = 0; i < codes.length; i++)
+		{
+			int codeSize = minCodeSize + i;
+			int numEntries = 1 << (tableBits - codeSize);
+			for (int j = 0; j < codes[i].length; j++)
+			{
+				int[] pair = codes[i][j];
+				int value = (pair[INDEX_CODE_VALUE] << 4) | codeSize;
+				int index = pair[INDEX_CODE_WORD] << (tableBits - codeSize);
+				for (int k = 0; k < numEntries; k++)
+				{
+					table[index + k] = value;
+				}
+			}
+		}
+		return table;
+	}
+}
@@ -0,0 +1,424 @@
+/*
+ * TIFFFaxDecoder
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.tiff;
+
+import java.io.IOException;
+import java.util.Arrays;
+import net.sourceforge.jiu.codecs.InvalidFileStructureException;
+import net.sourceforge.jiu.ops.MissingParameterException;
+
+/**
+ * Base class for the decoders of the CCITT bilevel compression types
+ * (Modified Huffman, Group 3 and Group 4).
+ * <p>
+ * It reads the compressed data of a strip or tile into memory and provides
+ * a bit reader working on a 64 bit buffer, table-driven decoding of run lengths
+ * (see {@link TIFFFaxCodes#WHITE_LOOKUP}) and of the two-dimensional coding
+ * modes, and conversion of decoded rows to packed bytes (eight pixels per byte,
+ * white is 1) as they are stored in a {@link net.sourceforge.jiu.data.MemoryBilevelImage}.
+ * <p>
+ * Decoding a row results in the list of its <em>changing elements</em>,
+ * the columns where the color changes from white to black or vice versa
+ * (the first changing element is the first black pixel).
+ * That list is the reference row for the next two-dimensionally coded row.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public abstract class TIFFFaxDecoder extends TIFFDecoder
+{
+	private static final int MODE_INVALID = 0;
+	private static final int MODE_PASS = 1;
+	private static final int MODE_HORIZONTAL = 2;
+	private static final int MODE_EXTENSION = 3;
+	// vertical modes VL3 to VR3 are MODE_VERTICAL_0 - 3 to MODE_VERTICAL_0 + 3
+	private static final int MODE_VERTICAL_0 = 7;
+
+	/**
+	 * Number of input bits that index {@link #MODE_LOOKUP}, the length of the longest mode code.
+	 */
+	private static final int MODE_LOOKUP_BITS = 7;
+
+	/**
+	 * Two-dimensional mode codes, mode shifted left by four bits, or-ed with code length.
+	 */
+	private static final int[] MODE_LOOKUP = new int[1 << MODE_LOOKUP_BITS];
+
+	/**
+	 * For each byte value the value with the order of its bits reversed.
+	 */
+	private static final byte[] REVERSED_BITS = new byte[256];
+
+	static
+	{
+		addMode(1, 1, MODE_VERTICAL_0);
+		addMode(3, 3, MODE_VERTICAL_0 + 1);
+		addMode(2, 3, MODE_VERTICAL_0 - 1);
+		addMode(1, 3, MODE_HORIZONTAL);
+		addMode(1, 4, MODE_PASS);
+		addMode(3, 6, MODE_VERTICAL_0 + 2);
+		addMode(2, 6, MODE_VERTICAL_0 - 2);
+		addMode(3, 7, MODE_VERTICAL_0 + 3);
+		addMode(2, 7, MODE_VERTICAL_0 - 3);
+		addMode(1, 7, MODE_EXTENSION);
+		for (int i = 0; i < 256; i++)
+		{
+			int value = 0;
+			for (int bit = 0; bit < 8; bit++)
+			{
+				if ((i & (1 << bit)) != 0)
+				{
+					value |= 0x80 >> bit;
+				}
+			}
+			REVERSED_BITS[i] = (byte)value;
+		}
+	}
+
+	private long bitBuffer;
+	private int numBufferedBits;
+	private byte[] data;
+	private int dataIndex;
+	private int width;
+	private int[] referenceChanges;
+	private int numReferenceChanges;
+	private int[] codingChanges;
+	private int numCodingChanges;
+	private byte[] row;
+	private int rowIndex;
+
+	private static void addMode(int code, int codeLength, int mode)
+	{
+		int numEntries = 1 << (MODE_LOOKUP_BITS - codeLength);
+		int index = code << (MODE_LOOKUP_BITS - codeLength);
+		for (int i = 0; i < numEntries; i++)
+		{
+			MODE_LOOKUP[index + i] = (mode << 4) | codeLength;
+		}
+	}
+
+	private void addCodingChange(int column) throws InvalidFileStructureException
+	{
+		// a valid row has at most one change per column plus a leading change at 0;
+		// the three elements after that are needed for sentinels once it is the reference row
+		if (numCodingChanges > width)
+		{
+			throw new InvalidFileStructureException("Too many color changes " +
+				"in row " + (getY1() + rowIndex) + ".");
+		}
+		codingChanges[numCodingChanges++] = column;
+	}
+
+	/**
+	 * Skips bits until the input is at a byte boundary.
+	 */
+	protected void alignToByte()
+	{
+		int remainder = numBufferedBits & 7;
+		bitBuffer <<= remainder;
+		numBufferedBits -= remainder;
+	}
+
+	/**
+	 * Decodes a row coded one-dimensionally, as a sequence of alternating
+	 * white and black run lengths, starting with white.
+	 * Call {@link #storeRow} afterwards.
+	 */
+	protected void decode1DRow() throws
+		InvalidFileStructureException,
+		IOException
+	{
+		numCodingChanges = 0;
+		int a0 = 0;
+		boolean black = false;
+		while (a0 < width)
+		{
+			a0 += decodeRun(black);
+			if (a0 > width)
+			{
+				a0 = width;
+			}
+			addCodingChange(a0);
+			black = !black;
+		}
+	}
+
+	/**
+	 * Decodes a row coded two-dimensionally, relative to the previous row
+	 * (the reference row).
+	 * Call {@link #storeRow} afterwards.
+	 */
+	protected void decode2DRow() throws
+		InvalidFileStructureException,
+		IOException
+	{
+		final int[] ref = referenceChanges;
+		// sentinels, so that b1 and b2 can always be found
+		ref[numReferenceChanges] = width;
+		ref[numReferenceChanges + 1] = width;
+		ref[numReferenceChanges + 2] = width;
+		numCodingChanges = 0;
+		int a0 = -1;
+		int color = 0; // 0 is white, 1 is black
+		int i = 0;
+		while (a0 < width)
+		{
+			// b1 is the first changing element on the reference row right of a0
+			// whose color is opposite to the color of a0; changing elements
+			// with an even index are changes to black
+			while (i > 0 && ref[i - 1] > a0)
+			{
+				i--;
+			}
+			while (ref[i] <= a0)
+			{
+				i++;
+			}
+			if ((i & 1) != color)
+			{
+				i++;
+			}
+			int b1 = ref[i];
+			int entry = MODE_LOOKUP[peekBits(MODE_LOOKUP_BITS)];
+			skipBits(entry & 15);
+			int mode = entry >> 4;
+			switch(mode)
+			{
+				case(MODE_PASS):
+				{
+					a0 = ref[i + 1];
+					break;
+				}
+				case(MODE_HORIZONTAL):
+				{
+					int a1 = Math.max(a0, 0) + decodeRun(color == 1);
+					if (a1 > width)
+					{
+						a1 = width;
+					}
+					int a2 = a1 + decodeRun(color == 0);
+					if (a2 > width)
+					{
+						a2 = width;
+					}
+					addCodingChange(a1);
+					addCodingChange(a2);
+					a0 = a2;
+					break;
+				}
+				case(MODE_INVALID):
+				case(MODE_EXTENSION):
+				{
+					throw new InvalidFileStructureException("Invalid or unsupported " +
+						"two-dimensional mode code in row " + (getY1() + rowIndex) + ".");
+				}
+				default:
+				{
+					int a1 = b1 + mode - MODE_VERTICAL_0;
+					if (a1 < 0 || a1 > width || a1 < a0)
+					{
+						throw new InvalidFileStructureException("Vertical mode code " +
+							"leads to invalid column " + a1 + " in row " + (getY1() + rowIndex) + ".");
+					}
+					addCodingChange(a1);
+					a0 = a1;
+					color ^= 1;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decodes the length of a white or black run, including any makeup codes.
+	 */
+	protected int decodeRun(boolean black) throws
+		InvalidFileStructureException,
+		IOException
+	{
+		int[] table;
+		int tableBits;
+		if (black)
+		{
+			table = TIFFFaxCodes.BLACK_LOOKUP;
+			tableBits = TIFFFaxCodes.BLACK_LOOKUP_BITS;
+		}
+		else
+		{
+			table = TIFFFaxCodes.WHITE_LOOKUP;
+			tableBits = TIFFFaxCodes.WHITE_LOOKUP_BITS;
+		}
+		int total = 0;
+		int runLength;
+		do
+		{
+			int entry = table[peekBits(tableBits)];
+			if (entry == 0)
+			{
+				throw new InvalidFileStructureException("Could not identify Huffman code in TIFF file.");
+			}
+			skipBits(entry & 15);
+			runLength = entry >> 4;
+			total += runLength;
+		}
+		while (runLength >= 64);
+		return total;
+	}
+
+	/**
+	 * Sets the pixels from column <code>x1</code> to column <code>x2 - 1</code>
+	 * of a packed row to black (zero bits).
+	 */
+	protected static void fillBlack(byte[] row, int x1, int x2)
+	{
+		if (x1 >= x2)
+		{
+			return;
+		}
+		int firstByte = x1 >> 3;
+		int lastByte = (x2 - 1) >> 3;
+		int firstMask = 0xff >> (x1 & 7);
+		int lastMask = (0xff00 >> (((x2 - 1) & 7) + 1)) & 0xff;
+		if (firstByte == lastByte)
+		{
+			row[firstByte] &= ~(firstMask & lastMask);
+		}
+		else
+		{
+			row[firstByte] &= ~firstMask;
+			Arrays.fill(row, firstByte + 1, lastByte, (byte)0);
+			row[lastByte] &= ~lastMask;
+		}
+	}
+
+	private void fillBitBuffer() throws InvalidFileStructureException
+	{
+		while (numBufferedBits <= 56)
+		{
+			int value = 0;
+			if (dataIndex < data.length)
+			{
+				value = data[dataIndex] & 0xff;
+			}
+			else
+			if (dataIndex > data.length + 16)
+			{
+				throw new InvalidFileStructureException("Unexpected end of compressed data.");
+			}
+			dataIndex++;
+			bitBuffer |= ((long)value) << (56 - numBufferedBits);
+			numBufferedBits += 8;
+		}
+	}
+
+	public void initialize() throws
+		IOException,
+		MissingParameterException
+	{
+		super.initialize();
+		TIFFImageFileDirectory ifd = getImageFileDirectory();
+		width = getX2() - getX1() + 1;
+		referenceChanges = new int[width + 4];
+		codingChanges = new int[width + 4];
+		row = new byte[getBytesPerRow()];
+		data = new byte[ifd.getByteCount(getTileIndex())];
+		getInput().readFully(data);
+		if (ifd.getFillOrder() == TIFFConstants.FILL_ORDER_LSB_FIRST)
+		{
+			for (int i = 0; i < data.length; i++)
+			{
+				data[i] = REVERSED_BITS[data[i] & 0xff];
+			}
+		}
+		dataIndex = 0;
+		bitBuffer = 0;
+		numBufferedBits = 0;
+		numReferenceChanges = 0;
+		rowIndex = 0;
+	}
+
+	/**
+	 * Returns the next <code>number</code> bits of input (at most 32)
+	 * without consuming them.
+	 */
+	protected int peekBits(int number) throws InvalidFileStructureException
+	{
+		if (numBufferedBits < number)
+		{
+			fillBitBuffer();
+		}
+		return (int)(bitBuffer >>> (64 - number));
+	}
+
+	/**
+	 * Reads a single bit.
+	 */
+	protected int readBit() throws InvalidFileStructureException
+	{
+		int result = peekBits(1);
+		skipBits(1);
+		return result;
+	}
+
+	/**
+	 * If the input continues with an end-of-line code (EOL, eleven zero bits and
+	 * a one bit), possibly preceded by additional zero fill bits, it is skipped.
+	 * @return whether an EOL code was found
+	 */
+	protected boolean skipEndOfLine() throws InvalidFileStructureException
+	{
+		if (peekBits(11) != 0)
+		{
+			return false;
+		}
+		skipBits(11);
+		while (peekBits(32) == 0)
+		{
+			skipBits(32);
+		}
+		while (peekBits(1) == 0)
+		{
+			skipBits(1);
+		}
+		skipBits(1);
+		return true;
+	}
+
+	/**
+	 * Consumes <code>number</code> bits that were looked at with {@link #peekBits}.
+	 */
+	protected void skipBits(int number)
+	{
+		bitBuffer <<= number;
+		numBufferedBits -= number;
+	}
+
+	/**
+	 * Converts the row decoded last to packed bytes and gives them to
+	 * {@link #putBytes}.
+	 * The row becomes the reference row for the next row.
+	 */
+	protected void storeRow()
+	{
+		Arrays.fill(row, (byte)0xff);
+		for (int i = 0; i < numCodingChanges; i += 2)
+		{
+			int x2 = width;
+			if (i + 1 < numCodingChanges)
+			{
+				x2 = codingChanges[i + 1];
+			}
+			fillBlack(row, codingChanges[i], x2);
+		}
+		putBytes(row, 0, row.length);
+		int[] temp = referenceChanges;
+		referenceChanges = codingChanges;
+		codingChanges = temp;
+		numReferenceChanges = numCodingChanges;
+		rowIndex++;
+	}
+}
@@ -54,6 +54,7 @@ public class TIFFImageFileDirectory implements TIFFConstants
 	private int dpiX;
 	private int dpiY;
 	private int[] extraSamples;
+	private int fillOrder;
 	private int height;
 	private int horizontalTiles;
 	private String hostComputer;
@@ -241,7 +242,23 @@ public class TIFFImageFileDirectory implements TIFFConstants
 				throw new UnsupportedTypeException("Number of bits per pixel must be 1 for " +
 					"compression type: " + getCompressionName(compression) + ".");
 			}
-			imageType = TYPE_BILEVEL_BYTE;
+		}
+		if (predictor == PREDICTOR_HORIZONTAL_DIFFERENCING)
+		{
+			for (int i = 0; i < bitsPerSample.length; i++)
+			{
+				if ((bitsPerSample[i] != 8 && bitsPerSample[i] != 16) ||
+				    bitsPerSample[i] != bitsPerSample[0])
+				{
+					throw new UnsupportedTypeException("Horizontal differencing is only " +
+						"supported for 8 or 16 bits per sample.");
+				}
+			}
+		}
+		else
+		if (predictor != PREDICTOR_NONE)
+		{
+			throw new UnsupportedTypeException("Unsupported predictor: " + predictor + ".");
 		}
 		// TODO more validity checks
 	}
@@ -315,6 +332,17 @@ public class TIFFImageFileDirectory implements TIFFConstants
 		return bitsPerPixel;
 	}
 
+	/**
+	 * Returns the number of bits of each sample of a pixel,
+	 * one array element per sample.
+	 * The array must not be modified.
+	 * @since 0.14.3
+	 */
+	public int[] getBitsPerSample()
+	{
+		return bitsPerSample;
+	}
+
 	/**
 	 * Returns the number of compressed byte for a given tile.
 	 * Tile index must not be negative and must be smaller than the number of tiles.
@@ -434,6 +462,17 @@ public class TIFFImageFileDirectory implements TIFFConstants
 		return dpiY;
 	}
 
+	/**
+	 * Returns the order of bits within a byte of compressed data,
+	 * {@link TIFFConstants#FILL_ORDER_MSB_FIRST} (the default)
+	 * or {@link TIFFConstants#FILL_ORDER_LSB_FIRST}.
+	 * @since 0.14.3
+	 */
+	public int getFillOrder()
+	{
+		return fillOrder;
+	}
+
 	public int getHeight()
 	{
 		return height;
@@ -489,6 +528,11 @@ public class TIFFImageFileDirectory implements TIFFConstants
 		return photometricInterpretation;
 	}
 
+	/**
+	 * Returns the predictor that was applied to the image data before compression,
+	 * {@link TIFFConstants#PREDICTOR_NONE} (the default if the tag is missing)
+	 * or {@link TIFFConstants#PREDICTOR_HORIZONTAL_DIFFERENCING}.
+	 */
 	public int getPredictor()
 	{
 		return predictor;
@@ -585,7 +629,7 @@ public class TIFFImageFileDirectory implements TIFFConstants
 		}
 		else
 		{
-			return (tileIndex % getNumVerticalTiles()) * getTileHeight();
+			return (tileIndex / getNumHorizontalTiles()) * getTileHeight();
 		}
 	}
 
@@ -597,7 +641,7 @@ public class TIFFImageFileDirectory implements TIFFConstants
 		}
 		else
 		{
-			int result = ((tileIndex % getNumVerticalTiles()) + 1) * getTileHeight() - 1;
+			int result = ((tileIndex / getNumHorizontalTiles()) + 1) * getTileHeight() - 1;
 			if (result >= height)
 			{
 				result = height - 1;
@@ -616,6 +660,7 @@ public class TIFFImageFileDirectory implements TIFFConstants
 		bitsPerPixel = -1;
 		bitsPerSample = null;
 		compression = -1;
+		fillOrder = FILL_ORDER_MSB_FIRST;
 		height = -1;
 		horizontalTiles = -1;
 		invertGraySamples = false;
@@ -624,6 +669,7 @@ public class TIFFImageFileDirectory implements TIFFConstants
 		orientation = 1;
 		photometricInterpretation = -1;
 		planarConfiguration = -1;
+		predictor = PREDICTOR_NONE;
 		resolutionUnit = 2;
 		resolutionX = -1.0;
 		resolutionY = -1.0;
@@ -754,6 +800,17 @@ public class TIFFImageFileDirectory implements TIFFConstants
 					}
 					break;
 				}
+				case(TAG_FILL_ORDER):
+				{
+					if (count != 1 || isNotInt)
+					{
+						throw new InvalidFileStructureException("Expected " +
+							"single byte/short/long value for fill order " +
+							"(count=" + count + ", type=" + type + ").");
+					}
+					fillOrder = tag.getOffset();
+					break;
+				}
 				case(TAG_HOST_COMPUTER):
 				{
 					hostComputer = tag.getString();
@@ -867,6 +924,16 @@ public class TIFFImageFileDirectory implements TIFFConstants
 					planarConfiguration = tag.getOffset();
 					break;
 				}
+				case(TAG_PREDICTOR):
+				{
+					if (count != 1 || isNotInt)
+					{
+						throw new InvalidFileStructureException("Expected " +
+							"single byte/short/long value for predictor.");
+					}
+					predictor = tag.getOffset();
+					break;
+				}
 				case(TAG_ROWS_PER_STRIP):
 				{
 					if (count != 1 || isNotInt)
@@ -1000,10 +1067,29 @@ public class TIFFImageFileDirectory implements TIFFConstants
 					{
 						tileOffsets = tag.getVector();
 					}
-					numStrips = count;
 					numTiles = count;
-					horizontalTiles = 1;
-					verticalTiles = count;
+					break;
+				}
+				case(TAG_TILE_BYTE_COUNTS):
+				{
+					if (count < 1)
+					{
+						throw new InvalidFileStructureException("Need at least one tile byte count.");
+					}
+					if (count == 1)
+					{
+						if (isNotInt)
+						{
+							throw new InvalidFileStructureException("There is " +
+								"only one tile byte count, but its type is not integer.");
+						}
+						tileByteCounts = new Vector();
+						tileByteCounts.addElement(new Long(tag.getOffset()));
+					}
+					else
+					{
+						tileByteCounts = tag.getVector();
+					}
 					break;
 				}
 				case(TAG_TILE_WIDTH):
@@ -1032,6 +1118,12 @@ public class TIFFImageFileDirectory implements TIFFConstants
 		{
 			planarConfiguration = PLANAR_CONFIGURATION_CHUNKY;
 		}
+		if (bitsPerSample == null)
+		{
+			// the TIFF default, omitted by some writers for bilevel images
+			bitsPerSample = new int[] {1};
+			bitsPerPixel = 1;
+		}
 		if (photometricInterpretation == TIFFConstants.PHOTOMETRIC_PALETTED)
 		{
 			if (bitsPerPixel == 4)
@@ -0,0 +1,325 @@
+/*
+ * TIFFRegionReader
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.codecs.tiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Hashtable;
+import java.util.Vector;
+import net.sourceforge.jiu.codecs.CodecMode;
+import net.sourceforge.jiu.codecs.InvalidFileStructureException;
+import net.sourceforge.jiu.data.ByteChannelImage;
+import net.sourceforge.jiu.data.IntegerImage;
+import net.sourceforge.jiu.data.PixelImage;
+import net.sourceforge.jiu.ops.OperationFailedException;
+import net.sourceforge.jiu.ops.WrongParameterException;
+
+/**
+ * Reads rectangular regions from the images of a TIFF file that is kept open.
+ * The image file directories, including the strip or tile offsets, are parsed only
+ * once, when the reader is created.
+ * Each call to {@link #read} decodes only those strips or tiles that overlap the
+ * requested rectangle.
+ * Decoded strips and tiles are kept in a cache of limited size
+ * (see {@link #setCacheSize}), the least recently used ones are dropped first,
+ * so that reading overlapping regions again and again (e.g. when zooming into
+ * different parts of a large scanned page) does not decode the same data again.
+ *
+ * <h3>Usage example</h3>
+ * <pre>
+ * TIFFRegionReader reader = new TIFFRegionReader("scan.tif");
+ * PixelImage part = reader.read(0, 1200, 800, 1399, 949);
+ * ...
+ * reader.close();
+ * </pre>
+ * Objects of this class are not thread-safe.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public class TIFFRegionReader
+{
+	/**
+	 * The default maximum number of bytes used for decoded strips and tiles, 16 MB.
+	 */
+	public static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+
+	private long cacheSize = DEFAULT_CACHE_SIZE;
+	private TIFFCodec codec;
+	private Vector directories;
+	private Vector recentKeys = new Vector();
+	private Hashtable tiles = new Hashtable();
+	private long usedMemory;
+
+	/**
+	 * Opens the argument TIFF file and reads all of its image file directories.
+	 * @param fileName name of the TIFF file
+	 */
+	public TIFFRegionReader(String fileName) throws
+		IOException,
+		OperationFailedException
+	{
+		codec = new TIFFCodec();
+		codec.setFile(fileName, CodecMode.LOAD);
+		readDirectories();
+	}
+
+	/**
+	 * Reads all image file directories from the argument buffer, which must
+	 * hold a complete TIFF file (e.g. a memory-mapped file).
+	 * @param buffer TIFF file content
+	 */
+	public TIFFRegionReader(ByteBuffer buffer) throws
+		IOException,
+		OperationFailedException
+	{
+		codec = new TIFFCodec();
+		codec.setByteBuffer(buffer);
+		readDirectories();
+	}
+
+	private void addTile(Long key, PixelImage tile)
+	{
+		long size = tile.getAllocatedMemory();
+		if (size > cacheSize)
+		{
+			return;
+		}
+		tiles.put(key, tile);
+		recentKeys.addElement(key);
+		usedMemory += size;
+		trimCache();
+	}
+
+	/**
+	 * Removes all decoded strips and tiles from the cache.
+	 */
+	public void clearCache()
+	{
+		tiles.clear();
+		recentKeys.removeAllElements();
+		usedMemory = 0;
+	}
+
+	/**
+	 * Clears the cache and closes the input file.
+	 * The reader cannot be used afterwards.
+	 */
+	public void close()
+	{
+		clearCache();
+		codec.close();
+	}
+
+	private void copy(PixelImage tile, int tileX, int tileY, PixelImage dest, int destX, int destY, int width, int height)
+	{
+		if (tile instanceof ByteChannelImage)
+		{
+			ByteChannelImage src = (ByteChannelImage)tile;
+			byte[] row = new byte[width];
+			for (int channel = 0; channel < src.getNumChannels(); channel++)
+			{
+				for (int y = 0; y < height; y++)
+				{
+					src.getByteSamples(channel, tileX, tileY + y, width, 1, row, 0);
+					((ByteChannelImage)dest).putByteSamples(channel, destX, destY + y, width, 1, row, 0);
+				}
+			}
+		}
+		else
+		{
+			IntegerImage src = (IntegerImage)tile;
+			int[] row = new int[width];
+			for (int channel = 0; channel < src.getNumChannels(); channel++)
+			{
+				for (int y = 0; y < height; y++)
+				{
+					src.getSamples(channel, tileX, tileY + y, width, 1, row, 0);
+					((IntegerImage)dest).putSamples(channel, destX, destY + y, width, 1, row, 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximum number of bytes used for decoded strips and tiles.
+	 * @see #setCacheSize
+	 */
+	public long getCacheSize()
+	{
+		return cacheSize;
+	}
+
+	/**
+	 * Returns the image file directory of the image with the argument index.
+	 * @param imageIndex index of the image, from 0 to {@link #getNumImages()} - 1
+	 */
+	public TIFFImageFileDirectory getImageFileDirectory(int imageIndex)
+	{
+		return (TIFFImageFileDirectory)directories.elementAt(imageIndex);
+	}
+
+	/**
+	 * Returns the number of images in the file.
+	 */
+	public int getNumImages()
+	{
+		return directories.size();
+	}
+
+	/**
+	 * Returns the number of bytes a decoded strip or tile of the argument size
+	 * will occupy; pixels of 2 to 7 bits are stored in one byte each.
+	 */
+	private static long getTileMemory(TIFFImageFileDirectory ifd, int width, int height)
+	{
+		int bitsPerPixel = ifd.getBitsPerPixel();
+		if (bitsPerPixel == 1)
+		{
+			return (long)(width + 7) / 8 * height;
+		}
+		return (long)width * height * ((bitsPerPixel + 7) / 8);
+	}
+
+	private PixelImage getTile(int imageIndex, TIFFImageFileDirectory ifd, int tileIndex) throws
+		IOException,
+		OperationFailedException
+	{
+		Long key = new Long(((long)imageIndex << 32) | tileIndex);
+		PixelImage tile = (PixelImage)tiles.get(key);
+		if (tile != null)
+		{
+			// move to the end of the list, where the most recently used tiles are
+			recentKeys.removeElement(key);
+			recentKeys.addElement(key);
+			return tile;
+		}
+		int x2 = Math.min(ifd.getTileX2(tileIndex), ifd.getWidth() - 1);
+		tile = codec.loadRegion(ifd, ifd.getTileX1(tileIndex), ifd.getTileY1(tileIndex),
+			x2, ifd.getTileY2(tileIndex));
+		addTile(key, tile);
+		return tile;
+	}
+
+	/**
+	 * Decodes a rectangular part of an image.
+	 * With a cache size larger than zero, the strips or tiles overlapping the
+	 * rectangle are decoded completely and kept in the cache, then the rectangle is
+	 * copied from them.
+	 * Strips or tiles too large for the cache, and all of them with a cache size
+	 * of zero, are not decoded completely; only their part of the rectangle is.
+	 * @param imageIndex index of the image, from 0 to {@link #getNumImages()} - 1
+	 * @param x1 left column of the rectangle
+	 * @param y1 top row of the rectangle
+	 * @param x2 right column of the rectangle
+	 * @param y2 bottom row of the rectangle
+	 * @return a new image object of width x2 - x1 + 1 and height y2 - y1 + 1
+	 * @throws WrongParameterException if the image index is invalid or the
+	 *  rectangle does not lie within the image
+	 */
+	public PixelImage read(int imageIndex, int x1, int y1, int x2, int y2) throws
+		IOException,
+		OperationFailedException
+	{
+		if (imageIndex < 0 || imageIndex >= getNumImages())
+		{
+			throw new WrongParameterException("Image index must be from 0 to " +
+				(getNumImages() - 1) + "; got " + imageIndex);
+		}
+		TIFFImageFileDirectory ifd = getImageFileDirectory(imageIndex);
+		if (x1 < 0 || y1 < 0 || x2 < x1 || y2 < y1 || x2 >= ifd.getWidth() || y2 >= ifd.getHeight())
+		{
+			throw new WrongParameterException("Rectangle " + x1 + ", " + y1 + ", " +
+				x2 + ", " + y2 + " does not lie within image of " +
+				ifd.getWidth() + " x " + ifd.getHeight() + " pixels.");
+		}
+		if (cacheSize == 0)
+		{
+			return codec.loadRegion(ifd, x1, y1, x2, y2);
+		}
+		PixelImage result = null;
+		int numTiles = ifd.getNumTiles();
+		for (int tileIndex = 0; tileIndex < numTiles; tileIndex++)
+		{
+			int tileX1 = ifd.getTileX1(tileIndex);
+			int tileY1 = ifd.getTileY1(tileIndex);
+			int tileX2 = Math.min(ifd.getTileX2(tileIndex), ifd.getWidth() - 1);
+			int tileY2 = ifd.getTileY2(tileIndex);
+			if (tileX2 < x1 || tileX1 > x2 || tileY2 < y1 || tileY1 > y2)
+			{
+				continue;
+			}
+			int left = Math.max(x1, tileX1);
+			int top = Math.max(y1, tileY1);
+			int right = Math.min(x2, tileX2);
+			int bottom = Math.min(y2, tileY2);
+			PixelImage part;
+			int partX;
+			int partY;
+			if (getTileMemory(ifd, tileX2 - tileX1 + 1, tileY2 - tileY1 + 1) > cacheSize)
+			{
+				// too large to be cached, so only decode the overlapping part
+				part = codec.loadRegion(ifd, left, top, right, bottom);
+				partX = 0;
+				partY = 0;
+			}
+			else
+			{
+				part = getTile(imageIndex, ifd, tileIndex);
+				partX = left - tileX1;
+				partY = top - tileY1;
+			}
+			if (result == null)
+			{
+				result = part.createCompatibleImage(x2 - x1 + 1, y2 - y1 + 1);
+			}
+			copy(part, partX, partY, result, left - x1, top - y1,
+				right - left + 1, bottom - top + 1);
+		}
+		return result;
+	}
+
+	private void readDirectories() throws
+		IOException,
+		OperationFailedException
+	{
+		directories = codec.readImageFileDirectories();
+		if (directories.size() == 0)
+		{
+			throw new InvalidFileStructureException("TIFF file contains no image.");
+		}
+	}
+
+	/**
+	 * Sets the maximum number of bytes used for decoded strips and tiles.
+	 * A value of zero disables the cache.
+	 * Strips or tiles that are larger than this value are never cached,
+	 * of those only the parts overlapping a requested rectangle are decoded.
+	 * @param numBytes new cache size in bytes, zero or larger
+	 * @throws IllegalArgumentException if the argument is negative
+	 */
+	public void setCacheSize(long numBytes)
+	{
+		if (numBytes < 0)
+		{
+			throw new IllegalArgumentException("Cache size must not be negative; got " + numBytes);
+		}
+		cacheSize = numBytes;
+		trimCache();
+	}
+
+	private void trimCache()
+	{
+		while (usedMemory > cacheSize && recentKeys.size() > 0)
+		{
+			Object key = recentKeys.elementAt(0);
+			recentKeys.removeElementAt(0);
+			PixelImage tile = (PixelImage)tiles.remove(key);
+			usedMemory -= tile.getAllocatedMemory();
+		}
+	}
+}
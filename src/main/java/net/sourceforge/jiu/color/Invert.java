@@ -70,7 +70,7 @@ public class Invert extends ImageToImageOperation
 		PixelImage out = getOutputImage();
 		if (out == null)
 		{
-			setOutputImage(in.createCompatibleImage(in.getWidth(), in.getHeight()));
+			setOutputImage(createCompatibleImage(in, in.getWidth(), in.getHeight()));
 		}
 		else
 		{
@@ -109,7 +109,7 @@ public class Brightness extends LookupTableOperation
 	{
 		if (out == null)
 		{
-			out = (Paletted8Image)in.createCompatibleImage(in.getWidth(), in.getHeight());
+			out = (Paletted8Image)createCompatibleImage(in, in.getWidth(), in.getHeight());
 		}
 		Palette palette = out.getPalette();
 		int numSamples = palette.getNumEntries();
@@ -121,7 +121,7 @@ public class Contrast extends LookupTableOperation
 	{
 		if (out == null)
 		{
-			out = (Paletted8Image)in.createCompatibleImage(in.getWidth(), in.getHeight());
+			out = (Paletted8Image)createCompatibleImage(in, in.getWidth(), in.getHeight());
 		}
 		Palette palette = out.getPalette();
 		int numSamples = palette.getMaxValue() + 1;
@@ -97,7 +97,7 @@ public class GammaCorrection extends LookupTableOperation
 	{
 		if (out == null)
 		{
-			out = (Paletted8Image)in.createCompatibleImage(in.getWidth(), in.getHeight());
+			out = (Paletted8Image)createCompatibleImage(in, in.getWidth(), in.getHeight());
 			setOutputImage(out);
 		}
 		Palette palette = out.getPalette();
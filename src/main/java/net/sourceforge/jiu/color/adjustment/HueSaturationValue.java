@@ -236,7 +236,7 @@ public class HueSaturationValue extends ImageToImageOperation implements RGBInde
 		PixelImage out = getOutputImage();
 		if (out == null)
 		{
-			out = in.createCompatibleImage(in.getWidth(), in.getHeight());
+			out = createCompatibleImage(in, in.getWidth(), in.getHeight());
 			setOutputImage(out);
 		}
 		if (in instanceof RGBIntegerImage)
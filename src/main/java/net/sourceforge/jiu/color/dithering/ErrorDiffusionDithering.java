@@ -633,7 +633,7 @@ public class ErrorDiffusionDithering extends ImageToImageOperation implements RG
 		final int MAX = 255;
 		if (out == null)
 		{
-			out = (RGB24Image)in.createCompatibleImage(WIDTH, HEIGHT);
+			out = (RGB24Image)createCompatibleImage(in, WIDTH, HEIGHT);
 		}
 		final int NUM_ERROR_PIXELS = errorNum.length;
 		// create buffers
@@ -513,7 +513,7 @@ public class MedianCutQuantizer extends ImageToImageOperation implements RGBInde
 		{
 			if (out == null)
 			{
-				out = in.createCompatibleImage(in.getWidth(), in.getHeight());
+				out = createCompatibleImage(in, in.getWidth(), in.getHeight());
 				setOutputImage(out);
 			}
 			else
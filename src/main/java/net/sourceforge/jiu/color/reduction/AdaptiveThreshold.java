@@ -0,0 +1,315 @@
+/*
+ * AdaptiveThreshold
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.color.reduction;
+
+import net.sourceforge.jiu.data.BilevelImage;
+import net.sourceforge.jiu.data.GrayIntegerImage;
+import net.sourceforge.jiu.data.MemoryBilevelImage;
+import net.sourceforge.jiu.data.PixelImage;
+import net.sourceforge.jiu.ops.ImageToImageOperation;
+import net.sourceforge.jiu.ops.MissingParameterException;
+import net.sourceforge.jiu.ops.WrongParameterException;
+
+/**
+ * Reduces a {@link net.sourceforge.jiu.data.GrayIntegerImage} to a
+ * {@link net.sourceforge.jiu.data.BilevelImage} using a threshold that
+ * is computed for each pixel from the square window of pixels around it.
+ * Unlike {@link ReduceToBilevelThreshold}, which uses one threshold for
+ * the whole image, this copes with uneven lighting, shadows and faded
+ * regions, as found in scanned or photocopied documents.
+ * <p>
+ * Two methods are available:
+ * <ul>
+ * <li>{@link #METHOD_BRADLEY} (Bradley and Roth, 2007) sets a pixel to black if it is
+ *   darker than the window mean by more than a given percentage
+ *   (see {@link #setPercentage}).</li>
+ * <li>{@link #METHOD_SAUVOLA} (Sauvola and Pietik&auml;inen, 2000) uses the threshold
+ *   <code>mean * (1 + k * (deviation / R - 1))</code> where <code>deviation</code>
+ *   is the standard deviation of the window and <code>R</code> half the sample range,
+ *   so that low-contrast background regions become white
+ *   (see {@link #setK}).</li>
+ * </ul>
+ * Window sums (and, for Sauvola, sums of squares) are taken from a running
+ * integral image, so the running time does not depend on the window size:
+ * the image is read once, and only one row of column sums is kept in memory.
+ * Windows are clipped at the image borders.
+ * <h3>Usage example</h3>
+ * <pre>
+ * AdaptiveThreshold red = new AdaptiveThreshold();
+ * red.setInputImage(image); // some GrayIntegerImage
+ * red.setMethod(AdaptiveThreshold.METHOD_SAUVOLA);
+ * red.setWindowSize(31);
+ * red.process();
+ * BilevelImage reducedImage = (BilevelImage)red.getOutputImage();
+ * </pre>
+ * @author Marco Schmidt
+ * @since 0.14.3
+ * @see ReduceToBilevelThreshold
+ */
+public class AdaptiveThreshold extends ImageToImageOperation
+{
+	/**
+	 * Constant for the method of Bradley and Roth, comparing each pixel
+	 * to a percentage of the window mean.
+	 */
+	public static final int METHOD_BRADLEY = 0;
+
+	/**
+	 * Constant for the method of Sauvola and Pietik&auml;inen, comparing each
+	 * pixel to a threshold derived from window mean and standard deviation.
+	 */
+	public static final int METHOD_SAUVOLA = 1;
+
+	/**
+	 * The default value for {@link #setK}.
+	 */
+	public static final double DEFAULT_K = 0.5;
+
+	/**
+	 * The default value for {@link #setPercentage}.
+	 */
+	public static final int DEFAULT_PERCENTAGE = 15;
+
+	/**
+	 * The default value for {@link #setWindowSize}.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 31;
+
+	private double k = DEFAULT_K;
+	private int method = METHOD_SAUVOLA;
+	private int percentage = DEFAULT_PERCENTAGE;
+	private int windowSize = DEFAULT_WINDOW_SIZE;
+
+	private static void addRow(int[] row, int[] colSums, long[] colSquareSums, int sign)
+	{
+		for (int x = 0; x < row.length; x++)
+		{
+			int value = row[x];
+			colSums[x] += sign * value;
+			if (colSquareSums != null)
+			{
+				colSquareSums[x] += sign * (long)value * value;
+			}
+		}
+	}
+
+	/**
+	 * Returns the Sauvola parameter k.
+	 * @see #setK
+	 */
+	public double getK()
+	{
+		return k;
+	}
+
+	/**
+	 * Returns the method used by this operation, one of the METHOD_xyz constants.
+	 * @see #setMethod
+	 */
+	public int getMethod()
+	{
+		return method;
+	}
+
+	/**
+	 * Returns the Bradley percentage.
+	 * @see #setPercentage
+	 */
+	public int getPercentage()
+	{
+		return percentage;
+	}
+
+	/**
+	 * Returns the width and height of the window around each pixel.
+	 * @see #setWindowSize
+	 */
+	public int getWindowSize()
+	{
+		return windowSize;
+	}
+
+	private void process(GrayIntegerImage in, BilevelImage out)
+	{
+		final int WIDTH = in.getWidth();
+		final int HEIGHT = in.getHeight();
+		final int RADIUS = windowSize / 2;
+		final boolean SAUVOLA = method == METHOD_SAUVOLA;
+		final double R = (in.getMaxSample(0) + 1) / 2.0;
+		int[] row = new int[WIDTH];
+		// sums of each column over the rows of the current window
+		int[] colSums = new int[WIDTH];
+		long[] colSquareSums = SAUVOLA ? new long[WIDTH] : null;
+		// one row of the integral image: rowSums[x] is the window sum of columns 0 to x - 1
+		long[] rowSums = new long[WIDTH + 1];
+		long[] rowSquareSums = SAUVOLA ? new long[WIDTH + 1] : null;
+		int[] samples = new int[WIDTH];
+		byte[] packed = new byte[(WIDTH + 7) / 8];
+		for (int y = -RADIUS; y < HEIGHT; y++)
+		{
+			// slide the window down by one row
+			int enter = y + RADIUS;
+			if (enter < HEIGHT)
+			{
+				in.getSamples(0, 0, enter, WIDTH, 1, row, 0);
+				addRow(row, colSums, colSquareSums, 1);
+			}
+			int leave = y - RADIUS - 1;
+			if (leave >= 0)
+			{
+				in.getSamples(0, 0, leave, WIDTH, 1, row, 0);
+				addRow(row, colSums, colSquareSums, -1);
+			}
+			if (y < 0)
+			{
+				continue;
+			}
+			for (int x = 0; x < WIDTH; x++)
+			{
+				rowSums[x + 1] = rowSums[x] + colSums[x];
+				if (SAUVOLA)
+				{
+					rowSquareSums[x + 1] = rowSquareSums[x] + colSquareSums[x];
+				}
+			}
+			final int WINDOW_HEIGHT = Math.min(y + RADIUS, HEIGHT - 1) - Math.max(y - RADIUS, 0) + 1;
+			in.getSamples(0, 0, y, WIDTH, 1, samples, 0);
+			int x = 0;
+			for (int i = 0; i < packed.length; i++)
+			{
+				int value = 0;
+				int mask = 0x80;
+				while (mask != 0 && x < WIDTH)
+				{
+					int x1 = Math.max(x - RADIUS, 0);
+					int x2 = Math.min(x + RADIUS + 1, WIDTH);
+					int count = (x2 - x1) * WINDOW_HEIGHT;
+					long sum = rowSums[x2] - rowSums[x1];
+					boolean white;
+					if (SAUVOLA)
+					{
+						double mean = (double)sum / count;
+						double variance = (double)(rowSquareSums[x2] - rowSquareSums[x1]) / count - mean * mean;
+						double deviation = variance > 0.0 ? Math.sqrt(variance) : 0.0;
+						white = samples[x] >= mean * (1.0 + k * (deviation / R - 1.0));
+					}
+					else
+					{
+						white = (long)samples[x] * count * 100 >= sum * (100 - percentage);
+					}
+					if (white)
+					{
+						value |= mask;
+					}
+					mask >>= 1;
+					x++;
+				}
+				packed[i] = (byte)value;
+			}
+			out.putPackedBytes(0, y, WIDTH, packed, 0, 0);
+			setProgress(y, HEIGHT);
+		}
+	}
+
+	public void process() throws
+		MissingParameterException,
+		WrongParameterException
+	{
+		PixelImage in = getInputImage();
+		if (in == null)
+		{
+			throw new MissingParameterException("Input image missing.");
+		}
+		if (!(in instanceof GrayIntegerImage))
+		{
+			throw new WrongParameterException("Input image must implement GrayIntegerImage.");
+		}
+		PixelImage out = getOutputImage();
+		if (out == null)
+		{
+			out = new MemoryBilevelImage(in.getWidth(), in.getHeight());
+			setOutputImage(out);
+		}
+		if (!(out instanceof BilevelImage))
+		{
+			throw new WrongParameterException("Output image must implement BilevelImage.");
+		}
+		if (in.getWidth() != out.getWidth() || in.getHeight() != out.getHeight())
+		{
+			throw new WrongParameterException("Input and output images must have the same resolution.");
+		}
+		process((GrayIntegerImage)in, (BilevelImage)out);
+	}
+
+	/**
+	 * Sets the parameter k of the Sauvola method, which determines how much
+	 * the threshold is lowered below the window mean in regions of low contrast.
+	 * Typical values are from 0.2 to 0.5.
+	 * Default is {@link #DEFAULT_K}.
+	 * @param newK new value for k, must not be negative
+	 * @throws IllegalArgumentException if the argument is negative
+	 */
+	public void setK(double newK)
+	{
+		if (newK < 0.0)
+		{
+			throw new IllegalArgumentException("k must be 0.0 or larger: " + newK);
+		}
+		k = newK;
+	}
+
+	/**
+	 * Sets the method to be used, {@link #METHOD_BRADLEY} or {@link #METHOD_SAUVOLA}.
+	 * Default is {@link #METHOD_SAUVOLA}.
+	 * @param newMethod method constant
+	 * @throws IllegalArgumentException if the argument is not one of the METHOD_xyz constants
+	 */
+	public void setMethod(int newMethod)
+	{
+		if (newMethod != METHOD_BRADLEY && newMethod != METHOD_SAUVOLA)
+		{
+			throw new IllegalArgumentException("Unknown method: " + newMethod);
+		}
+		method = newMethod;
+	}
+
+	/**
+	 * Sets the percentage for the Bradley method: a pixel becomes black if it
+	 * is darker than the window mean by more than this many percent.
+	 * Default is {@link #DEFAULT_PERCENTAGE}.
+	 * @param newPercentage new percentage value from 0 to 100
+	 * @throws IllegalArgumentException if the argument is not from 0 to 100
+	 */
+	public void setPercentage(int newPercentage)
+	{
+		if (newPercentage < 0 || newPercentage > 100)
+		{
+			throw new IllegalArgumentException("Percentage must be from 0 to 100: " + newPercentage);
+		}
+		percentage = newPercentage;
+	}
+
+	/**
+	 * Sets the width and height of the square window around each pixel
+	 * whose statistics determine that pixel's threshold.
+	 * It should be somewhat larger than the strokes or marks to be kept
+	 * (e.g. 2 to 4 times the pen width).
+	 * Even values are increased by one.
+	 * Default is {@link #DEFAULT_WINDOW_SIZE}.
+	 * @param newSize window size in pixels
+	 * @throws IllegalArgumentException if the argument is smaller than 1
+	 */
+	public void setWindowSize(int newSize)
+	{
+		if (newSize < 1)
+		{
+			throw new IllegalArgumentException("Window size must be 1 or larger: " + newSize);
+		}
+		windowSize = newSize | 1;
+	}
+}
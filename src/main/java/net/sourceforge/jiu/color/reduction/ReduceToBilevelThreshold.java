@@ -64,16 +64,29 @@ public class ReduceToBilevelThreshold extends ImageToImageOperation
 		}
 		final int WIDTH = in.getWidth();
 		final int HEIGHT = in.getHeight();
-		out.clear(BilevelImage.BLACK);
+		// rows are thresholded into packed bytes and stored in one call,
+		// eight pixels per byte, instead of setting pixels one at a time
+		int[] samples = new int[WIDTH];
+		byte[] packed = new byte[(WIDTH + 7) / 8];
 		for (int y = 0; y < HEIGHT; y++)
 		{
-			for (int x = 0; x < WIDTH; x++)
+			in.getSamples(0, 0, y, WIDTH, 1, samples, 0);
+			int x = 0;
+			for (int i = 0; i < packed.length; i++)
 			{
-				if (in.getSample(0, x, y) >= THRESHOLD)
+				int value = 0;
+				int mask = 0x80;
+				while (mask != 0 && x < WIDTH)
 				{
-					out.putWhite(x, y);
+					if (samples[x++] >= THRESHOLD)
+					{
+						value |= mask;
+					}
+					mask >>= 1;
 				}
+				packed[i] = (byte)value;
 			}
+			out.putPackedBytes(0, y, WIDTH, packed, 0, 0);
 			setProgress(y, HEIGHT);
 		}
 	}
@@ -0,0 +1,256 @@
+/*
+ * ImagePool
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.data;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Recycles image objects so that applications processing many images of the
+ * same size do not have to allocate new image data for every one of them.
+ * <p>
+ * Images are grouped into <em>size classes</em>, made up of image class,
+ * width and height.
+ * {@link #createCompatibleImage} returns an image of the requested size class
+ * that was previously given back with {@link #release}, or creates a new one
+ * (using {@link PixelImage#createCompatibleImage}) if there is none.
+ * Free images are kept per thread, so several threads can share one pool
+ * without synchronization, each recycling its own images.
+ * <p>
+ * A recycled image has all samples set to zero, so it can be used
+ * just like a newly-created memory image.
+ * Paletted images are never recycled because their palette would have to be
+ * replaced as well.
+ * <h3>Usage example</h3>
+ * <pre>
+ * ImagePool pool = new ImagePool();
+ * MedianFilter filter = new MedianFilter();
+ * filter.setImagePool(pool);
+ * filter.setArea(5, 5);
+ * filter.setInputImage(image);
+ * filter.process();
+ * PixelImage filtered = filter.getOutputImage();
+ * // ... work with filtered
+ * pool.release(filtered);
+ * </pre>
+ * Do not keep any references to an image after it has been released.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ * @see net.sourceforge.jiu.ops.ImageToImageOperation#setImagePool
+ */
+public class ImagePool
+{
+	/**
+	 * The maximum number of free images per size class and thread
+	 * that is used when no other value is given to the constructor.
+	 */
+	public static final int DEFAULT_MAX_IMAGES_PER_SIZE = 4;
+
+	private final int maxImagesPerSize;
+	private final ThreadLocal freeImages = new ThreadLocal()
+	{
+		protected Object initialValue()
+		{
+			return new Hashtable();
+		}
+	};
+
+	/**
+	 * Creates a pool which keeps up to {@link #DEFAULT_MAX_IMAGES_PER_SIZE}
+	 * free images per size class and thread.
+	 */
+	public ImagePool()
+	{
+		this(DEFAULT_MAX_IMAGES_PER_SIZE);
+	}
+
+	/**
+	 * Creates a pool which keeps up to the argument number of free images
+	 * per size class and thread.
+	 * Images released when that number has been reached are left to the
+	 * garbage collector.
+	 * @param maxImagesPerSize maximum number of free images per size class, must be larger than zero
+	 * @throws IllegalArgumentException if the argument is smaller than one
+	 */
+	public ImagePool(int maxImagesPerSize)
+	{
+		if (maxImagesPerSize < 1)
+		{
+			throw new IllegalArgumentException("Maximum number of images per size must be larger than zero: " + maxImagesPerSize);
+		}
+		this.maxImagesPerSize = maxImagesPerSize;
+	}
+
+	/**
+	 * Removes all free images of the current thread from this pool.
+	 */
+	public void clear()
+	{
+		getFreeImages().clear();
+	}
+
+	private static void copy(PixelImage src, PixelImage dest)
+	{
+		final int WIDTH = src.getWidth();
+		final int HEIGHT = src.getHeight();
+		if (src instanceof BilevelImage)
+		{
+			BilevelImage in = (BilevelImage)src;
+			BilevelImage out = (BilevelImage)dest;
+			byte[] row = new byte[(WIDTH + 7) / 8];
+			for (int y = 0; y < HEIGHT; y++)
+			{
+				in.getPackedBytes(0, y, WIDTH, row, 0, 0);
+				out.putPackedBytes(0, y, WIDTH, row, 0, 0);
+			}
+		}
+		else
+		if (src instanceof ByteChannelImage)
+		{
+			ByteChannelImage in = (ByteChannelImage)src;
+			ByteChannelImage out = (ByteChannelImage)dest;
+			byte[] row = new byte[WIDTH];
+			for (int c = 0; c < in.getNumChannels(); c++)
+			{
+				for (int y = 0; y < HEIGHT; y++)
+				{
+					in.getByteSamples(c, 0, y, WIDTH, 1, row, 0);
+					out.putByteSamples(c, 0, y, WIDTH, 1, row, 0);
+				}
+			}
+		}
+		else
+		{
+			IntegerImage in = (IntegerImage)src;
+			IntegerImage out = (IntegerImage)dest;
+			int[] row = new int[WIDTH];
+			for (int c = 0; c < in.getNumChannels(); c++)
+			{
+				for (int y = 0; y < HEIGHT; y++)
+				{
+					in.getSamples(c, 0, y, WIDTH, 1, row, 0);
+					out.putSamples(c, 0, y, WIDTH, 1, row, 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns an image of the same class as the prototype image with the
+	 * argument resolution.
+	 * If this pool has a free image of that size class for the current thread,
+	 * it is cleared and returned, otherwise <code>prototype.createCompatibleImage(width, height)</code>
+	 * is returned.
+	 * @param prototype image whose class is to be used for the new image
+	 * @param width horizontal resolution of the new image
+	 * @param height vertical resolution of the new image
+	 * @return new or recycled image
+	 */
+	public PixelImage createCompatibleImage(PixelImage prototype, int width, int height)
+	{
+		if (isPoolable(prototype))
+		{
+			Vector list = (Vector)getFreeImages().get(createKey(prototype.getClass(), width, height));
+			if (list != null && list.size() > 0)
+			{
+				PixelImage result = (PixelImage)list.remove(list.size() - 1);
+				IntegerImage image = (IntegerImage)result;
+				for (int c = 0; c < image.getNumChannels(); c++)
+				{
+					image.clear(c, 0);
+				}
+				return result;
+			}
+		}
+		return prototype.createCompatibleImage(width, height);
+	}
+
+	/**
+	 * Creates a copy of the argument image, like {@link PixelImage#createCopy},
+	 * but draws the image object from this pool if possible.
+	 * @param image the image to be copied
+	 * @return copy of the argument image
+	 */
+	public PixelImage createCopy(PixelImage image)
+	{
+		if (!isPoolable(image))
+		{
+			return image.createCopy();
+		}
+		PixelImage result = createCompatibleImage(image, image.getWidth(), image.getHeight());
+		copy(image, result);
+		return result;
+	}
+
+	private static String createKey(Class imageClass, int width, int height)
+	{
+		return imageClass.getName() + ":" + width + "x" + height;
+	}
+
+	private Hashtable getFreeImages()
+	{
+		return (Hashtable)freeImages.get();
+	}
+
+	/**
+	 * Returns the maximum number of free images per size class and thread.
+	 */
+	public int getMaxImagesPerSize()
+	{
+		return maxImagesPerSize;
+	}
+
+	/**
+	 * Returns the number of free images of all size classes
+	 * that are kept for the current thread.
+	 */
+	public int getNumFreeImages()
+	{
+		int result = 0;
+		java.util.Enumeration lists = getFreeImages().elements();
+		while (lists.hasMoreElements())
+		{
+			result += ((Vector)lists.nextElement()).size();
+		}
+		return result;
+	}
+
+	private static boolean isPoolable(PixelImage image)
+	{
+		return image instanceof IntegerImage && !(image instanceof PalettedImage);
+	}
+
+	/**
+	 * Gives an image back to the current thread's part of this pool so that
+	 * it can be returned by a later call to {@link #createCompatibleImage}
+	 * or {@link #createCopy}.
+	 * The caller must not use the image after calling this method.
+	 * <code>null</code> arguments, paletted images and images
+	 * exceeding the per-size limit are ignored.
+	 * @param image the image to be recycled
+	 */
+	public void release(PixelImage image)
+	{
+		if (!isPoolable(image))
+		{
+			return;
+		}
+		Hashtable map = getFreeImages();
+		String key = createKey(image.getClass(), image.getWidth(), image.getHeight());
+		Vector list = (Vector)map.get(key);
+		if (list == null)
+		{
+			list = new Vector(maxImagesPerSize);
+			map.put(key, list);
+		}
+		if (list.size() < maxImagesPerSize && !list.contains(image))
+		{
+			list.addElement(image);
+		}
+	}
+}
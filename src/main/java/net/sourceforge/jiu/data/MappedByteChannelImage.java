@@ -0,0 +1,411 @@
+/*
+ * MappedByteChannelImage
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An implementation of {@link ByteChannelImage} that stores image channels
+ * outside of the Java heap, in {@link java.nio.ByteBuffer} objects.
+ * Each channel is either a direct buffer (see {@link java.nio.ByteBuffer#allocateDirect(int)})
+ * or a region of a memory-mapped file.
+ * <p>
+ * Large images (e.g. scans of a complete page at 600 dpi) stored this way
+ * do not count against the heap size and are never moved or scanned by the
+ * garbage collector.
+ * Access to single samples is somewhat slower than with {@link MemoryByteChannelImage},
+ * so copying whole rows with {@link #getByteSamples} and {@link #putByteSamples}
+ * is recommended.
+ * <p>
+ * This class is abstract because it is merely a data container.
+ * It takes a subclass like {@link MappedGray8Image} to give meaning to the values.
+ * <h3>Usage example</h3>
+ * Load a TIFF file into a temporary file-backed grayscale image:
+ * <pre>
+ * File temp = File.createTempFile("page", ".raw");
+ * temp.deleteOnExit();
+ * TIFFCodec codec = new TIFFCodec();
+ * codec.setFile("page.tif", CodecMode.LOAD);
+ * codec.setImage(new MappedGray8Image(width, height, temp));
+ * codec.process();
+ * </pre>
+ *
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public abstract class MappedByteChannelImage implements ByteChannelImage
+{
+	private final ByteBuffer[] data;
+	private final ByteBuffer firstChannel; // == data[0]
+	private final int numChannels; // == data.length
+	private final int width;
+	private final int height;
+	private final int numPixels; // == width * height
+
+	/**
+	 * Creates an image of byte channels, each channel stored in a direct buffer.
+	 * Memory requirements are <code>width * height * numChannels</code> bytes
+	 * outside of the Java heap.
+	 * @param numChannels the number of channels in this image, must be
+	 *  non-zero and positive
+	 * @param width the horizontal resolution, must be non-zero and positive
+	 * @param height the vertical resolution, must be non-zero and positive
+	 * @throws IllegalArgumentException if any of the parameters are invalid
+	 *  or if width times height exceeds two GB
+	 */
+	public MappedByteChannelImage(int numChannels, int width, int height)
+	{
+		checkResolution(numChannels, width, height);
+		this.width = width;
+		this.height = height;
+		this.numChannels = numChannels;
+		numPixels = width * height;
+		data = new ByteBuffer[numChannels];
+		for (int i = 0; i < numChannels; i++)
+		{
+			data[i] = ByteBuffer.allocateDirect(numPixels);
+		}
+		firstChannel = data[0];
+	}
+
+	/**
+	 * Creates an image of byte channels that is backed by a memory-mapped file.
+	 * The file is created if it does not exist and resized to
+	 * <code>width * height * numChannels</code> bytes; channels are stored
+	 * one after another in that file.
+	 * The mapping remains valid until this object is garbage-collected,
+	 * deleting the file is up to the caller.
+	 * @param numChannels the number of channels in this image, must be
+	 *  non-zero and positive
+	 * @param width the horizontal resolution, must be non-zero and positive
+	 * @param height the vertical resolution, must be non-zero and positive
+	 * @param file the file to be used to store the image data
+	 * @throws IllegalArgumentException if any of the parameters are invalid
+	 *  or if width times height exceeds two GB
+	 * @throws IOException if the file could not be created or mapped
+	 */
+	public MappedByteChannelImage(int numChannels, int width, int height, File file) throws IOException
+	{
+		checkResolution(numChannels, width, height);
+		if (file == null)
+		{
+			throw new IllegalArgumentException("File must not be null.");
+		}
+		this.width = width;
+		this.height = height;
+		this.numChannels = numChannels;
+		numPixels = width * height;
+		data = new ByteBuffer[numChannels];
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			raf.setLength((long)numPixels * numChannels);
+			FileChannel channel = raf.getChannel();
+			for (int i = 0; i < numChannels; i++)
+			{
+				data[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long)i * numPixels, numPixels);
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+		firstChannel = data[0];
+	}
+
+	private static void checkResolution(int numChannels, int width, int height)
+	{
+		if (width < 1)
+		{
+			throw new IllegalArgumentException("Width must be larger than " +
+				"0: " + width);
+		}
+		if (height < 1)
+		{
+			throw new IllegalArgumentException("Height must be larger than" +
+				" 0: " + height);
+		}
+		if (numChannels < 1)
+		{
+			throw new IllegalArgumentException("Number of channels must be " +
+				"larger than 0: " + numChannels);
+		}
+		if ((long)width * (long)height > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Width times height must not " +
+				"exceed " + Integer.MAX_VALUE + ": " + width + " x " + height);
+		}
+	}
+
+	/**
+	 * Throws an exception if the arguments do not form a valid horizontal
+	 * sequence of samples.
+	 */
+	protected void checkPositionAndNumber(int channel, int x, int y, int w, int h)
+	{
+		if (channel < 0 || channel >= numChannels)
+		{
+			throw new IllegalArgumentException("Illegal channel index value: " + channel +
+				". Must be from 0 to " + (numChannels - 1) + ".");
+		}
+		if (x < 0 || x >= getWidth())
+		{
+			throw new IllegalArgumentException("The value for x is invalid: " + x + ".");
+		}
+		if (w < 1)
+		{
+			throw new IllegalArgumentException("The value for w is invalid: " + w + ".");
+		}
+		if (x + w > getWidth())
+		{
+			throw new IllegalArgumentException("The values x + w exceed the " +
+				"width of this image; x=" + x + ", w=" + w + ", width=" +
+				getWidth());
+		}
+		if (h < 1)
+		{
+			throw new IllegalArgumentException("The value for h is invalid: " + h + ".");
+		}
+		if (y < 0 || y >= getHeight())
+		{
+			throw new IllegalArgumentException("The value for y is invalid: " + y + ".");
+		}
+		if (y + h > getHeight())
+		{
+			throw new IllegalArgumentException("The values y + h exceed the " +
+				"height of this image; y=" + y + ", h=" + h + ", height=" +
+				getHeight());
+		}
+	}
+
+	public void clear(byte newValue)
+	{
+		clear(0, newValue);
+	}
+
+	public void clear(int channelIndex, byte newValue)
+	{
+		checkPositionAndNumber(channelIndex, 0, 0, 1, 1);
+		// fill a heap row once, then copy it into the buffer row by row
+		byte[] row = new byte[width];
+		java.util.Arrays.fill(row, newValue);
+		ByteBuffer dest = data[channelIndex].duplicate();
+		dest.clear();
+		for (int y = 0; y < height; y++)
+		{
+			dest.put(row);
+		}
+	}
+
+	public void clear(int newValue)
+	{
+		clear(0, (byte)newValue);
+	}
+
+	public void clear(int channelIndex, int newValue)
+	{
+		clear(channelIndex, (byte)newValue);
+	}
+
+	public abstract PixelImage createCompatibleImage(int width, int height);
+
+	/**
+	 * Creates a copy of this image.
+	 * The copy is created with {@link #createCompatibleImage}, so it is backed by
+	 * direct buffers even if this image is backed by a file.
+	 */
+	public PixelImage createCopy()
+	{
+		PixelImage copy = createCompatibleImage(getWidth(), getHeight());
+		MappedByteChannelImage result = (MappedByteChannelImage)copy;
+		for (int channelIndex = 0; channelIndex < getNumChannels(); channelIndex++)
+		{
+			ByteBuffer src = data[channelIndex].duplicate();
+			src.clear();
+			ByteBuffer dest = result.data[channelIndex].duplicate();
+			dest.clear();
+			dest.put(src);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of bytes allocated outside of the Java heap
+	 * for this image.
+	 */
+	public long getAllocatedMemory()
+	{
+		long result = 0;
+		for (int channelIndex = 0; channelIndex < data.length; channelIndex++)
+		{
+			result += data[channelIndex].capacity();
+		}
+		return result;
+	}
+
+	public int getBitsPerPixel()
+	{
+		return numChannels * 8;
+	}
+
+	public byte getByteSample(int channel, int x, int y)
+	{
+		try
+		{
+			return data[channel].get(y * width + x);
+		}
+		catch (IndexOutOfBoundsException ioobe)
+		{
+			checkPositionAndNumber(channel, x, y, 1, 1);
+			return -1;
+		}
+	}
+
+	public byte getByteSample(int x, int y)
+	{
+		return getByteSample(0, x, y);
+	}
+
+	public void getByteSamples(int channel, int x, int y, int w, int h, byte[] dest, int destOffset)
+	{
+		checkPositionAndNumber(channel, x, y, w, h);
+		// work on a duplicate so that concurrent readers do not share a position
+		ByteBuffer src = data[channel].duplicate();
+		int srcOffset = y * width + x;
+		while (h-- > 0)
+		{
+			src.position(srcOffset);
+			src.get(dest, destOffset, w);
+			srcOffset += width;
+			destOffset += w;
+		}
+	}
+
+	public final int getHeight()
+	{
+		return height;
+	}
+
+	public int getMaxSample(int channel)
+	{
+		return 255;
+	}
+
+	public int getNumChannels()
+	{
+		return numChannels;
+	}
+
+	public final int getSample(int x, int y)
+	{
+		try
+		{
+			return firstChannel.get(y * width + x) & 0xff;
+		}
+		catch (IndexOutOfBoundsException ioobe)
+		{
+			checkPositionAndNumber(0, x, y, 1, 1);
+			return -1;
+		}
+	}
+
+	public final int getSample(int channel, int x, int y)
+	{
+		try
+		{
+			return data[channel].get(y * width + x) & 0xff;
+		}
+		catch (IndexOutOfBoundsException ioobe)
+		{
+			checkPositionAndNumber(channel, x, y, 1, 1);
+			return -1;
+		}
+	}
+
+	public void getSamples(int channel, int x, int y, int w, int h, int[] dest, int destOffs)
+	{
+		if (w < 1 || h < 1)
+		{
+			return;
+		}
+		ByteBuffer src = data[channel];
+		int srcOffs = y * width + x;
+		while (h-- != 0)
+		{
+			int loop = w;
+			int from = srcOffs;
+			while (loop-- != 0)
+			{
+				dest[destOffs++] = src.get(from++) & 0xff;
+			}
+			srcOffs += width;
+		}
+	}
+
+	public final int getWidth()
+	{
+		return width;
+	}
+
+	public final void putByteSample(int channel, int x, int y, byte newValue)
+	{
+		checkPositionAndNumber(channel, x, y, 1, 1);
+		data[channel].put(y * width + x, newValue);
+	}
+
+	public final void putByteSample(int x, int y, byte newValue)
+	{
+		checkPositionAndNumber(0, x, y, 1, 1);
+		firstChannel.put(y * width + x, newValue);
+	}
+
+	public void putByteSamples(int channel, int x, int y, int w, int h, byte[] src, int srcOffset)
+	{
+		checkPositionAndNumber(channel, x, y, w, h);
+		ByteBuffer dest = data[channel].duplicate();
+		int destOffset = y * width + x;
+		while (h-- > 0)
+		{
+			dest.position(destOffset);
+			dest.put(src, srcOffset, w);
+			srcOffset += w;
+			destOffset += width;
+		}
+	}
+
+	public void putSamples(int channel, int x, int y, int w, int h, int[] src, int srcOffs)
+	{
+		checkPositionAndNumber(channel, x, y, w, h);
+		ByteBuffer dest = data[channel];
+		int destOffs = y * width + x;
+		while (h-- != 0)
+		{
+			int loop = w;
+			int to = destOffs;
+			while (loop-- != 0)
+			{
+				dest.put(to++, (byte)src[srcOffs++]);
+			}
+			destOffs += width;
+		}
+	}
+
+	public final void putSample(int x, int y, int newValue)
+	{
+		putByteSample(0, x, y, (byte)newValue);
+	}
+
+	public final void putSample(int channel, int x, int y, int newValue)
+	{
+		putByteSample(channel, x, y, (byte)newValue);
+	}
+}
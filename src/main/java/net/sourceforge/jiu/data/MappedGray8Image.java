@@ -0,0 +1,80 @@
+/*
+ * MappedGray8Image
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.data;
+
+import java.io.File;
+import java.io.IOException;
+import net.sourceforge.jiu.data.Gray8Image;
+import net.sourceforge.jiu.data.MappedByteChannelImage;
+import net.sourceforge.jiu.data.PixelImage;
+
+/**
+ * An implementation of {@link Gray8Image} that keeps the image data outside
+ * of the Java heap, in a direct buffer or a memory-mapped file.
+ * This class inherits most of its functionality from its parent class
+ * {@link MappedByteChannelImage}, using one byte channel.
+ *
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public class MappedGray8Image extends MappedByteChannelImage implements Gray8Image
+{
+	/**
+	 * Creates a new MappedGray8Image object with the specified resolution,
+	 * backed by a direct buffer.
+	 * @param width the horizontal resolution, must be non-zero and positive
+	 * @param height the vertical resolution, must be non-zero and positive
+	 */
+	public MappedGray8Image(int width, int height)
+	{
+		super(1, width, height);
+	}
+
+	/**
+	 * Creates a new MappedGray8Image object with the specified resolution,
+	 * backed by the argument file.
+	 * @param width the horizontal resolution, must be non-zero and positive
+	 * @param height the vertical resolution, must be non-zero and positive
+	 * @param file the file to be memory-mapped
+	 * @throws IOException if the file could not be created or mapped
+	 */
+	public MappedGray8Image(int width, int height, File file) throws IOException
+	{
+		super(1, width, height, file);
+	}
+
+	public PixelImage createCompatibleImage(int width, int height)
+	{
+		return new MappedGray8Image(width, height);
+	}
+
+	public Class getImageType()
+	{
+		return Gray8Image.class;
+	}
+
+	public boolean isBlack(int x, int y)
+	{
+		return getByteSample(x, y) == 0;
+	}
+
+	public boolean isWhite(int x, int y)
+	{
+		return getByteSample(x, y) == (byte)255;
+	}
+
+	public void putBlack(int x, int y)
+	{
+		putSample(x, y, 0);
+	}
+
+	public void putWhite(int x, int y)
+	{
+		putSample(x, y, 255);
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * MappedRGB24Image
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.data;
+
+import java.io.File;
+import java.io.IOException;
+import net.sourceforge.jiu.data.MappedByteChannelImage;
+import net.sourceforge.jiu.data.RGB24Image;
+
+/**
+ * A class to store 24 bit RGB truecolor images outside of the Java heap,
+ * in direct buffers or a memory-mapped file.
+ * @author Marco Schmidt
+ * @see RGB24Image
+ * @see MappedByteChannelImage
+ * @since 0.14.3
+ */
+public class MappedRGB24Image extends MappedByteChannelImage implements RGB24Image
+{
+	/**
+	 * Creates a new object of this class, backed by direct buffers,
+	 * with width and height as specified by the arguments.
+	 * @param width the horizontal resolution of the new image in pixels
+	 * @param height the vertical resolution of the new image in pixels
+	 */
+	public MappedRGB24Image(int width, int height)
+	{
+		super(3, width, height);
+	}
+
+	/**
+	 * Creates a new object of this class, backed by the argument file,
+	 * with width and height as specified by the arguments.
+	 * @param width the horizontal resolution of the new image in pixels
+	 * @param height the vertical resolution of the new image in pixels
+	 * @param file the file to be memory-mapped
+	 * @throws IOException if the file could not be created or mapped
+	 */
+	public MappedRGB24Image(int width, int height, File file) throws IOException
+	{
+		super(3, width, height, file);
+	}
+
+	public PixelImage createCompatibleImage(int width, int height)
+	{
+		return new MappedRGB24Image(width, height);
+	}
+
+	public Class getImageType()
+	{
+		return RGB24Image.class;
+	}
+}
@@ -229,7 +229,10 @@ public class MemoryBilevelImage implements BilevelImage
 				if (mask == 1)
 				{
 					mask = 128;
-					srcValue = data[srcOffset++] & 0xff;
+					if (remainingColumns != 0)
+					{
+						srcValue = data[srcOffset++] & 0xff;
+					}
 				}
 				else
 				{
@@ -346,6 +349,10 @@ public class MemoryBilevelImage implements BilevelImage
 					mask = 128;
 					destOffset++;
 				}
+				else
+				{
+					mask >>= 1;
+				}
 			}
 			initialDestOffset += BYTES_PER_ROW;
 		}
@@ -148,7 +148,7 @@ public abstract class AreaFilterOperation extends ImageToImageOperation
 	{
 		if (out == null)
 		{
-			out = (IntegerImage)in.createCompatibleImage(in.getWidth(), in.getHeight());
+			out = (IntegerImage)createCompatibleImage(in, in.getWidth(), in.getHeight());
 			setOutputImage(out);
 		}
 		for (int channelIndex = 0; channelIndex < in.getNumChannels(); channelIndex++)
@@ -34,6 +34,16 @@ import net.sourceforge.jiu.ops.WrongParameterException;
  * <pre>
  * PixelImage filteredImage = ConvolutionKernelFilter.filter(img, ConvolutionKernelFilter.TYPE_BLUR);
  * </pre>
+ * <h3>Performance</h3>
+ * Kernels that are the product of a column and a row vector (e.g. blur, Sobel
+ * and Prewitt) are detected and applied as two one-dimensional passes,
+ * so that each pixel takes <code>width + height</code> instead of
+ * <code>width * height</code> multiplications.
+ * All arithmetic is done on integers, with the division by the kernel's
+ * divisor replaced by a multiplication and a shift.
+ * Only as many rows as the kernel is high are buffered.
+ * On multiprocessor machines, {@link #setNumThreads} lets several
+ * threads work on horizontal bands of the image.
  * <h3>Credits</h3>
  * The implementation of the filter was created by members of the Java newsgroup 
  * <a href="news://de.comp.lang.java">de.comp.lang.java</a> and adapted to the JIU
@@ -98,11 +108,19 @@ public class ConvolutionKernelFilter extends ImageToImageOperation
 		new ConvolutionKernelData("Horizontal Prewitt", HORIZONTAL_PREWITT_DATA, 3, 3, 1, 0),
 		new ConvolutionKernelData("Vertical Prewitt", VERTICAL_PREWITT_DATA, 3, 3, 1, 0)
 	};
+	private int[] columnKernel;
+	private long divMultiplier;
+	private int divShift;
 	private int kernelBias;
 	private int[] kernelData;
 	private int kernelDiv;
 	private int kernelHeight;
 	private int kernelWidth;
+	private int numThreads = 1;
+	private int[] rowKernel;
+	private int[] tapWeight;
+	private int[] tapX;
+	private int[] tapY;
 
 	/**
 	 * Copies row data from input image to buffer and replicates 
@@ -120,8 +138,8 @@ public class ConvolutionKernelFilter extends ImageToImageOperation
 		srcImage.getSamples(srcChannelIndex, 0, rowIndex, WIDTH, 1, dest, destOffset + numBorderColumns);
 		// copy leftmost sample to X X positions
 		int srcOffset = destOffset + numBorderColumns;
-		int offset = numBorderColumns - 1;
-		while (offset >= 0)
+		int offset = destOffset + numBorderColumns - 1;
+		while (offset >= destOffset)
 		{
 			dest[offset--] = dest[srcOffset];
 		}
@@ -161,79 +179,249 @@ public class ConvolutionKernelFilter extends ImageToImageOperation
 		}
 	}
 
+	private static int gcd(int a, int b)
+	{
+		while (b != 0)
+		{
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
 	/**
-	 * Applies the kernel to one of the channels of an image.
-	 * @param channelIndex index of the channel to be filtered, must be from 0 to ByteChannelImage.getNumChannels() - 1
+	 * Returns the number of threads used by {@link #process()}.
+	 * @see #setNumThreads
 	 */
-	private void process(int channelIndex, IntegerImage in, IntegerImage out)
+	public int getNumThreads()
 	{
-		final int H_DIM = kernelWidth;
-		final int H_DIM_2 = (H_DIM / 2);
-		final int V_DIM = kernelHeight;
-		final int V_DIM_2 = (V_DIM / 2);
-		final int HEIGHT = in.getHeight();
-		final int WIDTH = in.getWidth();
-		final int NEW_WIDTH = WIDTH + 2 * H_DIM_2;
-		final int NEW_HEIGHT = HEIGHT + 2 * V_DIM_2;
-		final int MAX = in.getMaxSample(channelIndex);
-		int processedItems = channelIndex * HEIGHT;
-		final int TOTAL_ITEMS = in.getNumChannels() * HEIGHT;
-		int[] src = new int[NEW_WIDTH * NEW_HEIGHT];
-		// fill src with data
-		for (int y = 0, offs = V_DIM_2 * NEW_WIDTH; y < HEIGHT; y++, offs += NEW_WIDTH)
+		return numThreads;
+	}
+
+	/**
+	 * Returns whether the current kernel is separable, i.e. whether it is the
+	 * product of a column vector and a row vector and is thus applied as
+	 * a horizontal pass followed by a vertical pass.
+	 * @return if the kernel is separable
+	 */
+	public boolean isKernelSeparable()
+	{
+		prepareKernel();
+		return rowKernel != null;
+	}
+
+	/**
+	 * Loads a row of the input image into the ring buffer, replicating
+	 * the first and last row for indexes outside of the image.
+	 * For separable kernels the row is stored filtered with the row kernel,
+	 * otherwise it is stored with replicated border columns.
+	 */
+	private void loadRow(IntegerImage in, int channelIndex, int rowIndex, int[] dest, int[] padded)
+	{
+		int y = Math.min(Math.max(rowIndex, 0), in.getHeight() - 1);
+		int numBorderColumns = kernelWidth / 2;
+		if (padded == null)
 		{
-			copyRow(in, channelIndex, y, src, offs, H_DIM_2);
+			copyRow(in, channelIndex, y, dest, 0, numBorderColumns);
+			return;
 		}
-		// copy row H_DIM_2 to 0 .. H_DIM_2 - 1
-		int srcOffset = V_DIM_2 * NEW_WIDTH;
-		for (int y = 0; y < V_DIM_2; y++)
+		copyRow(in, channelIndex, y, padded, 0, numBorderColumns);
+		final int WIDTH = dest.length;
+		for (int x = 0; x < WIDTH; x++)
 		{
-			System.arraycopy(src, srcOffset, src, y * NEW_WIDTH, NEW_WIDTH);
+			dest[x] = 0;
 		}
-		// copy row H_DIM_2 + HEIGHT - 1 to H_DIM_2 + HEIGHT .. 2 * H_DIM_2 + HEIGHT - 1 
-		srcOffset = (HEIGHT + V_DIM_2 - 1) * NEW_WIDTH;
-		for (int y = V_DIM_2 + HEIGHT; y < NEW_HEIGHT; y++)
+		for (int i = 0; i < kernelWidth; i++)
 		{
-			System.arraycopy(src, srcOffset, src, y * NEW_WIDTH, NEW_WIDTH);
+			final int WEIGHT = rowKernel[i];
+			if (WEIGHT != 0)
+			{
+				for (int x = 0; x < WIDTH; x++)
+				{
+					dest[x] += WEIGHT * padded[x + i];
+				}
+			}
 		}
-		// do the filtering
-		int count = H_DIM * V_DIM;
-		final int[] kernelLine = new int[count];
-		final int[] kernelD = new int[count];
-		int p;
+	}
+
+	/**
+	 * Analyzes the current kernel: collects its non-zero elements,
+	 * tries to factor it into a column and a row vector and computes
+	 * the fixed-point reciprocal of the divisor.
+	 */
+	private void prepareKernel()
+	{
+		// non-zero elements
+		int count = 0;
+		for (int i = 0; i < kernelWidth * kernelHeight; i++)
+		{
+			if (kernelData[i] != 0)
+			{
+				count++;
+			}
+		}
+		tapX = new int[count];
+		tapY = new int[count];
+		tapWeight = new int[count];
 		count = 0;
-		final int j = H_DIM - 1;
-		for (int x = H_DIM; x-- > 0;)
+		for (int y = 0; y < kernelHeight; y++)
 		{
-			for (int y = V_DIM; y-- > 0;)
+			for (int x = 0; x < kernelWidth; x++)
 			{
-				int index = y * H_DIM + x;
-				if (kernelData[index] != 0)
+				int value = kernelData[y * kernelWidth + x];
+				if (value != 0)
 				{
-					kernelLine[count] = kernelData[index];
-					kernelD[count] = y * NEW_WIDTH + x;
+					tapX[count] = x;
+					tapY[count] = y;
+					tapWeight[count] = value;
 					count++;
 				}
 			}
 		}
-		// all kernel elements are zero => nothing to do, resulting channel will be full of zeroes
-		if (count == 0)
+		// separable kernels: take the first row with a non-zero element, divided
+		// by the gcd of its elements, as row vector; every other row must
+		// be an integer multiple of it
+		rowKernel = null;
+		columnKernel = null;
+		if (count > 0 && kernelWidth > 1 && kernelHeight > 1)
 		{
-			setProgress(channelIndex, in.getNumChannels());
-			return;
+			int pivotRow = tapY[0];
+			int pivotColumn = tapX[0];
+			int divisor = 0;
+			for (int x = 0; x < kernelWidth; x++)
+			{
+				divisor = gcd(divisor, Math.abs(kernelData[pivotRow * kernelWidth + x]));
+			}
+			int[] row = new int[kernelWidth];
+			for (int x = 0; x < kernelWidth; x++)
+			{
+				row[x] = kernelData[pivotRow * kernelWidth + x] / divisor;
+			}
+			int[] column = new int[kernelHeight];
+			boolean separable = true;
+			for (int y = 0; y < kernelHeight && separable; y++)
+			{
+				int value = kernelData[y * kernelWidth + pivotColumn];
+				if (value % row[pivotColumn] != 0)
+				{
+					separable = false;
+					break;
+				}
+				column[y] = value / row[pivotColumn];
+				for (int x = 0; x < kernelWidth; x++)
+				{
+					if (kernelData[y * kernelWidth + x] != column[y] * row[x])
+					{
+						separable = false;
+						break;
+					}
+				}
+			}
+			if (separable)
+			{
+				rowKernel = row;
+				columnKernel = column;
+			}
+		}
+		// division by kernelDiv is done as multiplication by
+		// ceil(2^(31 + l) / |kernelDiv|) with 2^l >= |kernelDiv| and a shift,
+		// which is exact for all int dividends
+		long div = Math.abs((long)kernelDiv);
+		int l = 0;
+		while ((1L << l) < div)
+		{
+			l++;
 		}
-		p = (HEIGHT - 1) * NEW_WIDTH + (WIDTH - 1);
+		divShift = 31 + l;
+		divMultiplier = ((1L << divShift) + div - 1) / div;
+	}
+
+	/**
+	 * Applies the kernel to rows <code>firstRow</code> to <code>lastRow - 1</code>
+	 * of one of the channels of an image.
+	 * Only the kernel height's number of rows is kept in memory at a time.
+	 * @param channelIndex index of the channel to be filtered, must be from 0 to ByteChannelImage.getNumChannels() - 1
+	 */
+	private void process(int channelIndex, IntegerImage in, IntegerImage out, int firstRow, int lastRow, boolean reportProgress)
+	{
+		final int WIDTH = in.getWidth();
+		final int HEIGHT = in.getHeight();
+		final int V_DIM = kernelHeight;
+		final int V_DIM_2 = V_DIM / 2;
+		final int NEW_WIDTH = WIDTH + 2 * (kernelWidth / 2);
+		final int MAX = in.getMaxSample(channelIndex);
+		final int TOTAL_ITEMS = in.getNumChannels() * HEIGHT;
+		final boolean SEPARABLE = rowKernel != null;
+		final boolean DIVIDE = kernelDiv != 1;
+		final boolean NEGATIVE_DIV = kernelDiv < 0;
+		// ring buffer with the V_DIM input rows around the current row;
+		// input row r is stored at index (r - FIRST_LOADED) % V_DIM
+		final int FIRST_LOADED = firstRow - V_DIM_2;
+		int[][] rows = new int[V_DIM][SEPARABLE ? WIDTH : NEW_WIDTH];
+		int[] padded = SEPARABLE ? new int[NEW_WIDTH] : null;
+		for (int r = FIRST_LOADED; r < firstRow + V_DIM_2; r++)
+		{
+			loadRow(in, channelIndex, r, rows[r - FIRST_LOADED], padded);
+		}
+		int[] sums = new int[WIDTH];
 		int[] dest = new int[WIDTH];
-		for (int y = HEIGHT; y-- > 0;)
+		for (int y = firstRow; y < lastRow; y++)
 		{
-			for (int x = WIDTH; x-- > 0;)
+			int r = y + V_DIM_2;
+			loadRow(in, channelIndex, r, rows[(r - FIRST_LOADED) % V_DIM], padded);
+			for (int x = 0; x < WIDTH; x++)
+			{
+				sums[x] = 0;
+			}
+			if (SEPARABLE)
+			{
+				// vertical pass over rows already filtered horizontally
+				for (int i = 0; i < V_DIM; i++)
+				{
+					final int WEIGHT = columnKernel[i];
+					if (WEIGHT != 0)
+					{
+						int[] row = rows[(y - V_DIM_2 + i - FIRST_LOADED) % V_DIM];
+						for (int x = 0; x < WIDTH; x++)
+						{
+							sums[x] += WEIGHT * row[x];
+						}
+					}
+				}
+			}
+			else
+			{
+				for (int i = 0; i < tapWeight.length; i++)
+				{
+					final int WEIGHT = tapWeight[i];
+					final int OFFSET = tapX[i];
+					int[] row = rows[(y - V_DIM_2 + tapY[i] - FIRST_LOADED) % V_DIM];
+					for (int x = 0; x < WIDTH; x++)
+					{
+						sums[x] += WEIGHT * row[x + OFFSET];
+					}
+				}
+			}
+			for (int x = 0; x < WIDTH; x++)
 			{
-				int sum = 0;
-				for (int i = count; i-- > 0;)
+				int sum = sums[x];
+				if (DIVIDE)
 				{
-					sum += (src[p + kernelD[i]] & MAX) * kernelLine[i];
+					if (sum >= 0)
+					{
+						sum = (int)((sum * divMultiplier) >>> divShift);
+					}
+					else
+					{
+						sum = -(int)((-(long)sum * divMultiplier) >>> divShift);
+					}
+					if (NEGATIVE_DIV)
+					{
+						sum = -sum;
+					}
 				}
-				sum = (sum / kernelDiv) + kernelBias;
+				sum += kernelBias;
 				if (sum <= 0)
 				{
 					dest[x] = 0;
@@ -247,25 +435,87 @@ public class ConvolutionKernelFilter extends ImageToImageOperation
 				{
 					dest[x] = sum;
 				}
-				// (byte)(((0xFFFFFF00 & sum) == 0) ? sum : ((sum >>> 31) - 1));
-				p--;
 			}
 			out.putSamples(channelIndex, 0, y, WIDTH, 1, dest, 0);
-			p -= j;
-			setProgress(processedItems++, TOTAL_ITEMS);
+			if (reportProgress)
+			{
+				setProgress(channelIndex * HEIGHT + y, TOTAL_ITEMS);
+			}
 		}
 	}
 
-	private void process(IntegerImage in, IntegerImage out)
+	private void process(IntegerImage in, IntegerImage out, int firstRow, int lastRow, boolean reportProgress)
 	{
 		for (int channelIndex = 0; channelIndex < in.getNumChannels(); channelIndex++)
 		{
-			process(channelIndex, in, out);
+			process(channelIndex, in, out, firstRow, lastRow, reportProgress);
+		}
+	}
+
+	private void process(final IntegerImage in, final IntegerImage out) throws OperationFailedException
+	{
+		prepareKernel();
+		// all kernel elements are zero => nothing to do, resulting channels will be full of zeroes
+		if (tapWeight.length == 0)
+		{
+			setProgress(1.0f);
+			return;
+		}
+		final int HEIGHT = in.getHeight();
+		final int NUM_THREADS = Math.min(numThreads, HEIGHT);
+		if (NUM_THREADS < 2)
+		{
+			process(in, out, 0, HEIGHT, true);
+			return;
+		}
+		// each thread filters a horizontal band of the image
+		final RuntimeException[] failure = new RuntimeException[1];
+		Thread[] threads = new Thread[NUM_THREADS];
+		final int BAND_HEIGHT = (HEIGHT + NUM_THREADS - 1) / NUM_THREADS;
+		for (int i = 0; i < NUM_THREADS; i++)
+		{
+			final int FIRST_ROW = i * BAND_HEIGHT;
+			final int LAST_ROW = Math.min(FIRST_ROW + BAND_HEIGHT, HEIGHT);
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						if (FIRST_ROW < LAST_ROW)
+						{
+							process(in, out, FIRST_ROW, LAST_ROW, false);
+						}
+					}
+					catch (RuntimeException re)
+					{
+						failure[0] = re;
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (int i = 0; i < NUM_THREADS; i++)
+		{
+			try
+			{
+				threads[i].join();
+			}
+			catch (InterruptedException ie)
+			{
+				throw new OperationFailedException("Interrupted while waiting for filter threads.");
+			}
+			setProgress(i, NUM_THREADS);
+		}
+		if (failure[0] != null)
+		{
+			throw failure[0];
 		}
 	}
 
 	public void process() throws
 		MissingParameterException,
+		OperationFailedException,
 		WrongParameterException
 	{
 		ensureInputImageIsAvailable();
@@ -276,7 +526,7 @@ public class ConvolutionKernelFilter extends ImageToImageOperation
 			PixelImage out = getOutputImage();
 			if (out == null)
 			{
-				out = (IntegerImage)in.createCompatibleImage(in.getWidth(), in.getHeight());
+				out = (IntegerImage)createCompatibleImage(in, in.getWidth(), in.getHeight());
 				setOutputImage(out);
 			}
 			process((IntegerImage)in, (IntegerImage)out);
@@ -346,6 +596,25 @@ public class ConvolutionKernelFilter extends ImageToImageOperation
 		setKernel(ckd.getData(), ckd.getWidth(), ckd.getHeight(), ckd.getDiv(), ckd.getBias());
 	}
 
+	/**
+	 * Sets the number of threads to be used by {@link #process()}.
+	 * With more than one thread, the image is split into horizontal bands
+	 * that are filtered concurrently, so the output image must allow
+	 * concurrent writes to different rows (all memory images do).
+	 * Progress is reported only when a band is finished.
+	 * Default is 1, the calling thread does all the work.
+	 * @param newValue number of threads, 1 or larger
+	 * @throws IllegalArgumentException if the argument is smaller than 1
+	 */
+	public void setNumThreads(int newValue)
+	{
+		if (newValue < 1)
+		{
+			throw new IllegalArgumentException("Number of threads must be at least 1: " + newValue);
+		}
+		numThreads = newValue;
+	}
+
 	/**
 	 * Sets one of the predefined kernel types to be used for filtering.
 	 * @param type one of the TYPE_xyz constants of this class
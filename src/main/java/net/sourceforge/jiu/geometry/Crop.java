@@ -66,7 +66,7 @@ public class Crop extends ImageToImageOperation
 		final int OUT_HEIGHT = y2 - y1 + 1;
 		if (out == null)
 		{
-			out = (IntegerImage)in.createCompatibleImage(OUT_WIDTH, OUT_HEIGHT);
+			out = (IntegerImage)createCompatibleImage(in, OUT_WIDTH, OUT_HEIGHT);
 			setOutputImage(out);
 		}
 		int totalItems = in.getNumChannels() * OUT_HEIGHT;
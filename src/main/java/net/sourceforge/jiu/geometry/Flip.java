@@ -36,7 +36,7 @@ public class Flip extends ImageToImageOperation
 		final int TOTAL_ITEMS = in.getNumChannels() * HEIGHT;
 		if (out == null)
 		{
-			out = (IntegerImage)in.createCompatibleImage(WIDTH, HEIGHT);
+			out = (IntegerImage)createCompatibleImage(in, WIDTH, HEIGHT);
 			setOutputImage(out);
 		}
 		int processedItems = 0;
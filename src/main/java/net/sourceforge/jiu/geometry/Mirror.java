@@ -35,7 +35,7 @@ public class Mirror extends ImageToImageOperation
 		final int HEIGHT = in.getHeight();
 		if (out == null)
 		{
-			out = (IntegerImage)in.createCompatibleImage(WIDTH, HEIGHT);
+			out = (IntegerImage)createCompatibleImage(in, WIDTH, HEIGHT);
 			setOutputImage(out);
 		}
 		int totalItems = in.getNumChannels() * WIDTH;
@@ -277,7 +277,7 @@ public class Resample extends ImageToImageOperation
 	{
 		if (out == null)
 		{
-			out = (IntegerImage)in.createCompatibleImage(outWidth.intValue(), outHeight.intValue());
+			out = (IntegerImage)createCompatibleImage(in, outWidth.intValue(), outHeight.intValue());
 			setOutputImage(out);
 		}
 		if (filter == null)
@@ -292,7 +292,7 @@ public class Resample extends ImageToImageOperation
  		/* if (SrcWidth < 1) or (SrcHeight < 1) then
     raise Exception.Create('Source bitmap too small');*/
 		// Create intermediate image to hold horizontal zoom
-		IntegerImage work = (IntegerImage)in.createCompatibleImage(dstWidth, srcHeight);
+		IntegerImage work = (IntegerImage)createCompatibleImage(in, dstWidth, srcHeight);
 		float xscale;
 		float yscale;
 		if (srcWidth == 1)
@@ -620,6 +620,11 @@ public class Resample extends ImageToImageOperation
 			}
 			setProgress(processedItems++, totalItems);
 		}
+		// the intermediate image is no longer needed
+		if (getImagePool() != null)
+		{
+			getImagePool().release(work);
+		}
 	}
 
 	public void process() throws
@@ -34,7 +34,7 @@ public class Rotate180 extends ImageToImageOperation
 		final int HEIGHT = in.getHeight();
 		if (out == null)
 		{
-			out = (IntegerImage)in.createCompatibleImage(WIDTH, HEIGHT);
+			out = (IntegerImage)createCompatibleImage(in, WIDTH, HEIGHT);
 			setOutputImage(out);
 		}
 		int totalItems = in.getNumChannels() * HEIGHT;
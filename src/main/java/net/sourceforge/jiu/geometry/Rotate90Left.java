@@ -33,7 +33,7 @@ public class Rotate90Left extends ImageToImageOperation
 		final int HEIGHT = in.getHeight();
 		if (out == null)
 		{
-			out = (IntegerImage)in.createCompatibleImage(HEIGHT, WIDTH);
+			out = (IntegerImage)createCompatibleImage(in, HEIGHT, WIDTH);
 			setOutputImage(out);
 		}
 		int totalItems = in.getNumChannels() * HEIGHT;
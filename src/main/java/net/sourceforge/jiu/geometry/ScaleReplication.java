@@ -43,7 +43,7 @@ public class ScaleReplication extends ImageToImageOperation
 	{
 		if (out == null)
 		{
-			out = (IntegerImage)in.createCompatibleImage(outWidth.intValue(), outHeight.intValue());
+			out = (IntegerImage)createCompatibleImage(in, outWidth.intValue(), outHeight.intValue());
 			setOutputImage(out);
 		}
 		int IN_MAX_X = in.getWidth() - 1;
@@ -86,7 +86,7 @@ public class ScaleReplication extends ImageToImageOperation
 		{
 			throw new MissingParameterException("Output height value missing.");
 		}
-		ensureImagesHaveSameResolution();
+		ensureOutputImageResolution(outWidth.intValue(), outHeight.intValue());
 		process((IntegerImage)pin, (IntegerImage)getOutputImage());
 	}
 
@@ -83,7 +83,7 @@ public class Shear extends ImageToImageOperation
 		int NEW_WIDTH = (int)(HEIGHT * shearfac + WIDTH + 0.999999);
 		if (out == null)
 		{
-			out = (IntegerImage)in.createCompatibleImage(NEW_WIDTH, HEIGHT);
+			out = (IntegerImage)createCompatibleImage(in, NEW_WIDTH, HEIGHT);
 			setOutputImage(out);
 		}
 		for (int c = 0; c < in.getNumChannels(); c++)
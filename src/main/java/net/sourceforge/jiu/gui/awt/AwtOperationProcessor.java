@@ -949,7 +949,7 @@ public class AwtOperationProcessor extends OperationProcessor
 		{
 			if (uri != null)
 			{
-				image = ImageLoader.loadToolkitImageUri(uri);
+				image = ImageLoader.loadResource(uri, state.getProgressListeners());
 			}
 			else
 			{
@@ -7,6 +7,7 @@
 
 package net.sourceforge.jiu.ops;
 
+import net.sourceforge.jiu.data.ImagePool;
 import net.sourceforge.jiu.data.PixelImage;
 import net.sourceforge.jiu.ops.MissingParameterException;
 import net.sourceforge.jiu.ops.Operation;
@@ -63,12 +64,20 @@ import net.sourceforge.jiu.ops.WrongParameterException;
  * implemented that way - the operation starts at the top left and at the bottom
  * right pixel, swaps them and proceeds one pixel to the right of the top left
  * pixel (and one to the left of the bottom right pixel).
+ * <p>
+ * Operations that create their output image with
+ * {@link #createCompatibleImage(PixelImage, int, int)} draw it from an
+ * {@link net.sourceforge.jiu.data.ImagePool} if one was given via
+ * {@link #setImagePool}.
+ * That way, applications processing many images of the same size can recycle
+ * output images instead of allocating new ones.
  *
  * @author Marco Schmidt
  * @since 0.6.0
  */
 public abstract class ImageToImageOperation extends Operation
 {
+	private ImagePool imagePool;
 	private PixelImage inputImage;
 	private PixelImage outputImage;
 	private boolean canInAndOutBeEqual;
@@ -112,6 +121,30 @@ public abstract class ImageToImageOperation extends Operation
 		return canInAndOutBeEqual;
 	}
 
+	/**
+	 * Creates an image of the same type as the argument image with the
+	 * argument resolution, to be used as output image of this operation.
+	 * If an image pool was specified via {@link #setImagePool}, the image
+	 * is drawn from that pool, otherwise
+	 * <code>image.createCompatibleImage(width, height)</code> is returned.
+	 * @param image the image whose type the new image is to have
+	 * @param width horizontal resolution of the new image
+	 * @param height vertical resolution of the new image
+	 * @return new (or recycled) image object
+	 * @since 0.14.3
+	 */
+	public PixelImage createCompatibleImage(PixelImage image, int width, int height)
+	{
+		if (imagePool == null)
+		{
+			return image.createCompatibleImage(width, height);
+		}
+		else
+		{
+			return imagePool.createCompatibleImage(image, width, height);
+		}
+	}
+
 	/**
 	 * If both an input and an output image have been specified (both non-null), 
 	 * this method compares their width and height properties and throws
@@ -175,6 +208,17 @@ public abstract class ImageToImageOperation extends Operation
 		}
 	}
 
+	/**
+	 * Returns the image pool used to create output images.
+	 * @return image pool, possibly <code>null</code>
+	 * @see #setImagePool
+	 * @since 0.14.3
+	 */
+	public ImagePool getImagePool()
+	{
+		return imagePool;
+	}
+
 	/**
 	 * Returns the input image stored in this object.
 	 * @return input image, possibly <code>null</code>
@@ -202,6 +246,19 @@ public abstract class ImageToImageOperation extends Operation
 		canInAndOutBeEqual = newValue;
 	}
 
+	/**
+	 * Sets the pool from which this operation draws its output image
+	 * (unless an output image was specified with {@link #setOutputImage}).
+	 * Argument can be <code>null</code>, output images will then
+	 * be created with {@link PixelImage#createCompatibleImage}.
+	 * @param pool the image pool to be used
+	 * @since 0.14.3
+	 */
+	public void setImagePool(ImagePool pool)
+	{
+		imagePool = pool;
+	}
+
 	/**
 	 * Sets the input image stored in this object to the argument.
 	 * Argument can be <code>null</code>.
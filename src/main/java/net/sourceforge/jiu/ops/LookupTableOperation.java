@@ -84,7 +84,7 @@ public abstract class LookupTableOperation extends ImageToImageOperation
 		PixelImage out = getOutputImage();
 		if (out == null)
 		{
-			out = in.createCompatibleImage(in.getWidth(), in.getHeight());
+			out = createCompatibleImage(in, in.getWidth(), in.getHeight());
 			setOutputImage(out);
 		}
 		else
@@ -154,6 +154,21 @@ public class ArrayConverter
 			destOffset += bytes;
 			numSamples &= 7;
 		}
+		else
+		if (destBitOffset == 0 && numSamples > 7)
+		{
+			// byte-aligned destination: each destination byte is made up of
+			// the end of one source byte and the beginning of the next
+			int bytes = numSamples >> 3;
+			int leftShift = srcBitOffset;
+			int rightShift = 8 - srcBitOffset;
+			while (bytes-- != 0)
+			{
+				dest[destOffset++] = (byte)((src[srcOffset] << leftShift) | ((src[srcOffset + 1] & 0xff) >> rightShift));
+				srcOffset++;
+			}
+			numSamples &= 7;
+		}
 		int srcMask = 1 << (7 - srcBitOffset);
 		int destMask = 1 << (7 - destBitOffset);
 		while (numSamples-- != 0)
@@ -0,0 +1,311 @@
+/*
+ * ByteBufferInputStream
+ *
+ * Copyright (c) 2007 Marco Schmidt.
+ * All rights reserved.
+ */
+
+package net.sourceforge.jiu.util;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An {@link java.io.InputStream} that reads from a {@link java.nio.ByteBuffer}
+ * and also implements {@link java.io.DataInput} and random access
+ * (methods {@link #seek}, {@link #getFilePointer} and {@link #length}
+ * named like those of {@link java.io.RandomAccessFile}).
+ * <p>
+ * Wrapped around a {@link java.nio.MappedByteBuffer} this gives access to a
+ * memory-mapped file without any system calls per read operation;
+ * multi-byte reads like {@link #readInt} and {@link #readFully(byte[])} are
+ * single (bulk) buffer accesses.
+ * As required by the DataInput interface, multi-byte values are read in
+ * big endian (network) byte order, regardless of the byte order of the argument buffer.
+ * <p>
+ * The buffer given to the constructor is not modified; this class works
+ * on a duplicate of it, so several objects of this class can read the same
+ * buffer independently (e.g. in several threads).
+ * Positions are relative to the buffer's position at construction time.
+ * @author Marco Schmidt
+ * @since 0.14.3
+ */
+public class ByteBufferInputStream extends InputStream implements DataInput
+{
+	private final ByteBuffer buffer;
+	private final int start;
+	private int mark;
+
+	/**
+	 * Creates a stream that reads the bytes from the argument buffer's
+	 * current position to its limit.
+	 * @param byteBuffer buffer to read from
+	 * @throws IllegalArgumentException if the argument is <code>null</code>
+	 */
+	public ByteBufferInputStream(ByteBuffer byteBuffer)
+	{
+		if (byteBuffer == null)
+		{
+			throw new IllegalArgumentException("Buffer argument must not be null.");
+		}
+		buffer = byteBuffer.duplicate();
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		start = buffer.position();
+		mark = start;
+	}
+
+	public int available()
+	{
+		return buffer.remaining();
+	}
+
+	/**
+	 * Returns a new buffer sharing the complete content of this stream,
+	 * so that buffer index and stream position are the same.
+	 * Its position is zero, its limit is {@link #length}.
+	 * Reading from the returned buffer does not change this stream's position.
+	 */
+	public ByteBuffer getByteBuffer()
+	{
+		ByteBuffer result = buffer.duplicate();
+		result.position(start);
+		return result.slice();
+	}
+
+	/**
+	 * Returns the current position, the offset of the next byte to be read.
+	 * @see #seek
+	 */
+	public long getFilePointer()
+	{
+		return buffer.position() - start;
+	}
+
+	/**
+	 * Returns the number of bytes in this stream.
+	 */
+	public long length()
+	{
+		return buffer.limit() - start;
+	}
+
+	public void mark(int readLimit)
+	{
+		mark = buffer.position();
+	}
+
+	public boolean markSupported()
+	{
+		return true;
+	}
+
+	public int read()
+	{
+		if (buffer.hasRemaining())
+		{
+			return buffer.get() & 0xff;
+		}
+		else
+		{
+			return -1;
+		}
+	}
+
+	public int read(byte[] dest, int offset, int length)
+	{
+		if (length == 0)
+		{
+			return 0;
+		}
+		int remaining = buffer.remaining();
+		if (remaining == 0)
+		{
+			return -1;
+		}
+		if (length > remaining)
+		{
+			length = remaining;
+		}
+		buffer.get(dest, offset, length);
+		return length;
+	}
+
+	public boolean readBoolean() throws IOException
+	{
+		return readByte() != 0;
+	}
+
+	public byte readByte() throws IOException
+	{
+		try
+		{
+			return buffer.get();
+		}
+		catch (BufferUnderflowException bue)
+		{
+			throw new EOFException();
+		}
+	}
+
+	public char readChar() throws IOException
+	{
+		try
+		{
+			return buffer.getChar();
+		}
+		catch (BufferUnderflowException bue)
+		{
+			throw new EOFException();
+		}
+	}
+
+	public double readDouble() throws IOException
+	{
+		return Double.longBitsToDouble(readLong());
+	}
+
+	public float readFloat() throws IOException
+	{
+		return Float.intBitsToFloat(readInt());
+	}
+
+	public void readFully(byte[] dest) throws IOException
+	{
+		readFully(dest, 0, dest.length);
+	}
+
+	public void readFully(byte[] dest, int offset, int length) throws IOException
+	{
+		if (length > buffer.remaining())
+		{
+			throw new EOFException();
+		}
+		buffer.get(dest, offset, length);
+	}
+
+	public int readInt() throws IOException
+	{
+		try
+		{
+			return buffer.getInt();
+		}
+		catch (BufferUnderflowException bue)
+		{
+			throw new EOFException();
+		}
+	}
+
+	/**
+	 * Reads a line of text as specified in {@link java.io.DataInput#readLine}.
+	 * @deprecated like DataInput.readLine, this does not properly convert bytes to characters
+	 */
+	public String readLine()
+	{
+		if (!buffer.hasRemaining())
+		{
+			return null;
+		}
+		StringBuffer sb = new StringBuffer();
+		while (buffer.hasRemaining())
+		{
+			int c = buffer.get() & 0xff;
+			if (c == '\n')
+			{
+				break;
+			}
+			if (c == '\r')
+			{
+				if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n')
+				{
+					buffer.get();
+				}
+				break;
+			}
+			sb.append((char)c);
+		}
+		return sb.toString();
+	}
+
+	public long readLong() throws IOException
+	{
+		try
+		{
+			return buffer.getLong();
+		}
+		catch (BufferUnderflowException bue)
+		{
+			throw new EOFException();
+		}
+	}
+
+	public short readShort() throws IOException
+	{
+		try
+		{
+			return buffer.getShort();
+		}
+		catch (BufferUnderflowException bue)
+		{
+			throw new EOFException();
+		}
+	}
+
+	public int readUnsignedByte() throws IOException
+	{
+		return readByte() & 0xff;
+	}
+
+	public int readUnsignedShort() throws IOException
+	{
+		return readShort() & 0xffff;
+	}
+
+	public String readUTF() throws IOException
+	{
+		return DataInputStream.readUTF(this);
+	}
+
+	public void reset()
+	{
+		buffer.position(mark);
+	}
+
+	/**
+	 * Sets the position of the next byte to be read.
+	 * Like {@link java.io.RandomAccessFile#seek}, positions beyond the end are allowed;
+	 * reading from there will signal the end of the data.
+	 * @param offset new position, zero or larger
+	 * @throws IOException if the argument is negative
+	 * @see #getFilePointer
+	 */
+	public void seek(long offset) throws IOException
+	{
+		if (offset < 0)
+		{
+			throw new IOException("Cannot seek to negative offset " + offset + ".");
+		}
+		buffer.position((int)Math.min(start + offset, buffer.limit()));
+	}
+
+	public long skip(long number)
+	{
+		if (number <= 0)
+		{
+			return 0;
+		}
+		int skipped = (int)Math.min(number, buffer.remaining());
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	public int skipBytes(int number)
+	{
+		return (int)skip(number);
+	}
+}